@@ -0,0 +1,53 @@
+package com.danapple.experiments.atomic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs both transfer benchmarks once per thread count, with the GC profiler for allocation rates.
+// Thread counts default to powers of two up to twice the available processors, and may be given
+// as -Dthreads=1,4,16.  -Dinclude narrows the benchmarks with a JMH regular expression.
+public class TransferBenchmarks
+{
+    public static void main(String[] args) throws RunnerException
+    {
+        String include = System.getProperty("include", "TransferBenchmark");
+        for (int threads : threadCounts())
+        {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-transfer-" + threads + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    private static List<Integer> threadCounts()
+    {
+        List<Integer> threadCounts = new ArrayList<>();
+        String threads = System.getProperty("threads");
+        if (threads != null)
+        {
+            for (String count : threads.split(","))
+            {
+                threadCounts.add(Integer.parseInt(count.trim()));
+            }
+            return threadCounts;
+        }
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int count = 1; count < maxThreads; count *= 2)
+        {
+            threadCounts.add(count);
+        }
+        threadCounts.add(maxThreads);
+        return threadCounts;
+    }
+}
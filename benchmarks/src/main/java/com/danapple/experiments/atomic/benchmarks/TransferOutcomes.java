@@ -0,0 +1,44 @@
+package com.danapple.experiments.atomic.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Reported by JMH next to the primary result.  The CAS-retry exhaustion rate is
+// retriesExhausted / (completed + retriesExhausted).  Transfers refused for other reasons, such as an
+// insufficient balance, are counted as rejected rather than as lost to contention.
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class TransferOutcomes
+{
+    public long completed;
+    public long retriesExhausted;
+    public long rejected;
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+        completed = 0;
+        retriesExhausted = 0;
+        rejected = 0;
+    }
+
+    public void record(final boolean transferred)
+    {
+        if (transferred)
+        {
+            completed++;
+        }
+        else
+        {
+            retriesExhausted++;
+        }
+    }
+
+    public void recordRejected()
+    {
+        rejected++;
+    }
+}
@@ -0,0 +1,83 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.benchmarks.TransferOutcomes;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.workload.AccountSelector;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgeredTransferBenchmark
+{
+    @Param({"100", "10000", "1000000"})
+    public int accountCount;
+
+    @Param({"uniform", "zipf"})
+    public String skew;
+
+    // "decimal" holds balances as BigDecimal, "cents" as a long count of cents
+    @Param({"decimal", "cents"})
+    public String money;
+
+    @Param({"false", "true"})
+    public boolean combining;
+
+    // A ContentionManager policy name, as understood by ContentionManager.parse
+    @Param({"fixed", "random", "adaptive"})
+    public String contention;
+
+    private TransferService transferService;
+    private String[] accountNumbers;
+    private AccountSelector selector;
+
+    @Setup
+    public void setup()
+    {
+        Ledger ledger = new Ledger(LedgerOptions.DEFAULT
+                                           .withContentionManager(ContentionManager.parse(contention, 10))
+                                           .withCombining(combining)
+                                           .withMoney(money.equals("cents") ? new FixedPointMoney(2) : null));
+        AccountService accountService = new AccountService(ledger);
+        transferService = new TransferService(ledger);
+        selector = AccountSelector.parse(skew, accountCount);
+
+        accountNumbers = new String[accountCount];
+        for (int i = 0; i < accountCount; i++)
+        {
+            accountNumbers[i] = "Account " + i;
+            accountService.createAccount(accountNumbers[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean transferBalance(final TransferOutcomes outcomes)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int source = selector.select(random);
+        int destination = selector.selectOther(random, source);
+
+        boolean transferred = transferService.transferBalance(accountNumbers[source],
+                                                              accountNumbers[destination],
+                                                              BigDecimal.ONE);
+        outcomes.record(transferred);
+        return transferred;
+    }
+}
@@ -0,0 +1,94 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.benchmarks.TransferOutcomes;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.workload.AccountSelector;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lives in the loggedaccounts package so that it can seed opening balances, which has no public API.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoggedTransferBenchmark
+{
+    private final static BigDecimal OPENING_BALANCE = new BigDecimal(1_000_000_000);
+
+    @Param({"100", "10000", "1000000"})
+    public int accountCount;
+
+    @Param({"uniform", "zipf"})
+    public String skew;
+
+    // "decimal" holds balances as BigDecimal, "cents" as a long count of cents
+    @Param({"decimal", "cents"})
+    public String money;
+
+    // A ContentionManager policy name, as understood by ContentionManager.parse
+    @Param({"fixed", "random", "adaptive"})
+    public String contention;
+
+    private TransferService transferService;
+    private Account[] accounts;
+    private AccountSelector selector;
+
+    @Setup
+    public void setup()
+    {
+        ContentionManager contentionManager = ContentionManager.parse(contention, 10);
+        transferService = new TransferService(TransferOptions.defaults().withContentionManager(contentionManager));
+        selector = AccountSelector.parse(skew, accountCount);
+
+        accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++)
+        {
+            accounts[i] = new Account("Account " + i, money.equals("cents") ? new FixedPointMoney(2) : null);
+            BalanceLogState openingState = new BalanceLogState();
+            accounts[i].adjustBalance(OPENING_BALANCE, openingState);
+            openingState.complete();
+        }
+    }
+
+    @Benchmark
+    public boolean transferBalance(final TransferOutcomes outcomes)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int source = selector.select(random);
+        int destination = selector.selectOther(random, source);
+
+        try
+        {
+            transferService.transferBalance(accounts[source], accounts[destination], BigDecimal.ONE);
+        }
+        catch (RuntimeException e)
+        {
+            if (e.getMessage() != null && e.getMessage().startsWith(TransferService.RETRIES_EXHAUSTED))
+            {
+                outcomes.record(false);
+            }
+            else
+            {
+                outcomes.recordRejected();
+            }
+            return false;
+        }
+        outcomes.record(true);
+        return true;
+    }
+}
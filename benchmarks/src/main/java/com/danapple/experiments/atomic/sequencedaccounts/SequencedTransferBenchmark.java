@@ -0,0 +1,86 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.workload.AccountSelector;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Lives in the sequencedaccounts package so that it can seed opening balances, which has no public API.
+// Each invocation publishes a pipeline of transfers before waiting for the last, so that what is measured
+// is the sequencer's rate rather than the round trip of one request.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SequencedTransferBenchmark
+{
+    private final static int PIPELINE = 256;
+    private final static BigDecimal OPENING_BALANCE = new BigDecimal(1_000_000_000);
+
+    @Param({"100", "10000", "1000000"})
+    public int accountCount;
+
+    @Param({"uniform", "zipf"})
+    public String skew;
+
+    // "decimal" holds balances as BigDecimal, "cents" as a long count of cents
+    @Param({"decimal", "cents"})
+    public String money;
+
+    private SequencedLedger ledger;
+    private String[] accountNumbers;
+    private AccountSelector selector;
+
+    @Setup
+    public void setup()
+    {
+        ledger = new SequencedLedger(1 << 16, money.equals("cents") ? new FixedPointMoney(2) : null);
+        selector = AccountSelector.parse(skew, accountCount);
+        accountNumbers = new String[accountCount];
+        for (int i = 0; i < accountCount; i++)
+        {
+            accountNumbers[i] = "Account " + i;
+            ledger.createAccount(accountNumbers[i]);
+            ledger.deposit(accountNumbers[i], OPENING_BALANCE);
+        }
+        ledger.getBalance(accountNumbers[0]).join();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        ledger.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void transferBalance()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < PIPELINE; i++)
+        {
+            int source = selector.select(random);
+            int destination = selector.selectOther(random, source);
+            last = ledger.transferBalance(accountNumbers[source], accountNumbers[destination], BigDecimal.ONE);
+        }
+        last.join();
+    }
+}
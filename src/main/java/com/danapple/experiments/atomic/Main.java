@@ -1,9 +1,20 @@
 package com.danapple.experiments.atomic;
 
-@Deprecated
+import com.danapple.experiments.atomic.workload.LoadGenerator;
+import com.danapple.experiments.atomic.workload.WorkloadOptions;
+import com.danapple.experiments.atomic.workload.WorkloadReport;
+
+// A load generator for soak and capacity testing outside JMH.  Arguments are name=value pairs, described in
+// WorkloadOptions; exits with status 1 if the total balance changed.
 public class Main
 {
-    public static void main(String[] args)
+    public static void main(String[] args) throws InterruptedException
     {
+        WorkloadReport report = new LoadGenerator(WorkloadOptions.parse(args)).run();
+        report.print(System.out);
+        if (!report.isBalanced())
+        {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,26 @@
+package com.danapple.experiments.atomic;
+
+import java.math.BigDecimal;
+
+// Told about every account creation and transfer after it has taken effect.  The sequence orders the changes
+// to one ledgered snapshot; it is 0 where an engine has no such order.
+public interface TransferListener
+{
+    void accountCreated(long sequence,
+                        String accountNumber);
+
+    void transferCommitted(long sequence,
+                           String sourceAccountNumber,
+                           String destinationAccountNumber,
+                           BigDecimal transferAmount);
+
+    // For a transfer made with an id, so that listeners which keep ids, such as a Journal, can record it
+    default void transferCommitted(long sequence,
+                                   String sourceAccountNumber,
+                                   String destinationAccountNumber,
+                                   BigDecimal transferAmount,
+                                   String transferId)
+    {
+        transferCommitted(sequence, sourceAccountNumber, destinationAccountNumber, transferAmount);
+    }
+}
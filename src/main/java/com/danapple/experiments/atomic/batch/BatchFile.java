@@ -0,0 +1,184 @@
+package com.danapple.experiments.atomic.batch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// A memory-mapped batch of transfers.  Records have a fixed size, so any record is read straight from the
+// mapping by its index, without decoding the ones before it or allocating anything.  Account numbers are
+// written once each, in a table after the records, and records refer to them by their index in the table.
+//
+// File layout, big endian:
+//   int magic, int format, int scale of the amounts, int account count, int record count,
+//   int CRC32C of everything after this header,
+//   then per record: int source account, int destination account, long amount in units,
+//   then per account: short length and UTF-8 account number.
+public final class BatchFile implements AutoCloseable
+{
+    final static int MAGIC = 0x42544348;
+    final static int FORMAT = 1;
+    final static int HEADER_LENGTH = 24;
+    final static int RECORD_LENGTH = 16;
+
+    // Mappings are limited to 2GB, so the records are mapped in windows
+    private final static int WINDOW_SHIFT = 26;
+    private final static int WINDOW_MASK = (1 << WINDOW_SHIFT) - 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int scale;
+    private final int recordCount;
+    private final List<String> accountNumbers;
+    private final MappedByteBuffer[] windows;
+
+    private BatchFile(final Path path, final FileChannel channel) throws IOException
+    {
+        this.path = path;
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        if (channel.read(header, 0) != HEADER_LENGTH || header.getInt(0) != MAGIC)
+        {
+            throw new RuntimeException("Batch file " + path + " is corrupt");
+        }
+        if (header.getInt(4) != FORMAT)
+        {
+            throw new RuntimeException("Batch file " + path + " has unknown format " + header.getInt(4));
+        }
+        scale = header.getInt(8);
+        int accountCount = header.getInt(12);
+        recordCount = header.getInt(16);
+        long tableOffset = HEADER_LENGTH + (long) recordCount * RECORD_LENGTH;
+        if (accountCount < 0 || recordCount < 0 || tableOffset > channel.size())
+        {
+            throw new RuntimeException("Batch file " + path + " is corrupt");
+        }
+
+        MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, tableOffset, channel.size() - tableOffset);
+        windows = new MappedByteBuffer[(int) (((long) recordCount + WINDOW_MASK) >>> WINDOW_SHIFT)];
+        CRC32C crc = new CRC32C();
+        for (int i = 0; i < windows.length; i++)
+        {
+            long first = (long) i << WINDOW_SHIFT;
+            long length = Math.min(WINDOW_MASK + 1L, recordCount - first) * RECORD_LENGTH;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + first * RECORD_LENGTH, length);
+            crc.update(windows[i].duplicate());
+        }
+        crc.update(table.duplicate());
+        if (header.getInt(20) != (int) crc.getValue())
+        {
+            throw new RuntimeException("Batch file " + path + " is corrupt");
+        }
+
+        List<String> accountNumbers = new ArrayList<>(accountCount);
+        for (int i = 0; i < accountCount; i++)
+        {
+            byte[] accountNumberBytes = new byte[table.getShort()];
+            table.get(accountNumberBytes);
+            accountNumbers.add(new String(accountNumberBytes, StandardCharsets.UTF_8));
+        }
+        this.accountNumbers = List.copyOf(accountNumbers);
+    }
+
+    // Checks the whole file against its checksum before returning
+    public static BatchFile open(final Path path)
+    {
+        FileChannel channel = null;
+        try
+        {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new BatchFile(path, channel);
+        }
+        catch (IOException e)
+        {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Could not open batch file " + path, e);
+        }
+        catch (RuntimeException e)
+        {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    public Path getPath()
+    {
+        return path;
+    }
+
+    public int getScale()
+    {
+        return scale;
+    }
+
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    public List<String> getAccountNumbers()
+    {
+        return accountNumbers;
+    }
+
+    public int getSourceAccount(final int record)
+    {
+        return window(record).getInt(offset(record));
+    }
+
+    public int getDestinationAccount(final int record)
+    {
+        return window(record).getInt(offset(record) + 4);
+    }
+
+    public long getTransferUnits(final int record)
+    {
+        return window(record).getLong(offset(record) + 8);
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer window(final int record)
+    {
+        return windows[record >>> WINDOW_SHIFT];
+    }
+
+    private static int offset(final int record)
+    {
+        return (record & WINDOW_MASK) * RECORD_LENGTH;
+    }
+
+    private static void closeQuietly(final FileChannel channel)
+    {
+        if (channel == null)
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // Already failing
+        }
+    }
+}
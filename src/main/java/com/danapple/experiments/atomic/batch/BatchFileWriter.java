@@ -0,0 +1,122 @@
+package com.danapple.experiments.atomic.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+// Streams transfers into a BatchFile.  The file is written under a temporary name and only moved into place,
+// with its header, when the writer is closed, so a BatchFile is never seen half written.
+public final class BatchFileWriter implements AutoCloseable
+{
+    private final Path path;
+    private final Path temporaryPath;
+    private final int scale;
+    private final FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private final DataOutputStream output;
+    private final Map<String, Integer> accountIndexes = new LinkedHashMap<>();
+    private int recordCount;
+
+    public BatchFileWriter(final Path path, final int scale)
+    {
+        this.path = path;
+        this.scale = scale;
+        temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try
+        {
+            channel = FileChannel.open(temporaryPath,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.TRUNCATE_EXISTING,
+                                       StandardOpenOption.WRITE);
+            channel.position(BatchFile.HEADER_LENGTH);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create batch file " + temporaryPath, e);
+        }
+        output = new DataOutputStream(new BufferedOutputStream(
+                new CheckedOutputStream(Channels.newOutputStream(channel), crc), 64 * 1024));
+    }
+
+    public void add(final String sourceAccountNumber, final String destinationAccountNumber, final long transferUnits)
+    {
+        if (recordCount == Integer.MAX_VALUE)
+        {
+            throw new RuntimeException("Batch file " + path + " is full");
+        }
+        int sourceAccount = accountIndex(sourceAccountNumber);
+        int destinationAccount = accountIndex(destinationAccountNumber);
+        try
+        {
+            output.writeInt(sourceAccount);
+            output.writeInt(destinationAccount);
+            output.writeLong(transferUnits);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not write batch file " + temporaryPath, e);
+        }
+        recordCount++;
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            try (channel)
+            {
+                for (String accountNumber : accountIndexes.keySet())
+                {
+                    byte[] accountNumberBytes = accountNumber.getBytes(StandardCharsets.UTF_8);
+                    output.writeShort(accountNumberBytes.length);
+                    output.write(accountNumberBytes);
+                }
+                output.flush();
+                ByteBuffer header = ByteBuffer.allocate(BatchFile.HEADER_LENGTH);
+                header.putInt(BatchFile.MAGIC)
+                      .putInt(BatchFile.FORMAT)
+                      .putInt(scale)
+                      .putInt(accountIndexes.size())
+                      .putInt(recordCount)
+                      .putInt((int) crc.getValue())
+                      .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not write batch file " + path, e);
+        }
+    }
+
+    private int accountIndex(final String accountNumber)
+    {
+        Integer accountIndex = accountIndexes.get(accountNumber);
+        if (accountIndex == null)
+        {
+            if (accountNumber.getBytes(StandardCharsets.UTF_8).length > Short.MAX_VALUE)
+            {
+                throw new RuntimeException("Account number " + accountNumber + " is too long for a batch file");
+            }
+            accountIndex = accountIndexes.size();
+            accountIndexes.put(accountNumber, accountIndex);
+        }
+        return accountIndex;
+    }
+}
@@ -0,0 +1,167 @@
+package com.danapple.experiments.atomic.batch;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Applies a BatchFile to a BatchTarget from several worker threads.  Workers claim chunks of consecutive
+// records with one atomic add, and read each record from the mapping, so nothing is allocated per record
+// unless the engine does.  Records in the same chunk are applied in file order, but chunks run concurrently.
+//
+// Each record's outcome is marked in the BatchResults as soon as the engine answers, and each chunk's marks
+// are forced to disk once it is done.  Ingesting the same file again after a crash skips every record
+// already marked, so only a record a worker was applying when the crash came can be applied twice.  With
+// transfer ids, each record goes to the engine with an id made from the file name and its index; if the
+// engine's TransferIdCache was restored from its journal, that record is then not applied again either.
+public class BatchIngester
+{
+    private final static Logger logger = LoggerFactory.getLogger(BatchIngester.class);
+
+    public final static int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final BatchTarget target;
+    private final int workers;
+    private final int chunkSize;
+    private final boolean transferIds;
+
+    public BatchIngester(final BatchTarget target)
+    {
+        this(target, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE, false);
+    }
+
+    public BatchIngester(final BatchTarget target, final int workers, final int chunkSize, final boolean transferIds)
+    {
+        if (workers <= 0 || chunkSize <= 0)
+        {
+            throw new RuntimeException("Batch ingestion needs positive workers and chunk size, not "
+                                               + workers + " and " + chunkSize);
+        }
+        this.target = target;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.transferIds = transferIds;
+    }
+
+    public IngestSummary ingest(final Path batchPath) throws InterruptedException
+    {
+        try (BatchFile batchFile = BatchFile.open(batchPath);
+             BatchResults results = BatchResults.open(batchFile))
+        {
+            BatchTarget.Transfers transfers = target.bind(batchFile.getAccountNumbers(), batchFile.getScale());
+            int chunkCount = (int) (((long) batchFile.getRecordCount() + chunkSize - 1) / chunkSize);
+            AtomicInteger nextChunk = new AtomicInteger();
+            Worker[] running = new Worker[Math.min(workers, Math.max(chunkCount, 1))];
+            Thread[] threads = new Thread[running.length];
+            for (int i = 0; i < running.length; i++)
+            {
+                running[i] = new Worker(batchFile, results, transfers, nextChunk, chunkCount);
+                threads[i] = Thread.ofPlatform().name("batch-ingest-" + i).start(running[i]);
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            long applied = 0;
+            long rejected = 0;
+            long failed = 0;
+            long skipped = 0;
+            for (Worker worker : running)
+            {
+                if (worker.error != null)
+                {
+                    throw new RuntimeException("Batch ingestion of " + batchPath + " stopped", worker.error);
+                }
+                applied += worker.applied;
+                rejected += worker.rejected;
+                failed += worker.failed;
+                skipped += worker.skipped;
+            }
+            return new IngestSummary(applied, rejected, failed, skipped);
+        }
+    }
+
+    private final class Worker implements Runnable
+    {
+        private final BatchFile batchFile;
+        private final BatchResults results;
+        private final BatchTarget.Transfers transfers;
+        private final AtomicInteger nextChunk;
+        private final int chunkCount;
+        private final String transferIdPrefix;
+
+        private long applied;
+        private long rejected;
+        private long failed;
+        private long skipped;
+        private Throwable error;
+
+        private Worker(final BatchFile batchFile,
+                       final BatchResults results,
+                       final BatchTarget.Transfers transfers,
+                       final AtomicInteger nextChunk,
+                       final int chunkCount)
+        {
+            this.batchFile = batchFile;
+            this.results = results;
+            this.transfers = transfers;
+            this.nextChunk = nextChunk;
+            this.chunkCount = chunkCount;
+            transferIdPrefix = transferIds ? batchFile.getPath().getFileName() + "#" : null;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                int chunk;
+                while ((chunk = nextChunk.getAndIncrement()) < chunkCount)
+                {
+                    int firstRecord = chunk * chunkSize;
+                    int count = Math.min(chunkSize, batchFile.getRecordCount() - firstRecord);
+                    for (int record = firstRecord; record < firstRecord + count; record++)
+                    {
+                        apply(record);
+                    }
+                    results.force(firstRecord, count);
+                }
+            }
+            catch (Throwable e)
+            {
+                error = e;
+            }
+        }
+
+        private void apply(final int record)
+        {
+            if (results.getStatus(record) != RecordStatus.PENDING)
+            {
+                skipped++;
+                return;
+            }
+            RecordStatus status;
+            try
+            {
+                boolean transferred = transfers.transfer(transferIdPrefix == null ? null : transferIdPrefix + record,
+                                                         batchFile.getSourceAccount(record),
+                                                         batchFile.getDestinationAccount(record),
+                                                         batchFile.getTransferUnits(record));
+                status = transferred ? RecordStatus.APPLIED : RecordStatus.REJECTED;
+            }
+            catch (RuntimeException e)
+            {
+                logger.debug("Record {} of {} failed", record, batchFile.getPath(), e);
+                status = RecordStatus.FAILED;
+            }
+            results.setStatus(record, status);
+            switch (status)
+            {
+                case APPLIED -> applied++;
+                case REJECTED -> rejected++;
+                default -> failed++;
+            }
+        }
+    }
+}
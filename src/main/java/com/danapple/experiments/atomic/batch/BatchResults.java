@@ -0,0 +1,126 @@
+package com.danapple.experiments.atomic.batch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// The outcome of every record of a BatchFile, one byte each in a memory-mapped file beside it.  It is also
+// the ingestion checkpoint: a record is marked as soon as the engine has answered, and records already marked
+// are skipped when ingestion starts again.  Each worker writes the bytes of its own records only.
+//
+// File layout, big endian: int magic, int record count, then one RecordStatus code per record.
+public final class BatchResults implements AutoCloseable
+{
+    private final static int MAGIC = 0x42525354;
+    private final static int HEADER_LENGTH = 8;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int recordCount;
+
+    private BatchResults(final Path path, final FileChannel channel, final int recordCount) throws IOException
+    {
+        this.path = path;
+        this.channel = channel;
+        this.recordCount = recordCount;
+        if (recordCount > Integer.MAX_VALUE - HEADER_LENGTH)
+        {
+            throw new RuntimeException("Batch of " + recordCount + " records is too large to keep results for");
+        }
+        // Mapping grows a new file with zeros, which is also what a file the last run never initialised holds
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + recordCount);
+        if (buffer.getInt(0) == 0)
+        {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, recordCount);
+        }
+        else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != recordCount)
+        {
+            throw new RuntimeException("Results " + path + " do not belong to a batch of " + recordCount + " records");
+        }
+    }
+
+    // Opens the results kept beside a batch file, creating them with every record PENDING if there are none
+    public static BatchResults open(final BatchFile batchFile)
+    {
+        Path path = resultsPath(batchFile.getPath());
+        FileChannel channel = null;
+        try
+        {
+            channel = FileChannel.open(path,
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            return new BatchResults(path, channel, batchFile.getRecordCount());
+        }
+        catch (IOException e)
+        {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Could not open batch results " + path, e);
+        }
+        catch (RuntimeException e)
+        {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    public static Path resultsPath(final Path batchPath)
+    {
+        return batchPath.resolveSibling(batchPath.getFileName() + ".results");
+    }
+
+    public int getRecordCount()
+    {
+        return recordCount;
+    }
+
+    public RecordStatus getStatus(final int record)
+    {
+        return RecordStatus.fromCode(buffer.get(HEADER_LENGTH + record));
+    }
+
+    void setStatus(final int record, final RecordStatus status)
+    {
+        buffer.put(HEADER_LENGTH + record, status.getCode());
+    }
+
+    // Writes a range of statuses through to the file, so that they survive a crash of the machine
+    void force(final int firstRecord, final int count)
+    {
+        buffer.force(HEADER_LENGTH + firstRecord, count);
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not close batch results " + path, e);
+        }
+    }
+
+    private static void closeQuietly(final FileChannel channel)
+    {
+        if (channel == null)
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            // Already failing
+        }
+    }
+}
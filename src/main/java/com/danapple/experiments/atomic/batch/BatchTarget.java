@@ -0,0 +1,17 @@
+package com.danapple.experiments.atomic.batch;
+
+import java.util.List;
+
+// An engine which batch records are applied to.  It is bound to each file once, so that it can resolve the
+// file's account table before any record is applied and then find accounts by their index.
+public interface BatchTarget
+{
+    Transfers bind(List<String> accountNumbers, int scale);
+
+    interface Transfers
+    {
+        // Called from many threads at once.  transferId is null unless the ingester was asked for transfer ids.
+        // Returns false, or throws, if the transfer was not made.
+        boolean transfer(String transferId, int sourceAccount, int destinationAccount, long transferUnits);
+    }
+}
@@ -0,0 +1,4 @@
+package com.danapple.experiments.atomic.batch;
+
+// skipped counts the records a previous run had already answered
+public record IngestSummary(long applied, long rejected, long failed, long skipped) {}
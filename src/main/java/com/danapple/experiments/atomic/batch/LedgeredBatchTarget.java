@@ -0,0 +1,46 @@
+package com.danapple.experiments.atomic.batch;
+
+import com.danapple.experiments.atomic.ledgeredaccounts.Ledger;
+import com.danapple.experiments.atomic.ledgeredaccounts.TransferService;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.List;
+
+// When the Ledger holds fixed point money of the batch's scale, amounts go to it as units without allocating
+// a BigDecimal; otherwise each is converted.
+public class LedgeredBatchTarget implements BatchTarget
+{
+    private final Ledger ledger;
+    private final TransferService transferService;
+
+    public LedgeredBatchTarget(final Ledger ledger)
+    {
+        this(ledger, new TransferService(ledger));
+    }
+
+    public LedgeredBatchTarget(final Ledger ledger, final TransferService transferService)
+    {
+        this.ledger = ledger;
+        this.transferService = transferService;
+    }
+
+    @Override
+    public Transfers bind(final List<String> accountNumbers, final int scale)
+    {
+        String[] accountNumberTable = accountNumbers.toArray(new String[0]);
+        FixedPointMoney money = ledger.getMoney();
+        if (money != null && money.scale() == scale)
+        {
+            return (transferId, sourceAccount, destinationAccount, transferUnits) ->
+                    transferService.transferBalance(transferId,
+                                                    accountNumberTable[sourceAccount],
+                                                    accountNumberTable[destinationAccount],
+                                                    transferUnits);
+        }
+        return (transferId, sourceAccount, destinationAccount, transferUnits) ->
+                transferService.transferBalance(transferId,
+                                                accountNumberTable[sourceAccount],
+                                                accountNumberTable[destinationAccount],
+                                                BigDecimal.valueOf(transferUnits, scale));
+    }
+}
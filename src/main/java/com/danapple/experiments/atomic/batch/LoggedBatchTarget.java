@@ -0,0 +1,56 @@
+package com.danapple.experiments.atomic.batch;
+
+import com.danapple.experiments.atomic.loggedaccounts.Account;
+import com.danapple.experiments.atomic.loggedaccounts.AccountDirectory;
+import com.danapple.experiments.atomic.loggedaccounts.TransferService;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.List;
+
+// Accounts are looked up in the directory once per file.  A record naming an account the directory does not
+// hold fails, and so does one the TransferService could not make.
+public class LoggedBatchTarget implements BatchTarget
+{
+    private final TransferService transferService;
+    private final AccountDirectory directory;
+
+    public LoggedBatchTarget(final TransferService transferService, final AccountDirectory directory)
+    {
+        this.transferService = transferService;
+        this.directory = directory;
+    }
+
+    @Override
+    public Transfers bind(final List<String> accountNumbers, final int scale)
+    {
+        Account[] accounts = new Account[accountNumbers.size()];
+        for (int i = 0; i < accounts.length; i++)
+        {
+            accounts[i] = directory.getAccount(accountNumbers.get(i));
+        }
+        FixedPointMoney money = directory.getMoney();
+        boolean matchingScale = money != null && money.scale() == scale;
+        return (transferId, sourceAccount, destinationAccount, transferUnits) -> {
+            Account source = existing(accounts, sourceAccount, accountNumbers);
+            Account destination = existing(accounts, destinationAccount, accountNumbers);
+            if (matchingScale)
+            {
+                transferService.transferBalance(transferId, source, destination, transferUnits);
+            }
+            else
+            {
+                transferService.transferBalance(transferId, source, destination, BigDecimal.valueOf(transferUnits, scale));
+            }
+            return true;
+        };
+    }
+
+    private static Account existing(final Account[] accounts, final int account, final List<String> accountNumbers)
+    {
+        if (accounts[account] == null)
+        {
+            throw new RuntimeException("Account " + accountNumbers.get(account) + " does not exist");
+        }
+        return accounts[account];
+    }
+}
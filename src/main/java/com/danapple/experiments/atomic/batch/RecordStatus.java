@@ -0,0 +1,23 @@
+package com.danapple.experiments.atomic.batch;
+
+public enum RecordStatus
+{
+    PENDING,
+    APPLIED,
+    // The engine declined the transfer
+    REJECTED,
+    // The engine threw, for example because an account does not exist
+    FAILED;
+
+    private final static RecordStatus[] values = values();
+
+    static RecordStatus fromCode(final byte code)
+    {
+        return values[code];
+    }
+
+    byte getCode()
+    {
+        return (byte) ordinal();
+    }
+}
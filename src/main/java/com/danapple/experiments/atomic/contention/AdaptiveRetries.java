@@ -0,0 +1,95 @@
+package com.danapple.experiments.atomic.contention;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Keeps a moving average of failures per operation.  The pause before each retry grows with that average,
+// so threads back off harder the more they are colliding.  The attempt budget doubles whenever an operation
+// runs out of attempts, and shrinks by one at a time once operations are mostly succeeding at the first
+// attempt.  The statistics are updated without synchronization: a lost update only delays the tuning, and
+// nothing is written while there is nothing to tune.
+final class AdaptiveRetries implements ContentionManager
+{
+    private final static double WEIGHT = 1.0 / 64;
+    private final static double LOW_FAILURE_RATE = 0.05;
+
+    private final int minAttempts;
+    private final int maxAttempts;
+    private final long basePauseNanos;
+    private volatile int budget;
+    private volatile double failureRate;
+
+    AdaptiveRetries(final int minAttempts, final int maxAttempts, final long basePauseNanos)
+    {
+        Pause.validateAttempts(minAttempts);
+        if (maxAttempts < minAttempts || basePauseNanos < 0)
+        {
+            throw new RuntimeException("Attempts from " + minAttempts + " to " + maxAttempts
+                                               + " must be in order and base pause " + basePauseNanos
+                                               + " must not be negative");
+        }
+        this.minAttempts = minAttempts;
+        this.maxAttempts = maxAttempts;
+        this.basePauseNanos = basePauseNanos;
+        budget = minAttempts;
+    }
+
+    @Override
+    public boolean onFailure(final int failures)
+    {
+        int currentBudget = budget;
+        if (failures >= currentBudget)
+        {
+            if (currentBudget < maxAttempts)
+            {
+                budget = Math.min(maxAttempts, currentBudget * 2);
+            }
+            record(failures);
+            return false;
+        }
+        long limitNanos = (long) (basePauseNanos * failureRate * failures);
+        if (limitNanos > 0)
+        {
+            Pause.pause(ThreadLocalRandom.current().nextLong(limitNanos + 1));
+        }
+        return true;
+    }
+
+    @Override
+    public void onSuccess(final int failures)
+    {
+        if (failures == 0 && failureRate == 0)
+        {
+            return;
+        }
+        double newFailureRate = record(failures);
+        int currentBudget = budget;
+        if (newFailureRate < LOW_FAILURE_RATE && currentBudget > minAttempts)
+        {
+            budget = currentBudget - 1;
+        }
+    }
+
+    @Override
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    int getBudget()
+    {
+        return budget;
+    }
+
+    double getFailureRate()
+    {
+        return failureRate;
+    }
+
+    private double record(final int failures)
+    {
+        double newFailureRate = failureRate + (failures - failureRate) * WEIGHT;
+        // Stop the average decaying forever through denormal values once it is effectively zero
+        failureRate = newFailureRate < 1e-6 ? 0 : newFailureRate;
+        return failureRate;
+    }
+}
@@ -0,0 +1,85 @@
+package com.danapple.experiments.atomic.contention;
+
+import java.util.function.BooleanSupplier;
+
+// Decides what a compare-and-set retry loop does after a failed attempt: try again at once, pause first,
+// or give up.  One ContentionManager is shared by every thread using a Ledger or TransferService.
+public interface ContentionManager
+{
+    // Called after each failed attempt with the number of failures so far.  May pause before returning, and
+    // returns false when the caller should give up.
+    boolean onFailure(int failures);
+
+    // Called when an attempt succeeds after the given number of failures
+    void onSuccess(int failures);
+
+    int getMaxAttempts();
+
+    default boolean retry(final BooleanSupplier attempt)
+    {
+        if (getMaxAttempts() == 0)
+        {
+            return false;
+        }
+        int failures = 0;
+        do
+        {
+            if (attempt.getAsBoolean())
+            {
+                onSuccess(failures);
+                return true;
+            }
+        }
+        while (onFailure(++failures));
+        return false;
+    }
+
+    // Retries at once, as the engines always have.  With no attempts at all, every operation fails.
+    static ContentionManager fixed(final int maxAttempts)
+    {
+        return new FixedRetries(maxAttempts);
+    }
+
+    // Pauses twice as long after each failure, from minPauseNanos up to maxPauseNanos
+    static ContentionManager exponentialBackoff(final int maxAttempts,
+                                                final long minPauseNanos,
+                                                final long maxPauseNanos)
+    {
+        return new ExponentialBackoff(maxAttempts, minPauseNanos, maxPauseNanos, false);
+    }
+
+    // As exponentialBackoff, but each pause is drawn uniformly up to the exponential limit, so that threads
+    // which collided once do not collide again in lockstep
+    static ContentionManager randomizedBackoff(final int maxAttempts,
+                                               final long minPauseNanos,
+                                               final long maxPauseNanos)
+    {
+        return new ExponentialBackoff(maxAttempts, minPauseNanos, maxPauseNanos, true);
+    }
+
+    // Spins briefly for the first spinAttempts failures, then parks for parkNanos after each later one
+    static ContentionManager spinThenPark(final int maxAttempts, final int spinAttempts, final long parkNanos)
+    {
+        return new SpinThenPark(maxAttempts, spinAttempts, parkNanos);
+    }
+
+    // Tunes its pauses and its attempt budget, between minAttempts and maxAttempts, from the failures it sees
+    static ContentionManager adaptive(final int minAttempts, final int maxAttempts, final long basePauseNanos)
+    {
+        return new AdaptiveRetries(minAttempts, maxAttempts, basePauseNanos);
+    }
+
+    // "fixed", "backoff", "random", "spinpark" or "adaptive", with maxAttempts as the starting attempt budget
+    static ContentionManager parse(final String policy, final int maxAttempts)
+    {
+        return switch (policy)
+        {
+            case "fixed" -> fixed(maxAttempts);
+            case "backoff" -> exponentialBackoff(maxAttempts, 50, 50_000);
+            case "random" -> randomizedBackoff(maxAttempts, 50, 50_000);
+            case "spinpark" -> spinThenPark(maxAttempts, 4, 10_000);
+            case "adaptive" -> adaptive(maxAttempts, maxAttempts * 10, 1_000);
+            default -> throw new RuntimeException("Unknown contention policy " + policy);
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package com.danapple.experiments.atomic.contention;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+final class ExponentialBackoff implements ContentionManager
+{
+    private final int maxAttempts;
+    private final long minPauseNanos;
+    private final long maxPauseNanos;
+    private final boolean randomized;
+
+    ExponentialBackoff(final int maxAttempts,
+                       final long minPauseNanos,
+                       final long maxPauseNanos,
+                       final boolean randomized)
+    {
+        Pause.validateAttempts(maxAttempts);
+        if (minPauseNanos <= 0 || maxPauseNanos < minPauseNanos)
+        {
+            throw new RuntimeException("Pauses from " + minPauseNanos + " to " + maxPauseNanos
+                                               + " nanoseconds must be positive and in order");
+        }
+        this.maxAttempts = maxAttempts;
+        this.minPauseNanos = minPauseNanos;
+        this.maxPauseNanos = maxPauseNanos;
+        this.randomized = randomized;
+    }
+
+    @Override
+    public boolean onFailure(final int failures)
+    {
+        if (failures >= maxAttempts)
+        {
+            return false;
+        }
+        Pause.pause(randomized ? ThreadLocalRandom.current().nextLong(pauseNanos(failures) + 1) : pauseNanos(failures));
+        return true;
+    }
+
+    @Override
+    public void onSuccess(final int failures)
+    {
+    }
+
+    @Override
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    long pauseNanos(final int failures)
+    {
+        int doublings = Math.min(failures - 1, Long.numberOfLeadingZeros(minPauseNanos) - 1);
+        return Math.min(maxPauseNanos, minPauseNanos << doublings);
+    }
+}
@@ -0,0 +1,32 @@
+package com.danapple.experiments.atomic.contention;
+
+final class FixedRetries implements ContentionManager
+{
+    private final int maxAttempts;
+
+    FixedRetries(final int maxAttempts)
+    {
+        if (maxAttempts < 0)
+        {
+            throw new RuntimeException("Max attempts " + maxAttempts + " must not be negative");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    @Override
+    public boolean onFailure(final int failures)
+    {
+        return failures < maxAttempts;
+    }
+
+    @Override
+    public void onSuccess(final int failures)
+    {
+    }
+
+    @Override
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,39 @@
+package com.danapple.experiments.atomic.contention;
+
+import java.util.concurrent.locks.LockSupport;
+
+final class Pause
+{
+    // Parking costs a few microseconds of its own, so shorter pauses are spun instead
+    private final static long SPIN_LIMIT_NANOS = 20_000;
+
+    private Pause()
+    {
+    }
+
+    static void pause(final long nanos)
+    {
+        if (nanos <= 0)
+        {
+            return;
+        }
+        if (nanos >= SPIN_LIMIT_NANOS)
+        {
+            LockSupport.parkNanos(nanos);
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline)
+        {
+            Thread.onSpinWait();
+        }
+    }
+
+    static void validateAttempts(final int maxAttempts)
+    {
+        if (maxAttempts <= 0)
+        {
+            throw new RuntimeException("Max attempts " + maxAttempts + " must be positive");
+        }
+    }
+}
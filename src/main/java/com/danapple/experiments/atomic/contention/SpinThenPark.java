@@ -0,0 +1,55 @@
+package com.danapple.experiments.atomic.contention;
+
+import java.util.concurrent.locks.LockSupport;
+
+final class SpinThenPark implements ContentionManager
+{
+    private final int maxAttempts;
+    private final int spinAttempts;
+    private final long parkNanos;
+
+    SpinThenPark(final int maxAttempts, final int spinAttempts, final long parkNanos)
+    {
+        Pause.validateAttempts(maxAttempts);
+        if (spinAttempts < 0 || parkNanos <= 0)
+        {
+            throw new RuntimeException("Spin attempts " + spinAttempts + " must not be negative and park time "
+                                               + parkNanos + " must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.spinAttempts = spinAttempts;
+        this.parkNanos = parkNanos;
+    }
+
+    @Override
+    public boolean onFailure(final int failures)
+    {
+        if (failures >= maxAttempts)
+        {
+            return false;
+        }
+        if (failures <= spinAttempts)
+        {
+            for (int i = 0; i < 1 << Math.min(failures, 10); i++)
+            {
+                Thread.onSpinWait();
+            }
+        }
+        else
+        {
+            LockSupport.parkNanos(parkNanos);
+        }
+        return true;
+    }
+
+    @Override
+    public void onSuccess(final int failures)
+    {
+    }
+
+    @Override
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+}
@@ -0,0 +1,221 @@
+package com.danapple.experiments.atomic.dedup;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+// Remembers the ids of committed transfers, so that a caller retrying after a timeout gets the first outcome
+// instead of a second transfer.  Looking an id up is a lock-free ConcurrentHashMap.get; only a new id is
+// inserted.  A repeat of a transfer still running waits for it and shares its outcome.  A transfer which failed
+// or was rejected changed nothing, so its id is forgotten and a retry runs again.  A transfer marks itself
+// committed as soon as its change is in, so a failure after that, such as a listener throwing, is passed on to
+// the caller without forgetting the id, and a repeat is told the transfer was made.
+//
+// Committed ids are forgotten oldest first once there are more than maxEntries, or once they are older than
+// expiryMillis.  The cache is a TransferListener which remembers the id of every transfer it is told about,
+// so replaying a Journal into it after a restart restores the ids committed before.
+public class TransferIdCache implements TransferListener
+{
+    public final static int DEFAULT_MAX_ENTRIES = 100_000;
+    public final static long DEFAULT_EXPIRY_MILLIS = 10 * 60 * 1000;
+
+    private final int maxEntries;
+    private final long expiryMillis;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Outcome> committedOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger committedCount = new AtomicInteger();
+
+    public TransferIdCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_EXPIRY_MILLIS);
+    }
+
+    public TransferIdCache(final int maxEntries, final long expiryMillis)
+    {
+        this(maxEntries, expiryMillis, System::currentTimeMillis);
+    }
+
+    TransferIdCache(final int maxEntries, final long expiryMillis, final LongSupplier clock)
+    {
+        if (maxEntries <= 0 || expiryMillis <= 0)
+        {
+            throw new RuntimeException("A transfer id cache needs a positive size and expiry, not "
+                                               + maxEntries + " and " + expiryMillis);
+        }
+        this.maxEntries = maxEntries;
+        this.expiryMillis = expiryMillis;
+        this.clock = clock;
+    }
+
+    // Runs transfer unless transferId is remembered or already running, and returns its outcome or the first one
+    public boolean execute(final String transferId, final BooleanSupplier transfer)
+    {
+        Outcome outcome = null;
+        while (outcome == null)
+        {
+            Outcome existing = outcomes.get(transferId);
+            if (existing != null && existing.isExpiredAt(clock.getAsLong() - expiryMillis))
+            {
+                outcomes.remove(transferId, existing);
+                continue;
+            }
+            if (existing != null)
+            {
+                return existing.await();
+            }
+            Outcome newOutcome = new Outcome(transferId);
+            existing = outcomes.putIfAbsent(transferId, newOutcome);
+            if (existing != null)
+            {
+                return existing.await();
+            }
+            outcome = newOutcome;
+        }
+
+        boolean transferred;
+        try
+        {
+            transferred = transfer.getAsBoolean();
+        }
+        catch (RuntimeException e)
+        {
+            if (outcome.isCommitted())
+            {
+                outcome.result.complete(true);
+            }
+            else
+            {
+                outcomes.remove(transferId, outcome);
+                outcome.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+        if (transferred)
+        {
+            if (!outcome.isCommitted())
+            {
+                committed(outcome);
+            }
+        }
+        else
+        {
+            outcomes.remove(transferId, outcome);
+        }
+        outcome.result.complete(transferred);
+        return transferred;
+    }
+
+    // Called by the transfer running under execute once its change is in, before anything else which may fail
+    public void markCommitted(final String transferId)
+    {
+        Outcome outcome = outcomes.get(transferId);
+        if (outcome != null && !outcome.isCommitted())
+        {
+            committed(outcome);
+        }
+    }
+
+    public boolean contains(final String transferId)
+    {
+        Outcome existing = outcomes.get(transferId);
+        return existing != null && !existing.isExpiredAt(clock.getAsLong() - expiryMillis);
+    }
+
+    public int size()
+    {
+        return outcomes.size();
+    }
+
+    @Override
+    public void accountCreated(final long sequence, final String accountNumber)
+    {
+    }
+
+    @Override
+    public void transferCommitted(final long sequence,
+                                  final String sourceAccountNumber,
+                                  final String destinationAccountNumber,
+                                  final BigDecimal transferAmount)
+    {
+    }
+
+    @Override
+    public void transferCommitted(final long sequence,
+                                  final String sourceAccountNumber,
+                                  final String destinationAccountNumber,
+                                  final BigDecimal transferAmount,
+                                  final String transferId)
+    {
+        Outcome outcome = new Outcome(transferId);
+        outcome.result.complete(true);
+        if (outcomes.putIfAbsent(transferId, outcome) == null)
+        {
+            committed(outcome);
+        }
+    }
+
+    private void committed(final Outcome outcome)
+    {
+        long now = clock.getAsLong();
+        outcome.committedMillis = now;
+        committedOrder.add(outcome);
+        int count = committedCount.incrementAndGet();
+        Outcome oldest;
+        while ((oldest = committedOrder.peek()) != null
+                && (count > maxEntries || oldest.isExpiredAt(now - expiryMillis)))
+        {
+            if (committedOrder.remove(oldest))
+            {
+                outcomes.remove(oldest.transferId, oldest);
+                count = committedCount.decrementAndGet();
+            }
+            else
+            {
+                count = committedCount.get();
+            }
+        }
+    }
+
+    private static final class Outcome
+    {
+        private final String transferId;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // Zero while the transfer is running, which never expires
+        private volatile long committedMillis;
+
+        private Outcome(final String transferId)
+        {
+            this.transferId = transferId;
+        }
+
+        boolean isCommitted()
+        {
+            return committedMillis != 0;
+        }
+
+        boolean isExpiredAt(final long oldestLiveMillis)
+        {
+            long committed = committedMillis;
+            return committed != 0 && committed < oldestLiveMillis;
+        }
+
+        boolean await()
+        {
+            try
+            {
+                return result.join();
+            }
+            catch (CompletionException e)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+    }
+}
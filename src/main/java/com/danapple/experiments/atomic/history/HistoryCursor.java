@@ -0,0 +1,66 @@
+package com.danapple.experiments.atomic.history;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Walks one account's history from newest to oldest, reading each entry from its segment only when it is
+// returned.  Entries at or after toMillis are skipped and the walk ends at the first one before fromMillis.
+public final class HistoryCursor implements Iterator<HistoryEntry>
+{
+    private final HistoryStore store;
+    private final long fromMillis;
+    private final long toMillis;
+    private long position;
+
+    HistoryCursor(final HistoryStore store, final long position, final long fromMillis, final long toMillis)
+    {
+        this.store = store;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.position = position;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (position >= 0 && store.getTimestamp(position) >= toMillis)
+        {
+            position = store.getPrevious(position);
+        }
+        if (position >= 0 && store.getTimestamp(position) < fromMillis)
+        {
+            position = -1;
+        }
+        return position >= 0;
+    }
+
+    @Override
+    public HistoryEntry next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        HistoryEntry entry = store.read(position);
+        position = store.getPrevious(position);
+        return entry;
+    }
+
+    public List<HistoryEntry> nextPage(final int maxEntries)
+    {
+        List<HistoryEntry> page = new ArrayList<>();
+        while (page.size() < maxEntries && hasNext())
+        {
+            page.add(next());
+        }
+        return page;
+    }
+
+    // Where the next page starts, for HistoryStore.resume, or -1 once the history is exhausted
+    public long getPosition()
+    {
+        return hasNext() ? position : -1;
+    }
+}
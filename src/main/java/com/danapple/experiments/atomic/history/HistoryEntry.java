@@ -0,0 +1,13 @@
+package com.danapple.experiments.atomic.history;
+
+import java.math.BigDecimal;
+
+// One side of a transfer, as seen from one account: the amount is negative for a debit.  The sequence is the one
+// the engine reported, so it is 0 for every entry from an engine without an order, such as loggedaccounts, whose
+// entries are ordered only by their timestamps.
+public record HistoryEntry(long timestampMillis,
+                           long sequence,
+                           String counterparty,
+                           BigDecimal amount)
+{
+}
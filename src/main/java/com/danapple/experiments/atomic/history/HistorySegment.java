@@ -0,0 +1,142 @@
+package com.danapple.experiments.atomic.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One memory-mapped history file.  Record layout, little endian, with every record starting on an 8 byte boundary:
+//   long previous     position of the account's previous record, or -1
+//   long timestamp    milliseconds, never less than the previous record's
+//   long sequence
+//   int scale, byte n, n bytes unscaled amount, negative for a debit
+//   short n, n bytes UTF-8 counterparty account number
+// previous and timestamp are rewritten if the record loses the race to become its account's newest, which
+// is safe because no reader can reach the record until it has won.
+final class HistorySegment
+{
+    private final static int PREVIOUS = 0;
+    private final static int TIMESTAMP = 8;
+    private final static int BODY = 16;
+
+    private final int index;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicInteger writePosition = new AtomicInteger();
+
+    private HistorySegment(final int index, final FileChannel channel, final int capacity) throws IOException
+    {
+        this.index = index;
+        this.channel = channel;
+        this.capacity = capacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static HistorySegment create(final Path directory, final int index, final int capacity)
+    {
+        try
+        {
+            FileChannel channel = FileChannel.open(directory.resolve(String.format("history-%010d.bin", index)),
+                                                   StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE);
+            return new HistorySegment(index, channel, capacity);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create history segment " + index + " in " + directory, e);
+        }
+    }
+
+    static byte[] body(final long sequence, final String counterparty, final BigDecimal amount)
+    {
+        byte[] counterpartyBytes = counterparty.getBytes(StandardCharsets.UTF_8);
+        byte[] unscaledBytes = amount.unscaledValue().toByteArray();
+        if (unscaledBytes.length > Byte.MAX_VALUE)
+        {
+            throw new RuntimeException("Transfer amount " + amount + " is too large to keep in history");
+        }
+        ByteBuffer body = ByteBuffer.allocate(8 + 4 + 1 + unscaledBytes.length + 2 + counterpartyBytes.length)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        body.putLong(sequence).putInt(amount.scale()).put((byte) unscaledBytes.length).put(unscaledBytes);
+        body.putShort((short) counterpartyBytes.length).put(counterpartyBytes);
+        return body.array();
+    }
+
+    static int recordLength(final int bodyLength)
+    {
+        return (BODY + bodyLength + 7) & ~7;
+    }
+
+    int getIndex()
+    {
+        return index;
+    }
+
+    // Returns the offset of the new record, or -1 if it does not fit and the caller must move to the next segment
+    int append(final byte[] body)
+    {
+        int length = recordLength(body.length);
+        int offset = writePosition.getAndAdd(length);
+        if (offset > capacity - length)
+        {
+            return -1;
+        }
+        buffer.put(offset + BODY, body);
+        return offset;
+    }
+
+    void link(final int offset, final long previous, final long timestamp)
+    {
+        buffer.putLong(offset + PREVIOUS, previous);
+        buffer.putLong(offset + TIMESTAMP, timestamp);
+    }
+
+    long getPrevious(final int offset)
+    {
+        return buffer.getLong(offset + PREVIOUS);
+    }
+
+    long getTimestamp(final int offset)
+    {
+        return buffer.getLong(offset + TIMESTAMP);
+    }
+
+    HistoryEntry read(final int offset)
+    {
+        int position = offset + BODY;
+        long sequence = buffer.getLong(position);
+        int scale = buffer.getInt(position + 8);
+        byte[] unscaledBytes = new byte[buffer.get(position + 12)];
+        buffer.get(position + 13, unscaledBytes);
+        position += 13 + unscaledBytes.length;
+        byte[] counterpartyBytes = new byte[buffer.getShort(position)];
+        buffer.get(position + 2, counterpartyBytes);
+        return new HistoryEntry(getTimestamp(offset),
+                                sequence,
+                                new String(counterpartyBytes, StandardCharsets.UTF_8),
+                                new BigDecimal(new BigInteger(unscaledBytes), scale));
+    }
+
+    void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.danapple.experiments.atomic.history;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Keeps every transfer as an entry in the history of each of its two accounts.  Entries are written to
+// memory-mapped segment files, claiming their space with one atomic add as the Journal does, so history stays
+// off the heap except for one position per account.  Each entry links back to its account's previous entry,
+// and becomes the account's newest with a compare-and-set which only another transfer on the same account
+// can make it repeat.  Reading follows the links, so one account's history is read without scanning others.
+//
+// Recording runs on the thread which committed the transfer, so the next segment file is created and mapped in
+// the background while the current one fills; a writer only waits for it if the current one fills first.
+//
+// History lives as long as the store: a new store needs a fresh directory, and can be filled by replaying a
+// Journal into it.
+public class HistoryStore implements TransferListener, AutoCloseable
+{
+    public final static int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final LongSupplier clock;
+    private final List<HistorySegment> segments = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, AtomicLong> newestPositions = new ConcurrentHashMap<>();
+    private final ExecutorService preallocator =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("history-preallocator").factory());
+    private volatile HistorySegment currentSegment;
+    private CompletableFuture<HistorySegment> preallocatedSegment;
+
+    public HistoryStore(final Path directory)
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public HistoryStore(final Path directory, final int segmentSize)
+    {
+        this(directory, segmentSize, System::currentTimeMillis);
+    }
+
+    HistoryStore(final Path directory, final int segmentSize, final LongSupplier clock)
+    {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.clock = clock;
+        try
+        {
+            Files.createDirectories(directory);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create history directory " + directory, e);
+        }
+        currentSegment = HistorySegment.create(directory, 0, segmentSize);
+        segments.add(currentSegment);
+        preallocate(1);
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    @Override
+    public void accountCreated(final long sequence, final String accountNumber)
+    {
+    }
+
+    @Override
+    public void transferCommitted(final long sequence,
+                                  final String sourceAccountNumber,
+                                  final String destinationAccountNumber,
+                                  final BigDecimal transferAmount)
+    {
+        append(sourceAccountNumber, sequence, destinationAccountNumber, transferAmount.negate());
+        append(destinationAccountNumber, sequence, sourceAccountNumber, transferAmount);
+    }
+
+    // Newest first, from fromMillis inclusive to toMillis exclusive
+    public HistoryCursor getHistory(final String accountNumber, final long fromMillis, final long toMillis)
+    {
+        AtomicLong newestPosition = newestPositions.get(accountNumber);
+        return new HistoryCursor(this, newestPosition == null ? -1 : newestPosition.get(), fromMillis, toMillis);
+    }
+
+    // Carries on from a position which a HistoryCursor over the same account returned
+    public HistoryCursor resume(final long position, final long fromMillis, final long toMillis)
+    {
+        return new HistoryCursor(this, position, fromMillis, toMillis);
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        preallocator.shutdown();
+        try
+        {
+            preallocatedSegment.join().close();
+        }
+        catch (CompletionException e)
+        {
+            // The next segment could not be created, so there is nothing to close
+        }
+        for (HistorySegment segment : segments)
+        {
+            segment.close();
+        }
+    }
+
+    long getPrevious(final long position)
+    {
+        return segment(position).getPrevious(offset(position));
+    }
+
+    long getTimestamp(final long position)
+    {
+        return segment(position).getTimestamp(offset(position));
+    }
+
+    HistoryEntry read(final long position)
+    {
+        return segment(position).read(offset(position));
+    }
+
+    private void append(final String accountNumber,
+                        final long sequence,
+                        final String counterparty,
+                        final BigDecimal amount)
+    {
+        byte[] body = HistorySegment.body(sequence, counterparty, amount);
+        if (HistorySegment.recordLength(body.length) > segmentSize)
+        {
+            throw new RuntimeException("History record of " + body.length + " bytes does not fit in a segment");
+        }
+        HistorySegment segment = currentSegment;
+        int offset;
+        while ((offset = segment.append(body)) < 0)
+        {
+            segment = nextSegment(segment);
+        }
+        long position = (long) segment.getIndex() << 32 | offset;
+
+        AtomicLong newestPosition = newestPositions.get(accountNumber);
+        if (newestPosition == null)
+        {
+            newestPosition = newestPositions.computeIfAbsent(accountNumber, k -> new AtomicLong(-1));
+        }
+        while (true)
+        {
+            long previous = newestPosition.get();
+            long timestamp = clock.getAsLong();
+            if (previous >= 0)
+            {
+                timestamp = Math.max(timestamp, getTimestamp(previous));
+            }
+            segment.link(offset, previous, timestamp);
+            if (newestPosition.compareAndSet(previous, position))
+            {
+                return;
+            }
+        }
+    }
+
+    private synchronized HistorySegment nextSegment(final HistorySegment fullSegment)
+    {
+        if (currentSegment == fullSegment)
+        {
+            HistorySegment segment;
+            try
+            {
+                segment = preallocatedSegment.join();
+            }
+            catch (CompletionException e)
+            {
+                // Try again on the next writer rather than leaving every later one to fail the same way
+                preallocate(fullSegment.getIndex() + 1);
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+            segments.add(segment);
+            currentSegment = segment;
+            preallocate(segment.getIndex() + 1);
+        }
+        return currentSegment;
+    }
+
+    private void preallocate(final int index)
+    {
+        preallocatedSegment = CompletableFuture.supplyAsync(() -> HistorySegment.create(directory, index, segmentSize),
+                                                            preallocator);
+    }
+
+    private HistorySegment segment(final long position)
+    {
+        return segments.get((int) (position >>> 32));
+    }
+
+    private static int offset(final long position)
+    {
+        return (int) position;
+    }
+}
@@ -0,0 +1,11 @@
+package com.danapple.experiments.atomic.journal;
+
+public enum FsyncPolicy
+{
+    // Leave writing the mapped pages back to the operating system
+    NONE,
+    // Force the journal to disk periodically in the background
+    INTERVAL,
+    // Each append waits until a force which covers it has finished; concurrent appends share one force
+    EVERY_COMMIT
+}
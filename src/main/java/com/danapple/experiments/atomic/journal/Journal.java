@@ -0,0 +1,227 @@
+package com.danapple.experiments.atomic.journal;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// An append-only write-ahead journal over memory-mapped segment files.  Appends reserve space with one atomic
+// add on the current segment and never take a lock; only moving to a fresh segment, once per segment, does.
+// Under EVERY_COMMIT each appender takes a ticket and whichever appender becomes the flusher forces on
+// behalf of every ticket issued so far, so one force covers a whole group of commits.  The others spin briefly,
+// then park until the flusher has finished, as a force can take milliseconds.
+public class Journal implements TransferListener, AutoCloseable
+{
+    private final static int SPINS_BEFORE_PARKING = 64;
+
+    private final Path directory;
+    private final JournalOptions options;
+    private final List<JournalSegment> unforcedSegments = new CopyOnWriteArrayList<>();
+    private final AtomicLong flushTickets = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final ConcurrentLinkedQueue<Thread> flushWaiters = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService flusher;
+    private volatile long flushedTickets;
+    private volatile JournalSegment currentSegment;
+
+    public Journal(final Path directory)
+    {
+        this(directory, JournalOptions.DEFAULT);
+    }
+
+    // Appends go to a new segment after any already in the directory, so an existing journal is never overwritten
+    public Journal(final Path directory, final JournalOptions options)
+    {
+        this.directory = directory;
+        this.options = options;
+        try
+        {
+            Files.createDirectories(directory);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create journal directory " + directory, e);
+        }
+        List<Path> existingSegments = JournalReader.segmentPaths(directory);
+        int firstIndex = existingSegments.isEmpty() ? 0 : segmentIndex(existingSegments.getLast()) + 1;
+        currentSegment = JournalSegment.create(directory, firstIndex, options.segmentSize());
+        unforcedSegments.add(currentSegment);
+
+        if (options.fsyncPolicy() == FsyncPolicy.INTERVAL)
+        {
+            flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("journal-flusher").factory());
+            flusher.scheduleWithFixedDelay(this::flush,
+                                           options.fsyncIntervalMillis(),
+                                           options.fsyncIntervalMillis(),
+                                           TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            flusher = null;
+        }
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    public JournalOptions getOptions()
+    {
+        return options;
+    }
+
+    @Override
+    public void accountCreated(final long sequence, final String accountNumber)
+    {
+        append(sequence, JournalRecords.accountCreated(sequence, accountNumber));
+    }
+
+    @Override
+    public void transferCommitted(final long sequence,
+                                  final String sourceAccountNumber,
+                                  final String destinationAccountNumber,
+                                  final BigDecimal transferAmount)
+    {
+        append(sequence,
+               JournalRecords.transfer(sequence, sourceAccountNumber, destinationAccountNumber, transferAmount));
+    }
+
+    @Override
+    public void transferCommitted(final long sequence,
+                                  final String sourceAccountNumber,
+                                  final String destinationAccountNumber,
+                                  final BigDecimal transferAmount,
+                                  final String transferId)
+    {
+        append(sequence,
+               JournalRecords.transfer(sequence,
+                                       sourceAccountNumber,
+                                       destinationAccountNumber,
+                                       transferAmount,
+                                       transferId));
+    }
+
+    // Forces everything appended so far to disk
+    public void flush()
+    {
+        long ticket = flushTickets.incrementAndGet();
+        int spins = 0;
+        while (flushedTickets < ticket)
+        {
+            if (flushing.compareAndSet(false, true))
+            {
+                try
+                {
+                    long coveredTickets = flushTickets.get();
+                    for (JournalSegment segment : unforcedSegments)
+                    {
+                        segment.force();
+                        if (segment.isRetired())
+                        {
+                            unforcedSegments.remove(segment);
+                            segment.close();
+                        }
+                    }
+                    flushedTickets = coveredTickets;
+                }
+                finally
+                {
+                    flushing.set(false);
+                    Thread waiter;
+                    while ((waiter = flushWaiters.poll()) != null)
+                    {
+                        LockSupport.unpark(waiter);
+                    }
+                }
+            }
+            else if (++spins < SPINS_BEFORE_PARKING)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                // The flusher clears flushing before it wakes the waiters, so a waiter which queues itself after
+                // the wake-up sees flushing clear and goes round again instead of parking
+                flushWaiters.add(Thread.currentThread());
+                if (flushing.get() && flushedTickets < ticket)
+                {
+                    LockSupport.park(this);
+                }
+                spins = 0;
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (flusher != null)
+        {
+            flusher.shutdown();
+            try
+            {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (JournalSegment segment : unforcedSegments)
+        {
+            segment.seal();
+        }
+        flush();
+        for (JournalSegment segment : unforcedSegments)
+        {
+            segment.close();
+        }
+        unforcedSegments.clear();
+    }
+
+    private void append(final long sequence, final byte[] body)
+    {
+        if (JournalRecords.recordLength(body.length) > options.segmentSize() - JournalSegment.HEADER_LENGTH)
+        {
+            throw new RuntimeException("Journal record of " + body.length + " bytes does not fit in a segment");
+        }
+        JournalSegment segment = currentSegment;
+        while (!segment.append(sequence, body))
+        {
+            segment = nextSegment(segment);
+        }
+        if (options.fsyncPolicy() == FsyncPolicy.EVERY_COMMIT)
+        {
+            flush();
+        }
+    }
+
+    private synchronized JournalSegment nextSegment(final JournalSegment fullSegment)
+    {
+        if (currentSegment == fullSegment)
+        {
+            JournalSegment segment = JournalSegment.create(directory, fullSegment.getIndex() + 1, options.segmentSize());
+            unforcedSegments.add(segment);
+            currentSegment = segment;
+        }
+        return currentSegment;
+    }
+
+    static int segmentIndex(final Path segmentPath)
+    {
+        String fileName = segmentPath.getFileName().toString();
+        return Integer.parseInt(fileName.substring("journal-".length(), fileName.length() - ".log".length()));
+    }
+}
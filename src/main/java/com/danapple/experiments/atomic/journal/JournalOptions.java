@@ -0,0 +1,20 @@
+package com.danapple.experiments.atomic.journal;
+
+public record JournalOptions(int segmentSize,
+                             FsyncPolicy fsyncPolicy,
+                             long fsyncIntervalMillis)
+{
+    public final static JournalOptions DEFAULT = new JournalOptions(64 * 1024 * 1024, FsyncPolicy.INTERVAL, 10);
+
+    public JournalOptions
+    {
+        if (segmentSize < 1024)
+        {
+            throw new RuntimeException("Segment size " + segmentSize + " must be at least 1024 bytes");
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && fsyncIntervalMillis <= 0)
+        {
+            throw new RuntimeException("Fsync interval " + fsyncIntervalMillis + " must be positive");
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.danapple.experiments.atomic.journal;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Replays a journal directory, oldest segment first.  A record whose checksum does not match was torn by a
+// crash part way through its write; it is skipped and reported rather than replayed.
+//
+// Concurrent writers fill their claimed regions in any order, and a group commit may force a later record
+// while an earlier writer has not yet written its length, so a crash can leave a hole in front of records
+// which were acknowledged.  Where no record length can be read the reader therefore looks ahead for the next
+// record whose checksum matches, and only a segment's zeroed tail ends it.
+//
+// A sealed segment records the highest sequence in it, so a replay from a checkpoint skips every segment
+// sealed at or below the checkpoint's version without reading it, and those segments can be deleted.
+public final class JournalReader
+{
+    private final static Logger logger = LoggerFactory.getLogger(JournalReader.class);
+
+    private JournalReader()
+    {
+    }
+
+    public record ReplayResult(long recordCount, long corruptRecordCount) {}
+
+    public static ReplayResult replay(final Path directory, final TransferListener listener)
+    {
+        return replay(directory, listener, 0);
+    }
+
+    // Skips segments sealed with nothing above afterSequence; records at or below it in the segments which are
+    // read are still passed to the listener
+    public static ReplayResult replay(final Path directory, final TransferListener listener, final long afterSequence)
+    {
+        long recordCount = 0;
+        long corruptRecordCount = 0;
+        for (Path segmentPath : segmentPaths(directory))
+        {
+            MappedByteBuffer buffer = map(segmentPath);
+            if (buffer.capacity() < JournalSegment.HEADER_LENGTH
+                    || isSealedThrough((long) JournalSegment.LONG.getAcquire(buffer, 0), afterSequence))
+            {
+                continue;
+            }
+            int offset = JournalSegment.HEADER_LENGTH;
+            while (offset <= buffer.capacity() - JournalRecords.HEADER_LENGTH)
+            {
+                int length = (int) JournalSegment.INT.getAcquire(buffer, offset);
+                if (!isValidLength(buffer, offset, length))
+                {
+                    int nextOffset = nextRecordOffset(buffer, offset);
+                    if (nextOffset < 0)
+                    {
+                        if (length != 0)
+                        {
+                            logger.warn("Journal segment {} has an invalid record length {} at offset {}",
+                                        segmentPath, length, offset);
+                            corruptRecordCount++;
+                        }
+                        break;
+                    }
+                    logger.warn("Journal segment {} has an unfinished record from offset {} to {}",
+                                segmentPath, offset, nextOffset);
+                    corruptRecordCount++;
+                    offset = nextOffset;
+                    continue;
+                }
+                int bodyOffset = offset + JournalRecords.HEADER_LENGTH;
+                int bodyLength = length - JournalRecords.HEADER_LENGTH;
+                if (!hasValidChecksum(buffer, offset, length))
+                {
+                    logger.warn("Journal segment {} has a corrupt record at offset {}", segmentPath, offset);
+                    corruptRecordCount++;
+                }
+                else
+                {
+                    JournalRecords.dispatch(buffer.slice(bodyOffset, bodyLength).order(ByteOrder.LITTLE_ENDIAN),
+                                            listener);
+                    recordCount++;
+                }
+                offset += length;
+            }
+        }
+        return new ReplayResult(recordCount, corruptRecordCount);
+    }
+
+    // Deletes every segment sealed with nothing above sequence, returning how many were deleted
+    public static int deleteSegmentsThrough(final Path directory, final long sequence)
+    {
+        int deletedCount = 0;
+        for (Path segmentPath : segmentPaths(directory))
+        {
+            if (isSealedThrough(readHighestSequence(segmentPath), sequence))
+            {
+                try
+                {
+                    Files.deleteIfExists(segmentPath);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException("Could not delete journal segment " + segmentPath, e);
+                }
+                deletedCount++;
+            }
+        }
+        return deletedCount;
+    }
+
+    private static boolean isSealedThrough(final long highestSequence, final long sequence)
+    {
+        return highestSequence != 0 && highestSequence <= sequence;
+    }
+
+    // Zero, as for an unsealed segment, if the header cannot be read
+    private static long readHighestSequence(final Path segmentPath)
+    {
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(JournalSegment.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            return header.hasRemaining() ? 0 : header.getLong(0);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not read journal segment " + segmentPath, e);
+        }
+    }
+
+    private static boolean isValidLength(final MappedByteBuffer buffer, final int offset, final int length)
+    {
+        return length >= JournalRecords.HEADER_LENGTH && length <= buffer.capacity() - offset && (length & 3) == 0;
+    }
+
+    private static boolean hasValidChecksum(final MappedByteBuffer buffer, final int offset, final int length)
+    {
+        int checksum = (int) JournalSegment.INT.getAcquire(buffer, offset + 4);
+        return checksum == JournalRecords.checksum(buffer,
+                                                   offset + JournalRecords.HEADER_LENGTH,
+                                                   length - JournalRecords.HEADER_LENGTH);
+    }
+
+    // Records start on 4 byte boundaries, so the scan steps by 4; returns -1 if nothing valid follows
+    private static int nextRecordOffset(final MappedByteBuffer buffer, final int holeOffset)
+    {
+        for (int offset = holeOffset + 4; offset <= buffer.capacity() - JournalRecords.HEADER_LENGTH; offset += 4)
+        {
+            int length = (int) JournalSegment.INT.getAcquire(buffer, offset);
+            if (isValidLength(buffer, offset, length) && hasValidChecksum(buffer, offset, length))
+            {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    static List<Path> segmentPaths(final Path directory)
+    {
+        if (!Files.isDirectory(directory))
+        {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory))
+        {
+            return paths.filter(path -> path.getFileName().toString().matches("journal-\\d{10}\\.log"))
+                        .sorted()
+                        .toList();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not list journal directory " + directory, e);
+        }
+    }
+
+    private static MappedByteBuffer map(final Path segmentPath)
+    {
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not map journal segment " + segmentPath, e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.danapple.experiments.atomic.journal;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// Record layout, little endian, with every record starting on a 4 byte boundary:
+//   int length     whole record including this header and padding, written first
+//   int checksum   CRC32C of the body and padding, written last
+//   body           byte type, long sequence, then per type:
+//                    ACCOUNT_CREATED  string accountNumber
+//                    TRANSFER         string source, string destination, int scale, byte n, n bytes unscaled value
+//                    TRANSFER_WITH_ID as TRANSFER, followed by string transferId
+//   where a string is a short length followed by UTF-8 bytes.
+final class JournalRecords
+{
+    final static int HEADER_LENGTH = 8;
+    final static byte ACCOUNT_CREATED = 1;
+    final static byte TRANSFER = 2;
+    final static byte TRANSFER_WITH_ID = 3;
+
+    private JournalRecords()
+    {
+    }
+
+    static byte[] accountCreated(final long sequence,
+                                 final String accountNumber)
+    {
+        byte[] accountNumberBytes = accountNumber.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = allocate(1 + 8 + 2 + accountNumberBytes.length);
+        body.put(ACCOUNT_CREATED).putLong(sequence);
+        putString(body, accountNumberBytes);
+        return body.array();
+    }
+
+    static byte[] transfer(final long sequence,
+                           final String sourceAccountNumber,
+                           final String destinationAccountNumber,
+                           final BigDecimal transferAmount)
+    {
+        return transfer(sequence, sourceAccountNumber, destinationAccountNumber, transferAmount, null);
+    }
+
+    static byte[] transfer(final long sequence,
+                           final String sourceAccountNumber,
+                           final String destinationAccountNumber,
+                           final BigDecimal transferAmount,
+                           final String transferId)
+    {
+        byte[] transferIdBytes = transferId == null ? null : transferId.getBytes(StandardCharsets.UTF_8);
+        byte[] sourceBytes = sourceAccountNumber.getBytes(StandardCharsets.UTF_8);
+        byte[] destinationBytes = destinationAccountNumber.getBytes(StandardCharsets.UTF_8);
+        byte[] unscaledBytes = transferAmount.unscaledValue().toByteArray();
+        if (unscaledBytes.length > Byte.MAX_VALUE)
+        {
+            throw new RuntimeException("Transfer amount " + transferAmount + " is too large to journal");
+        }
+        ByteBuffer body = allocate(1 + 8 + 2 + sourceBytes.length + 2 + destinationBytes.length
+                                           + 4 + 1 + unscaledBytes.length
+                                           + (transferIdBytes == null ? 0 : 2 + transferIdBytes.length));
+        body.put(transferIdBytes == null ? TRANSFER : TRANSFER_WITH_ID).putLong(sequence);
+        putString(body, sourceBytes);
+        putString(body, destinationBytes);
+        body.putInt(transferAmount.scale()).put((byte) unscaledBytes.length).put(unscaledBytes);
+        if (transferIdBytes != null)
+        {
+            putString(body, transferIdBytes);
+        }
+        return body.array();
+    }
+
+    static int recordLength(final int bodyLength)
+    {
+        return (HEADER_LENGTH + bodyLength + 3) & ~3;
+    }
+
+    static int checksum(final ByteBuffer buffer, final int offset, final int length)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    static void dispatch(final ByteBuffer body, final TransferListener listener)
+    {
+        byte type = body.get();
+        long sequence = body.getLong();
+        switch (type)
+        {
+            case ACCOUNT_CREATED -> listener.accountCreated(sequence, getString(body));
+            case TRANSFER, TRANSFER_WITH_ID ->
+            {
+                String sourceAccountNumber = getString(body);
+                String destinationAccountNumber = getString(body);
+                int scale = body.getInt();
+                byte[] unscaledBytes = new byte[body.get()];
+                body.get(unscaledBytes);
+                BigDecimal transferAmount = new BigDecimal(new BigInteger(unscaledBytes), scale);
+                if (type == TRANSFER)
+                {
+                    listener.transferCommitted(sequence, sourceAccountNumber, destinationAccountNumber, transferAmount);
+                }
+                else
+                {
+                    listener.transferCommitted(sequence,
+                                               sourceAccountNumber,
+                                               destinationAccountNumber,
+                                               transferAmount,
+                                               getString(body));
+                }
+            }
+            default -> throw new RuntimeException("Unknown journal record type " + type);
+        }
+    }
+
+    private static ByteBuffer allocate(final int length)
+    {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putString(final ByteBuffer body, final byte[] bytes)
+    {
+        if (bytes.length > Short.MAX_VALUE)
+        {
+            throw new RuntimeException("String of " + bytes.length + " bytes is too long to journal");
+        }
+        body.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(final ByteBuffer body)
+    {
+        byte[] bytes = new byte[body.getShort()];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,150 @@
+package com.danapple.experiments.atomic.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+
+// One memory-mapped journal file.  Writers claim space with a single atomic add and then fill their own
+// region of the mapping, so concurrent appends never wait for each other.
+//
+// The file starts with a long holding the highest sequence of any record in it, written once the segment is
+// sealed: full with no writers left, or closed.  It is zero until then, so a segment which is still being
+// written, or whose records all have sequence zero, always has to be replayed.
+final class JournalSegment
+{
+    final static VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    final static VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    final static int HEADER_LENGTH = 8;
+
+    private final int index;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicInteger writePosition = new AtomicInteger(HEADER_LENGTH);
+    private final AtomicInteger activeWriters = new AtomicInteger();
+    // Striped, so that concurrent appends do not all contend on one more compare-and-set
+    private final LongAccumulator highestSequence = new LongAccumulator(Math::max, 0);
+    private volatile boolean dirty;
+    private volatile boolean full;
+
+    private JournalSegment(final int index, final FileChannel channel, final int capacity) throws IOException
+    {
+        this.index = index;
+        this.channel = channel;
+        this.capacity = capacity;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    static JournalSegment create(final Path directory, final int index, final int capacity)
+    {
+        try
+        {
+            FileChannel channel = FileChannel.open(segmentPath(directory, index),
+                                                   StandardOpenOption.CREATE_NEW,
+                                                   StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE);
+            return new JournalSegment(index, channel, capacity);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not create journal segment " + index + " in " + directory, e);
+        }
+    }
+
+    static Path segmentPath(final Path directory, final int index)
+    {
+        return directory.resolve(String.format("journal-%010d.log", index));
+    }
+
+    int getIndex()
+    {
+        return index;
+    }
+
+    int getCapacity()
+    {
+        return capacity;
+    }
+
+    // Returns false, and marks the segment full, if the record does not fit; the caller moves to the next segment
+    boolean append(final long sequence, final byte[] body)
+    {
+        int length = JournalRecords.recordLength(body.length);
+        activeWriters.incrementAndGet();
+        try
+        {
+            int offset = writePosition.getAndAdd(length);
+            if (offset > capacity - length)
+            {
+                full = true;
+                return false;
+            }
+            INT.setRelease(buffer, offset, length);
+            buffer.put(offset + JournalRecords.HEADER_LENGTH, body);
+            // The checksum covers the zero padding too, so a reader only needs the length
+            INT.setRelease(buffer,
+                           offset + 4,
+                           JournalRecords.checksum(buffer,
+                                                   offset + JournalRecords.HEADER_LENGTH,
+                                                   length - JournalRecords.HEADER_LENGTH));
+            highestSequence.accumulate(sequence);
+            dirty = true;
+            return true;
+        }
+        finally
+        {
+            // Once full no record can be added, so the last writer out knows the highest sequence for good
+            if (activeWriters.decrementAndGet() == 0 && full)
+            {
+                seal();
+            }
+        }
+    }
+
+    // Writing the same highest sequence again is harmless, so it does not matter which writer seals
+    void seal()
+    {
+        long sequence = highestSequence.get();
+        if (sequence != 0 && (long) LONG.getAcquire(buffer, 0) != sequence)
+        {
+            LONG.setRelease(buffer, 0, sequence);
+            dirty = true;
+        }
+    }
+
+    void force()
+    {
+        if (dirty)
+        {
+            dirty = false;
+            buffer.force();
+        }
+    }
+
+    // A full segment with no writers left and nothing unforced never needs forcing again
+    boolean isRetired()
+    {
+        return full && activeWriters.get() == 0 && !dirty;
+    }
+
+    void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
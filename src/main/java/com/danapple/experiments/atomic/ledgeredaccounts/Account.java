@@ -1,22 +1,47 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
+import static com.danapple.experiments.atomic.ledgeredaccounts.TransferStatus.COMPLETE;
+import static com.danapple.experiments.atomic.ledgeredaccounts.TransferStatus.PENDING;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class Account
 {
     private final String accountNumber;
+    private final FixedPointMoney money;
     private final BigDecimal balance;
+    private final long balanceUnits;
+    private final List<PendingAdjustment> pendingAdjustments;
 
     public Account(final String accountNumber)
+    {
+        this(accountNumber, null);
+    }
+
+    // With money, the balance is held as a long count of units and BigDecimal is only used at the edges
+    public Account(final String accountNumber, final FixedPointMoney money)
     {
         this.accountNumber = accountNumber;
-        this.balance = BigDecimal.ZERO;
+        this.money = money;
+        this.balance = money == null ? BigDecimal.ZERO : null;
+        this.balanceUnits = 0;
+        this.pendingAdjustments = Collections.emptyList();
     }
 
-    private Account(final Account baseAccount, final BigDecimal newBalance)
+    private Account(final Account baseAccount,
+                    final BigDecimal newBalance,
+                    final long newBalanceUnits,
+                    final List<PendingAdjustment> newPendingAdjustments)
     {
         this.accountNumber = baseAccount.accountNumber;
+        this.money = baseAccount.money;
         this.balance = newBalance;
+        this.balanceUnits = newBalanceUnits;
+        this.pendingAdjustments = newPendingAdjustments;
     }
 
     public String getAccountNumber()
@@ -24,13 +49,155 @@ public class Account
         return accountNumber;
     }
 
+    public FixedPointMoney getMoney()
+    {
+        return money;
+    }
+
     public BigDecimal getBalance()
     {
-        return balance;
+        if (money != null)
+        {
+            return money.toBigDecimal(getBalanceUnits());
+        }
+        BigDecimal computedBalance = balance;
+        for (PendingAdjustment adjustment : pendingAdjustments)
+        {
+            if (adjustment.state().getStatus() == COMPLETE)
+            {
+                computedBalance = computedBalance.add(adjustment.delta());
+            }
+        }
+        return computedBalance;
+    }
+
+    public long getBalanceUnits()
+    {
+        requireFixedPoint();
+        long computedBalanceUnits = balanceUnits;
+        for (PendingAdjustment adjustment : pendingAdjustments)
+        {
+            if (adjustment.state().getStatus() == COMPLETE)
+            {
+                computedBalanceUnits = FixedPointMoney.add(computedBalanceUnits, adjustment.deltaUnits());
+            }
+        }
+        return computedBalanceUnits;
     }
 
     Account adjustBalance(final BigDecimal adjustment)
     {
-        return new Account(this, balance.add(adjustment));
+        if (money != null)
+        {
+            return adjustBalanceUnits(money.toUnits(adjustment));
+        }
+        if (pendingAdjustments.isEmpty())
+        {
+            return new Account(this, balance.add(adjustment), 0, pendingAdjustments);
+        }
+        Account settledAccount = settle();
+        return new Account(this, settledAccount.balance.add(adjustment), 0, settledAccount.pendingAdjustments);
+    }
+
+    Account adjustBalanceUnits(final long adjustmentUnits)
+    {
+        requireFixedPoint();
+        Account settledAccount = pendingAdjustments.isEmpty() ? this : settle();
+        return new Account(this,
+                           null,
+                           FixedPointMoney.add(settledAccount.balanceUnits, adjustmentUnits),
+                           settledAccount.pendingAdjustments);
+    }
+
+    // Transfers carry the amount in both forms, and each Account uses the one matching how it holds money
+    Account credit(final BigDecimal amount, final long amountUnits)
+    {
+        return money == null ? adjustBalance(amount) : adjustBalanceUnits(amountUnits);
+    }
+
+    Account debit(final BigDecimal amount, final long amountUnits)
+    {
+        return money == null ? adjustBalance(amount.negate()) : adjustBalanceUnits(FixedPointMoney.negate(amountUnits));
+    }
+
+    // The adjustment only counts towards the balance once its state is COMPLETE, which lets a transfer
+    // between Accounts in different snapshots become visible in both at once.
+    Account addPendingAdjustment(final PendingAdjustment adjustment)
+    {
+        Account settledAccount = settle();
+        List<PendingAdjustment> newPendingAdjustments = new ArrayList<>(settledAccount.pendingAdjustments);
+        newPendingAdjustments.add(adjustment);
+        return new Account(this, settledAccount.balance, settledAccount.balanceUnits, newPendingAdjustments);
+    }
+
+    // The balance this version was created with, leaving out pending adjustments, so it never changes
+    BigDecimal getSettledBalance()
+    {
+        return balance;
+    }
+
+    long getSettledBalanceUnits()
+    {
+        return balanceUnits;
+    }
+
+    int getPendingAdjustmentCount()
+    {
+        return pendingAdjustments.size();
+    }
+
+    // Adjustments whose transfer has neither completed nor aborted yet
+    int getPendingCount()
+    {
+        int pendingCount = 0;
+        for (PendingAdjustment adjustment : pendingAdjustments)
+        {
+            if (adjustment.state().getStatus() == PENDING)
+            {
+                pendingCount++;
+            }
+        }
+        return pendingCount;
+    }
+
+    private void requireFixedPoint()
+    {
+        if (money == null)
+        {
+            throw new RuntimeException("Account " + accountNumber + " does not hold fixed point money");
+        }
+    }
+
+    // Each status is read once, so an adjustment completing concurrently is either folded into the
+    // balance or kept as pending, never both.  A transfer aborts its state on any way out short of completing
+    // it, so an adjustment is never left PENDING for a timeout to clear and settling never reads the clock.
+    private Account settle()
+    {
+        BigDecimal settledBalance = balance;
+        long settledBalanceUnits = balanceUnits;
+        List<PendingAdjustment> stillPending = new ArrayList<>();
+        for (PendingAdjustment adjustment : pendingAdjustments)
+        {
+            TransferStatus status = adjustment.state().getStatus();
+            if (status == COMPLETE)
+            {
+                if (money == null)
+                {
+                    settledBalance = settledBalance.add(adjustment.delta());
+                }
+                else
+                {
+                    settledBalanceUnits = FixedPointMoney.add(settledBalanceUnits, adjustment.deltaUnits());
+                }
+            }
+            else if (status == PENDING)
+            {
+                stillPending.add(adjustment);
+            }
+        }
+        return new Account(this,
+                           settledBalance,
+                           settledBalanceUnits,
+                           stillPending.isEmpty() ? Collections.emptyList() : stillPending);
     }
 }
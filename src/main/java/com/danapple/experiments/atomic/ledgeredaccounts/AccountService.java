@@ -1,5 +1,8 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
+import java.math.BigDecimal;
+import java.util.List;
+
 public class AccountService
 {
     private final Ledger ledger;
@@ -11,14 +14,7 @@ public class AccountService
 
     public boolean createAccount(final String accountNumber)
     {
-        int retries = 0;
-        while (retries++ < ledger.getRetryCount())
-        {
-            if (createAccountAtomic(accountNumber)) {
-                return true;
-            }
-        }
-        return false;
+        return ledger.getContentionManager().retry(() -> createAccountAtomic(accountNumber));
     }
 
     private boolean createAccountAtomic(final String accountNumber)
@@ -29,10 +25,15 @@ public class AccountService
             throw new RuntimeException("Account " + accountNumber + " already exists");
         }
 
-        Account newAccount = new Account(accountNumber);
+        Account newAccount = startingAccounts.newAccount(accountNumber);
         Accounts newAccounts = startingAccounts.newVersion(newAccount);
 
-        return ledger.replaceSnapshot(startingAccounts, newAccounts);
+        if (!ledger.replaceSnapshot(startingAccounts, newAccounts))
+        {
+            return false;
+        }
+        ledger.accountCreated(newAccounts.getVersion(), accountNumber);
+        return true;
     }
 
     public Account getAccount(final String accountNumber)
@@ -40,4 +41,20 @@ public class AccountService
         Accounts startingAccounts = ledger.getSnapshot();
         return startingAccounts.getAccount(accountNumber);
     }
+
+    // The balance queries need a Ledger created balanceIndexed, and answer from a single snapshot
+    public List<Account> getLargestBalances(final int count)
+    {
+        return ledger.getSnapshot().getLargestBalances(count);
+    }
+
+    public List<Account> getAccountsBelow(final BigDecimal threshold)
+    {
+        return ledger.getSnapshot().getBalancesBetween(null, threshold);
+    }
+
+    public List<Account> getAccountsBetween(final BigDecimal low, final BigDecimal high)
+    {
+        return ledger.getSnapshot().getBalancesBetween(low, high);
+    }
 }
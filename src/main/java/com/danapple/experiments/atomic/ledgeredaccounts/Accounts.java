@@ -1,20 +1,45 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 class Accounts
 {
-    private final Map<String, Account> accounts;
+    private final HashTrie<String, Account> accounts;
+    private final FixedPointMoney money;
+    private final long version;
+    // Null unless the Accounts were created indexed by balance
+    private final BalanceIndex balanceIndex;
 
     Accounts() {
-        accounts = new HashMap<>();
+        this(null);
     }
 
-    private Accounts(final Map<String, Account> newMap)
+    Accounts(final FixedPointMoney money)
     {
-        accounts = newMap;
+        this(money, false);
+    }
+
+    Accounts(final FixedPointMoney money, final boolean balanceIndexed)
+    {
+        this(HashTrie.empty(), money, 0, balanceIndexed ? BalanceIndex.empty() : null);
+    }
+
+    private Accounts(final HashTrie<String, Account> newAccounts,
+                     final FixedPointMoney money,
+                     final long version,
+                     final BalanceIndex balanceIndex)
+    {
+        accounts = newAccounts;
+        this.money = money;
+        this.version = version;
+        this.balanceIndex = balanceIndex;
     }
 
     Account getAccount(final String accountNumber)
@@ -22,12 +47,85 @@ class Accounts
         return accounts.get(accountNumber);
     }
 
+    // Null when Accounts hold their balances as BigDecimal
+    FixedPointMoney getMoney()
+    {
+        return money;
+    }
+
+    Account newAccount(final String accountNumber)
+    {
+        return new Account(accountNumber, money);
+    }
+
+    // Counts the snapshots before this one, so it orders every change made to a Ledger
+    long getVersion()
+    {
+        return version;
+    }
+
+    // For rebuilding a snapshot, so that versions after it carry on from those already used
+    Accounts withVersion(final long newVersion)
+    {
+        return new Accounts(accounts, money, newVersion, balanceIndex);
+    }
+
+    boolean isBalanceIndexed()
+    {
+        return balanceIndex != null;
+    }
+
+    List<Account> getLargestBalances(final int count)
+    {
+        return requireBalanceIndex().largest(count);
+    }
+
+    // From low inclusive to high exclusive, smallest first.  A null bound is unbounded.
+    List<Account> getBalancesBetween(final BigDecimal low, final BigDecimal high)
+    {
+        return requireBalanceIndex().between(low, high);
+    }
+
+    void forEach(final Consumer<Account> action)
+    {
+        accounts.forEach((accountNumber, account) -> action.accept(account));
+    }
+
+    <A> A fold(final ForkJoinPool pool,
+               final Supplier<A> newAccumulator,
+               final BiConsumer<A, Account> accumulate,
+               final BinaryOperator<A> combine)
+    {
+        return accounts.fold(pool, newAccumulator, accumulate, combine);
+    }
+
+    int size()
+    {
+        return accounts.size();
+    }
+
     Accounts newVersion(final Account... replacementAccounts)
     {
-        Map<String, Account> newMap = new HashMap<>(accounts);
-        Arrays.asList(replacementAccounts)
-                .forEach(account -> newMap.put(account.getAccountNumber(), account));
+        HashTrie<String, Account> newAccounts = accounts;
+        BalanceIndex newBalanceIndex = balanceIndex;
+        for (Account account : replacementAccounts)
+        {
+            if (newBalanceIndex != null)
+            {
+                newBalanceIndex = newBalanceIndex.replace(newAccounts.get(account.getAccountNumber()), account);
+            }
+            newAccounts = newAccounts.put(account.getAccountNumber(), account);
+        }
+
+        return new Accounts(newAccounts, money, version + 1, newBalanceIndex);
+    }
 
-        return new Accounts(newMap);
+    private BalanceIndex requireBalanceIndex()
+    {
+        if (balanceIndex == null)
+        {
+            throw new RuntimeException("Accounts are not indexed by balance");
+        }
+        return balanceIndex;
     }
 }
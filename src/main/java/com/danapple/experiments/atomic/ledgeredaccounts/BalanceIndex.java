@@ -0,0 +1,231 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// A persistent AVL tree of Accounts ordered by balance, then by account number.  Like HashTrie, every change
+// returns a new tree which shares all untouched nodes with the old one, so each snapshot carries an index
+// matching it exactly for O(log N) node copies per replaced Account.  Queries walk only the nodes they
+// return, plus one path from the root.
+//
+// An Account is ordered by the balance it was created with, which leaves out pending adjustments.  Only
+// transfers across the shards of a ShardedLedger leave those, and they count once the Account is next replaced.
+final class BalanceIndex
+{
+    private final static BalanceIndex EMPTY = new BalanceIndex(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private BalanceIndex(final Node root, final int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    static BalanceIndex empty()
+    {
+        return EMPTY;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    // oldAccount is null when newAccount is a new Account
+    BalanceIndex replace(final Account oldAccount, final Account newAccount)
+    {
+        if (oldAccount == null)
+        {
+            return new BalanceIndex(insert(root, newAccount), size + 1);
+        }
+        if (compare(oldAccount, newAccount) == 0)
+        {
+            return new BalanceIndex(insert(root, newAccount), size);
+        }
+        return new BalanceIndex(insert(remove(root, oldAccount), newAccount), size);
+    }
+
+    // Largest balance first
+    List<Account> largest(final int count)
+    {
+        List<Account> result = new ArrayList<>(Math.min(count, size));
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (result.size() < count && (node != null || !path.isEmpty()))
+        {
+            while (node != null)
+            {
+                path.push(node);
+                node = node.right;
+            }
+            node = path.pop();
+            result.add(node.account);
+            node = node.left;
+        }
+        return result;
+    }
+
+    // Smallest balance first, from low inclusive to high exclusive.  A null bound is unbounded.
+    List<Account> between(final BigDecimal low, final BigDecimal high)
+    {
+        List<Account> result = new ArrayList<>();
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (node != null)
+        {
+            if (low == null || compareToBound(node.account, low) >= 0)
+            {
+                path.push(node);
+                node = node.left;
+            }
+            else
+            {
+                node = node.right;
+            }
+        }
+        while (!path.isEmpty())
+        {
+            node = path.pop();
+            if (high != null && compareToBound(node.account, high) >= 0)
+            {
+                break;
+            }
+            result.add(node.account);
+            for (Node next = node.right; next != null; next = next.left)
+            {
+                path.push(next);
+            }
+        }
+        return result;
+    }
+
+    // A node with an equal key holds the same account number, so the new version takes its place
+    private static Node insert(final Node node, final Account account)
+    {
+        if (node == null)
+        {
+            return new Node(account, null, null);
+        }
+        int comparison = compare(account, node.account);
+        if (comparison < 0)
+        {
+            return rebalance(node.account, insert(node.left, account), node.right);
+        }
+        if (comparison > 0)
+        {
+            return rebalance(node.account, node.left, insert(node.right, account));
+        }
+        return new Node(account, node.left, node.right);
+    }
+
+    private static Node remove(final Node node, final Account account)
+    {
+        if (node == null)
+        {
+            throw new RuntimeException("Account " + account.getAccountNumber() + " is not in the balance index");
+        }
+        int comparison = compare(account, node.account);
+        if (comparison < 0)
+        {
+            return rebalance(node.account, remove(node.left, account), node.right);
+        }
+        if (comparison > 0)
+        {
+            return rebalance(node.account, node.left, remove(node.right, account));
+        }
+        if (node.left == null)
+        {
+            return node.right;
+        }
+        if (node.right == null)
+        {
+            return node.left;
+        }
+        Node successor = node.right;
+        while (successor.left != null)
+        {
+            successor = successor.left;
+        }
+        return rebalance(successor.account, node.left, removeSmallest(node.right));
+    }
+
+    private static Node removeSmallest(final Node node)
+    {
+        if (node.left == null)
+        {
+            return node.right;
+        }
+        return rebalance(node.account, removeSmallest(node.left), node.right);
+    }
+
+    private static Node rebalance(final Account account, final Node left, final Node right)
+    {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1)
+        {
+            if (height(left.left) < height(left.right))
+            {
+                Node pivot = left.right;
+                return new Node(pivot.account,
+                                new Node(left.account, left.left, pivot.left),
+                                new Node(account, pivot.right, right));
+            }
+            return new Node(left.account, left.left, new Node(account, left.right, right));
+        }
+        if (rightHeight > leftHeight + 1)
+        {
+            if (height(right.right) < height(right.left))
+            {
+                Node pivot = right.left;
+                return new Node(pivot.account,
+                                new Node(account, left, pivot.left),
+                                new Node(right.account, pivot.right, right.right));
+            }
+            return new Node(right.account, new Node(account, left, right.left), right.right);
+        }
+        return new Node(account, left, right);
+    }
+
+    private static int height(final Node node)
+    {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int compare(final Account first, final Account second)
+    {
+        int comparison = first.getMoney() == null
+                ? first.getSettledBalance().compareTo(second.getSettledBalance())
+                : Long.compare(first.getSettledBalanceUnits(), second.getSettledBalanceUnits());
+        return comparison != 0 ? comparison : first.getAccountNumber().compareTo(second.getAccountNumber());
+    }
+
+    private static int compareToBound(final Account account, final BigDecimal bound)
+    {
+        BigDecimal balance = account.getMoney() == null
+                ? account.getSettledBalance()
+                : account.getMoney().toBigDecimal(account.getSettledBalanceUnits());
+        return balance.compareTo(bound);
+    }
+
+    private static final class Node
+    {
+        private final Account account;
+        private final Node left;
+        private final Node right;
+        private final int height;
+
+        private Node(final Account account, final Node left, final Node right)
+        {
+            this.account = account;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
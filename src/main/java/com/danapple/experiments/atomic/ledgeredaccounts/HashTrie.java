@@ -0,0 +1,294 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+// A persistent hash array mapped trie.  Every put returns a new trie that shares all untouched nodes with
+// the old one, so a new version costs O(log32 N) node copies instead of a copy of the whole map.
+final class HashTrie<K, V>
+{
+    private final static int BITS = 5;
+    private final static int WIDTH = 1 << BITS;
+    private final static int MASK = WIDTH - 1;
+    // Subtrees expected to hold fewer values than this are folded by the task which reaches them
+    private final static int FORK_THRESHOLD = 4096;
+
+    private final static HashTrie<?, ?> EMPTY = new HashTrie<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final BitmapNode root;
+    private final int size;
+
+    private HashTrie(final BitmapNode root, final int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> HashTrie<K, V> empty()
+    {
+        return (HashTrie<K, V>) EMPTY;
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final K key)
+    {
+        Leaf leaf = root.find(key, spread(key.hashCode()), 0);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    HashTrie<K, V> put(final K key, final V value)
+    {
+        int hash = spread(key.hashCode());
+        int newSize = root.find(key, hash, 0) == null ? size + 1 : size;
+        BitmapNode newRoot = (BitmapNode) root.put(new Leaf(key, hash, value), 0);
+        if (newRoot == root)
+        {
+            return this;
+        }
+        return new HashTrie<>(newRoot, newSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(final BiConsumer<? super K, ? super V> action)
+    {
+        root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    // Folds the values of separate subtrees in parallel, each into its own accumulator, and combines the
+    // accumulators as the subtrees finish.  Hashes are spread evenly, so a subtree's size is estimated from its
+    // depth rather than counted.
+    @SuppressWarnings("unchecked")
+    <A> A fold(final ForkJoinPool pool,
+               final Supplier<A> newAccumulator,
+               final BiConsumer<A, ? super V> accumulate,
+               final BinaryOperator<A> combine)
+    {
+        return pool.invoke(new FoldTask<>(root,
+                                          size,
+                                          newAccumulator,
+                                          (BiConsumer<A, Object>) accumulate,
+                                          combine));
+    }
+
+    private static int spread(final int hashCode)
+    {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    private static Node merge(final Leaf first, final Leaf second, final int shift)
+    {
+        if (shift >= Integer.SIZE)
+        {
+            return new CollisionNode(new Leaf[] { first, second });
+        }
+        int firstIndex = (first.hash >>> shift) & MASK;
+        int secondIndex = (second.hash >>> shift) & MASK;
+        if (firstIndex == secondIndex)
+        {
+            return new BitmapNode(1 << firstIndex, new Object[] { merge(first, second, shift + BITS) });
+        }
+        Object[] slots = firstIndex < secondIndex
+                         ? new Object[] { first, second }
+                         : new Object[] { second, first };
+        return new BitmapNode((1 << firstIndex) | (1 << secondIndex), slots);
+    }
+
+    private record Leaf(Object key, int hash, Object value) {}
+
+    private static final class FoldTask<A> extends RecursiveTask<A>
+    {
+        private final Node node;
+        private final int expectedSize;
+        private final Supplier<A> newAccumulator;
+        private final BiConsumer<A, Object> accumulate;
+        private final BinaryOperator<A> combine;
+
+        private FoldTask(final Node node,
+                         final int expectedSize,
+                         final Supplier<A> newAccumulator,
+                         final BiConsumer<A, Object> accumulate,
+                         final BinaryOperator<A> combine)
+        {
+            this.node = node;
+            this.expectedSize = expectedSize;
+            this.newAccumulator = newAccumulator;
+            this.accumulate = accumulate;
+            this.combine = combine;
+        }
+
+        @Override
+        protected A compute()
+        {
+            A accumulator = newAccumulator.get();
+            if (expectedSize < FORK_THRESHOLD || !(node instanceof BitmapNode bitmapNode))
+            {
+                node.forEach((key, value) -> accumulate.accept(accumulator, value));
+                return accumulator;
+            }
+            List<FoldTask<A>> subtasks = new ArrayList<>();
+            for (Object slot : bitmapNode.slots)
+            {
+                if (slot instanceof Leaf leaf)
+                {
+                    accumulate.accept(accumulator, leaf.value);
+                }
+                else
+                {
+                    subtasks.add(new FoldTask<>((Node) slot, expectedSize >>> BITS, newAccumulator, accumulate, combine));
+                }
+            }
+            A combined = accumulator;
+            for (FoldTask<A> subtask : invokeAll(subtasks))
+            {
+                combined = combine.apply(combined, subtask.join());
+            }
+            return combined;
+        }
+    }
+
+    private sealed interface Node permits BitmapNode, CollisionNode
+    {
+        Leaf find(Object key, int hash, int shift);
+
+        Node put(Leaf leaf, int shift);
+
+        void forEach(BiConsumer<Object, Object> action);
+    }
+
+    private record BitmapNode(int bitmap, Object[] slots) implements Node
+    {
+        @Override
+        public Leaf find(final Object key, final int hash, final int shift)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+            {
+                return null;
+            }
+            Object slot = slots[Integer.bitCount(bitmap & (bit - 1))];
+            if (slot instanceof Leaf leaf)
+            {
+                return leaf.hash == hash && leaf.key.equals(key) ? leaf : null;
+            }
+            return ((Node) slot).find(key, hash, shift + BITS);
+        }
+
+        @Override
+        public Node put(final Leaf leaf, final int shift)
+        {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int position = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0)
+            {
+                Object[] newSlots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, newSlots, 0, position);
+                newSlots[position] = leaf;
+                System.arraycopy(slots, position, newSlots, position + 1, slots.length - position);
+                return new BitmapNode(bitmap | bit, newSlots);
+            }
+
+            Object slot = slots[position];
+            Object newSlot;
+            if (slot instanceof Leaf existing)
+            {
+                if (existing.hash == leaf.hash && existing.key.equals(leaf.key))
+                {
+                    if (existing.value == leaf.value)
+                    {
+                        return this;
+                    }
+                    newSlot = leaf;
+                }
+                else
+                {
+                    newSlot = merge(existing, leaf, shift + BITS);
+                }
+            }
+            else
+            {
+                newSlot = ((Node) slot).put(leaf, shift + BITS);
+                if (newSlot == slot)
+                {
+                    return this;
+                }
+            }
+            Object[] newSlots = slots.clone();
+            newSlots[position] = newSlot;
+            return new BitmapNode(bitmap, newSlots);
+        }
+
+        @Override
+        public void forEach(final BiConsumer<Object, Object> action)
+        {
+            for (Object slot : slots)
+            {
+                if (slot instanceof Leaf leaf)
+                {
+                    action.accept(leaf.key, leaf.value);
+                }
+                else
+                {
+                    ((Node) slot).forEach(action);
+                }
+            }
+        }
+    }
+
+    private record CollisionNode(Leaf[] leaves) implements Node
+    {
+        @Override
+        public Leaf find(final Object key, final int hash, final int shift)
+        {
+            for (Leaf leaf : leaves)
+            {
+                if (leaf.key.equals(key))
+                {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Node put(final Leaf leaf, final int shift)
+        {
+            for (int i = 0; i < leaves.length; i++)
+            {
+                if (leaves[i].key.equals(leaf.key))
+                {
+                    if (leaves[i].value == leaf.value)
+                    {
+                        return this;
+                    }
+                    Leaf[] newLeaves = leaves.clone();
+                    newLeaves[i] = leaf;
+                    return new CollisionNode(newLeaves);
+                }
+            }
+            Leaf[] newLeaves = Arrays.copyOf(leaves, leaves.length + 1);
+            newLeaves[leaves.length] = leaf;
+            return new CollisionNode(newLeaves);
+        }
+
+        @Override
+        public void forEach(final BiConsumer<Object, Object> action)
+        {
+            for (Leaf leaf : leaves)
+            {
+                action.accept(leaf.key, leaf.value);
+            }
+        }
+    }
+}
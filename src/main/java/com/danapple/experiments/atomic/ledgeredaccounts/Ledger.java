@@ -1,15 +1,23 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class Ledger
 {
     private final AtomicReference<Accounts> accounts = new AtomicReference<>();
-    private final int retryCount;
+    private final ContentionManager contentionManager;
+    private final TransferCombiner combiner;
+    private final TransferListener listener;
+    private final TransferMetrics metrics;
 
     public int getRetryCount()
     {
-        return retryCount;
+        return contentionManager.getMaxAttempts();
     }
 
     public Ledger()
@@ -19,8 +27,51 @@ public class Ledger
 
     public Ledger(final int retryCount)
     {
-        accounts.set(new Accounts());
-        this.retryCount = retryCount;
+        this(LedgerOptions.DEFAULT.withRetryCount(retryCount));
+    }
+
+    public Ledger(final LedgerOptions options)
+    {
+        accounts.set(new Accounts(options.money(), options.balanceIndexed()));
+        this.contentionManager = options.metrics().measure(options.contentionManager());
+        this.combiner = options.combining() ? new TransferCombiner(this) : null;
+        this.listener = options.listener();
+        this.metrics = options.metrics();
+    }
+
+    public boolean isCombining()
+    {
+        return combiner != null;
+    }
+
+    public boolean isBalanceIndexed()
+    {
+        return accounts.get().isBalanceIndexed();
+    }
+
+    public FixedPointMoney getMoney()
+    {
+        return accounts.get().getMoney();
+    }
+
+    public ContentionManager getContentionManager()
+    {
+        return contentionManager;
+    }
+
+    public TransferListener getListener()
+    {
+        return listener;
+    }
+
+    public TransferMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    TransferCombiner getCombiner()
+    {
+        return combiner;
     }
 
     Accounts getSnapshot()
@@ -30,6 +81,43 @@ public class Ledger
 
     boolean replaceSnapshot(final Accounts oldAccounts, final Accounts newAccounts)
     {
-        return accounts.compareAndSet(oldAccounts, newAccounts);
+        if (accounts.compareAndSet(oldAccounts, newAccounts))
+        {
+            return true;
+        }
+        metrics.casFailed();
+        return false;
+    }
+
+    void accountCreated(final long sequence, final String accountNumber)
+    {
+        if (listener != null)
+        {
+            listener.accountCreated(sequence, accountNumber);
+        }
+    }
+
+    // transferAmount is null when the Ledger holds fixed point money, and transferUnits is used instead.
+    // transferId is null for a transfer made without one.
+    void transferCommitted(final long sequence,
+                           final String sourceAccountNumber,
+                           final String destinationAccountNumber,
+                           final BigDecimal transferAmount,
+                           final long transferUnits,
+                           final String transferId)
+    {
+        metrics.transferCompleted();
+        if (listener != null)
+        {
+            BigDecimal amount = transferAmount != null ? transferAmount : getMoney().toBigDecimal(transferUnits);
+            if (transferId == null)
+            {
+                listener.transferCommitted(sequence, sourceAccountNumber, destinationAccountNumber, amount);
+            }
+            else
+            {
+                listener.transferCommitted(sequence, sourceAccountNumber, destinationAccountNumber, amount, transferId);
+            }
+        }
     }
 }
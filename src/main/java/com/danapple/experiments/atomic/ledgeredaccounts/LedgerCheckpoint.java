@@ -0,0 +1,301 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.journal.JournalReader;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// A checkpoint is one Accounts snapshot written out with its version.  Snapshots are immutable, so it is
+// written while transfers carry on.  Every journal record with a sequence above the version is a change
+// made after the snapshot, so recovery loads the newest checkpoint and replays only those records, skipping
+// without reading every journal segment sealed at or below the checkpoint's version.
+//
+// File layout, big endian:
+//   int magic, int format, long version, int scale (-1 for BigDecimal balances), int account count,
+//   then per Account: short length and UTF-8 account number, followed by either long balance units or
+//   int scale, byte n and n bytes of unscaled balance; and finally the CRC32C of everything before it.
+// Adjustments still pending on a sharded Account are not written, as they are not yet part of its balance.
+public final class LedgerCheckpoint
+{
+    private final static Logger logger = LoggerFactory.getLogger(LedgerCheckpoint.class);
+    private final static int MAGIC = 0x4C434B50;
+    private final static int FORMAT = 1;
+
+    private LedgerCheckpoint()
+    {
+    }
+
+    public static Path write(final Ledger ledger, final Path directory)
+    {
+        return write(ledger.getSnapshot(), directory);
+    }
+
+    static Path write(final Accounts snapshot, final Path directory)
+    {
+        Path checkpointPath = checkpointPath(directory, snapshot.getVersion());
+        Path temporaryPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try
+        {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(temporaryPath,
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.WRITE))
+            {
+                CRC32C crc = new CRC32C();
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(unclosable(Channels.newOutputStream(channel)), crc), 64 * 1024));
+                FixedPointMoney money = snapshot.getMoney();
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT);
+                output.writeLong(snapshot.getVersion());
+                output.writeInt(money == null ? -1 : money.scale());
+                output.writeInt(snapshot.size());
+                snapshot.forEach(account -> writeAccount(output, account));
+                output.flush();
+                output.writeInt((int) crc.getValue());
+                output.flush();
+                channel.force(true);
+            }
+            Files.move(temporaryPath, checkpointPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not write checkpoint " + checkpointPath, e);
+        }
+        return checkpointPath;
+    }
+
+    // Loads the newest readable checkpoint, if any, into an empty Ledger, then replays the journal records
+    // made after it, starting from the first journal segment which can hold one.  Returns the version the Ledger's snapshot was recovered to.
+    public static long recover(final Ledger ledger, final Path checkpointDirectory, final Path journalDirectory)
+    {
+        Accounts emptyAccounts = ledger.getSnapshot();
+        if (emptyAccounts.getVersion() != 0 || emptyAccounts.size() != 0)
+        {
+            throw new RuntimeException("Can only recover into an empty Ledger");
+        }
+
+        Accounts checkpointAccounts = emptyAccounts;
+        for (Path checkpointPath : checkpointPaths(checkpointDirectory).reversed())
+        {
+            try
+            {
+                checkpointAccounts = read(checkpointPath, emptyAccounts);
+                break;
+            }
+            catch (RuntimeException e)
+            {
+                logger.warn("Skipping unreadable checkpoint {}", checkpointPath, e);
+            }
+        }
+
+        JournalTail tail = new JournalTail(checkpointAccounts);
+        JournalReader.replay(journalDirectory, tail, checkpointAccounts.getVersion());
+        Accounts recoveredAccounts = tail.accounts.withVersion(tail.version);
+        if (!ledger.replaceSnapshot(emptyAccounts, recoveredAccounts))
+        {
+            throw new RuntimeException("Ledger changed while it was being recovered");
+        }
+        return tail.version;
+    }
+
+    static List<Path> checkpointPaths(final Path directory)
+    {
+        if (!Files.isDirectory(directory))
+        {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory))
+        {
+            return paths.filter(path -> path.getFileName().toString().matches("checkpoint-\\d{19}\\.bin"))
+                        .sorted()
+                        .toList();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not list checkpoint directory " + directory, e);
+        }
+    }
+
+    static long checkpointVersion(final Path checkpointPath)
+    {
+        String fileName = checkpointPath.getFileName().toString();
+        return Long.parseLong(fileName.substring("checkpoint-".length(), fileName.length() - ".bin".length()));
+    }
+
+    static Accounts read(final Path checkpointPath, final Accounts emptyAccounts)
+    {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(checkpointPath, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Could not map checkpoint " + checkpointPath, e);
+        }
+
+        int checksumOffset = buffer.capacity() - 4;
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(0, checksumOffset));
+        if (checksumOffset < 24 || buffer.getInt(0) != MAGIC || buffer.getInt(checksumOffset) != (int) crc.getValue())
+        {
+            throw new RuntimeException("Checkpoint " + checkpointPath + " is corrupt");
+        }
+        if (buffer.getInt(4) != FORMAT)
+        {
+            throw new RuntimeException("Checkpoint " + checkpointPath + " has unknown format " + buffer.getInt(4));
+        }
+        buffer.position(8);
+        long version = buffer.getLong();
+        int scale = buffer.getInt();
+        FixedPointMoney money = emptyAccounts.getMoney();
+        if (scale != (money == null ? -1 : money.scale()))
+        {
+            throw new RuntimeException("Checkpoint " + checkpointPath + " holds money of scale " + scale
+                                               + " which does not match the Ledger");
+        }
+
+        int accountCount = buffer.getInt();
+        Account[] accounts = new Account[accountCount];
+        for (int i = 0; i < accountCount; i++)
+        {
+            byte[] accountNumberBytes = new byte[buffer.getShort()];
+            buffer.get(accountNumberBytes);
+            Account account = emptyAccounts.newAccount(new String(accountNumberBytes, StandardCharsets.UTF_8));
+            if (money == null)
+            {
+                int balanceScale = buffer.getInt();
+                byte[] unscaledBytes = new byte[buffer.get()];
+                buffer.get(unscaledBytes);
+                accounts[i] = account.adjustBalance(new BigDecimal(new BigInteger(unscaledBytes), balanceScale));
+            }
+            else
+            {
+                accounts[i] = account.adjustBalanceUnits(buffer.getLong());
+            }
+        }
+        return emptyAccounts.newVersion(accounts).withVersion(version);
+    }
+
+    static Path checkpointPath(final Path directory, final long version)
+    {
+        return directory.resolve(String.format("checkpoint-%019d.bin", version));
+    }
+
+    private static void writeAccount(final DataOutputStream output, final Account account)
+    {
+        try
+        {
+            byte[] accountNumberBytes = account.getAccountNumber().getBytes(StandardCharsets.UTF_8);
+            output.writeShort(accountNumberBytes.length);
+            output.write(accountNumberBytes);
+            if (account.getMoney() == null)
+            {
+                BigDecimal balance = account.getBalance();
+                byte[] unscaledBytes = balance.unscaledValue().toByteArray();
+                output.writeInt(balance.scale());
+                output.writeByte(unscaledBytes.length);
+                output.write(unscaledBytes);
+            }
+            else
+            {
+                output.writeLong(account.getBalanceUnits());
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The channel is closed, and forced, by its own try block rather than through the stream wrapping it
+    private static OutputStream unclosable(final OutputStream output)
+    {
+        return new OutputStream()
+        {
+            @Override
+            public void write(final int b) throws IOException
+            {
+                output.write(b);
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException
+            {
+                output.write(bytes, offset, length);
+            }
+        };
+    }
+
+    // Journal records can be appended slightly out of sequence order, but transfers commute, so they are
+    // applied as they come; an Account first seen in a transfer is created then, and its creation record
+    // skipped when it arrives.
+    private static class JournalTail implements TransferListener
+    {
+        private final long checkpointVersion;
+        private Accounts accounts;
+        private long version;
+
+        JournalTail(final Accounts checkpointAccounts)
+        {
+            accounts = checkpointAccounts;
+            checkpointVersion = checkpointAccounts.getVersion();
+            version = checkpointVersion;
+        }
+
+        @Override
+        public void accountCreated(final long sequence, final String accountNumber)
+        {
+            if (sequence > checkpointVersion)
+            {
+                accounts = accounts.newVersion(getOrCreate(accountNumber));
+                version = Math.max(version, sequence);
+            }
+        }
+
+        @Override
+        public void transferCommitted(final long sequence,
+                                      final String sourceAccountNumber,
+                                      final String destinationAccountNumber,
+                                      final BigDecimal transferAmount)
+        {
+            if (sequence > checkpointVersion)
+            {
+                FixedPointMoney money = accounts.getMoney();
+                long transferUnits = money == null ? 0 : money.toUnits(transferAmount);
+                accounts = accounts.newVersion(getOrCreate(sourceAccountNumber).debit(transferAmount, transferUnits));
+                accounts = accounts.newVersion(getOrCreate(destinationAccountNumber).credit(transferAmount,
+                                                                                          transferUnits));
+                version = Math.max(version, sequence);
+            }
+        }
+
+        private Account getOrCreate(final String accountNumber)
+        {
+            Account account = accounts.getAccount(accountNumber);
+            return account != null ? account : accounts.newAccount(accountNumber);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.journal.JournalReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Writes a checkpoint of a Ledger in the background whenever its snapshot has changed, keeping only the
+// newest few checkpoints.  Given the Ledger's journal directory, it also deletes the journal segments sealed at
+// or below the oldest checkpoint kept, which recovery would never replay; the oldest rather than the newest, so
+// that recovery can still fall back to it if a newer checkpoint turns out to be unreadable.
+public class LedgerCheckpointer implements AutoCloseable
+{
+    private final static Logger logger = LoggerFactory.getLogger(LedgerCheckpointer.class);
+
+    private final Ledger ledger;
+    private final Path directory;
+    private final int retainedCheckpoints;
+    private final Path journalDirectory;
+    private final ScheduledExecutorService scheduler;
+    private volatile long checkpointedVersion = -1;
+
+    public LedgerCheckpointer(final Ledger ledger, final Path directory, final long intervalMillis)
+    {
+        this(ledger, directory, intervalMillis, 2);
+    }
+
+    public LedgerCheckpointer(final Ledger ledger,
+                              final Path directory,
+                              final long intervalMillis,
+                              final int retainedCheckpoints)
+    {
+        this(ledger, directory, intervalMillis, retainedCheckpoints, null);
+    }
+
+    public LedgerCheckpointer(final Ledger ledger,
+                              final Path directory,
+                              final long intervalMillis,
+                              final int retainedCheckpoints,
+                              final Path journalDirectory)
+    {
+        if (retainedCheckpoints <= 0)
+        {
+            throw new RuntimeException("Retained checkpoints " + retainedCheckpoints + " must be positive");
+        }
+        this.ledger = ledger;
+        this.directory = directory;
+        this.retainedCheckpoints = retainedCheckpoints;
+        this.journalDirectory = journalDirectory;
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("ledger-checkpointer").factory());
+        scheduler.scheduleWithFixedDelay(this::checkpointSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Returns the version checkpointed, which is the previous one if the snapshot has not changed since
+    public synchronized long checkpoint()
+    {
+        Accounts snapshot = ledger.getSnapshot();
+        if (snapshot.getVersion() != checkpointedVersion)
+        {
+            LedgerCheckpoint.write(snapshot, directory);
+            checkpointedVersion = snapshot.getVersion();
+            deleteOldCheckpoints();
+            deleteReplayedJournalSegments();
+        }
+        return checkpointedVersion;
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdown();
+    }
+
+    private void checkpointSafely()
+    {
+        try
+        {
+            checkpoint();
+        }
+        catch (RuntimeException e)
+        {
+            logger.warn("Could not checkpoint ledger to {}", directory, e);
+        }
+    }
+
+    private void deleteOldCheckpoints()
+    {
+        List<Path> checkpointPaths = LedgerCheckpoint.checkpointPaths(directory);
+        for (Path checkpointPath : checkpointPaths.subList(0, Math.max(0, checkpointPaths.size() - retainedCheckpoints)))
+        {
+            try
+            {
+                Files.deleteIfExists(checkpointPath);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("Could not delete old checkpoint " + checkpointPath, e);
+            }
+        }
+    }
+
+    private void deleteReplayedJournalSegments()
+    {
+        List<Path> checkpointPaths = LedgerCheckpoint.checkpointPaths(directory);
+        if (journalDirectory != null && !checkpointPaths.isEmpty())
+        {
+            JournalReader.deleteSegmentsThrough(journalDirectory,
+                                                LedgerCheckpoint.checkpointVersion(checkpointPaths.getFirst()));
+        }
+    }
+}
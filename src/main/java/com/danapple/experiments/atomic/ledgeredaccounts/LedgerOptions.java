@@ -0,0 +1,63 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+
+// How a Ledger, or each shard of a ShardedLedger, is set up: start from DEFAULT and replace what differs.
+// Without money, balances are BigDecimal; without a listener, nothing is told about changes.  With
+// balanceIndexed, every snapshot also carries a BalanceIndex, which AccountService can query.
+public record LedgerOptions(ContentionManager contentionManager,
+                            boolean combining,
+                            FixedPointMoney money,
+                            TransferListener listener,
+                            TransferMetrics metrics,
+                            boolean balanceIndexed)
+{
+    public final static LedgerOptions DEFAULT =
+            new LedgerOptions(ContentionManager.fixed(10), false, null, null, TransferMetrics.NOOP, false);
+
+    public LedgerOptions
+    {
+        if (contentionManager == null || metrics == null)
+        {
+            throw new RuntimeException("Ledger options need a contention manager and metrics");
+        }
+    }
+
+    public LedgerOptions withRetryCount(final int retryCount)
+    {
+        return withContentionManager(ContentionManager.fixed(retryCount));
+    }
+
+    public LedgerOptions withContentionManager(final ContentionManager newContentionManager)
+    {
+        return new LedgerOptions(newContentionManager, combining, money, listener, metrics, balanceIndexed);
+    }
+
+    public LedgerOptions withCombining(final boolean newCombining)
+    {
+        return new LedgerOptions(contentionManager, newCombining, money, listener, metrics, balanceIndexed);
+    }
+
+    public LedgerOptions withMoney(final FixedPointMoney newMoney)
+    {
+        return new LedgerOptions(contentionManager, combining, newMoney, listener, metrics, balanceIndexed);
+    }
+
+    public LedgerOptions withListener(final TransferListener newListener)
+    {
+        return new LedgerOptions(contentionManager, combining, money, newListener, metrics, balanceIndexed);
+    }
+
+    public LedgerOptions withMetrics(final TransferMetrics newMetrics)
+    {
+        return new LedgerOptions(contentionManager, combining, money, listener, newMetrics, balanceIndexed);
+    }
+
+    public LedgerOptions withBalanceIndexed(final boolean newBalanceIndexed)
+    {
+        return new LedgerOptions(contentionManager, combining, money, listener, metrics, newBalanceIndexed);
+    }
+}
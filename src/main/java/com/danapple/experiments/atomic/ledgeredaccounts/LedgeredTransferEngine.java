@@ -0,0 +1,73 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.workload.TransferEngine;
+import java.math.BigDecimal;
+
+// Lives in the ledgeredaccounts package so that it can seed opening balances, which has no public API.
+public final class LedgeredTransferEngine implements TransferEngine
+{
+    private final Ledger ledger;
+    private final TransferService transferService;
+    private final ReconciliationService reconciliationService;
+    private final String[] accountNumbers;
+
+    public LedgeredTransferEngine(final Ledger ledger, final int accountCount, final BigDecimal openingBalance)
+    {
+        this.ledger = ledger;
+        transferService = new TransferService(ledger);
+        reconciliationService = new ReconciliationService(ledger);
+        accountNumbers = new String[accountCount];
+        Accounts accounts = ledger.getSnapshot();
+        for (int i = 0; i < accountCount; i++)
+        {
+            accountNumbers[i] = "Account " + i;
+            accounts = accounts.newVersion(accounts.newAccount(accountNumbers[i]).adjustBalance(openingBalance));
+        }
+        if (!ledger.replaceSnapshot(ledger.getSnapshot(), accounts))
+        {
+            throw new RuntimeException("Ledger changed while it was being seeded");
+        }
+    }
+
+    @Override
+    public int getAccountCount()
+    {
+        return accountNumbers.length;
+    }
+
+    @Override
+    public boolean transfer(final int sourceAccount, final int destinationAccount, final BigDecimal transferAmount)
+    {
+        return transferService.transferBalance(accountNumbers[sourceAccount],
+                                               accountNumbers[destinationAccount],
+                                               transferAmount);
+    }
+
+    @Override
+    public boolean post(final int sourceAccount,
+                        final int firstDestinationAccount,
+                        final int secondDestinationAccount,
+                        final BigDecimal transferAmount)
+    {
+        throw new RuntimeException("The ledgered engine has no multi-leg postings");
+    }
+
+    @Override
+    public boolean supportsPostings()
+    {
+        return false;
+    }
+
+    @Override
+    public BigDecimal getBalance(final int account)
+    {
+        return ledger.getSnapshot().getAccount(accountNumbers[account]).getBalance();
+    }
+
+    // One snapshot holds every balance, so the total is consistent even while transfers carry on
+    @Override
+    public BigDecimal getTotalBalance()
+    {
+        return reconciliationService.reconcile().totalBalance();
+    }
+}
@@ -0,0 +1,21 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import java.math.BigDecimal;
+
+// Only one of delta and deltaUnits is used, depending on whether the Account holds fixed point money.
+record PendingAdjustment(BigDecimal delta,
+                         long deltaUnits,
+                         TransferState state)
+{
+    PendingAdjustment(final BigDecimal delta,
+                      final TransferState state)
+    {
+        this(delta, 0, state);
+    }
+
+    PendingAdjustment(final long deltaUnits,
+                      final TransferState state)
+    {
+        this(null, deltaUnits, state);
+    }
+}
@@ -0,0 +1,45 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.reconciliation.ReconciliationReport;
+import com.danapple.experiments.atomic.reconciliation.ReconciliationTally;
+import java.util.concurrent.ForkJoinPool;
+
+// Audits a single snapshot, so the report is consistent while transfers carry on, and splits the snapshot's
+// trie between the pool's threads.
+public class ReconciliationService
+{
+    private final Ledger ledger;
+    private final ForkJoinPool pool;
+
+    public ReconciliationService(final Ledger ledger)
+    {
+        this(ledger, ForkJoinPool.commonPool());
+    }
+
+    public ReconciliationService(final Ledger ledger, final ForkJoinPool pool)
+    {
+        this.ledger = ledger;
+        this.pool = pool;
+    }
+
+    public ReconciliationReport reconcile()
+    {
+        return reconcile(ledger.getSnapshot());
+    }
+
+    ReconciliationReport reconcile(final Accounts snapshot)
+    {
+        boolean fixedPoint = snapshot.getMoney() != null;
+        ReconciliationTally tally = snapshot.fold(pool, ReconciliationTally::new, (accountTally, account) -> {
+            if (fixedPoint)
+            {
+                accountTally.addBalanceUnits(account.getBalanceUnits(), account.getPendingCount());
+            }
+            else
+            {
+                accountTally.addBalance(account.getBalance(), account.getPendingCount());
+            }
+        }, ReconciliationTally::combine);
+        return tally.toReport(snapshot.getMoney());
+    }
+}
@@ -0,0 +1,27 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+public class ShardedAccountService
+{
+    private final ShardedLedger shardedLedger;
+    private final AccountService[] accountServices;
+
+    public ShardedAccountService(final ShardedLedger shardedLedger)
+    {
+        this.shardedLedger = shardedLedger;
+        accountServices = new AccountService[shardedLedger.getShardCount()];
+        for (int i = 0; i < accountServices.length; i++)
+        {
+            accountServices[i] = new AccountService(shardedLedger.getShard(i));
+        }
+    }
+
+    public boolean createAccount(final String accountNumber)
+    {
+        return accountServices[shardedLedger.getShardIndex(accountNumber)].createAccount(accountNumber);
+    }
+
+    public Account getAccount(final String accountNumber)
+    {
+        return accountServices[shardedLedger.getShardIndex(accountNumber)].getAccount(accountNumber);
+    }
+}
@@ -0,0 +1,75 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+
+// Accounts are hash-partitioned across independent Ledgers, so that transfers within a shard only contend
+// with other transfers in the same shard.  There is no snapshot which is consistent across shards.
+public class ShardedLedger
+{
+    private final Ledger[] shards;
+
+    public ShardedLedger(final int shardCount)
+    {
+        this(shardCount, 10);
+    }
+
+    public ShardedLedger(final int shardCount, final int retryCount)
+    {
+        this(shardCount, LedgerOptions.DEFAULT.withRetryCount(retryCount));
+    }
+
+    // Every shard is set up with the same options.  The shards share the ContentionManager, so an adaptive one
+    // tunes itself from all of them.  They also share the listener; a cross-shard transfer is reported by the
+    // source shard, with the version of its snapshot which took the pending debit.  Each shard numbers its own
+    // versions, so the sequences of different shards overlap and the listener cannot order them against each
+    // other.  A Journal of a ShardedLedger therefore cannot be recovered with LedgerCheckpoint, which replays
+    // one Ledger's versions; journal and checkpoint each shard on its own instead.
+    public ShardedLedger(final int shardCount, final LedgerOptions options)
+    {
+        if (shardCount <= 0)
+        {
+            throw new RuntimeException("Shard count " + shardCount + " must be positive");
+        }
+        shards = new Ledger[shardCount];
+        for (int i = 0; i < shardCount; i++)
+        {
+            shards[i] = new Ledger(options);
+        }
+    }
+
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    public int getRetryCount()
+    {
+        return shards[0].getRetryCount();
+    }
+
+    public TransferMetrics getMetrics()
+    {
+        return shards[0].getMetrics();
+    }
+
+    public FixedPointMoney getMoney()
+    {
+        return shards[0].getMoney();
+    }
+
+    int getShardIndex(final String accountNumber)
+    {
+        return Math.floorMod(accountNumber.hashCode(), shards.length);
+    }
+
+    Ledger getShard(final int shardIndex)
+    {
+        return shards[shardIndex];
+    }
+
+    Ledger getShard(final String accountNumber)
+    {
+        return shards[getShardIndex(accountNumber)];
+    }
+}
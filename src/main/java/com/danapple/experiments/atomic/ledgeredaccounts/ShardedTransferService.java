@@ -0,0 +1,181 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.dedup.TransferIdCache;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+
+// Transfers within a shard are a single compare-and-set, as in TransferService.  Transfers across shards
+// add a pending adjustment to each Account, one shard at a time, then complete the shared TransferState
+// so that both adjustments become part of their balances at the same moment.
+public class ShardedTransferService
+{
+    private final ShardedLedger shardedLedger;
+    private final TransferService[] transferServices;
+    private final TransferIdCache transferIds;
+
+    public ShardedTransferService(final ShardedLedger shardedLedger)
+    {
+        this(shardedLedger, new TransferIdCache());
+    }
+
+    // Every shard's TransferService shares the one TransferIdCache, so an id is remembered whichever shards
+    // the transfer touched
+    public ShardedTransferService(final ShardedLedger shardedLedger, final TransferIdCache transferIds)
+    {
+        this.shardedLedger = shardedLedger;
+        this.transferIds = transferIds;
+        transferServices = new TransferService[shardedLedger.getShardCount()];
+        for (int i = 0; i < transferServices.length; i++)
+        {
+            transferServices[i] = new TransferService(shardedLedger.getShard(i), transferIds);
+        }
+    }
+
+    public TransferIdCache getTransferIds()
+    {
+        return transferIds;
+    }
+
+    public boolean transferBalance(final String sourceAccountNumber,
+                                   final String destinationAccountNumber,
+                                   final BigDecimal transferAmount)
+    {
+        return transferBalance(null, sourceAccountNumber, destinationAccountNumber, transferAmount);
+    }
+
+    // A transfer with an id is made at most once while its id is remembered, as in TransferService
+    public boolean transferBalance(final String transferId,
+                                   final String sourceAccountNumber,
+                                   final String destinationAccountNumber,
+                                   final BigDecimal transferAmount)
+    {
+        int sourceShard = shardedLedger.getShardIndex(sourceAccountNumber);
+        int destinationShard = shardedLedger.getShardIndex(destinationAccountNumber);
+        if (sourceShard == destinationShard)
+        {
+            return transferServices[sourceShard].transferBalance(transferId,
+                                                                 sourceAccountNumber,
+                                                                 destinationAccountNumber,
+                                                                 transferAmount);
+        }
+        if (transferId == null)
+        {
+            return transferAcrossShardsMeasured(null,
+                                                sourceAccountNumber,
+                                                destinationAccountNumber,
+                                                transferAmount,
+                                                sourceShard,
+                                                destinationShard);
+        }
+        return transferIds.execute(transferId, () -> transferAcrossShardsMeasured(transferId,
+                                                                                  sourceAccountNumber,
+                                                                                  destinationAccountNumber,
+                                                                                  transferAmount,
+                                                                                  sourceShard,
+                                                                                  destinationShard));
+    }
+
+    private boolean transferAcrossShardsMeasured(final String transferId,
+                                                 final String sourceAccountNumber,
+                                                 final String destinationAccountNumber,
+                                                 final BigDecimal transferAmount,
+                                                 final int sourceShard,
+                                                 final int destinationShard)
+    {
+        TransferMetrics metrics = shardedLedger.getMetrics();
+        long startTime = metrics.startTime();
+        try
+        {
+            return transferAcrossShards(transferId, sourceAccountNumber, destinationAccountNumber, transferAmount,
+                                        sourceShard, destinationShard);
+        }
+        finally
+        {
+            metrics.recordTransferLatencySince(startTime);
+        }
+    }
+
+    private boolean transferAcrossShards(final String transferId,
+                                         final String sourceAccountNumber,
+                                         final String destinationAccountNumber,
+                                         final BigDecimal transferAmount,
+                                         final int sourceShard,
+                                         final int destinationShard)
+    {
+        if (transferAmount.compareTo(BigDecimal.ZERO) <= 0)
+        {
+            throw new RuntimeException("Transfer amount " + transferAmount + " must be positive");
+        }
+        FixedPointMoney money = shardedLedger.getMoney();
+        long transferUnits = money == null ? 0 : money.toUnits(transferAmount);
+        Ledger sourceLedger = shardedLedger.getShard(sourceShard);
+        Ledger destinationLedger = shardedLedger.getShard(destinationShard);
+        if (sourceLedger.getSnapshot().getAccount(sourceAccountNumber) == null)
+        {
+            throw new RuntimeException("Source account " + sourceAccountNumber + " does not exist");
+        }
+        if (destinationLedger.getSnapshot().getAccount(destinationAccountNumber) == null)
+        {
+            throw new RuntimeException("Destination account " + destinationAccountNumber + " does not exist");
+        }
+
+        TransferState sharedState = new TransferState();
+        PendingAdjustment sourceAdjustment = money == null
+                                             ? new PendingAdjustment(transferAmount.negate(), sharedState)
+                                             : new PendingAdjustment(-transferUnits, sharedState);
+        PendingAdjustment destinationAdjustment = money == null
+                                                  ? new PendingAdjustment(transferAmount, sharedState)
+                                                  : new PendingAdjustment(transferUnits, sharedState);
+        // Aborting after completing does nothing, so the state is aborted on every way out, a failure included,
+        // and no adjustment is ever left PENDING once this returns
+        try
+        {
+            long sourceVersion = addPendingAdjustment(sourceLedger, sourceAccountNumber, sourceAdjustment);
+            if (sourceVersion < 0
+                    || addPendingAdjustment(destinationLedger, destinationAccountNumber, destinationAdjustment) < 0
+                    || !sharedState.complete())
+            {
+                shardedLedger.getMetrics().transferAborted();
+                return false;
+            }
+            if (transferId != null)
+            {
+                transferIds.markCommitted(transferId);
+            }
+            // Ordered in the source shard by the snapshot which took the debit, so that a checkpoint of that
+            // shard from before the transfer still replays it
+            sourceLedger.transferCommitted(sourceVersion,
+                                           sourceAccountNumber,
+                                           destinationAccountNumber,
+                                           transferAmount,
+                                           transferUnits,
+                                           transferId);
+            return true;
+        }
+        finally
+        {
+            sharedState.abort();
+        }
+    }
+
+    // Returns the version of the snapshot which took the adjustment, or -1 if it could not be added
+    private long addPendingAdjustment(final Ledger ledger,
+                                      final String accountNumber,
+                                      final PendingAdjustment adjustment)
+    {
+        long[] version = new long[1];
+        boolean added = ledger.getContentionManager().retry(() -> {
+            Accounts startingAccounts = ledger.getSnapshot();
+            Account account = startingAccounts.getAccount(accountNumber);
+            Accounts newAccounts = startingAccounts.newVersion(account.addPendingAdjustment(adjustment));
+            if (!ledger.replaceSnapshot(startingAccounts, newAccounts))
+            {
+                return false;
+            }
+            version[0] = newAccounts.getVersion();
+            return true;
+        });
+        return added ? version[0] : -1;
+    }
+}
@@ -0,0 +1,261 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.dedup.TransferIdCache;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+// Flat combining: callers publish their transfers to a queue, and whichever caller wins the combiner flag
+// applies everything queued so far to a single new snapshot with one compare-and-set.  The other callers
+// wait for their own outcome, or become the combiner for the next batch.  A waiter spins only briefly before
+// parking, so that it never holds a carrier thread, which a parked virtual thread combiner may need, for long.
+// The combiner unparks each caller as it finishes its transfer, and on giving up the combiner flag unparks the
+// caller at the head of the queue to combine whatever arrived meanwhile.
+class TransferCombiner
+{
+    private final static int SPINS_BEFORE_PARKING = 64;
+
+    private final Ledger ledger;
+    private final ConcurrentLinkedQueue<PendingTransfer> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean combining = new AtomicBoolean();
+
+    TransferCombiner(final Ledger ledger)
+    {
+        this.ledger = ledger;
+    }
+
+    boolean transferBalance(final String transferId,
+                            final String sourceAccountNumber,
+                            final String destinationAccountNumber,
+                            final BigDecimal transferAmount,
+                            final long transferUnits,
+                            final TransferIdCache transferIds)
+    {
+        PendingTransfer pendingTransfer = new PendingTransfer(transferId,
+                                                              sourceAccountNumber,
+                                                              destinationAccountNumber,
+                                                              transferAmount,
+                                                              transferUnits);
+        queue.add(pendingTransfer);
+        int spins = 0;
+        while (!pendingTransfer.isDone())
+        {
+            if (combining.compareAndSet(false, true))
+            {
+                try
+                {
+                    combine();
+                }
+                finally
+                {
+                    combining.set(false);
+                    // Anything queued after the batch was taken waits for a combiner, and its caller may be parked
+                    PendingTransfer next = queue.peek();
+                    if (next != null)
+                    {
+                        LockSupport.unpark(next.waiter);
+                    }
+                }
+            }
+            else if (spins < SPINS_BEFORE_PARKING)
+            {
+                spins++;
+                Thread.onSpinWait();
+            }
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+        // A transfer whose listener failed was still made, and its id must be remembered before the failure is thrown
+        if (transferId != null && pendingTransfer.isCommitted())
+        {
+            transferIds.markCommitted(transferId);
+        }
+        return pendingTransfer.getOutcome();
+    }
+
+    private void combine()
+    {
+        List<PendingTransfer> batch = new ArrayList<>();
+        PendingTransfer pendingTransfer;
+        while ((pendingTransfer = queue.poll()) != null)
+        {
+            batch.add(pendingTransfer);
+        }
+        // Every other caller in the batch waits for its own transfer to be finished, so whatever happens here,
+        // none may be left unfinished
+        try
+        {
+            combine(batch);
+        }
+        finally
+        {
+            for (PendingTransfer transfer : batch)
+            {
+                if (!transfer.isDone())
+                {
+                    transfer.finish(false, null);
+                }
+            }
+        }
+    }
+
+    private void combine(final List<PendingTransfer> batch)
+    {
+        RuntimeException[] failures = new RuntimeException[batch.size()];
+        Accounts[] newAccounts = new Accounts[1];
+        ContentionManager contentionManager = ledger.getContentionManager();
+        boolean applied = contentionManager.retry(() -> {
+            newAccounts[0] = applyBatch(batch, failures);
+            return newAccounts[0] != null;
+        });
+        if (!applied)
+        {
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++)
+        {
+            PendingTransfer transfer = batch.get(i);
+            if (failures[i] == null)
+            {
+                // Committed, but its caller hears of a listener failure, as it would without combining
+                transfer.committed = true;
+                try
+                {
+                    ledger.transferCommitted(newAccounts[0].getVersion(),
+                                             transfer.sourceAccountNumber,
+                                             transfer.destinationAccountNumber,
+                                             transfer.transferAmount,
+                                             transfer.transferUnits,
+                                             transfer.transferId);
+                }
+                catch (RuntimeException e)
+                {
+                    failures[i] = e;
+                }
+            }
+            transfer.finish(failures[i] == null, failures[i]);
+        }
+    }
+
+    // Returns the snapshot the batch was committed in, or null if another change got there first
+    private Accounts applyBatch(final List<PendingTransfer> batch,
+                                final RuntimeException[] failures)
+    {
+        Accounts startingAccounts = ledger.getSnapshot();
+        Map<String, Account> changedAccounts = new HashMap<>();
+
+        for (int i = 0; i < batch.size(); i++)
+        {
+            PendingTransfer transfer = batch.get(i);
+            Account sourceAccount = findAccount(startingAccounts, changedAccounts, transfer.sourceAccountNumber);
+            if (sourceAccount == null)
+            {
+                failures[i] = new RuntimeException("Source account " + transfer.sourceAccountNumber
+                                                           + " does not exist");
+                continue;
+            }
+            Account destinationAccount = findAccount(startingAccounts,
+                                                     changedAccounts,
+                                                     transfer.destinationAccountNumber);
+            if (destinationAccount == null)
+            {
+                failures[i] = new RuntimeException("Destination account " + transfer.destinationAccountNumber
+                                                           + " does not exist");
+                continue;
+            }
+            // Both sides are computed before either is kept, so a transfer which overflows changes nothing
+            try
+            {
+                Account newSourceAccount = sourceAccount.debit(transfer.transferAmount, transfer.transferUnits);
+                Account newDestinationAccount = destinationAccount.credit(transfer.transferAmount,
+                                                                          transfer.transferUnits);
+                changedAccounts.put(transfer.sourceAccountNumber, newSourceAccount);
+                changedAccounts.put(transfer.destinationAccountNumber, newDestinationAccount);
+                failures[i] = null;
+            }
+            catch (RuntimeException e)
+            {
+                failures[i] = e;
+            }
+        }
+
+        if (changedAccounts.isEmpty())
+        {
+            return startingAccounts;
+        }
+        Accounts newAccounts = startingAccounts.newVersion(changedAccounts.values().toArray(new Account[0]));
+        return ledger.replaceSnapshot(startingAccounts, newAccounts) ? newAccounts : null;
+    }
+
+    private static Account findAccount(final Accounts startingAccounts,
+                                       final Map<String, Account> changedAccounts,
+                                       final String accountNumber)
+    {
+        Account account = changedAccounts.get(accountNumber);
+        return account != null ? account : startingAccounts.getAccount(accountNumber);
+    }
+
+    private static class PendingTransfer
+    {
+        private final String transferId;
+        private final String sourceAccountNumber;
+        private final String destinationAccountNumber;
+        private final BigDecimal transferAmount;
+        private final long transferUnits;
+        private final Thread waiter = Thread.currentThread();
+
+        private boolean transferred;
+        // Set before the listener is told, so it stays true if the listener fails
+        private boolean committed;
+        private RuntimeException failure;
+        private volatile boolean done;
+
+        PendingTransfer(final String transferId,
+                        final String sourceAccountNumber,
+                        final String destinationAccountNumber,
+                        final BigDecimal transferAmount,
+                        final long transferUnits)
+        {
+            this.transferId = transferId;
+            this.sourceAccountNumber = sourceAccountNumber;
+            this.destinationAccountNumber = destinationAccountNumber;
+            this.transferAmount = transferAmount;
+            this.transferUnits = transferUnits;
+        }
+
+        void finish(final boolean transferred, final RuntimeException failure)
+        {
+            this.transferred = transferred;
+            this.failure = failure;
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+
+        boolean isDone()
+        {
+            return done;
+        }
+
+        boolean isCommitted()
+        {
+            return committed;
+        }
+
+        boolean getOutcome()
+        {
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return transferred;
+        }
+    }
+}
@@ -1,44 +1,160 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
+import com.danapple.experiments.atomic.dedup.TransferIdCache;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
 
 public class TransferService
 {
     private final Ledger ledger;
+    private final TransferIdCache transferIds;
 
     public TransferService(final Ledger ledger)
+    {
+        this(ledger, new TransferIdCache());
+    }
+
+    // Services sharing a Ledger should share its TransferIdCache too, or a repeat through another one runs again
+    public TransferService(final Ledger ledger, final TransferIdCache transferIds)
     {
         this.ledger = ledger;
+        this.transferIds = transferIds;
+    }
+
+    public TransferIdCache getTransferIds()
+    {
+        return transferIds;
     }
 
     public boolean transferBalance(final String sourceAccountNumber,
                                    final String destinationAccountNumber,
                                    final BigDecimal transferAmount)
     {
+        return transferBalance(null, sourceAccountNumber, destinationAccountNumber, transferAmount);
+    }
+
+    // A transfer with an id is made at most once while its id is remembered, and a repeat returns the first
+    // outcome.  The id is passed on to the listener.
+    public boolean transferBalance(final String transferId,
+                                   final String sourceAccountNumber,
+                                   final String destinationAccountNumber,
+                                   final BigDecimal transferAmount)
+    {
+        FixedPointMoney money = ledger.getMoney();
+        if (money != null)
+        {
+            return transferBalance(transferId,
+                                   sourceAccountNumber,
+                                   destinationAccountNumber,
+                                   money.toUnits(transferAmount));
+        }
         if (transferAmount.compareTo(BigDecimal.ZERO) <= 0)
         {
             throw new RuntimeException("Transfer amount " + transferAmount + " must be positive");
         }
+        return transferBalance(transferId, sourceAccountNumber, destinationAccountNumber, transferAmount, 0);
+    }
+
+    // For a Ledger holding fixed point money, with the amount already in units
+    public boolean transferBalance(final String sourceAccountNumber,
+                                   final String destinationAccountNumber,
+                                   final long transferUnits)
+    {
+        return transferBalance(null, sourceAccountNumber, destinationAccountNumber, transferUnits);
+    }
+
+    public boolean transferBalance(final String transferId,
+                                   final String sourceAccountNumber,
+                                   final String destinationAccountNumber,
+                                   final long transferUnits)
+    {
+        if (ledger.getMoney() == null)
+        {
+            throw new RuntimeException("Ledger does not hold fixed point money");
+        }
+        if (transferUnits <= 0)
+        {
+            throw new RuntimeException("Transfer amount " + transferUnits + " units must be positive");
+        }
+        return transferBalance(transferId, sourceAccountNumber, destinationAccountNumber, null, transferUnits);
+    }
+
+    private boolean transferBalance(final String transferId,
+                                    final String sourceAccountNumber,
+                                    final String destinationAccountNumber,
+                                    final BigDecimal transferAmount,
+                                    final long transferUnits)
+    {
         if (sourceAccountNumber.equals(destinationAccountNumber))
         {
             throw new RuntimeException("May not transfer back to the same account " + sourceAccountNumber);
         }
+        if (transferId == null)
+        {
+            return transferBalanceMeasured(null,
+                                           sourceAccountNumber,
+                                           destinationAccountNumber,
+                                           transferAmount,
+                                           transferUnits);
+        }
+        return transferIds.execute(transferId, () -> transferBalanceMeasured(transferId,
+                                                                             sourceAccountNumber,
+                                                                             destinationAccountNumber,
+                                                                             transferAmount,
+                                                                             transferUnits));
+    }
+
+    private boolean transferBalanceMeasured(final String transferId,
+                                            final String sourceAccountNumber,
+                                            final String destinationAccountNumber,
+                                            final BigDecimal transferAmount,
+                                            final long transferUnits)
+    {
+        TransferMetrics metrics = ledger.getMetrics();
+        long startTime = metrics.startTime();
+        try
+        {
+            return transferBalanceTimed(transferId,
+                                        sourceAccountNumber,
+                                        destinationAccountNumber,
+                                        transferAmount,
+                                        transferUnits);
+        }
+        finally
+        {
+            metrics.recordTransferLatencySince(startTime);
+        }
+    }
 
-        int retries = 0;
-        while (retries++ < ledger.getRetryCount())
+    private boolean transferBalanceTimed(final String transferId,
+                                         final String sourceAccountNumber,
+                                         final String destinationAccountNumber,
+                                         final BigDecimal transferAmount,
+                                         final long transferUnits)
+    {
+        if (ledger.isCombining())
         {
-            if (transferBalanceAtomic(sourceAccountNumber,
-                                      destinationAccountNumber,
-                                      transferAmount)) {
-                return true;
-            }
+            return ledger.getCombiner().transferBalance(transferId,
+                                                        sourceAccountNumber,
+                                                        destinationAccountNumber,
+                                                        transferAmount,
+                                                        transferUnits,
+                                                        transferIds);
         }
-        return false;
+
+        return ledger.getContentionManager().retry(() -> transferBalanceAtomic(transferId,
+                                                                               sourceAccountNumber,
+                                                                               destinationAccountNumber,
+                                                                               transferAmount,
+                                                                               transferUnits));
     }
 
-    private boolean transferBalanceAtomic(final String sourceAccountNumber,
+    private boolean transferBalanceAtomic(final String transferId,
+                                          final String sourceAccountNumber,
                                           final String destinationAccountNumber,
-                                          final BigDecimal transferAmount)
+                                          final BigDecimal transferAmount,
+                                          final long transferUnits)
     {
         Accounts startingAccounts = ledger.getSnapshot();
 
@@ -53,12 +169,26 @@ public class TransferService
             throw new RuntimeException("Destination account " + destinationAccountNumber + " does not exist");
         }
 
-        Account newSourceAccount = sourceAccount.adjustBalance(transferAmount.negate());
-        Account newDestinationAccount = destinationAccount.adjustBalance(transferAmount);
+        Account newSourceAccount = sourceAccount.debit(transferAmount, transferUnits);
+        Account newDestinationAccount = destinationAccount.credit(transferAmount, transferUnits);
 
         Accounts newAccounts = startingAccounts.newVersion(newSourceAccount, newDestinationAccount);
 
-        return ledger.replaceSnapshot(startingAccounts, newAccounts);
+        if (!ledger.replaceSnapshot(startingAccounts, newAccounts))
+        {
+            return false;
+        }
+        if (transferId != null)
+        {
+            transferIds.markCommitted(transferId);
+        }
+        ledger.transferCommitted(newAccounts.getVersion(),
+                                 sourceAccountNumber,
+                                 destinationAccountNumber,
+                                 transferAmount,
+                                 transferUnits,
+                                 transferId);
+        return true;
     }
 
 }
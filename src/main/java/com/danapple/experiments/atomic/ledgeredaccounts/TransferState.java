@@ -0,0 +1,35 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static com.danapple.experiments.atomic.ledgeredaccounts.TransferStatus.ABORTED;
+import static com.danapple.experiments.atomic.ledgeredaccounts.TransferStatus.COMPLETE;
+import static com.danapple.experiments.atomic.ledgeredaccounts.TransferStatus.PENDING;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Shared by the two pending adjustments of a transfer across shards, so that completing it makes both count
+// at once.  Unlike a loggedaccounts BalanceLogState it needs no commit epoch, as there are no ReadViews, and
+// no reaper, as the transfer which created it always completes or aborts it before returning.
+class TransferState
+{
+    private final AtomicReference<TransferStatus> status;
+
+    TransferState()
+    {
+        status = new AtomicReference<>(PENDING);
+    }
+
+    TransferStatus getStatus()
+    {
+        return status.get();
+    }
+
+    boolean abort()
+    {
+        return status.compareAndSet(PENDING, ABORTED);
+    }
+
+    boolean complete()
+    {
+        return status.compareAndSet(PENDING, COMPLETE);
+    }
+}
@@ -0,0 +1,8 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+enum TransferStatus
+{
+    PENDING,
+    COMPLETE,
+    ABORTED
+}
@@ -1,17 +1,77 @@
 package com.danapple.experiments.atomic.loggedaccounts;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
+// An Account which many transfers credit at once can be striped, in the manner of LongAdder: credits then
+// land on one of several sub-balances, picked by thread, and move on to another if they lose a
+// compare-and-set there, while debits stay on the primary Balance, whose compare-and-set still orders
+// them against each other.  Credits only ever add to the total, so a debit checked against the sum of
+// all the sub-balances cannot overdraw it.  An Account promotes itself once its credits have lost enough
+// compare-and-sets on the primary Balance.
+//
+// A credit never fails: if it also loses the compare-and-set on the sub-balance it tried, it is pushed onto a
+// CreditInbox, which cannot fail, and folded into the primary Balance when that is next flattened.  Reads and
+// debit checks add the inbox credits which the primary Balance has not yet folded.
 public class Account
 {
+    private final static int PROMOTION_FAILURES = 16;
+    private final static int STRIPE_COUNT =
+            Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1) << 1);
+    private final static VarHandle STRIPES;
+    private final static VarHandle DIRTY;
+
+    static
+    {
+        try
+        {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STRIPES = lookup.findVarHandle(Account.class, "stripes", AtomicReferenceArray.class);
+            DIRTY = lookup.findVarHandle(Account.class, "dirty", boolean.class);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
     private final String accountNumber;
+    private final FixedPointMoney money;
     private final AtomicReference<Balance> balance;
+    private final LogCompactor compactor;
+    private final CreditInbox creditInbox = new CreditInbox();
+    private volatile AtomicReferenceArray<Balance> stripes;
+    private final AtomicInteger creditFailures = new AtomicInteger();
+    // Only the write which makes the Account dirty hands it to the compactor; later writes just read the flag
+    private volatile boolean dirty;
 
     public Account(final String accountNumber)
+    {
+        this(accountNumber, null);
+    }
+
+    // With money, the balance and its log hold long counts of units and BigDecimal is only used at the edges
+    public Account(final String accountNumber, final FixedPointMoney money)
+    {
+        this(accountNumber, money, null);
+    }
+
+    // With a compactor, reading the balance no longer flattens the log; the compactor does that in the background
+    public Account(final String accountNumber, final FixedPointMoney money, final LogCompactor compactor)
     {
         this.accountNumber = accountNumber;
-        this.balance = new AtomicReference<>(new Balance(BigDecimal.ZERO));
+        this.money = money;
+        this.balance = new AtomicReference<>(money == null ? new Balance(BigDecimal.ZERO) : new Balance(money, 0));
+        this.compactor = compactor;
     }
 
     public String getAccountNumber()
@@ -19,6 +79,11 @@ public class Account
         return accountNumber;
     }
 
+    public FixedPointMoney getMoney()
+    {
+        return money;
+    }
+
     // Coverage ignores this method if it is lower in the class.  Weird, but I want 100% coverage :-)
     Balance getRawBalance()
     {
@@ -27,29 +92,368 @@ public class Account
 
     public BigDecimal getBalance()
     {
-        Balance oldBalance = balance.get();
-        Balance newBalance = oldBalance.flattenLog();
-        balance.compareAndSet(oldBalance, newBalance);
-        return oldBalance.getBalanceValue();
+        if (money != null)
+        {
+            return money.toBigDecimal(getBalanceUnits());
+        }
+        return addStripeValues(readPrimaryValue(CreditInbox.LATEST), true, Balance::getBalanceValue);
+    }
+
+    public long getBalanceUnits()
+    {
+        return addStripes(readPrimaryUnits(CreditInbox.LATEST), true, Balance::getBalanceUnits);
+    }
+
+    public boolean isStriped()
+    {
+        return stripes != null;
+    }
+
+    // Existing entries stay on the primary Balance; only later credits are spread over the stripes
+    public void promoteToStriped()
+    {
+        if (stripes != null)
+        {
+            return;
+        }
+        AtomicReferenceArray<Balance> newStripes = new AtomicReferenceArray<>(STRIPE_COUNT);
+        for (int i = 0; i < STRIPE_COUNT; i++)
+        {
+            newStripes.set(i, money == null ? new Balance(BigDecimal.ZERO) : new Balance(money, 0));
+        }
+        // Of promotions racing each other only one publishes its stripes; the others are dropped unused
+        STRIPES.compareAndSet(this, null, newStripes);
+    }
+
+    BigDecimal getBalanceValueAt(final long viewEpoch)
+    {
+        if (money != null)
+        {
+            return money.toBigDecimal(getBalanceUnitsAt(viewEpoch));
+        }
+        return addStripeValues(readPrimaryValue(viewEpoch), false, stripe -> stripe.getBalanceValueAt(viewEpoch));
+    }
+
+    long getBalanceUnitsAt(final long viewEpoch)
+    {
+        return addStripes(readPrimaryUnits(viewEpoch), false, stripe -> stripe.getBalanceUnitsAt(viewEpoch));
+    }
+
+    // Entries added since each Balance was last flattened, across the primary Balance, its inbox and any stripes
+    int getLogLength()
+    {
+        Balance primaryBalance = balance.get();
+        int logLength = primaryBalance.getLogLength() + creditInbox.countAbove(primaryBalance.getFoldedCredit());
+        return (int) addStripes(logLength, false, Balance::getLogLength);
+    }
+
+    // Entries whose transfer has neither completed nor aborted yet
+    int getPendingCount()
+    {
+        Balance primaryBalance = balance.get();
+        int pendingCount = primaryBalance.getPendingCount()
+                + creditInbox.countPendingAbove(primaryBalance.getFoldedCredit());
+        return (int) addStripes(pendingCount, false, Balance::getPendingCount);
     }
 
     boolean adjustBalance(final BigDecimal adjustment,
                           final BalanceLogState sharedState)
     {
+        if (money != null)
+        {
+            return adjustBalanceUnits(money.toUnits(adjustment), sharedState);
+        }
+        BalanceLogEntry logEntry = new BalanceLogEntry(adjustment, sharedState);
+        if (adjustment.compareTo(BigDecimal.ZERO) >= 0)
+        {
+            return credit(logEntry);
+        }
+
+        Balance oldBalance = balance.get();
+        BigDecimal credits = creditInbox.sumValue(oldBalance.getFoldedCredit(), CreditInbox.LATEST);
+        if (credits == null)
+        {
+            // The primary Balance has been flattened since it was read, so the compare-and-set would fail anyway
+            return false;
+        }
+        BigDecimal oldBalanceValue = addStripeValues(oldBalance.getBalanceValue().add(credits),
+                                                     false,
+                                                     Balance::getBalanceValue);
+        if (adjustment.abs().compareTo(oldBalanceValue) > 0)
+        {
+            throw new RuntimeException("Account " + accountNumber +
+                                               " has insufficient balance (" + oldBalanceValue +
+                                               " ) for withdrawal of " + adjustment);
+        }
+        return replaceBalance(oldBalance, oldBalance.addLogEntry(logEntry));
+    }
+
+    boolean adjustBalanceUnits(final long adjustmentUnits,
+                               final BalanceLogState sharedState)
+    {
+        BalanceLogEntry logEntry = new BalanceLogEntry(adjustmentUnits, sharedState);
+        if (adjustmentUnits >= 0)
+        {
+            credit(logEntry);
+            requireCeilingFits(sharedState);
+            return true;
+        }
+
         Balance oldBalance = balance.get();
-        if (adjustment.compareTo(BigDecimal.ZERO) < 0)
+        long credits = creditInbox.sumUnits(oldBalance.getFoldedCredit(), CreditInbox.LATEST);
+        if (credits < 0)
         {
-            BigDecimal oldBalanceValue = oldBalance.getBalanceValue();
-            if (adjustment.abs().compareTo(oldBalanceValue) > 0)
+            return false;
+        }
+        long oldBalanceUnits = addStripes(FixedPointMoney.add(oldBalance.getBalanceUnits(), credits),
+                                          false,
+                                          Balance::getBalanceUnits);
+        if (FixedPointMoney.add(oldBalanceUnits, adjustmentUnits) < 0)
+        {
+            throw new RuntimeException("Account " + accountNumber +
+                                               " has insufficient balance (" + oldBalanceUnits +
+                                               " units) for withdrawal of " + adjustmentUnits + " units");
+        }
+        return replaceBalance(oldBalance, oldBalance.addLogEntry(logEntry));
+    }
+
+    // Returns true if every log was flattened and no entries are left waiting to be settled
+    boolean compact()
+    {
+        Balance oldPrimary = balance.get();
+        Balance newPrimary = flattenPrimary(oldPrimary);
+        boolean compacted = newPrimary != null
+                && replaceFlattened(oldPrimary, newPrimary)
+                && newPrimary.getUnsettledCount() == 0;
+        AtomicReferenceArray<Balance> currentStripes = stripes;
+        if (currentStripes != null)
+        {
+            for (int i = 0; i < currentStripes.length(); i++)
             {
-                throw new RuntimeException("Account " + accountNumber +
-                                                   " has insufficient balance (" + oldBalanceValue +
-                                                   " ) for withdrawal of " + adjustment);
+                Balance oldBalance = currentStripes.get(i);
+                Balance newBalance = oldBalance.flattenLog();
+                compacted &= currentStripes.compareAndSet(i, oldBalance, newBalance)
+                        && newBalance.getUnsettledCount() == 0;
             }
         }
+        return compacted;
+    }
+
+    // Called when a credit loses the compare-and-set on the primary Balance
+    void creditFailed()
+    {
+        if (creditFailures.incrementAndGet() >= PROMOTION_FAILURES)
+        {
+            promoteToStriped();
+        }
+    }
 
-        BalanceLogEntry logEntry = new BalanceLogEntry(adjustment, sharedState, System.currentTimeMillis());
-        Balance newBalance = oldBalance.addLogEntry(logEntry);
-        return balance.compareAndSet(oldBalance, newBalance);
+    private boolean credit(final BalanceLogEntry logEntry)
+    {
+        AtomicReferenceArray<Balance> currentStripes = stripes;
+        if (currentStripes == null)
+        {
+            Balance oldBalance = balance.get();
+            if (!replaceBalance(oldBalance, oldBalance.addLogEntry(logEntry)))
+            {
+                creditFailed();
+                pushCredit(logEntry);
+            }
+            return true;
+        }
+        int mask = currentStripes.length() - 1;
+        int first = (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> 32);
+        for (int i = 0; i <= mask; i++)
+        {
+            int index = (first + i) & mask;
+            Balance oldBalance = currentStripes.get(index);
+            if (currentStripes.compareAndSet(index, oldBalance, oldBalance.addLogEntry(logEntry)))
+            {
+                markDirty();
+                return true;
+            }
+        }
+        pushCredit(logEntry);
+        return true;
+    }
+
+    private void pushCredit(final BalanceLogEntry logEntry)
+    {
+        creditInbox.push(logEntry);
+        markDirty();
+    }
+
+    // A credit which could take the balance past Long.MAX_VALUE units would make every later read of the balance
+    // overflow, so it is aborted before its transfer can complete.  The check is made once the credit is entered:
+    // of two credits racing past the limit, each sees the other as pending, so neither can complete unchecked,
+    // though both may be refused.
+    private void requireCeilingFits(final BalanceLogState sharedState)
+    {
+        try
+        {
+            while (true)
+            {
+                Balance primaryBalance = balance.get();
+                long credits = creditInbox.sumUnits(primaryBalance.getFoldedCredit(), CreditInbox.CEILING);
+                if (credits >= 0)
+                {
+                    addStripes(FixedPointMoney.add(primaryBalance.getCeilingUnits(), credits),
+                               false,
+                               Balance::getCeilingUnits);
+                    return;
+                }
+            }
+        }
+        catch (RuntimeException e)
+        {
+            sharedState.abort();
+            throw e;
+        }
+    }
+
+    // Adds every stripe to a total already taken from the primary Balance and its inbox, which callers each read
+    // in their own way
+    private long addStripes(final long primaryTotal,
+                            final boolean flatten,
+                            final ToLongFunction<Balance> stripeTotal)
+    {
+        long total = primaryTotal;
+        AtomicReferenceArray<Balance> currentStripes = stripes;
+        if (currentStripes != null)
+        {
+            for (int i = 0; i < currentStripes.length(); i++)
+            {
+                Balance stripe = flatten ? readStripe(currentStripes, i) : currentStripes.get(i);
+                total = FixedPointMoney.add(total, stripeTotal.applyAsLong(stripe));
+            }
+        }
+        return total;
+    }
+
+    private BigDecimal addStripeValues(final BigDecimal primaryTotal,
+                                       final boolean flatten,
+                                       final Function<Balance, BigDecimal> stripeTotal)
+    {
+        BigDecimal total = primaryTotal;
+        AtomicReferenceArray<Balance> currentStripes = stripes;
+        if (currentStripes != null)
+        {
+            for (int i = 0; i < currentStripes.length(); i++)
+            {
+                Balance stripe = flatten ? readStripe(currentStripes, i) : currentStripes.get(i);
+                total = total.add(stripeTotal.apply(stripe));
+            }
+        }
+        return total;
+    }
+
+    // A reader whose Balance has been flattened while it walked the inbox has to start again from the new one
+    private BigDecimal readPrimaryValue(final long viewEpoch)
+    {
+        while (true)
+        {
+            Balance primaryBalance = readPrimary();
+            BigDecimal credits = creditInbox.sumValue(primaryBalance.getFoldedCredit(), viewEpoch);
+            if (credits != null)
+            {
+                return credits.add(viewEpoch == CreditInbox.LATEST
+                                           ? primaryBalance.getBalanceValue()
+                                           : primaryBalance.getBalanceValueAt(viewEpoch));
+            }
+        }
+    }
+
+    private long readPrimaryUnits(final long viewEpoch)
+    {
+        while (true)
+        {
+            Balance primaryBalance = readPrimary();
+            long credits = creditInbox.sumUnits(primaryBalance.getFoldedCredit(), viewEpoch);
+            if (credits >= 0)
+            {
+                return FixedPointMoney.add(credits, viewEpoch == CreditInbox.LATEST
+                                                    ? primaryBalance.getBalanceUnits()
+                                                    : primaryBalance.getBalanceUnitsAt(viewEpoch));
+            }
+        }
+    }
+
+    // Flattening releases the inbox nodes below the new fold, so the reader must go on with the Balance which
+    // was installed, not the one it started from
+    private Balance readPrimary()
+    {
+        Balance oldBalance = balance.get();
+        if (compactor == null)
+        {
+            Balance newBalance = flattenPrimary(oldBalance);
+            if (newBalance != null)
+            {
+                return replaceFlattened(oldBalance, newBalance) ? newBalance : balance.get();
+            }
+        }
+        return oldBalance;
+    }
+
+    // Returns null if the inbox has already been folded past oldBalance
+    private Balance flattenPrimary(final Balance oldBalance)
+    {
+        List<BalanceLogEntry> credits = new ArrayList<>();
+        CreditInbox.Node newest = creditInbox.collect(oldBalance.getFoldedCredit(), credits);
+        if (newest == null)
+        {
+            return null;
+        }
+        if (credits.isEmpty())
+        {
+            return oldBalance.flattenLog();
+        }
+        return oldBalance.foldCredits(credits, newest).flattenLog();
+    }
+
+    private boolean replaceFlattened(final Balance oldBalance, final Balance newBalance)
+    {
+        if (!balance.compareAndSet(oldBalance, newBalance))
+        {
+            return false;
+        }
+        if (newBalance.getFoldedCredit() != oldBalance.getFoldedCredit())
+        {
+            CreditInbox.release(newBalance.getFoldedCredit());
+        }
+        return true;
+    }
+
+    private Balance readStripe(final AtomicReferenceArray<Balance> currentStripes, final int index)
+    {
+        Balance oldBalance = currentStripes.get(index);
+        if (compactor == null)
+        {
+            currentStripes.compareAndSet(index, oldBalance, oldBalance.flattenLog());
+        }
+        return oldBalance;
+    }
+
+    private boolean replaceBalance(final Balance oldBalance, final Balance newBalance)
+    {
+        if (!balance.compareAndSet(oldBalance, newBalance))
+        {
+            return false;
+        }
+        markDirty();
+        return true;
+    }
+
+    void markDirty()
+    {
+        if (compactor != null && !dirty && DIRTY.compareAndSet(this, false, true))
+        {
+            compactor.markDirty(this);
+        }
+    }
+
+    // Called by the compactor before it flattens, so that an entry added during the flatten marks it dirty again
+    void clearDirty()
+    {
+        dirty = false;
     }
 }
@@ -0,0 +1,165 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Registers loggedaccounts Accounts by account number.  Each account number is interned to a dense int id,
+// and Accounts are held in pages indexed by id, so callers can keep ids rather than strings and a full scan
+// walks arrays instead of hash buckets.  Lookups never lock; creation claims an id with an atomic increment
+// and publishes it with putIfAbsent, and only then fills the Account into its slot.
+public class AccountDirectory
+{
+    private final static int PAGE_BITS = 16;
+    private final static int PAGE_SIZE = 1 << PAGE_BITS;
+    private final static int PAGE_MASK = PAGE_SIZE - 1;
+    private final static int MAX_PAGES = 1 << (Integer.SIZE - 1 - PAGE_BITS);
+    // Fills the slot of an id claimed by a creation which then lost to a concurrent creation of the same number
+    private final static Account VACANT = new Account("");
+
+    private final FixedPointMoney money;
+    private final LogCompactor compactor;
+    private final TransferListener listener;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<AtomicReferenceArray<Account>> pages = new AtomicReferenceArray<>(MAX_PAGES);
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public AccountDirectory()
+    {
+        this(null);
+    }
+
+    public AccountDirectory(final FixedPointMoney money)
+    {
+        this(money, null);
+    }
+
+    public AccountDirectory(final FixedPointMoney money, final LogCompactor compactor)
+    {
+        this(money, compactor, null);
+    }
+
+    // Every Account created here holds the same money and shares the compactor; creations are reported to the
+    // listener with sequence 0
+    public AccountDirectory(final FixedPointMoney money, final LogCompactor compactor, final TransferListener listener)
+    {
+        this.money = money;
+        this.compactor = compactor;
+        this.listener = listener;
+    }
+
+    public FixedPointMoney getMoney()
+    {
+        return money;
+    }
+
+    public Account createAccount(final String accountNumber)
+    {
+        if (ids.containsKey(accountNumber))
+        {
+            throw new RuntimeException("Account " + accountNumber + " already exists");
+        }
+        int id = nextId.getAndIncrement();
+        if (id < 0)
+        {
+            throw new RuntimeException("Account directory is full");
+        }
+        if (ids.putIfAbsent(accountNumber, id) != null)
+        {
+            page(id).set(id & PAGE_MASK, VACANT);
+            throw new RuntimeException("Account " + accountNumber + " already exists");
+        }
+        Account account = new Account(accountNumber, money, compactor);
+        page(id).set(id & PAGE_MASK, account);
+        if (listener != null)
+        {
+            listener.accountCreated(0, accountNumber);
+        }
+        return account;
+    }
+
+    public Account getAccount(final String accountNumber)
+    {
+        Integer id = ids.get(accountNumber);
+        return id == null ? null : getAccount(id);
+    }
+
+    // Returns -1 if there is no such account
+    public int getId(final String accountNumber)
+    {
+        Integer id = ids.get(accountNumber);
+        return id == null ? -1 : id;
+    }
+
+    public Account getAccount(final int id)
+    {
+        if (id < 0 || id >= getIdLimit())
+        {
+            return null;
+        }
+        AtomicReferenceArray<Account> page = page(id);
+        Account account;
+        // Every claimed id has its slot filled straight after it is published, so wait out the gap
+        while ((account = page.get(id & PAGE_MASK)) == null)
+        {
+            Thread.onSpinWait();
+        }
+        return account == VACANT ? null : account;
+    }
+
+    public int size()
+    {
+        return ids.size();
+    }
+
+    // Visits Accounts in id order, which is creation order.  Accounts created during the scan may be missed.
+    public void forEach(final Consumer<Account> action)
+    {
+        forEach(0, getIdLimit(), action);
+    }
+
+    // Visits the Accounts with ids from fromId inclusive to toId exclusive, so that separate ranges can be
+    // scanned by separate threads
+    void forEach(final int fromId, final int toId, final Consumer<Account> action)
+    {
+        for (int pageStart = fromId & ~PAGE_MASK; pageStart < toId && pageStart >= 0; pageStart += PAGE_SIZE)
+        {
+            AtomicReferenceArray<Account> page = pages.get(pageStart >>> PAGE_BITS);
+            if (page == null)
+            {
+                continue;
+            }
+            int slotLimit = Math.min(PAGE_SIZE, toId - pageStart);
+            for (int slot = Math.max(0, fromId - pageStart); slot < slotLimit; slot++)
+            {
+                Account account = page.get(slot);
+                if (account != null && account != VACANT)
+                {
+                    action.accept(account);
+                }
+            }
+        }
+    }
+
+    // Once every id has been claimed the counter wraps negative, and no further creations succeed
+    int getIdLimit()
+    {
+        int idLimit = nextId.get();
+        return idLimit < 0 ? Integer.MAX_VALUE : idLimit;
+    }
+
+    private AtomicReferenceArray<Account> page(final int id)
+    {
+        int pageIndex = id >>> PAGE_BITS;
+        AtomicReferenceArray<Account> page = pages.get(pageIndex);
+        if (page == null)
+        {
+            pages.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(pageIndex);
+        }
+        return page;
+    }
+}
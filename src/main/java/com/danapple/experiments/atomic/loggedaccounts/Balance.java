@@ -1,43 +1,105 @@
 package com.danapple.experiments.atomic.loggedaccounts;
 
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.ABORTED;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.COMPLETE;
 import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
+// Each version carries the committed total of every entry already seen to be COMPLETE, and a log of the
+// entries not yet folded into it.  Adding an entry first folds the newest entries which have already resolved,
+// stopping at the first still PENDING, so each entry is settled at most once and an append does amortised O(1)
+// work.  An entry which resolves while a PENDING entry sits above it stays in the log until the next flatten,
+// on read or by a LogCompactor, so reading the balance costs O(entries left in the log): the PENDING entries
+// and those resolved beneath them since the last flatten.  The log length counts every entry added since the
+// log was last flattened.  A COMPLETE entry which an open ReadView might not see is kept in the log until no
+// view needs it.
 class Balance
 {
-    private final BigDecimal balance;
-    private final List<BalanceLogEntry> log;
+
+    private final FixedPointMoney money;
+    private final BigDecimal committed;
+    private final long committedUnits;
+    private final BalanceLog pending;
+    private final int logLength;
+    // The newest CreditInbox credit folded into this version, null before the first
+    private final CreditInbox.Node foldedCredit;
 
     Balance(final BigDecimal balance)
     {
-        this.balance = balance;
-        this.log = Collections.emptyList();
+        this(null, balance, 0, BalanceLog.empty(), 0, null);
     }
 
     Balance(final BigDecimal balance,
             final List<BalanceLogEntry> newLog)
     {
-        this.balance = balance;
-        this.log = newLog;
+        this(null, balance, 0, BalanceLog.of(newLog), newLog.size(), null);
+    }
+
+    Balance(final FixedPointMoney money,
+            final long balanceUnits)
+    {
+        this(money, null, balanceUnits, BalanceLog.empty(), 0, null);
+    }
+
+    Balance(final FixedPointMoney money,
+            final long balanceUnits,
+            final List<BalanceLogEntry> newLog)
+    {
+        this(money, null, balanceUnits, BalanceLog.of(newLog), newLog.size(), null);
+    }
+
+    private Balance(final FixedPointMoney money,
+                    final BigDecimal committed,
+                    final long committedUnits,
+                    final BalanceLog pending,
+                    final int logLength,
+                    final CreditInbox.Node foldedCredit)
+    {
+        this.money = money;
+        this.committed = committed;
+        this.committedUnits = committedUnits;
+        this.pending = pending;
+        this.logLength = logLength;
+        this.foldedCredit = foldedCredit;
     }
 
     Balance addLogEntry(final BalanceLogEntry logEntry)
     {
-        List<BalanceLogEntry> newList = new ArrayList<>(log);
-        newList.add(logEntry);
-        return new Balance(balance, newList);
+        Balance settledBalance = settleNewest();
+        return new Balance(money,
+                           settledBalance.committed,
+                           settledBalance.committedUnits,
+                           settledBalance.pending.append(logEntry),
+                           logLength + 1,
+                           foldedCredit);
+    }
+
+    // Credits come newest first, as CreditInbox collects them
+    Balance foldCredits(final List<BalanceLogEntry> credits, final CreditInbox.Node newFoldedCredit)
+    {
+        BalanceLog newPending = pending;
+        for (int i = credits.size() - 1; i >= 0; i--)
+        {
+            newPending = newPending.append(credits.get(i));
+        }
+        return new Balance(money, committed, committedUnits, newPending, logLength + credits.size(), newFoldedCredit);
     }
 
     BigDecimal getBalanceValue()
     {
-        BigDecimal computedBalance = balance;
-        for (BalanceLogEntry entry : log)
+        if (money != null)
+        {
+            return money.toBigDecimal(getBalanceUnits());
+        }
+        BigDecimal computedBalance = committed;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
         {
-            if (entry.state().getStatus() == BalanceLogStatus.COMPLETE)
+            BalanceLogEntry entry = node.getNewestEntry();
+            if (entry.state().getStatus() == COMPLETE)
             {
                 computedBalance = computedBalance.add(entry.delta());
             }
@@ -45,26 +107,245 @@ class Balance
         return computedBalance;
     }
 
+    long getBalanceUnits()
+    {
+        if (money == null)
+        {
+            throw new RuntimeException("Balance does not hold fixed point money");
+        }
+        long computedBalanceUnits = committedUnits;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            if (entry.state().getStatus() == COMPLETE)
+            {
+                computedBalanceUnits = FixedPointMoney.add(computedBalanceUnits, entry.deltaUnits());
+            }
+        }
+        return computedBalanceUnits;
+    }
+
+    // The most the balance can become: pending debits may yet abort, and pending credits may yet complete
+    long getCeilingUnits()
+    {
+        long ceilingUnits = committedUnits;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            BalanceLogStatus status = entry.state().getStatus();
+            if (status == COMPLETE || status == PENDING && entry.deltaUnits() > 0)
+            {
+                ceilingUnits = FixedPointMoney.add(ceilingUnits, entry.deltaUnits());
+            }
+        }
+        return ceilingUnits;
+    }
+
+    BigDecimal getBalanceValueAt(final long viewEpoch)
+    {
+        if (money != null)
+        {
+            return money.toBigDecimal(getBalanceUnitsAt(viewEpoch));
+        }
+        BigDecimal computedBalance = committed;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            if (entry.state().isVisibleAt(viewEpoch))
+            {
+                computedBalance = computedBalance.add(entry.delta());
+            }
+        }
+        return computedBalance;
+    }
+
+    long getBalanceUnitsAt(final long viewEpoch)
+    {
+        if (money == null)
+        {
+            throw new RuntimeException("Balance does not hold fixed point money");
+        }
+        long computedBalanceUnits = committedUnits;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            if (entry.state().isVisibleAt(viewEpoch))
+            {
+                computedBalanceUnits = FixedPointMoney.add(computedBalanceUnits, entry.deltaUnits());
+            }
+        }
+        return computedBalanceUnits;
+    }
+
+    // Entries left PENDING too long have already been aborted by a PendingReaper, so flattening only settles
     Balance flattenLog()
     {
-        long nowTime = System.currentTimeMillis();
-        getPendingLogEntries()
-                .stream()
-                .filter(log -> log.createTime() < nowTime - 500)
-                .forEach(log -> log.state().abort());
-        return new Balance(getBalanceValue(), getPendingLogEntries());
+        Balance settledBalance = settle();
+        return new Balance(money,
+                           settledBalance.committed,
+                           settledBalance.committedUnits,
+                           settledBalance.pending,
+                           settledBalance.pending.size(),
+                           foldedCredit);
     }
 
     int getLogLength()
     {
-        return log.size();
+        return logLength;
+    }
+
+    CreditInbox.Node getFoldedCredit()
+    {
+        return foldedCredit;
+    }
+
+    // Entries not yet folded into the committed total, which may have resolved since this version was built
+    int getUnsettledCount()
+    {
+        return pending.size();
+    }
+
+    int getPendingCount()
+    {
+        int pendingCount = 0;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            if (node.getNewestEntry().state().getStatus() == PENDING)
+            {
+                pendingCount++;
+            }
+        }
+        return pendingCount;
     }
 
     List<BalanceLogEntry> getPendingLogEntries()
     {
-        return log
-                .stream()
-                .filter(log -> log.state().getStatus().equals(PENDING))
-                .toList();
+        List<BalanceLogEntry> pendingLogEntries = new ArrayList<>();
+        for (BalanceLogEntry entry : pending)
+        {
+            if (entry.state().getStatus() == PENDING)
+            {
+                pendingLogEntries.add(entry);
+            }
+        }
+        return pendingLogEntries;
+    }
+
+    // Folds entries which have become COMPLETE below the fold horizon into the committed total and drops
+    // ABORTED ones.  Each status is read once while building the result, so an entry resolving concurrently
+    // is either folded or kept pending, never both.
+    private Balance settle()
+    {
+        long horizon = settleHorizon();
+        if (horizon < 0)
+        {
+            return this;
+        }
+
+        BalanceLogEntry[] stillPending = new BalanceLogEntry[pending.size()];
+        int firstStillPending = stillPending.length;
+        BigDecimal settledCommitted = committed;
+        long settledCommittedUnits = committedUnits;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            BalanceLogStatus status = entry.state().getStatus();
+            if (status == PENDING || status == COMPLETE && entry.state().getCommitEpoch() >= horizon)
+            {
+                stillPending[--firstStillPending] = entry;
+            }
+            else if (status == COMPLETE)
+            {
+                if (money == null)
+                {
+                    settledCommitted = settledCommitted.add(entry.delta());
+                }
+                else
+                {
+                    settledCommittedUnits = FixedPointMoney.add(settledCommittedUnits, entry.deltaUnits());
+                }
+            }
+        }
+
+        BalanceLog settledPending = BalanceLog.empty();
+        for (int i = firstStillPending; i < stillPending.length; i++)
+        {
+            settledPending = settledPending.append(stillPending[i]);
+        }
+        return new Balance(money, settledCommitted, settledCommittedUnits, settledPending, logLength, foldedCredit);
+    }
+
+    // Folds resolved entries from the newest end of the log only, so it costs O(entries folded).  The fold
+    // horizon is only looked up if one of them is COMPLETE.
+    private Balance settleNewest()
+    {
+        long horizon = -1;
+        BigDecimal settledCommitted = committed;
+        long settledCommittedUnits = committedUnits;
+        BalanceLog node = pending;
+        for (; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogEntry entry = node.getNewestEntry();
+            BalanceLogStatus status = entry.state().getStatus();
+            if (status == PENDING)
+            {
+                break;
+            }
+            if (status == COMPLETE)
+            {
+                if (horizon < 0)
+                {
+                    horizon = CommitClock.foldHorizon();
+                }
+                if (entry.state().getCommitEpoch() >= horizon)
+                {
+                    break;
+                }
+                if (money == null)
+                {
+                    settledCommitted = settledCommitted.add(entry.delta());
+                }
+                else
+                {
+                    settledCommittedUnits = FixedPointMoney.add(settledCommittedUnits, entry.deltaUnits());
+                }
+            }
+        }
+        if (node == pending)
+        {
+            return this;
+        }
+        return new Balance(money, settledCommitted, settledCommittedUnits, node, logLength, foldedCredit);
+    }
+
+    // Returns -1 when there is nothing to settle.  The fold horizon is only looked up if an entry is COMPLETE.
+    private long settleHorizon()
+    {
+        boolean hasAborted = false;
+        boolean hasComplete = false;
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogStatus status = node.getNewestEntry().state().getStatus();
+            hasAborted |= status == ABORTED;
+            hasComplete |= status == COMPLETE;
+        }
+        if (!hasComplete)
+        {
+            return hasAborted ? 0 : -1;
+        }
+        long horizon = CommitClock.foldHorizon();
+        if (hasAborted)
+        {
+            return horizon;
+        }
+        for (BalanceLog node = pending; !node.isEmpty(); node = node.getPrevious())
+        {
+            BalanceLogState state = node.getNewestEntry().state();
+            if (state.getStatus() == COMPLETE && state.getCommitEpoch() < horizon)
+            {
+                return horizon;
+            }
+        }
+        return -1;
     }
 }
@@ -0,0 +1,84 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+// An immutable log which shares its earlier entries with every later version, so appending is O(1) no matter
+// how long the log has grown.  Each node holds the newest entry and a link to the log before it.
+final class BalanceLog implements Iterable<BalanceLogEntry>
+{
+    private final static BalanceLog EMPTY = new BalanceLog(null, null, 0);
+
+    private final BalanceLogEntry entry;
+    private final BalanceLog previous;
+    private final int size;
+
+    private BalanceLog(final BalanceLogEntry entry,
+                       final BalanceLog previous,
+                       final int size)
+    {
+        this.entry = entry;
+        this.previous = previous;
+        this.size = size;
+    }
+
+    static BalanceLog empty()
+    {
+        return EMPTY;
+    }
+
+    static BalanceLog of(final List<BalanceLogEntry> entries)
+    {
+        BalanceLog log = EMPTY;
+        for (BalanceLogEntry entry : entries)
+        {
+            log = log.append(entry);
+        }
+        return log;
+    }
+
+    BalanceLog append(final BalanceLogEntry newEntry)
+    {
+        return new BalanceLog(newEntry, this, size + 1);
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    BalanceLogEntry getNewestEntry()
+    {
+        return entry;
+    }
+
+    BalanceLog getPrevious()
+    {
+        return previous;
+    }
+
+    // Oldest entry first, as the entries were appended
+    @Override
+    public Iterator<BalanceLogEntry> iterator()
+    {
+        return toList().iterator();
+    }
+
+    List<BalanceLogEntry> toList()
+    {
+        BalanceLogEntry[] entries = new BalanceLogEntry[size];
+        BalanceLog log = this;
+        for (int i = size - 1; i >= 0; i--)
+        {
+            entries[i] = log.entry;
+            log = log.previous;
+        }
+        return Arrays.asList(entries);
+    }
+}
@@ -2,6 +2,20 @@ package com.danapple.experiments.atomic.loggedaccounts;
 
 import java.math.BigDecimal;
 
+// Only one of delta and deltaUnits is used, depending on whether the Balance holds fixed point money.
 record BalanceLogEntry(BigDecimal delta,
-                       BalanceLogState state,
-                       long createTime) {}
+                       long deltaUnits,
+                       BalanceLogState state)
+{
+    BalanceLogEntry(final BigDecimal delta,
+                    final BalanceLogState state)
+    {
+        this(delta, 0, state);
+    }
+
+    BalanceLogEntry(final long deltaUnits,
+                    final BalanceLogState state)
+    {
+        this(null, deltaUnits, state);
+    }
+}
@@ -1,6 +1,7 @@
 package com.danapple.experiments.atomic.loggedaccounts;
 
 import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.ABORTED;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.COMMITTING;
 import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.COMPLETE;
 import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
 
@@ -9,15 +10,33 @@ import java.util.concurrent.atomic.AtomicReference;
 class BalanceLogState
 {
     private final AtomicReference<BalanceLogStatus> status;
+    // Written before status becomes COMPLETE, so it is visible to anyone who has seen COMPLETE
+    private long commitEpoch;
+
+    // Owned by the PendingReaper: the tick at which the state is aborted if still PENDING, and the next
+    // state in the same wheel slot
+    long reapDeadlineTick;
+    BalanceLogState nextToReap;
 
     BalanceLogState()
+    {
+        this(PendingReaper.getDefault());
+    }
+
+    // Without a reaper, nothing aborts the state if it is abandoned while PENDING
+    BalanceLogState(final PendingReaper reaper)
     {
         status = new AtomicReference<>(PENDING);
+        if (reaper != null)
+        {
+            reaper.register(this);
+        }
     }
 
     BalanceLogStatus getStatus()
     {
-        return status.get();
+        BalanceLogStatus currentStatus = status.get();
+        return currentStatus == COMMITTING ? PENDING : currentStatus;
     }
 
     boolean abort()
@@ -25,8 +44,32 @@ class BalanceLogState
         return status.compareAndSet(PENDING, ABORTED);
     }
 
+    // The state leaves PENDING before the clock is read, so a ReadView opened after an Account was seen
+    // with this state PENDING always gets an epoch no greater than the commit epoch, and never sees it.
     boolean complete()
     {
-        return status.compareAndSet(PENDING, COMPLETE);
+        if (!status.compareAndSet(PENDING, COMMITTING))
+        {
+            return false;
+        }
+        commitEpoch = CommitClock.now();
+        status.set(COMPLETE);
+        return true;
+    }
+
+    // Only meaningful once getStatus() has returned COMPLETE
+    long getCommitEpoch()
+    {
+        return commitEpoch;
+    }
+
+    boolean isVisibleAt(final long viewEpoch)
+    {
+        BalanceLogStatus currentStatus;
+        while ((currentStatus = status.get()) == COMMITTING)
+        {
+            Thread.onSpinWait();
+        }
+        return currentStatus == COMPLETE && commitEpoch < viewEpoch;
     }
 }
@@ -3,6 +3,8 @@ package com.danapple.experiments.atomic.loggedaccounts;
 enum BalanceLogStatus
 {
     PENDING,
+    // Briefly, while a completing state takes its commit epoch; reported as PENDING by BalanceLogState.getStatus
+    COMMITTING,
     COMPLETE,
     ABORTED
 }
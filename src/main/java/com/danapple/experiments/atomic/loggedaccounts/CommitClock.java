@@ -0,0 +1,61 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Orders transfer commits against ReadViews.  A commit's epoch is the clock value when it completes, and a
+// view which advanced the clock to V sees exactly the commits with epochs below V.  Only opening a view
+// writes the clock; completing a transfer just reads it.
+final class CommitClock
+{
+    private final static AtomicLong clock = new AtomicLong();
+    private final static Set<ReadView> openViews = ConcurrentHashMap.newKeySet();
+
+    private CommitClock()
+    {
+    }
+
+    static long now()
+    {
+        return clock.get();
+    }
+
+    // The view is registered before the clock moves, so anyone who reads the moved clock can also find the view
+    static long openView(final ReadView view)
+    {
+        openViews.add(view);
+        return clock.incrementAndGet();
+    }
+
+    static void closeView(final ReadView view)
+    {
+        openViews.remove(view);
+    }
+
+    // Commits with epochs below the horizon are seen by every open view and every view still to be opened,
+    // so they can be folded into a committed total.  A view still taking its epoch holds folding back entirely.
+    static long foldHorizon()
+    {
+        long horizon = clock.get() + 1;
+        if (openViews.isEmpty())
+        {
+            return horizon;
+        }
+        for (ReadView view : openViews)
+        {
+            long viewEpoch = view.getEpoch();
+            if (viewEpoch == 0)
+            {
+                return 0;
+            }
+            horizon = Math.min(horizon, viewEpoch);
+        }
+        return horizon;
+    }
+
+    static int getOpenViewCount()
+    {
+        return openViews.size();
+    }
+}
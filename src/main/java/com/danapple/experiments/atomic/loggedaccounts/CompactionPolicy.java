@@ -0,0 +1,20 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+// An Account is compacted once its log holds maxLogLength entries, or once it has had uncompacted entries for
+// maxAgeMillis.  Entries left PENDING are aborted by a PendingReaper, not by compaction.
+public record CompactionPolicy(int maxLogLength,
+                               long maxAgeMillis,
+                               long intervalMillis)
+{
+    public final static CompactionPolicy DEFAULT = new CompactionPolicy(64, 100, 10);
+
+    public CompactionPolicy
+    {
+        if (maxLogLength <= 0 || maxAgeMillis < 0 || intervalMillis <= 0)
+        {
+            throw new RuntimeException("Invalid compaction policy: maxLogLength " + maxLogLength
+                                               + ", maxAgeMillis " + maxAgeMillis
+                                               + ", intervalMillis " + intervalMillis);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.ABORTED;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.COMPLETE;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Credits which lost the race for an Account's Balance.  Pushing is a single getAndSet followed by a plain
+// link to the node it displaced, so a credit always gets in, however many others arrive at once, without waiting
+// for any of them.  Credits commute, so their order does not matter.  A Balance records the newest credit
+// folded into it, and a reader of that Balance adds up only the nodes above it.  Once a fold has been
+// installed, the nodes below it are released, and a reader still holding an older Balance finds the chain cut
+// and has to read the Balance again.
+//
+// The price of a push that cannot fail is one blocking point: until a pusher has linked its node, the nodes
+// below it cannot be reached, so a reader or debit walking the inbox waits for it.  The wait is a few
+// instructions, unless that pusher is descheduled between its getAndSet and its link.
+final class CreditInbox
+{
+    // Passed instead of a view epoch to count every COMPLETE credit
+    final static long LATEST = -1;
+    // Passed instead of a view epoch to count every credit which has not aborted, as it still may complete
+    final static long CEILING = -2;
+
+    private final static Node UNLINKED = new Node(null);
+
+    private final AtomicReference<Node> head;
+
+    CreditInbox()
+    {
+        Node root = new Node(null);
+        root.next = null;
+        head = new AtomicReference<>(root);
+    }
+
+    void push(final BalanceLogEntry entry)
+    {
+        Node node = new Node(entry);
+        node.next = head.getAndSet(node);
+    }
+
+    // Returns null if the chain was cut above folded, which is null until the first fold
+    BigDecimal sumValue(final Node folded, final long viewEpoch)
+    {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Node node = head.get(); node != folded && node.entry != null; )
+        {
+            Node next = awaitLinked(node);
+            if (isCounted(node.entry, viewEpoch))
+            {
+                total = total.add(node.entry.delta());
+            }
+            if (next == null)
+            {
+                return null;
+            }
+            node = next;
+        }
+        return total;
+    }
+
+    // Credits are never negative, so -1 means the chain was cut above folded
+    long sumUnits(final Node folded, final long viewEpoch)
+    {
+        long total = 0;
+        for (Node node = head.get(); node != folded && node.entry != null; )
+        {
+            Node next = awaitLinked(node);
+            if (isCounted(node.entry, viewEpoch))
+            {
+                total = FixedPointMoney.add(total, node.entry.deltaUnits());
+            }
+            if (next == null)
+            {
+                return -1;
+            }
+            node = next;
+        }
+        return total;
+    }
+
+    // Credits above folded, counted only as far as the chain still reaches
+    int countAbove(final Node folded)
+    {
+        int count = 0;
+        for (Node node = head.get(); node != null && node != folded && node.entry != null; node = awaitLinked(node))
+        {
+            count++;
+        }
+        return count;
+    }
+
+    int countPendingAbove(final Node folded)
+    {
+        int count = 0;
+        for (Node node = head.get(); node != null && node != folded && node.entry != null; node = awaitLinked(node))
+        {
+            if (node.entry.state().getStatus() == PENDING)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Adds the credits above folded to credits, newest first, and returns the newest node, or null if the chain
+    // was cut above folded
+    Node collect(final Node folded, final List<BalanceLogEntry> credits)
+    {
+        Node newest = head.get();
+        for (Node node = newest; node != folded && node.entry != null; )
+        {
+            Node next = awaitLinked(node);
+            credits.add(node.entry);
+            if (next == null)
+            {
+                return null;
+            }
+            node = next;
+        }
+        return newest;
+    }
+
+    // Only once a Balance which has folded every credit up to folded has been installed
+    static void release(final Node folded)
+    {
+        folded.next = null;
+    }
+
+    private static boolean isCounted(final BalanceLogEntry entry, final long viewEpoch)
+    {
+        if (viewEpoch == CEILING)
+        {
+            return entry.state().getStatus() != ABORTED;
+        }
+        return viewEpoch == LATEST ? entry.state().getStatus() == COMPLETE : entry.state().isVisibleAt(viewEpoch);
+    }
+
+    // A pusher links its node just after swapping it in, so the wait is a few instructions unless it is descheduled
+    private static Node awaitLinked(final Node node)
+    {
+        Node next;
+        while ((next = node.next) == UNLINKED)
+        {
+            Thread.onSpinWait();
+        }
+        return next;
+    }
+
+    static final class Node
+    {
+        private final BalanceLogEntry entry;
+        private volatile Node next = UNLINKED;
+
+        private Node(final BalanceLogEntry entry)
+        {
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Flattens the logs of Accounts in the background, so that Accounts which are written constantly but rarely
+// read do not grow their logs without bound, and so that reading a balance never has to compact.  Accounts
+// created with a LogCompactor mark themselves dirty when they add a log entry; only the entry which finds an
+// Account clean hands it to the compactor, so the others cost one volatile read.  Entries left PENDING are
+// aborted by a PendingReaper, with its own timeout, rather than by compaction.
+public class LogCompactor implements AutoCloseable
+{
+    private final CompactionPolicy policy;
+    private final TransferMetrics metrics;
+    private final Map<Account, Long> dirtyAccounts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public LogCompactor()
+    {
+        this(CompactionPolicy.DEFAULT);
+    }
+
+    public LogCompactor(final CompactionPolicy policy)
+    {
+        this(policy, TransferMetrics.NOOP);
+    }
+
+    // Reports the length of each log as it is flattened
+    public LogCompactor(final CompactionPolicy policy, final TransferMetrics metrics)
+    {
+        this.policy = policy;
+        this.metrics = metrics;
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("log-compactor").factory());
+        scheduler.scheduleWithFixedDelay(this::compactDueAccounts,
+                                         policy.intervalMillis(),
+                                         policy.intervalMillis(),
+                                         TimeUnit.MILLISECONDS);
+    }
+
+    public CompactionPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    // Called once each time the Account goes from clean to dirty
+    void markDirty(final Account account)
+    {
+        dirtyAccounts.put(account, System.currentTimeMillis());
+    }
+
+    int getDirtyCount()
+    {
+        return dirtyAccounts.size();
+    }
+
+    // The Account is removed from the dirty set and made clean before it is flattened, so that an entry added
+    // during the flatten marks it dirty again rather than being missed.
+    void compactDueAccounts()
+    {
+        long dueTime = System.currentTimeMillis() - policy.maxAgeMillis();
+        for (Map.Entry<Account, Long> dirtyAccount : dirtyAccounts.entrySet())
+        {
+            Account account = dirtyAccount.getKey();
+            int logLength = account.getLogLength();
+            if (dirtyAccount.getValue() <= dueTime || logLength >= policy.maxLogLength())
+            {
+                metrics.recordFlattenLogLength(logLength);
+                if (dirtyAccounts.remove(account, dirtyAccount.getValue()))
+                {
+                    account.clearDirty();
+                    if (!account.compact())
+                    {
+                        account.markDirty();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdown();
+    }
+}
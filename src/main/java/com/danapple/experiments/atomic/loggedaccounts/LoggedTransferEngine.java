@@ -0,0 +1,75 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.workload.TransferEngine;
+import java.math.BigDecimal;
+import java.util.List;
+
+// Lives in the loggedaccounts package so that it can seed opening balances, which has no public API.
+public final class LoggedTransferEngine implements TransferEngine
+{
+    private final TransferService transferService;
+    private final Account[] accounts;
+    private final ReconciliationService reconciliationService;
+
+    public LoggedTransferEngine(final TransferService transferService,
+                                final AccountDirectory directory,
+                                final int accountCount,
+                                final BigDecimal openingBalance)
+    {
+        this.transferService = transferService;
+        accounts = new Account[accountCount];
+        reconciliationService = new ReconciliationService(directory);
+        for (int i = 0; i < accountCount; i++)
+        {
+            accounts[i] = directory.createAccount("Account " + i);
+            BalanceLogState openingState = new BalanceLogState();
+            accounts[i].adjustBalance(openingBalance, openingState);
+            openingState.complete();
+        }
+    }
+
+    @Override
+    public int getAccountCount()
+    {
+        return accounts.length;
+    }
+
+    @Override
+    public boolean transfer(final int sourceAccount, final int destinationAccount, final BigDecimal transferAmount)
+    {
+        transferService.transferBalance(accounts[sourceAccount], accounts[destinationAccount], transferAmount);
+        return true;
+    }
+
+    @Override
+    public boolean post(final int sourceAccount,
+                        final int firstDestinationAccount,
+                        final int secondDestinationAccount,
+                        final BigDecimal transferAmount)
+    {
+        transferService.transferBalances(List.of(
+                new TransferLeg(accounts[sourceAccount], accounts[firstDestinationAccount], transferAmount),
+                new TransferLeg(accounts[sourceAccount], accounts[secondDestinationAccount], transferAmount)));
+        return true;
+    }
+
+    @Override
+    public boolean supportsPostings()
+    {
+        return true;
+    }
+
+    @Override
+    public BigDecimal getBalance(final int account)
+    {
+        return accounts[account].getBalance();
+    }
+
+    // Read through one ReadView, so the total is consistent even while transfers carry on.  The directory is
+    // expected to hold only this engine's Accounts.
+    @Override
+    public BigDecimal getTotalBalance()
+    {
+        return reconciliationService.reconcile().totalBalance();
+    }
+}
@@ -0,0 +1,158 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// A hashed timing wheel which aborts BalanceLogStates still PENDING at their deadline, so that a transfer
+// abandoned part way through is cleared out of its Accounts' logs promptly instead of whenever a reader
+// next flattens them.  Each slot holds the states due on ticks congruent to it, as lock-free stacks striped
+// by thread so that concurrent registrations do not contend.  The states are linked through their own
+// fields, so registering allocates nothing and costs one compare-and-set without reading the clock.
+public class PendingReaper implements AutoCloseable
+{
+    private final static long DEFAULT_TIMEOUT_MILLIS = 500;
+    private final static long DEFAULT_TICK_MILLIS = 10;
+    private final static int DEFAULT_WHEEL_SIZE = 512;
+    private final static int STRIPES = 8;
+
+    private final long tickMillis;
+    private final long timeoutTicks;
+    private final int slotMask;
+    private final AtomicReferenceArray<BalanceLogState> slots;
+    private final long startMillis;
+    private final ScheduledExecutorService scheduler;
+    private volatile long currentTick;
+
+    public PendingReaper(final long timeoutMillis)
+    {
+        this(timeoutMillis, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    public PendingReaper(final long timeoutMillis, final long tickMillis, final int wheelSize)
+    {
+        this(timeoutMillis, tickMillis, wheelSize, true);
+    }
+
+    // Without the scheduler, ticks only pass when advance is called
+    PendingReaper(final long timeoutMillis, final long tickMillis, final int wheelSize, final boolean scheduled)
+    {
+        if (timeoutMillis < 0 || tickMillis <= 0 || wheelSize <= 0 || Integer.bitCount(wheelSize) != 1)
+        {
+            throw new RuntimeException("Invalid reaper: timeoutMillis " + timeoutMillis
+                                               + ", tickMillis " + tickMillis
+                                               + ", wheelSize " + wheelSize + " (a power of two)");
+        }
+        this.tickMillis = tickMillis;
+        timeoutTicks = (timeoutMillis + tickMillis - 1) / tickMillis;
+        slotMask = wheelSize - 1;
+        slots = new AtomicReferenceArray<>(wheelSize * STRIPES);
+        startMillis = nowMillis();
+        if (scheduled)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("pending-reaper").factory());
+            scheduler.scheduleAtFixedRate(() -> advance(nowMillis()),
+                                          tickMillis,
+                                          tickMillis,
+                                          TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            scheduler = null;
+        }
+    }
+
+    // Used by every BalanceLogState created without a reaper of its own
+    public static PendingReaper getDefault()
+    {
+        return DefaultHolder.DEFAULT;
+    }
+
+    // The deadline is counted from the last tick processed, so a state may live up to one tick longer than
+    // the timeout.  A state registered into the slot being processed at that moment waits one more turn of
+    // the wheel.
+    void register(final BalanceLogState state)
+    {
+        long deadlineTick = currentTick + timeoutTicks + 1;
+        state.reapDeadlineTick = deadlineTick;
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1));
+        push(((int) deadlineTick & slotMask) * STRIPES + stripe, state);
+    }
+
+    // Processes every tick up to the given time.  Only one thread may call this at a time, which the
+    // single-threaded scheduler ensures.
+    void advance(final long nowMillis)
+    {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        for (long tick = currentTick + 1; tick <= targetTick; tick++)
+        {
+            reapSlot(tick);
+            currentTick = tick;
+        }
+    }
+
+    // Monotonic, so that setting the wall clock back or forward neither holds states nor reaps them early
+    static long nowMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    long getCurrentTick()
+    {
+        return currentTick;
+    }
+
+    private void reapSlot(final long tick)
+    {
+        int firstIndex = ((int) tick & slotMask) * STRIPES;
+        for (int index = firstIndex; index < firstIndex + STRIPES; index++)
+        {
+            BalanceLogState state = slots.getAndSet(index, null);
+            while (state != null)
+            {
+                BalanceLogState next = state.nextToReap;
+                state.nextToReap = null;
+                if (state.getStatus() == PENDING)
+                {
+                    if (state.reapDeadlineTick <= tick)
+                    {
+                        state.abort();
+                    }
+                    else
+                    {
+                        push(index, state);
+                    }
+                }
+                state = next;
+            }
+        }
+    }
+
+    private void push(final int index, final BalanceLogState state)
+    {
+        BalanceLogState head;
+        do
+        {
+            head = slots.get(index);
+            state.nextToReap = head;
+        }
+        while (!slots.compareAndSet(index, head, state));
+    }
+
+    @Override
+    public void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+        }
+    }
+
+    private static class DefaultHolder
+    {
+        private final static PendingReaper DEFAULT = new PendingReaper(DEFAULT_TIMEOUT_MILLIS);
+    }
+}
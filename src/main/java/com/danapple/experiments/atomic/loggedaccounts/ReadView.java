@@ -0,0 +1,43 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import java.math.BigDecimal;
+
+// A consistent read of any number of Accounts as of one commit point: a transfer is either seen in both of
+// its Accounts or in neither.  While a view is open, Accounts keep the log entries it may need instead of
+// folding them into their committed totals; closing the view lets them be reclaimed.
+public final class ReadView implements AutoCloseable
+{
+    private volatile long epoch;
+
+    private ReadView()
+    {
+    }
+
+    public static ReadView open()
+    {
+        ReadView view = new ReadView();
+        view.epoch = CommitClock.openView(view);
+        return view;
+    }
+
+    public long getEpoch()
+    {
+        return epoch;
+    }
+
+    public BigDecimal getBalance(final Account account)
+    {
+        return account.getBalanceValueAt(epoch);
+    }
+
+    public long getBalanceUnits(final Account account)
+    {
+        return account.getBalanceUnitsAt(epoch);
+    }
+
+    @Override
+    public void close()
+    {
+        CommitClock.closeView(this);
+    }
+}
@@ -0,0 +1,78 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.reconciliation.ReconciliationReport;
+import com.danapple.experiments.atomic.reconciliation.ReconciliationTally;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Audits every Account in a directory through one ReadView, so a transfer is counted in both of its Accounts
+// or in neither, and splits the directory's ids into ranges between the pool's threads.  Accounts created
+// while the audit runs may be missed.
+public class ReconciliationService
+{
+    // Ranges of fewer ids than this are scanned by the task which reaches them
+    private final static int FORK_THRESHOLD = 16 * 1024;
+
+    private final AccountDirectory directory;
+    private final ForkJoinPool pool;
+
+    public ReconciliationService(final AccountDirectory directory)
+    {
+        this(directory, ForkJoinPool.commonPool());
+    }
+
+    public ReconciliationService(final AccountDirectory directory, final ForkJoinPool pool)
+    {
+        this.directory = directory;
+        this.pool = pool;
+    }
+
+    public ReconciliationReport reconcile()
+    {
+        try (ReadView view = ReadView.open())
+        {
+            return pool.invoke(new RangeTask(view, 0, directory.getIdLimit())).toReport(directory.getMoney());
+        }
+    }
+
+    private final class RangeTask extends RecursiveTask<ReconciliationTally>
+    {
+        private final ReadView view;
+        private final int fromId;
+        private final int toId;
+
+        private RangeTask(final ReadView view, final int fromId, final int toId)
+        {
+            this.view = view;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected ReconciliationTally compute()
+        {
+            if (toId - fromId > FORK_THRESHOLD)
+            {
+                int middleId = (fromId + toId) >>> 1;
+                RangeTask upper = new RangeTask(view, middleId, toId);
+                upper.fork();
+                ReconciliationTally lower = new RangeTask(view, fromId, middleId).compute();
+                return lower.combine(upper.join());
+            }
+            FixedPointMoney money = directory.getMoney();
+            ReconciliationTally tally = new ReconciliationTally();
+            directory.forEach(fromId, toId, account -> {
+                if (money != null)
+                {
+                    tally.addBalanceUnits(view.getBalanceUnits(account), account.getPendingCount());
+                }
+                else
+                {
+                    tally.addBalance(view.getBalance(account), account.getPendingCount());
+                }
+            });
+            return tally;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import java.math.BigDecimal;
+
+// One leg of a multi-leg transfer, such as the payment, the fee or the tax of a single posting
+public record TransferLeg(Account sourceAccount,
+                          Account destinationAccount,
+                          BigDecimal transferAmount)
+{
+}
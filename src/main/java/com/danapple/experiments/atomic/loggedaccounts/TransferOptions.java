@@ -0,0 +1,65 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.dedup.TransferIdCache;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+
+// How a TransferService is set up: start from defaults() and replace what differs.  Logged Accounts have no
+// global order, so the listener is told sequence 0 for every transfer.  The reaper aborts transfers abandoned
+// part way through, once they have been PENDING for its timeout; without one, nothing aborts them.
+// defaults() is a method rather than a constant because each TransferService needs a TransferIdCache of its own
+// unless one is shared on purpose.
+public record TransferOptions(ContentionManager contentionManager,
+                              TransferListener listener,
+                              TransferMetrics metrics,
+                              PendingReaper reaper,
+                              TransferIdCache transferIds)
+{
+    public TransferOptions
+    {
+        if (contentionManager == null || metrics == null || transferIds == null)
+        {
+            throw new RuntimeException("Transfer options need a contention manager, metrics and a transfer id cache");
+        }
+    }
+
+    public static TransferOptions defaults()
+    {
+        return new TransferOptions(ContentionManager.fixed(10),
+                                   null,
+                                   TransferMetrics.NOOP,
+                                   PendingReaper.getDefault(),
+                                   new TransferIdCache());
+    }
+
+    public TransferOptions withRetryCount(final int retryCount)
+    {
+        return withContentionManager(ContentionManager.fixed(retryCount));
+    }
+
+    public TransferOptions withContentionManager(final ContentionManager newContentionManager)
+    {
+        return new TransferOptions(newContentionManager, listener, metrics, reaper, transferIds);
+    }
+
+    public TransferOptions withListener(final TransferListener newListener)
+    {
+        return new TransferOptions(contentionManager, newListener, metrics, reaper, transferIds);
+    }
+
+    public TransferOptions withMetrics(final TransferMetrics newMetrics)
+    {
+        return new TransferOptions(contentionManager, listener, newMetrics, reaper, transferIds);
+    }
+
+    public TransferOptions withReaper(final PendingReaper newReaper)
+    {
+        return new TransferOptions(contentionManager, listener, metrics, newReaper, transferIds);
+    }
+
+    public TransferOptions withTransferIds(final TransferIdCache newTransferIds)
+    {
+        return new TransferOptions(contentionManager, listener, metrics, reaper, newTransferIds);
+    }
+}
@@ -1,10 +1,27 @@
 package com.danapple.experiments.atomic.loggedaccounts;
 
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.dedup.TransferIdCache;
+import com.danapple.experiments.atomic.metrics.TransferMetrics;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 public class TransferService
 {
-    private final int atomicRetries;
+    // Starts the message of the exception thrown when every attempt at a transfer lost a compare-and-set
+    final static String RETRIES_EXHAUSTED = "Could not transfer balance with ";
+
+    private final ContentionManager contentionManager;
+    private final TransferListener listener;
+    private final TransferMetrics metrics;
+    private final PendingReaper reaper;
+    private final TransferIdCache transferIds;
 
     public TransferService()
     {
@@ -13,31 +30,312 @@ public class TransferService
 
     public TransferService(final int atomicRetries)
     {
-        this.atomicRetries = atomicRetries;
+        this(TransferOptions.defaults().withRetryCount(atomicRetries));
+    }
+
+    public TransferService(final TransferOptions options)
+    {
+        this.contentionManager = options.metrics().measure(options.contentionManager());
+        this.listener = options.listener();
+        this.metrics = options.metrics();
+        this.reaper = options.reaper();
+        this.transferIds = options.transferIds();
+    }
+
+    public ContentionManager getContentionManager()
+    {
+        return contentionManager;
+    }
+
+    public TransferMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    public TransferIdCache getTransferIds()
+    {
+        return transferIds;
     }
 
     public void transferBalance(final Account sourceAccount,
                                 final Account destinationAccount,
                                 final BigDecimal transferAmount)
     {
+        transferBalance(null, sourceAccount, destinationAccount, transferAmount);
+    }
+
+    // A transfer with an id is made at most once while its id is remembered.  A repeat of one which completed
+    // does nothing, and a repeat of one which failed runs again.
+    public void transferBalance(final String transferId,
+                                final Account sourceAccount,
+                                final Account destinationAccount,
+                                final BigDecimal transferAmount)
+    {
+        FixedPointMoney money = sourceAccount.getMoney();
+        if (money != null)
+        {
+            transferBalance(transferId, sourceAccount, destinationAccount, money.toUnits(transferAmount));
+            return;
+        }
         if (transferAmount.compareTo(BigDecimal.ZERO) <= 0)
         {
             throw new RuntimeException("Transfer amount " + transferAmount + " must be positive");
         }
-        if (sourceAccount.getAccountNumber().equals(destinationAccount.getAccountNumber()))
+        validateAccounts(sourceAccount, destinationAccount);
+
+        once(transferId, () -> {
+            long startTime = metrics.startTime();
+            try
+            {
+                retryTransfer(() -> transferBalance(sourceAccount,
+                                                    destinationAccount,
+                                                    transferAmount,
+                                                    new BalanceLogState(reaper)));
+            }
+            finally
+            {
+                metrics.recordTransferLatencySince(startTime);
+            }
+        }, () -> transferCommitted(transferId, sourceAccount, destinationAccount, transferAmount));
+    }
+
+    // For Accounts holding fixed point money, with the amount already in units
+    public void transferBalance(final Account sourceAccount,
+                                final Account destinationAccount,
+                                final long transferUnits)
+    {
+        transferBalance(null, sourceAccount, destinationAccount, transferUnits);
+    }
+
+    public void transferBalance(final String transferId,
+                                final Account sourceAccount,
+                                final Account destinationAccount,
+                                final long transferUnits)
+    {
+        if (transferUnits <= 0)
         {
-            throw new RuntimeException("May not transfer back to the same account "
-                                               + sourceAccount.getAccountNumber());
+            throw new RuntimeException("Transfer amount " + transferUnits + " units must be positive");
+        }
+        validateAccounts(sourceAccount, destinationAccount);
+        if (sourceAccount.getMoney() == null || !sourceAccount.getMoney().equals(destinationAccount.getMoney()))
+        {
+            throw new RuntimeException("Accounts " + sourceAccount.getAccountNumber() + " and "
+                                               + destinationAccount.getAccountNumber()
+                                               + " must hold fixed point money of the same scale");
+        }
+
+        once(transferId, () -> {
+            long startTime = metrics.startTime();
+            try
+            {
+                retryTransfer(() -> transferBalanceUnits(sourceAccount,
+                                                         destinationAccount,
+                                                         transferUnits,
+                                                         new BalanceLogState(reaper)));
+            }
+            finally
+            {
+                metrics.recordTransferLatencySince(startTime);
+            }
+        }, () -> transferCommitted(transferId,
+                                   sourceAccount,
+                                   destinationAccount,
+                                   sourceAccount.getMoney().toBigDecimal(transferUnits)));
+    }
+
+    // All legs share one BalanceLogState, so they become visible together when it completes, or not at all.
+    // Each Account gets a single entry for its net amount, and debits are entered first so that a failing
+    // withdrawal is found before any credits are written.
+    public void transferBalances(final List<TransferLeg> legs)
+    {
+        transferBalances(null, legs);
+    }
+
+    // Every leg is told to the listener with the same transferId
+    public void transferBalances(final String transferId, final List<TransferLeg> legs)
+    {
+        if (legs.isEmpty())
+        {
+            throw new RuntimeException("A transfer needs at least one leg");
+        }
+        FixedPointMoney money = legs.getFirst().sourceAccount().getMoney();
+        Map<Account, BigDecimal> netAmounts = new LinkedHashMap<>();
+        Map<Account, Long> netUnits = new LinkedHashMap<>();
+        for (TransferLeg leg : legs)
+        {
+            if (leg.transferAmount().compareTo(BigDecimal.ZERO) <= 0)
+            {
+                throw new RuntimeException("Transfer amount " + leg.transferAmount() + " must be positive");
+            }
+            validateAccounts(leg.sourceAccount(), leg.destinationAccount());
+            requireMoney(leg.sourceAccount(), money);
+            requireMoney(leg.destinationAccount(), money);
+            if (money == null)
+            {
+                netAmounts.merge(leg.sourceAccount(), leg.transferAmount().negate(), BigDecimal::add);
+                netAmounts.merge(leg.destinationAccount(), leg.transferAmount(), BigDecimal::add);
+            }
+            else
+            {
+                long transferUnits = money.toUnits(leg.transferAmount());
+                netUnits.merge(leg.sourceAccount(), FixedPointMoney.negate(transferUnits), FixedPointMoney::add);
+                netUnits.merge(leg.destinationAccount(), transferUnits, FixedPointMoney::add);
+            }
+        }
+        List<Adjustment> adjustments = money == null ? debitsFirst(netAmounts) : debitsFirstUnits(netUnits);
+
+        once(transferId, () -> {
+            long startTime = metrics.startTime();
+            try
+            {
+                retryTransfer(() -> adjust(adjustments, money, new BalanceLogState(reaper)));
+            }
+            finally
+            {
+                metrics.recordTransferLatencySince(startTime);
+            }
+        }, () -> {
+            for (TransferLeg leg : legs)
+            {
+                transferCommitted(transferId, leg.sourceAccount(), leg.destinationAccount(), leg.transferAmount());
+            }
+        });
+    }
+
+    // The id is marked committed before the listener is told, so a listener failure reaches the caller without
+    // letting a retry with the same id make the transfer again
+    private void once(final String transferId, final Runnable transfer, final Runnable report)
+    {
+        if (transferId == null)
+        {
+            transfer.run();
+            report.run();
+            return;
+        }
+        transferIds.execute(transferId, () -> {
+            transfer.run();
+            transferIds.markCommitted(transferId);
+            report.run();
+            return true;
+        });
+    }
+
+    private void transferCommitted(final String transferId,
+                                   final Account sourceAccount,
+                                   final Account destinationAccount,
+                                   final BigDecimal transferAmount)
+    {
+        if (listener == null)
+        {
+            return;
+        }
+        if (transferId == null)
+        {
+            listener.transferCommitted(0,
+                                       sourceAccount.getAccountNumber(),
+                                       destinationAccount.getAccountNumber(),
+                                       transferAmount);
+        }
+        else
+        {
+            listener.transferCommitted(0,
+                                       sourceAccount.getAccountNumber(),
+                                       destinationAccount.getAccountNumber(),
+                                       transferAmount,
+                                       transferId);
+        }
+    }
+
+    private void retryTransfer(final BooleanSupplier attempt)
+    {
+        int failures = 0;
+        if (contentionManager.getMaxAttempts() > 0)
+        {
+            do
+            {
+                if (attempt.getAsBoolean())
+                {
+                    contentionManager.onSuccess(failures);
+                    return;
+                }
+            }
+            while (contentionManager.onFailure(++failures));
         }
+        throw new RuntimeException(RETRIES_EXHAUSTED + failures + " tries");
+    }
 
-        for (int i = 0; i < atomicRetries; i++)
+    private static void requireMoney(final Account account, final FixedPointMoney money)
+    {
+        if (money == null ? account.getMoney() != null : !money.equals(account.getMoney()))
         {
-            if (transferBalance(sourceAccount, destinationAccount, transferAmount, new BalanceLogState()))
+            throw new RuntimeException("Account " + account.getAccountNumber()
+                                               + " does not hold the same money as the other legs");
+        }
+    }
+
+    private boolean adjust(final List<Adjustment> adjustments,
+                           final FixedPointMoney money,
+                           final BalanceLogState sharedState)
+    {
+        boolean adjusted = true;
+        try
+        {
+            for (int i = 0; i < adjustments.size() && adjusted; i++)
             {
-                return;
+                Adjustment adjustment = adjustments.get(i);
+                adjusted = money == null
+                           ? adjustment.account().adjustBalance(adjustment.delta(), sharedState)
+                           : adjustment.account().adjustBalanceUnits(adjustment.deltaUnits(), sharedState);
             }
         }
-        throw new RuntimeException("Could not transfer balance with " + atomicRetries + " tries");
+        catch (RuntimeException e)
+        {
+            sharedState.abort();
+            metrics.transferAborted();
+            throw e;
+        }
+        return finishTransfer(adjusted, sharedState);
+    }
+
+    private static List<Adjustment> debitsFirst(final Map<Account, BigDecimal> netAmounts)
+    {
+        List<Adjustment> debits = new ArrayList<>();
+        List<Adjustment> credits = new ArrayList<>();
+        netAmounts.forEach((account, delta) -> {
+            int sign = delta.signum();
+            if (sign != 0)
+            {
+                (sign < 0 ? debits : credits).add(new Adjustment(account, delta, 0));
+            }
+        });
+        debits.addAll(credits);
+        return debits;
+    }
+
+    private static List<Adjustment> debitsFirstUnits(final Map<Account, Long> netUnits)
+    {
+        List<Adjustment> debits = new ArrayList<>();
+        List<Adjustment> credits = new ArrayList<>();
+        netUnits.forEach((account, deltaUnits) -> {
+            if (deltaUnits != 0)
+            {
+                (deltaUnits < 0 ? debits : credits).add(new Adjustment(account, null, deltaUnits));
+            }
+        });
+        debits.addAll(credits);
+        return debits;
+    }
+
+    private record Adjustment(Account account, BigDecimal delta, long deltaUnits) {}
+
+    private static void validateAccounts(final Account sourceAccount,
+                                         final Account destinationAccount)
+    {
+        if (sourceAccount.getAccountNumber().equals(destinationAccount.getAccountNumber()))
+        {
+            throw new RuntimeException("May not transfer back to the same account "
+                                               + sourceAccount.getAccountNumber());
+        }
     }
 
     boolean transferBalance(final Account sourceAccount,
@@ -48,11 +346,50 @@ public class TransferService
         boolean adjusted = sourceAccount.adjustBalance(transferAmount.negate(), sharedState);
         if (adjusted)
         {
-            adjusted = destinationAccount.adjustBalance(transferAmount, sharedState);
+            adjusted = creditDestination(() -> destinationAccount.adjustBalance(transferAmount, sharedState),
+                                         sharedState);
         }
+        return finishTransfer(adjusted, sharedState);
+    }
+
+    boolean transferBalanceUnits(final Account sourceAccount,
+                                 final Account destinationAccount,
+                                 final long transferUnits,
+                                 final BalanceLogState sharedState)
+    {
+        boolean adjusted = sourceAccount.adjustBalanceUnits(-transferUnits, sharedState);
+        if (adjusted)
+        {
+            adjusted = creditDestination(() -> destinationAccount.adjustBalanceUnits(transferUnits, sharedState),
+                                         sharedState);
+        }
+        return finishTransfer(adjusted, sharedState);
+    }
+
+    // The debit is already entered, so a credit which is refused has to abort it
+    private boolean creditDestination(final BooleanSupplier credit, final BalanceLogState sharedState)
+    {
+        try
+        {
+            return credit.getAsBoolean();
+        }
+        catch (RuntimeException e)
+        {
+            sharedState.abort();
+            metrics.transferAborted();
+            throw e;
+        }
+    }
+
+    // adjusted is false when an Account's compare-and-set lost to another thread
+    private boolean finishTransfer(final boolean adjusted,
+                                   final BalanceLogState sharedState)
+    {
         if (!adjusted)
         {
             sharedState.abort();
+            metrics.casFailed();
+            metrics.transferAborted();
             return false;
         }
 
@@ -61,6 +398,7 @@ public class TransferService
             throw new RuntimeException("Transfer status was " + sharedState.getStatus() +
                                                " before transfer was completed");
         }
+        metrics.transferCompleted();
         return true;
     }
 }
@@ -0,0 +1,46 @@
+package com.danapple.experiments.atomic.metrics;
+
+// Power-of-two bucket counts: bucket b counts values below 2^b and at least 2^(b-1), and bucket 0 counts zeros
+public record HistogramSnapshot(long[] bucketCounts, long sum)
+{
+    public long count()
+    {
+        long count = 0;
+        for (long bucketCount : bucketCounts)
+        {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+    public double mean()
+    {
+        long count = count();
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    // The upper bound of the bucket holding the given quantile, so within a factor of two of the true value
+    public long percentile(final double quantile)
+    {
+        if (quantile < 0 || quantile > 1)
+        {
+            throw new RuntimeException("Quantile " + quantile + " must be between 0 and 1");
+        }
+        long count = count();
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++)
+        {
+            seen += bucketCounts[bucket];
+            if (seen >= Math.max(1, rank))
+            {
+                return bucket == 0 ? 0 : (1L << bucket) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
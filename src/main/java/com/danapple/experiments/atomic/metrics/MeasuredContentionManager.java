@@ -0,0 +1,39 @@
+package com.danapple.experiments.atomic.metrics;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+
+final class MeasuredContentionManager implements ContentionManager
+{
+    private final ContentionManager contentionManager;
+    private final TransferMetrics metrics;
+
+    MeasuredContentionManager(final ContentionManager contentionManager, final TransferMetrics metrics)
+    {
+        this.contentionManager = contentionManager;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean onFailure(final int failures)
+    {
+        if (contentionManager.onFailure(failures))
+        {
+            return true;
+        }
+        metrics.retriesExhausted();
+        return false;
+    }
+
+    @Override
+    public void onSuccess(final int failures)
+    {
+        metrics.recordAttempts(failures + 1);
+        contentionManager.onSuccess(failures);
+    }
+
+    @Override
+    public int getMaxAttempts()
+    {
+        return contentionManager.getMaxAttempts();
+    }
+}
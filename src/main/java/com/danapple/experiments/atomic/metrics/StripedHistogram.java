@@ -0,0 +1,47 @@
+package com.danapple.experiments.atomic.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A histogram of non-negative longs in power-of-two buckets: bucket b counts values below 2^b and at
+// least 2^(b-1).  Each thread records into one of several stripes, each on its own cache lines, so
+// recording is one uncontended atomic increment and never allocates.  Snapshots sum the stripes.
+public final class StripedHistogram
+{
+    final static int BUCKETS = 64;
+    // Buckets, then the running sum, then padding so that adjacent stripes do not share a cache line
+    private final static int STRIDE = BUCKETS + 1 + 16;
+
+    private final AtomicLongArray counts;
+    private final int stripeMask;
+
+    public StripedHistogram()
+    {
+        int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) << 1;
+        stripeMask = stripes - 1;
+        counts = new AtomicLongArray(stripes * STRIDE);
+    }
+
+    public void record(final long value)
+    {
+        long clampedValue = Math.max(0, value);
+        int bucket = Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(clampedValue));
+        int stripeBase = (int) (Thread.currentThread().threadId() & stripeMask) * STRIDE;
+        counts.getAndIncrement(stripeBase + bucket);
+        counts.getAndAdd(stripeBase + BUCKETS, clampedValue);
+    }
+
+    public HistogramSnapshot snapshot()
+    {
+        long[] bucketCounts = new long[BUCKETS];
+        long sum = 0;
+        for (int stripeBase = 0; stripeBase < counts.length(); stripeBase += STRIDE)
+        {
+            for (int bucket = 0; bucket < BUCKETS; bucket++)
+            {
+                bucketCounts[bucket] += counts.get(stripeBase + bucket);
+            }
+            sum += counts.get(stripeBase + BUCKETS);
+        }
+        return new HistogramSnapshot(bucketCounts, sum);
+    }
+}
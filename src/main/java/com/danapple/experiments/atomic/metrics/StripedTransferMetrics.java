@@ -0,0 +1,174 @@
+package com.danapple.experiments.atomic.metrics;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Counts with LongAdders and distributions with StripedHistograms, so recording from many threads does not
+// contend on one cache line.  Register it to read the totals over JMX, or take a snapshot directly.
+public class StripedTransferMetrics implements TransferMetrics, TransferMetricsMXBean
+{
+    private final LongAdder casFailures = new LongAdder();
+    private final LongAdder completedTransfers = new LongAdder();
+    private final LongAdder abortedTransfers = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+    private final StripedHistogram attempts = new StripedHistogram();
+    private final StripedHistogram flattenLogLengths = new StripedHistogram();
+    private final StripedHistogram transferLatencyNanos = new StripedHistogram();
+
+    @Override
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
+    @Override
+    public void casFailed()
+    {
+        casFailures.increment();
+    }
+
+    @Override
+    public void transferCompleted()
+    {
+        completedTransfers.increment();
+    }
+
+    @Override
+    public void transferAborted()
+    {
+        abortedTransfers.increment();
+    }
+
+    @Override
+    public void recordAttempts(final int attemptCount)
+    {
+        attempts.record(attemptCount);
+    }
+
+    @Override
+    public void retriesExhausted()
+    {
+        retriesExhausted.increment();
+    }
+
+    @Override
+    public void recordFlattenLogLength(final int logLength)
+    {
+        flattenLogLengths.record(logLength);
+    }
+
+    @Override
+    public void recordTransferLatency(final long nanos)
+    {
+        transferLatencyNanos.record(nanos);
+    }
+
+    @Override
+    public ContentionManager measure(final ContentionManager contentionManager)
+    {
+        return new MeasuredContentionManager(contentionManager, this);
+    }
+
+    public TransferMetricsSnapshot snapshot()
+    {
+        return new TransferMetricsSnapshot(casFailures.sum(),
+                                           completedTransfers.sum(),
+                                           abortedTransfers.sum(),
+                                           retriesExhausted.sum(),
+                                           attempts.snapshot(),
+                                           flattenLogLengths.snapshot(),
+                                           transferLatencyNanos.snapshot());
+    }
+
+    public ObjectName register(final String name)
+    {
+        try
+        {
+            ObjectName objectName = new ObjectName("com.danapple.experiments:type=TransferMetrics,name="
+                                                           + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        }
+        catch (JMException e)
+        {
+            throw new RuntimeException("Could not register transfer metrics " + name, e);
+        }
+    }
+
+    public static void unregister(final ObjectName objectName)
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            server.unregisterMBean(objectName);
+        }
+        catch (JMException e)
+        {
+            throw new RuntimeException("Could not unregister transfer metrics " + objectName, e);
+        }
+    }
+
+    @Override
+    public long getCasFailures()
+    {
+        return casFailures.sum();
+    }
+
+    @Override
+    public long getCompletedTransfers()
+    {
+        return completedTransfers.sum();
+    }
+
+    @Override
+    public long getAbortedTransfers()
+    {
+        return abortedTransfers.sum();
+    }
+
+    @Override
+    public long getRetriesExhausted()
+    {
+        return retriesExhausted.sum();
+    }
+
+    @Override
+    public double getMeanAttempts()
+    {
+        return attempts.snapshot().mean();
+    }
+
+    @Override
+    public long getAttemptsP99()
+    {
+        return attempts.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getFlattenLogLengthP99()
+    {
+        return flattenLogLengths.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getTransferLatencyP50Nanos()
+    {
+        return transferLatencyNanos.snapshot().percentile(0.5);
+    }
+
+    @Override
+    public long getTransferLatencyP99Nanos()
+    {
+        return transferLatencyNanos.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getTransferLatencyP999Nanos()
+    {
+        return transferLatencyNanos.snapshot().percentile(0.999);
+    }
+}
@@ -0,0 +1,68 @@
+package com.danapple.experiments.atomic.metrics;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+
+// What the engines report as they run.  NOOP is the default everywhere and does nothing, so leaving
+// metrics off costs an empty call the JIT removes; isEnabled lets callers skip reading the clock as well.
+public interface TransferMetrics
+{
+    TransferMetrics NOOP = new TransferMetrics()
+    {
+    };
+
+    default boolean isEnabled()
+    {
+        return false;
+    }
+
+    // A compare-and-set of a snapshot or balance lost to another thread
+    default void casFailed()
+    {
+    }
+
+    default void transferCompleted()
+    {
+    }
+
+    default void transferAborted()
+    {
+    }
+
+    // Attempts taken by an operation which succeeded; an operation which ran out of attempts reports
+    // retriesExhausted instead
+    default void recordAttempts(final int attempts)
+    {
+    }
+
+    default void retriesExhausted()
+    {
+    }
+
+    // Entries in a log when it was flattened
+    default void recordFlattenLogLength(final int logLength)
+    {
+    }
+
+    default void recordTransferLatency(final long nanos)
+    {
+    }
+
+    // Wraps the ContentionManager so that every retry loop using it reports its attempts
+    default ContentionManager measure(final ContentionManager contentionManager)
+    {
+        return contentionManager;
+    }
+
+    default long startTime()
+    {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    default void recordTransferLatencySince(final long startTime)
+    {
+        if (isEnabled())
+        {
+            recordTransferLatency(System.nanoTime() - startTime);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.danapple.experiments.atomic.metrics;
+
+public interface TransferMetricsMXBean
+{
+    long getCasFailures();
+
+    long getCompletedTransfers();
+
+    long getAbortedTransfers();
+
+    long getRetriesExhausted();
+
+    double getMeanAttempts();
+
+    long getAttemptsP99();
+
+    long getFlattenLogLengthP99();
+
+    long getTransferLatencyP50Nanos();
+
+    long getTransferLatencyP99Nanos();
+
+    long getTransferLatencyP999Nanos();
+}
@@ -0,0 +1,11 @@
+package com.danapple.experiments.atomic.metrics;
+
+public record TransferMetricsSnapshot(long casFailures,
+                                      long completedTransfers,
+                                      long abortedTransfers,
+                                      long retriesExhausted,
+                                      HistogramSnapshot attempts,
+                                      HistogramSnapshot flattenLogLengths,
+                                      HistogramSnapshot transferLatencyNanos)
+{
+}
@@ -0,0 +1,55 @@
+package com.danapple.experiments.atomic.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+// Amounts held as a long count of units of 10^-scale, such as cents for a scale of 2.  Conversions are exact:
+// an amount with more decimal places than the scale, or too large for a long, is rejected rather than rounded.
+public record FixedPointMoney(int scale)
+{
+    private final static int MAX_SCALE = 18;
+
+    public FixedPointMoney
+    {
+        if (scale < 0 || scale > MAX_SCALE)
+        {
+            throw new RuntimeException("Scale " + scale + " must be between 0 and " + MAX_SCALE);
+        }
+    }
+
+    public long toUnits(final BigDecimal amount)
+    {
+        try
+        {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        }
+        catch (ArithmeticException e)
+        {
+            throw new RuntimeException("Amount " + amount + " cannot be held exactly with scale " + scale, e);
+        }
+    }
+
+    public BigDecimal toBigDecimal(final long units)
+    {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    public static long add(final long units, final long otherUnits)
+    {
+        long sum = units + otherUnits;
+        if (((units ^ sum) & (otherUnits ^ sum)) < 0)
+        {
+            throw new RuntimeException("Adding " + otherUnits + " to " + units + " overflows");
+        }
+        return sum;
+    }
+
+    public static long negate(final long units)
+    {
+        if (units == Long.MIN_VALUE)
+        {
+            throw new RuntimeException("Negating " + units + " overflows");
+        }
+        return -units;
+    }
+}
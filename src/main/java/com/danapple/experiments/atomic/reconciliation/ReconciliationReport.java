@@ -0,0 +1,15 @@
+package com.danapple.experiments.atomic.reconciliation;
+
+import java.math.BigDecimal;
+
+// pendingEntries counts the log entries or adjustments of transfers which had neither completed nor aborted
+public record ReconciliationReport(long accountCount,
+                                   BigDecimal totalBalance,
+                                   long negativeBalances,
+                                   long pendingEntries)
+{
+    public boolean balancesTo(final BigDecimal expectedTotalBalance)
+    {
+        return totalBalance.compareTo(expectedTotalBalance) == 0;
+    }
+}
@@ -0,0 +1,56 @@
+package com.danapple.experiments.atomic.reconciliation;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+
+// Accumulates one part of an audit.  Each fork-join task fills its own tally, so adding needs no
+// synchronization, and tallies are combined as the tasks finish.
+public final class ReconciliationTally
+{
+    private long accountCount;
+    private BigDecimal totalBalance = BigDecimal.ZERO;
+    private long totalBalanceUnits;
+    private long negativeBalances;
+    private long pendingEntries;
+
+    public void addBalance(final BigDecimal balance, final int pendingCount)
+    {
+        accountCount++;
+        totalBalance = totalBalance.add(balance);
+        if (balance.signum() < 0)
+        {
+            negativeBalances++;
+        }
+        pendingEntries += pendingCount;
+    }
+
+    public void addBalanceUnits(final long balanceUnits, final int pendingCount)
+    {
+        accountCount++;
+        totalBalanceUnits = FixedPointMoney.add(totalBalanceUnits, balanceUnits);
+        if (balanceUnits < 0)
+        {
+            negativeBalances++;
+        }
+        pendingEntries += pendingCount;
+    }
+
+    public ReconciliationTally combine(final ReconciliationTally other)
+    {
+        accountCount += other.accountCount;
+        totalBalance = totalBalance.add(other.totalBalance);
+        totalBalanceUnits = FixedPointMoney.add(totalBalanceUnits, other.totalBalanceUnits);
+        negativeBalances += other.negativeBalances;
+        pendingEntries += other.pendingEntries;
+        return this;
+    }
+
+    // money is null when the balances were added as BigDecimal
+    public ReconciliationReport toReport(final FixedPointMoney money)
+    {
+        return new ReconciliationReport(accountCount,
+                                        money == null ? totalBalance : money.toBigDecimal(totalBalanceUnits),
+                                        negativeBalances,
+                                        pendingEntries);
+    }
+}
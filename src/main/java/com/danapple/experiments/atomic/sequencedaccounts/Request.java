@@ -0,0 +1,41 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+// A preallocated ring slot.  A producer fills it in after claiming it and before publishing it, and the
+// sequencer clears it after applying it, so nothing it refers to outlives the request.
+final class Request
+{
+    final static int CREATE_ACCOUNT = 1;
+    final static int TRANSFER = 2;
+    final static int GET_BALANCE = 3;
+    final static int DEPOSIT = 4;
+
+    int type;
+    String accountNumber;
+    String destinationAccountNumber;
+    BigDecimal amount;
+    long units;
+    CompletableFuture<?> result;
+
+    void set(final int type,
+             final String accountNumber,
+             final String destinationAccountNumber,
+             final BigDecimal amount,
+             final long units,
+             final CompletableFuture<?> result)
+    {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.destinationAccountNumber = destinationAccountNumber;
+        this.amount = amount;
+        this.units = units;
+        this.result = result;
+    }
+
+    void clear()
+    {
+        set(0, null, null, null, 0, null);
+    }
+}
@@ -0,0 +1,124 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+// A bounded multi-producer, single-consumer ring of preallocated Requests.  A producer claims a sequence
+// with one atomic add, waits until the consumer has freed that slot, fills it in and publishes it by
+// writing the sequence into the slot's published marker.  The consumer takes every consecutive published
+// slot in one pass and only then tells producers how far it has got, so batches form on their own when
+// producers get ahead.
+//
+// Closing sets a high bit in the claim counter, so every claim either precedes the close, and will be
+// applied, or sees the bit and fails: there is no window in which a request can be claimed and then lost.
+final class RequestRing
+{
+    private final static long CLOSED = 1L << 62;
+
+    private final Request[] requests;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private volatile long closedAt = -1;
+
+    // Only read and written by the consumer
+    private long cursor;
+
+    RequestRing(final int capacity)
+    {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+        {
+            throw new RuntimeException("Ring capacity " + capacity + " must be a power of two");
+        }
+        requests = new Request[capacity];
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            requests[i] = new Request();
+            published.set(i, -1);
+        }
+        mask = capacity - 1;
+    }
+
+    int getCapacity()
+    {
+        return requests.length;
+    }
+
+    // Returns the claimed sequence, whose slot is free to fill in, or -1 if the ring is closed
+    long claim()
+    {
+        long sequence = claimed.getAndIncrement();
+        if ((sequence & CLOSED) != 0)
+        {
+            return -1;
+        }
+        int spins = 0;
+        while (sequence - consumed.get() >= requests.length)
+        {
+            if (++spins < 100)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                Thread.yield();
+            }
+        }
+        return sequence;
+    }
+
+    Request get(final long sequence)
+    {
+        return requests[(int) sequence & mask];
+    }
+
+    // A volatile write rather than a release, so that it is ordered before the producer's check of whether
+    // the consumer is waiting
+    void publish(final long sequence)
+    {
+        published.set((int) sequence & mask, sequence);
+    }
+
+    // Hands every consecutively published Request to the handler and returns how many there were
+    int drain(final Consumer<Request> handler)
+    {
+        long start = cursor;
+        Request request;
+        while (published.get((int) cursor & mask) == cursor)
+        {
+            request = requests[(int) cursor & mask];
+            handler.accept(request);
+            request.clear();
+            cursor++;
+        }
+        if (cursor != start)
+        {
+            consumed.lazySet(cursor);
+        }
+        return (int) (cursor - start);
+    }
+
+    boolean hasPublished()
+    {
+        return published.get((int) cursor & mask) == cursor;
+    }
+
+    void close()
+    {
+        long claimedBeforeClose = claimed.getAndUpdate(claimedCount -> claimedCount | CLOSED);
+        if ((claimedBeforeClose & CLOSED) == 0)
+        {
+            closedAt = claimedBeforeClose;
+        }
+    }
+
+    // True once the ring is closed and every request claimed before that has been drained
+    boolean isDrained()
+    {
+        long closedAtValue = closedAt;
+        return closedAtValue >= 0 && cursor == closedAtValue;
+    }
+}
@@ -0,0 +1,307 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Every change goes through one sequencer thread, which owns the balances outright: it applies requests to
+// plain mutable fields with no compare-and-set to lose and no retries, in the order they were claimed from
+// the ring.  Callers publish a request and get a CompletableFuture for its outcome.  The order the
+// sequencer applies changes in is the sequence reported to the listener.
+//
+// Completing a future runs any stages the caller has chained to it, and a listener may write to disk, so neither
+// happens on the sequencer thread.  The sequencer hands each outcome to a single completer thread, which tells the
+// listener and then completes the future, in the order the changes were applied.
+public class SequencedLedger implements AutoCloseable
+{
+    private final static int DEFAULT_CAPACITY = 1 << 16;
+    private final static int SPINS_BEFORE_PARKING = 1_000;
+    private final static long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final RequestRing ring;
+    private final FixedPointMoney money;
+    private final TransferListener listener;
+    private final Thread sequencer;
+    private final ExecutorService completer =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("sequencer-completer").daemon().factory());
+    private volatile boolean sequencerWaiting;
+
+    // Only touched by the sequencer thread
+    private final Map<String, MutableAccount> accounts = new HashMap<>();
+    private long sequence;
+
+    public SequencedLedger()
+    {
+        this(DEFAULT_CAPACITY, null, null);
+    }
+
+    public SequencedLedger(final int capacity, final FixedPointMoney money)
+    {
+        this(capacity, money, null);
+    }
+
+    public SequencedLedger(final int capacity, final FixedPointMoney money, final TransferListener listener)
+    {
+        ring = new RequestRing(capacity);
+        this.money = money;
+        this.listener = listener;
+        sequencer = Thread.ofPlatform().name("sequencer").daemon().start(this::runSequencer);
+    }
+
+    public FixedPointMoney getMoney()
+    {
+        return money;
+    }
+
+    public CompletableFuture<Void> createAccount(final String accountNumber)
+    {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        publish(Request.CREATE_ACCOUNT, accountNumber, null, null, 0, result);
+        return result;
+    }
+
+    public CompletableFuture<Void> transferBalance(final String sourceAccountNumber,
+                                                   final String destinationAccountNumber,
+                                                   final BigDecimal transferAmount)
+    {
+        if (transferAmount.compareTo(BigDecimal.ZERO) <= 0)
+        {
+            throw new RuntimeException("Transfer amount " + transferAmount + " must be positive");
+        }
+        if (sourceAccountNumber.equals(destinationAccountNumber))
+        {
+            throw new RuntimeException("May not transfer back to the same account " + sourceAccountNumber);
+        }
+        long transferUnits = money == null ? 0 : money.toUnits(transferAmount);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        publish(Request.TRANSFER, sourceAccountNumber, destinationAccountNumber, transferAmount, transferUnits, result);
+        return result;
+    }
+
+    // Ordered with the changes around it, so a caller sees the effect of every transfer it has already seen complete
+    public CompletableFuture<BigDecimal> getBalance(final String accountNumber)
+    {
+        CompletableFuture<BigDecimal> result = new CompletableFuture<>();
+        publish(Request.GET_BALANCE, accountNumber, null, null, 0, result);
+        return result;
+    }
+
+    // Opening balances for tests and the load generator; not reported to the listener
+    CompletableFuture<Void> deposit(final String accountNumber, final BigDecimal amount)
+    {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        publish(Request.DEPOSIT, accountNumber, null, amount, money == null ? 0 : money.toUnits(amount), result);
+        return result;
+    }
+
+    // Requests published before close are still applied; later ones are refused
+    @Override
+    public void close()
+    {
+        ring.close();
+        LockSupport.unpark(sequencer);
+        try
+        {
+            sequencer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        completer.close();
+    }
+
+    private void publish(final int type,
+                         final String accountNumber,
+                         final String destinationAccountNumber,
+                         final BigDecimal amount,
+                         final long units,
+                         final CompletableFuture<?> result)
+    {
+        long claimedSequence = ring.claim();
+        if (claimedSequence < 0)
+        {
+            throw new RuntimeException("Sequenced ledger is closed");
+        }
+        ring.get(claimedSequence).set(type, accountNumber, destinationAccountNumber, amount, units, result);
+        ring.publish(claimedSequence);
+        if (sequencerWaiting)
+        {
+            LockSupport.unpark(sequencer);
+        }
+    }
+
+    private void runSequencer()
+    {
+        int idleSpins = 0;
+        while (!ring.isDrained())
+        {
+            if (ring.drain(this::apply) > 0)
+            {
+                idleSpins = 0;
+            }
+            else if (++idleSpins < SPINS_BEFORE_PARKING)
+            {
+                Thread.onSpinWait();
+            }
+            else
+            {
+                // A producer publishes before checking sequencerWaiting, and the sequencer sets it before
+                // checking for a published request, so one of them always sees the other.  The bound on the
+                // park covers the close, which publishes nothing.
+                sequencerWaiting = true;
+                if (!ring.hasPublished())
+                {
+                    LockSupport.parkNanos(MAX_PARK_NANOS);
+                }
+                sequencerWaiting = false;
+                idleSpins = 0;
+            }
+        }
+    }
+
+    // The request is reused once apply returns, so whatever the completer needs is copied out of it first
+    @SuppressWarnings("unchecked")
+    private void apply(final Request request)
+    {
+        CompletableFuture<Object> result = (CompletableFuture<Object>) request.result;
+        String accountNumber = request.accountNumber;
+        try
+        {
+            switch (request.type)
+            {
+                case Request.CREATE_ACCOUNT -> {
+                    createAccountNow(accountNumber);
+                    long createdSequence = ++sequence;
+                    finish(result, null, listener == null
+                                         ? null
+                                         : () -> listener.accountCreated(createdSequence, accountNumber));
+                }
+                case Request.TRANSFER -> {
+                    String destinationAccountNumber = request.destinationAccountNumber;
+                    BigDecimal transferAmount = request.amount;
+                    transferNow(accountNumber, destinationAccountNumber, transferAmount, request.units);
+                    long transferSequence = ++sequence;
+                    finish(result, null, listener == null
+                                         ? null
+                                         : () -> listener.transferCommitted(transferSequence,
+                                                                            accountNumber,
+                                                                            destinationAccountNumber,
+                                                                            transferAmount));
+                }
+                case Request.GET_BALANCE -> finish(result,
+                                                   findAccount(accountNumber, "Account").getBalance(money),
+                                                   null);
+                case Request.DEPOSIT -> {
+                    adjust(findAccount(accountNumber, "Account"), request.amount, request.units);
+                    finish(result, null, null);
+                }
+                default -> throw new RuntimeException("Unknown request type " + request.type);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            completer.execute(() -> result.completeExceptionally(e));
+        }
+    }
+
+    // A listener which throws fails the future, though the change it was told about has been applied
+    private void finish(final CompletableFuture<Object> result, final Object value, final Runnable report)
+    {
+        completer.execute(() -> {
+            try
+            {
+                if (report != null)
+                {
+                    report.run();
+                }
+                result.complete(value);
+            }
+            catch (RuntimeException e)
+            {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    private void createAccountNow(final String accountNumber)
+    {
+        if (accounts.putIfAbsent(accountNumber, new MutableAccount()) != null)
+        {
+            throw new RuntimeException("Account " + accountNumber + " already exists");
+        }
+    }
+
+    private void transferNow(final String sourceAccountNumber,
+                             final String destinationAccountNumber,
+                             final BigDecimal transferAmount,
+                             final long transferUnits)
+    {
+        MutableAccount sourceAccount = findAccount(sourceAccountNumber, "Source account");
+        MutableAccount destinationAccount = findAccount(destinationAccountNumber, "Destination account");
+        if (money == null
+            ? sourceAccount.balance.compareTo(transferAmount) < 0
+            : sourceAccount.balanceUnits < transferUnits)
+        {
+            throw new RuntimeException("Account " + sourceAccountNumber + " has insufficient balance ("
+                                               + sourceAccount.getBalance(money) + ") for withdrawal of "
+                                               + transferAmount);
+        }
+        // Both balances are worked out before either is assigned, so a credit which overflows changes nothing
+        if (money == null)
+        {
+            BigDecimal newSourceBalance = sourceAccount.balance.subtract(transferAmount);
+            BigDecimal newDestinationBalance = destinationAccount.balance.add(transferAmount);
+            sourceAccount.balance = newSourceBalance;
+            destinationAccount.balance = newDestinationBalance;
+        }
+        else
+        {
+            long newSourceBalanceUnits = FixedPointMoney.add(sourceAccount.balanceUnits, -transferUnits);
+            long newDestinationBalanceUnits = FixedPointMoney.add(destinationAccount.balanceUnits, transferUnits);
+            sourceAccount.balanceUnits = newSourceBalanceUnits;
+            destinationAccount.balanceUnits = newDestinationBalanceUnits;
+        }
+    }
+
+    // Uses amount or units, according to how the ledger holds money
+    private void adjust(final MutableAccount account, final BigDecimal amount, final long units)
+    {
+        if (money == null)
+        {
+            account.balance = account.balance.add(amount);
+        }
+        else
+        {
+            account.balanceUnits = FixedPointMoney.add(account.balanceUnits, units);
+        }
+    }
+
+    private MutableAccount findAccount(final String accountNumber, final String description)
+    {
+        MutableAccount account = accounts.get(accountNumber);
+        if (account == null)
+        {
+            throw new RuntimeException(description + " " + accountNumber + " does not exist");
+        }
+        return account;
+    }
+
+    private static class MutableAccount
+    {
+        private BigDecimal balance = BigDecimal.ZERO;
+        private long balanceUnits;
+
+        BigDecimal getBalance(final FixedPointMoney money)
+        {
+            return money == null ? balance : money.toBigDecimal(balanceUnits);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import com.danapple.experiments.atomic.workload.TransferEngine;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+
+// Lives in the sequencedaccounts package so that it can seed opening balances, which has no public API.
+public final class SequencedTransferEngine implements TransferEngine
+{
+    private final SequencedLedger ledger;
+    private final String[] accountNumbers;
+
+    public SequencedTransferEngine(final SequencedLedger ledger, final int accountCount, final BigDecimal openingBalance)
+    {
+        this.ledger = ledger;
+        accountNumbers = new String[accountCount];
+        CompletableFuture<?>[] seeded = new CompletableFuture<?>[accountCount];
+        for (int i = 0; i < accountCount; i++)
+        {
+            accountNumbers[i] = "Account " + i;
+            ledger.createAccount(accountNumbers[i]);
+            seeded[i] = ledger.deposit(accountNumbers[i], openingBalance);
+        }
+        CompletableFuture.allOf(seeded).join();
+    }
+
+    @Override
+    public int getAccountCount()
+    {
+        return accountNumbers.length;
+    }
+
+    @Override
+    public boolean transfer(final int sourceAccount, final int destinationAccount, final BigDecimal transferAmount)
+    {
+        ledger.transferBalance(accountNumbers[sourceAccount], accountNumbers[destinationAccount], transferAmount).join();
+        return true;
+    }
+
+    @Override
+    public boolean post(final int sourceAccount,
+                        final int firstDestinationAccount,
+                        final int secondDestinationAccount,
+                        final BigDecimal transferAmount)
+    {
+        throw new RuntimeException("The sequenced engine has no multi-leg postings");
+    }
+
+    @Override
+    public boolean supportsPostings()
+    {
+        return false;
+    }
+
+    @Override
+    public BigDecimal getBalance(final int account)
+    {
+        return ledger.getBalance(accountNumbers[account]).join();
+    }
+
+    @Override
+    public BigDecimal getTotalBalance()
+    {
+        CompletableFuture<?>[] balances = new CompletableFuture<?>[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++)
+        {
+            balances[i] = ledger.getBalance(accountNumbers[i]);
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (CompletableFuture<?> balance : balances)
+        {
+            total = total.add((BigDecimal) balance.join());
+        }
+        return total;
+    }
+}
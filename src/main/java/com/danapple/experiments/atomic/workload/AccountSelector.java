@@ -0,0 +1,52 @@
+package com.danapple.experiments.atomic.workload;
+
+import java.util.random.RandomGenerator;
+
+public interface AccountSelector
+{
+    int select(RandomGenerator random);
+
+    int getAccountCount();
+
+    static AccountSelector uniform(final int accountCount)
+    {
+        return new UniformSelector(accountCount);
+    }
+
+    static AccountSelector zipf(final int accountCount, final double exponent)
+    {
+        return new ZipfSelector(accountCount, exponent);
+    }
+
+    // "uniform", "zipf" (exponent 1.0) or "zipf:<exponent>"
+    static AccountSelector parse(final String skew, final int accountCount)
+    {
+        if (skew.equals("uniform"))
+        {
+            return uniform(accountCount);
+        }
+        if (skew.equals("zipf"))
+        {
+            return zipf(accountCount, 1.0);
+        }
+        if (skew.startsWith("zipf:"))
+        {
+            return zipf(accountCount, Double.parseDouble(skew.substring("zipf:".length())));
+        }
+        throw new RuntimeException("Unknown skew " + skew);
+    }
+
+    default int selectOther(final RandomGenerator random, final int excludedAccount)
+    {
+        if (getAccountCount() < 2)
+        {
+            throw new RuntimeException("Need at least two accounts to select a different account");
+        }
+        int selected = select(random);
+        while (selected == excludedAccount)
+        {
+            selected = select(random);
+        }
+        return selected;
+    }
+}
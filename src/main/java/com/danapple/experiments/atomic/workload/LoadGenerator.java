@@ -0,0 +1,155 @@
+package com.danapple.experiments.atomic.workload;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.ledgeredaccounts.Ledger;
+import com.danapple.experiments.atomic.ledgeredaccounts.LedgerOptions;
+import com.danapple.experiments.atomic.ledgeredaccounts.LedgeredTransferEngine;
+import com.danapple.experiments.atomic.loggedaccounts.AccountDirectory;
+import com.danapple.experiments.atomic.loggedaccounts.LoggedTransferEngine;
+import com.danapple.experiments.atomic.loggedaccounts.TransferOptions;
+import com.danapple.experiments.atomic.loggedaccounts.TransferService;
+import com.danapple.experiments.atomic.metrics.StripedHistogram;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.sequencedaccounts.SequencedLedger;
+import com.danapple.experiments.atomic.sequencedaccounts.SequencedTransferEngine;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs one virtual thread per client, each issuing operations back to back until the run ends.  Clients
+// record into the warmup counters until the warmup is over and then into the measured ones, so nothing has
+// to stop or synchronise at the boundary.  The total balance is checked once every client has finished.
+public class LoadGenerator
+{
+    private final WorkloadOptions options;
+    private final TransferEngine engine;
+    private final AccountSelector selector;
+
+    private volatile Measurement measurement = new Measurement();
+    private volatile boolean running;
+
+    public LoadGenerator(final WorkloadOptions options)
+    {
+        this(options, createEngine(options));
+    }
+
+    public LoadGenerator(final WorkloadOptions options, final TransferEngine engine)
+    {
+        if (options.postingPercent() > 0 && !engine.supportsPostings())
+        {
+            throw new RuntimeException("Engine does not support multi-leg postings");
+        }
+        this.options = options;
+        this.engine = engine;
+        selector = AccountSelector.parse(options.skew(), engine.getAccountCount());
+    }
+
+    public static TransferEngine createEngine(final WorkloadOptions options)
+    {
+        FixedPointMoney money = options.money().equals("cents") ? new FixedPointMoney(2) : null;
+        ContentionManager contentionManager = ContentionManager.parse(options.contention(), options.retries());
+        if (options.engine().equals("ledgered"))
+        {
+            LedgerOptions ledgerOptions = LedgerOptions.DEFAULT.withContentionManager(contentionManager)
+                                                               .withCombining(options.combining())
+                                                               .withMoney(money);
+            return new LedgeredTransferEngine(new Ledger(ledgerOptions),
+                                              options.accountCount(),
+                                              options.openingBalance());
+        }
+        if (options.engine().equals("sequenced"))
+        {
+            return new SequencedTransferEngine(new SequencedLedger(1 << 16, money),
+                                               options.accountCount(),
+                                               options.openingBalance());
+        }
+        TransferOptions transferOptions = TransferOptions.defaults().withContentionManager(contentionManager);
+        return new LoggedTransferEngine(new TransferService(transferOptions),
+                                        new AccountDirectory(money),
+                                        options.accountCount(),
+                                        options.openingBalance());
+    }
+
+    public WorkloadReport run() throws InterruptedException
+    {
+        BigDecimal expectedTotalBalance = options.openingBalance().multiply(BigDecimal.valueOf(engine.getAccountCount()));
+        Thread[] clients = new Thread[options.clients()];
+        running = true;
+        for (int i = 0; i < clients.length; i++)
+        {
+            clients[i] = Thread.ofVirtual().name("client-" + i).start(this::runClient);
+        }
+
+        Thread.sleep(options.warmupSeconds() * 1_000);
+        Measurement measured = new Measurement();
+        long measureStart = System.nanoTime();
+        measurement = measured;
+        Thread.sleep(options.durationSeconds() * 1_000);
+        measurement = new Measurement();
+        double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+        running = false;
+        for (Thread client : clients)
+        {
+            client.join();
+        }
+
+        return new WorkloadReport(options,
+                                  measured.completed.sum(),
+                                  measured.failed.sum(),
+                                  measuredSeconds,
+                                  measured.latencyNanos.snapshot(),
+                                  expectedTotalBalance,
+                                  engine.getTotalBalance());
+    }
+
+    private void runClient()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running)
+        {
+            Measurement current = measurement;
+            long startTime = System.nanoTime();
+            boolean completed;
+            try
+            {
+                completed = runOperation(random);
+            }
+            catch (RuntimeException e)
+            {
+                completed = false;
+            }
+            current.latencyNanos.record(System.nanoTime() - startTime);
+            (completed ? current.completed : current.failed).increment();
+        }
+    }
+
+    private boolean runOperation(final ThreadLocalRandom random)
+    {
+        int operation = random.nextInt(100);
+        int source = selector.select(random);
+        if (operation < options.readPercent())
+        {
+            engine.getBalance(source);
+            return true;
+        }
+        BigDecimal amount = BigDecimal.valueOf(1 + random.nextLong(options.maxAmount()), 2);
+        int destination = selector.selectOther(random, source);
+        if (operation < options.readPercent() + options.postingPercent())
+        {
+            int secondDestination = selector.selectOther(random, source);
+            while (secondDestination == destination)
+            {
+                secondDestination = selector.selectOther(random, source);
+            }
+            return engine.post(source, destination, secondDestination, amount);
+        }
+        return engine.transfer(source, destination, amount);
+    }
+
+    private static class Measurement
+    {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final StripedHistogram latencyNanos = new StripedHistogram();
+    }
+}
@@ -0,0 +1,23 @@
+package com.danapple.experiments.atomic.workload;
+
+import java.math.BigDecimal;
+
+// A transfer engine seen by the load generator, with its accounts known by index.  Every account starts
+// with the same opening balance, so the total of all balances must never change.
+public interface TransferEngine
+{
+    int getAccountCount();
+
+    // Returns false, or throws, if the transfer was not made
+    boolean transfer(int sourceAccount, int destinationAccount, BigDecimal transferAmount);
+
+    // Moves transferAmount from the source to each destination, all or nothing
+    boolean post(int sourceAccount, int firstDestinationAccount, int secondDestinationAccount, BigDecimal transferAmount);
+
+    boolean supportsPostings();
+
+    BigDecimal getBalance(int account);
+
+    // Read once every transfer has stopped
+    BigDecimal getTotalBalance();
+}
@@ -0,0 +1,29 @@
+package com.danapple.experiments.atomic.workload;
+
+import java.util.random.RandomGenerator;
+
+class UniformSelector implements AccountSelector
+{
+    private final int accountCount;
+
+    UniformSelector(final int accountCount)
+    {
+        if (accountCount <= 0)
+        {
+            throw new RuntimeException("Account count " + accountCount + " must be positive");
+        }
+        this.accountCount = accountCount;
+    }
+
+    @Override
+    public int select(final RandomGenerator random)
+    {
+        return random.nextInt(accountCount);
+    }
+
+    @Override
+    public int getAccountCount()
+    {
+        return accountCount;
+    }
+}
@@ -0,0 +1,118 @@
+package com.danapple.experiments.atomic.workload;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+// readPercent and postingPercent of the operations are balance reads and three-leg postings; the rest are
+// two-leg transfers.  Amounts are drawn uniformly from 0.01 up to maxAmount hundredths.
+public record WorkloadOptions(String engine,
+                              int accountCount,
+                              String skew,
+                              int clients,
+                              long warmupSeconds,
+                              long durationSeconds,
+                              int readPercent,
+                              int postingPercent,
+                              BigDecimal openingBalance,
+                              long maxAmount,
+                              String money,
+                              String contention,
+                              int retries,
+                              boolean combining)
+{
+    public final static WorkloadOptions DEFAULT = new WorkloadOptions("logged",
+                                                                      10_000,
+                                                                      "uniform",
+                                                                      10_000,
+                                                                      5,
+                                                                      30,
+                                                                      10,
+                                                                      0,
+                                                                      new BigDecimal(1_000_000),
+                                                                      100,
+                                                                      "cents",
+                                                                      "fixed",
+                                                                      10,
+                                                                      false);
+
+    public WorkloadOptions
+    {
+        if (!engine.equals("ledgered") && !engine.equals("logged") && !engine.equals("sequenced"))
+        {
+            throw new RuntimeException("Unknown engine " + engine);
+        }
+        if (accountCount < 3)
+        {
+            throw new RuntimeException("Account count " + accountCount + " must be at least 3");
+        }
+        if (clients <= 0)
+        {
+            throw new RuntimeException("Client count " + clients + " must be positive");
+        }
+        if (warmupSeconds < 0 || durationSeconds <= 0)
+        {
+            throw new RuntimeException("Warmup " + warmupSeconds + "s must not be negative and duration "
+                                               + durationSeconds + "s must be positive");
+        }
+        if (readPercent < 0 || postingPercent < 0 || readPercent + postingPercent > 100)
+        {
+            throw new RuntimeException("Read " + readPercent + "% and posting " + postingPercent
+                                               + "% must be a valid mix");
+        }
+        if (postingPercent > 0 && !engine.equals("logged"))
+        {
+            throw new RuntimeException("The " + engine + " engine has no multi-leg postings");
+        }
+        if (!money.equals("decimal") && !money.equals("cents"))
+        {
+            throw new RuntimeException("Unknown money " + money);
+        }
+        if (maxAmount <= 0)
+        {
+            throw new RuntimeException("Maximum amount " + maxAmount + " must be positive");
+        }
+    }
+
+    // Arguments are name=value pairs overriding DEFAULT, such as engine=ledgered skew=zipf:1.2 clients=1000000
+    public static WorkloadOptions parse(final String[] args)
+    {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args)
+        {
+            int equals = arg.indexOf('=');
+            if (equals <= 0)
+            {
+                throw new RuntimeException("Argument " + arg + " is not name=value");
+            }
+            values.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        WorkloadOptions options = new WorkloadOptions(
+                stringValue(values, "engine", DEFAULT.engine),
+                Integer.parseInt(stringValue(values, "accounts", String.valueOf(DEFAULT.accountCount))),
+                stringValue(values, "skew", DEFAULT.skew),
+                Integer.parseInt(stringValue(values, "clients", String.valueOf(DEFAULT.clients))),
+                Long.parseLong(stringValue(values, "warmup", String.valueOf(DEFAULT.warmupSeconds))),
+                Long.parseLong(stringValue(values, "duration", String.valueOf(DEFAULT.durationSeconds))),
+                Integer.parseInt(stringValue(values, "reads", String.valueOf(DEFAULT.readPercent))),
+                Integer.parseInt(stringValue(values, "postings", String.valueOf(DEFAULT.postingPercent))),
+                new BigDecimal(stringValue(values, "openingBalance", DEFAULT.openingBalance.toPlainString())),
+                Long.parseLong(stringValue(values, "maxAmount", String.valueOf(DEFAULT.maxAmount))),
+                stringValue(values, "money", DEFAULT.money),
+                stringValue(values, "contention", DEFAULT.contention),
+                Integer.parseInt(stringValue(values, "retries", String.valueOf(DEFAULT.retries))),
+                Boolean.parseBoolean(stringValue(values, "combining", String.valueOf(DEFAULT.combining))));
+        if (!values.isEmpty())
+        {
+            throw new RuntimeException("Unknown options " + values.keySet());
+        }
+        return options;
+    }
+
+    // Removes the value, so that whatever is left over was not recognised
+    private static String stringValue(final Map<String, String> values, final String name, final String defaultValue)
+    {
+        String value = values.remove(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,53 @@
+package com.danapple.experiments.atomic.workload;
+
+import com.danapple.experiments.atomic.metrics.HistogramSnapshot;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+
+// Counts and latencies cover the measured period only, not the warmup
+public record WorkloadReport(WorkloadOptions options,
+                             long completedOperations,
+                             long failedOperations,
+                             double measuredSeconds,
+                             HistogramSnapshot latencyNanos,
+                             BigDecimal expectedTotalBalance,
+                             BigDecimal totalBalance)
+{
+    public double throughput()
+    {
+        return completedOperations / measuredSeconds;
+    }
+
+    public boolean isBalanced()
+    {
+        return expectedTotalBalance.compareTo(totalBalance) == 0;
+    }
+
+    public void print(final PrintStream out)
+    {
+        out.printf("%s engine, %d accounts (%s), %d clients, %d%% reads, %d%% postings, %ds measured after %ds warmup%n",
+                   options.engine(),
+                   options.accountCount(),
+                   options.skew(),
+                   options.clients(),
+                   options.readPercent(),
+                   options.postingPercent(),
+                   options.durationSeconds(),
+                   options.warmupSeconds());
+        out.printf("Operations: %d completed, %d failed, %.0f per second%n",
+                   completedOperations,
+                   failedOperations,
+                   throughput());
+        out.printf("Latency (upper bounds, us): mean %.1f, p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                   latencyNanos.mean() / 1_000,
+                   latencyNanos.percentile(0.5) / 1_000.0,
+                   latencyNanos.percentile(0.9) / 1_000.0,
+                   latencyNanos.percentile(0.99) / 1_000.0,
+                   latencyNanos.percentile(0.999) / 1_000.0,
+                   latencyNanos.percentile(1) / 1_000.0);
+        out.printf("Total balance %s, expected %s: %s%n",
+                   totalBalance.toPlainString(),
+                   expectedTotalBalance.toPlainString(),
+                   isBalanced() ? "OK" : "VIOLATED");
+    }
+}
@@ -0,0 +1,48 @@
+package com.danapple.experiments.atomic.workload;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Account 0 is the hottest.  The cumulative distribution is computed once so that each selection is a
+// binary search without allocation.
+class ZipfSelector implements AccountSelector
+{
+    private final double[] cumulativeProbabilities;
+
+    ZipfSelector(final int accountCount, final double exponent)
+    {
+        if (accountCount <= 0)
+        {
+            throw new RuntimeException("Account count " + accountCount + " must be positive");
+        }
+        if (exponent <= 0)
+        {
+            throw new RuntimeException("Zipf exponent " + exponent + " must be positive");
+        }
+        cumulativeProbabilities = new double[accountCount];
+        double total = 0;
+        for (int rank = 1; rank <= accountCount; rank++)
+        {
+            total += 1 / Math.pow(rank, exponent);
+            cumulativeProbabilities[rank - 1] = total;
+        }
+        for (int i = 0; i < accountCount; i++)
+        {
+            cumulativeProbabilities[i] /= total;
+        }
+        cumulativeProbabilities[accountCount - 1] = 1.0;
+    }
+
+    @Override
+    public int select(final RandomGenerator random)
+    {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    public int getAccountCount()
+    {
+        return cumulativeProbabilities.length;
+    }
+}
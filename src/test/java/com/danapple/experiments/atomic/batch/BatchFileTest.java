@@ -0,0 +1,83 @@
+package com.danapple.experiments.atomic.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchFileTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+    private final static String ACCOUNT_NUMBER_3 = "Account 3";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void readsRecordsWithAccountsFromTheTable()
+    {
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            writer.add(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 125);
+            writer.add(ACCOUNT_NUMBER_3, ACCOUNT_NUMBER_1, 7);
+        }
+
+        try (BatchFile batchFile = BatchFile.open(batchPath))
+        {
+            assertThat(batchFile.getScale()).isEqualTo(2);
+            assertThat(batchFile.getRecordCount()).isEqualTo(2);
+            assertThat(batchFile.getAccountNumbers()).containsExactly(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, ACCOUNT_NUMBER_3);
+            assertThat(batchFile.getSourceAccount(1)).isEqualTo(2);
+            assertThat(batchFile.getDestinationAccount(1)).isEqualTo(0);
+            assertThat(batchFile.getTransferUnits(0)).isEqualTo(125);
+        }
+    }
+
+    @Test
+    void isOnlyVisibleOnceClosed()
+    {
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            writer.add(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 125);
+
+            assertThat(Files.exists(batchPath)).isFalse();
+        }
+
+        assertThat(Files.exists(batchPath)).isTrue();
+    }
+
+    @Test
+    void rejectsCorruptRecords() throws IOException
+    {
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            writer.add(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 125);
+        }
+        try (FileChannel channel = FileChannel.open(batchPath, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.allocate(8).putLong(0, 126), BatchFile.HEADER_LENGTH + 8);
+        }
+
+        assertThatThrownBy(() -> BatchFile.open(batchPath)).hasMessageContaining("corrupt");
+    }
+
+    @Test
+    void rejectsFilesWhichAreNotBatches() throws IOException
+    {
+        Path batchPath = directory.resolve("notes.txt");
+        Files.writeString(batchPath, "not a batch of transfers");
+
+        assertThatThrownBy(() -> BatchFile.open(batchPath)).hasMessageContaining("corrupt");
+    }
+}
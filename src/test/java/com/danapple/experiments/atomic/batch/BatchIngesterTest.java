@@ -0,0 +1,162 @@
+package com.danapple.experiments.atomic.batch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.danapple.experiments.atomic.ledgeredaccounts.AccountService;
+import com.danapple.experiments.atomic.ledgeredaccounts.Ledger;
+import com.danapple.experiments.atomic.ledgeredaccounts.LedgerOptions;
+import com.danapple.experiments.atomic.loggedaccounts.AccountDirectory;
+import com.danapple.experiments.atomic.loggedaccounts.LoggedTransferEngine;
+import com.danapple.experiments.atomic.loggedaccounts.TransferService;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchIngesterTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+    private final static FixedPointMoney CENTS = new FixedPointMoney(2);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void appliesEveryRecordToLedger() throws InterruptedException
+    {
+        Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(CENTS));
+        AccountService accountService = new AccountService(ledger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+        Path batchPath = writeBatch(1_000, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+
+        IngestSummary summary = new BatchIngester(new LedgeredBatchTarget(ledger), 4, 64, false).ingest(batchPath);
+
+        assertThat(summary).isEqualTo(new IngestSummary(1_000, 0, 0, 0));
+        assertThat(accountService.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualByComparingTo("10.00");
+    }
+
+    @Test
+    void convertsUnitsForLedgerOfAnotherScale() throws InterruptedException
+    {
+        Ledger ledger = new Ledger();
+        AccountService accountService = new AccountService(ledger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+        Path batchPath = writeBatch(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+
+        new BatchIngester(new LedgeredBatchTarget(ledger)).ingest(batchPath);
+
+        assertThat(accountService.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(new BigDecimal("0.03"));
+    }
+
+    @Test
+    void marksTheOutcomeOfEachRecord() throws InterruptedException
+    {
+        AccountDirectory accountDirectory = new AccountDirectory(CENTS);
+        LoggedTransferEngine engine = new LoggedTransferEngine(new TransferService(), accountDirectory, 2, BigDecimal.ONE);
+        LoggedBatchTarget target = new LoggedBatchTarget(new TransferService(), accountDirectory);
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            writer.add("Account 0", "Account 1", 75);
+            writer.add("Account 0", "Account 2", 10);
+            writer.add("Account 0", "Account 1", 50);
+        }
+
+        IngestSummary summary = new BatchIngester(target, 1, 64, false).ingest(batchPath);
+
+        assertThat(summary).isEqualTo(new IngestSummary(1, 0, 2, 0));
+        assertThat(engine.getBalance(1)).isEqualByComparingTo("1.75");
+        try (BatchFile batchFile = BatchFile.open(batchPath);
+             BatchResults results = BatchResults.open(batchFile))
+        {
+            assertThat(results.getStatus(0)).isEqualTo(RecordStatus.APPLIED);
+            assertThat(results.getStatus(1)).isEqualTo(RecordStatus.FAILED);
+            assertThat(results.getStatus(2)).isEqualTo(RecordStatus.FAILED);
+        }
+    }
+
+    @Test
+    void resumesAfterTheRecordsAlreadyAnswered() throws InterruptedException
+    {
+        Path batchPath = writeBatch(100, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+        try (BatchFile batchFile = BatchFile.open(batchPath);
+             BatchResults results = BatchResults.open(batchFile))
+        {
+            for (int record = 0; record < 40; record++)
+            {
+                results.setStatus(record, RecordStatus.APPLIED);
+            }
+        }
+
+        List<String> transferIds = new ArrayList<>();
+        BatchTarget recordingTarget = (accountNumbers, scale) -> (transferId, source, destination, units) -> {
+            synchronized (transferIds)
+            {
+                transferIds.add(transferId);
+            }
+            return false;
+        };
+        IngestSummary summary = new BatchIngester(recordingTarget, 2, 16, true).ingest(batchPath);
+
+        assertThat(summary).isEqualTo(new IngestSummary(0, 60, 0, 40));
+        assertThat(transferIds).hasSize(60).contains("batch.bin#40", "batch.bin#99").doesNotContain("batch.bin#39");
+    }
+
+    @Test
+    void rejectsResultsOfAnotherBatch()
+    {
+        Path batchPath = writeBatch(100, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+        try (BatchFile batchFile = BatchFile.open(batchPath))
+        {
+            BatchResults.open(batchFile).close();
+        }
+        writeBatch(50, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+
+        assertThatThrownBy(() -> new BatchIngester(new LedgeredBatchTarget(new Ledger())).ingest(batchPath))
+                .hasMessageContaining("do not belong");
+    }
+
+    @Test
+    void keepsTheTotalWhenAppliedInParallel() throws InterruptedException
+    {
+        AccountDirectory accountDirectory = new AccountDirectory(CENTS);
+        LoggedTransferEngine engine = new LoggedTransferEngine(new TransferService(),
+                                                               accountDirectory,
+                                                               10,
+                                                               BigDecimal.valueOf(1_000));
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            for (int i = 0; i < 10_000; i++)
+            {
+                writer.add("Account " + (i % 10), "Account " + ((i * 7 + 3) % 10), 1 + i % 50);
+            }
+        }
+        LoggedBatchTarget target = new LoggedBatchTarget(new TransferService(1_000), accountDirectory);
+
+        IngestSummary summary = new BatchIngester(target, 4, 256, false).ingest(batchPath);
+
+        assertThat(summary).isEqualTo(new IngestSummary(10_000, 0, 0, 0));
+        assertThat(engine.getTotalBalance()).isEqualByComparingTo("10000");
+    }
+
+    private Path writeBatch(final int records, final String sourceAccountNumber, final String destinationAccountNumber)
+    {
+        Path batchPath = directory.resolve("batch.bin");
+        try (BatchFileWriter writer = new BatchFileWriter(batchPath, 2))
+        {
+            for (int i = 0; i < records; i++)
+            {
+                writer.add(sourceAccountNumber, destinationAccountNumber, 1);
+            }
+        }
+        return batchPath;
+    }
+}
@@ -0,0 +1,62 @@
+package com.danapple.experiments.atomic.contention;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptiveRetriesTest
+{
+    @Test
+    void startsWithMinimumBudget()
+    {
+        AdaptiveRetries adaptive = new AdaptiveRetries(4, 64, 0);
+
+        assertThat(adaptive.getBudget()).isEqualTo(4);
+        assertThat(adaptive.onFailure(3)).isTrue();
+        assertThat(adaptive.onFailure(4)).isFalse();
+    }
+
+    @Test
+    void doublesBudgetWhenOperationsRunOut()
+    {
+        AdaptiveRetries adaptive = new AdaptiveRetries(4, 10, 0);
+
+        adaptive.onFailure(4);
+        assertThat(adaptive.getBudget()).isEqualTo(8);
+        adaptive.onFailure(8);
+        assertThat(adaptive.getBudget()).isEqualTo(10);
+        adaptive.onFailure(10);
+        assertThat(adaptive.getBudget()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinksBudgetOnceFailuresAreRare()
+    {
+        AdaptiveRetries adaptive = new AdaptiveRetries(4, 64, 0);
+        adaptive.onFailure(4);
+        adaptive.onFailure(8);
+        assertThat(adaptive.getBudget()).isEqualTo(16);
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            adaptive.onSuccess(0);
+        }
+
+        assertThat(adaptive.getBudget()).isEqualTo(4);
+        assertThat(adaptive.getFailureRate()).isZero();
+    }
+
+    @Test
+    void tracksFailureRate()
+    {
+        AdaptiveRetries adaptive = new AdaptiveRetries(4, 64, 0);
+
+        for (int i = 0; i < 1_000; i++)
+        {
+            adaptive.onSuccess(2);
+        }
+
+        assertThat(adaptive.getFailureRate()).isCloseTo(2.0, offset(0.01));
+    }
+}
@@ -0,0 +1,91 @@
+package com.danapple.experiments.atomic.contention;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ContentionManagerTest
+{
+    @Test
+    void fixedRetriesGivesUpAfterMaxAttempts()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+
+        boolean succeeded = ContentionManager.fixed(3).retry(() -> {
+            attempts.incrementAndGet();
+            return false;
+        });
+
+        assertThat(succeeded).isFalse();
+        assertThat(attempts).hasValue(3);
+    }
+
+    @Test
+    void retryStopsAtFirstSuccess()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+
+        boolean succeeded = ContentionManager.fixed(10).retry(() -> attempts.incrementAndGet() == 2);
+
+        assertThat(succeeded).isTrue();
+        assertThat(attempts).hasValue(2);
+    }
+
+    @Test
+    void noAttemptsNeverTries()
+    {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThat(ContentionManager.fixed(0).retry(() -> attempts.incrementAndGet() > 0)).isFalse();
+        assertThat(attempts).hasValue(0);
+    }
+
+    @Test
+    void exponentialBackoffDoublesPauseUpToMaximum()
+    {
+        ExponentialBackoff backoff = new ExponentialBackoff(100, 100, 1_000, false);
+
+        assertThat(backoff.pauseNanos(1)).isEqualTo(100);
+        assertThat(backoff.pauseNanos(2)).isEqualTo(200);
+        assertThat(backoff.pauseNanos(4)).isEqualTo(800);
+        assertThat(backoff.pauseNanos(5)).isEqualTo(1_000);
+        assertThat(backoff.pauseNanos(99)).isEqualTo(1_000);
+    }
+
+    @Test
+    void backoffPoliciesGiveUpAfterMaxAttempts()
+    {
+        for (ContentionManager contentionManager : new ContentionManager[] {
+                ContentionManager.exponentialBackoff(4, 10, 100),
+                ContentionManager.randomizedBackoff(4, 10, 100),
+                ContentionManager.spinThenPark(4, 2, 1_000) })
+        {
+            assertThat(contentionManager.onFailure(3)).isTrue();
+            assertThat(contentionManager.onFailure(4)).isFalse();
+            assertThat(contentionManager.getMaxAttempts()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void parsesPolicyNames()
+    {
+        assertThat(ContentionManager.parse("fixed", 5)).isInstanceOf(FixedRetries.class);
+        assertThat(ContentionManager.parse("backoff", 5)).isInstanceOf(ExponentialBackoff.class);
+        assertThat(ContentionManager.parse("random", 5)).isInstanceOf(ExponentialBackoff.class);
+        assertThat(ContentionManager.parse("spinpark", 5)).isInstanceOf(SpinThenPark.class);
+        assertThat(ContentionManager.parse("adaptive", 5)).isInstanceOf(AdaptiveRetries.class);
+        assertThatThrownBy(() -> ContentionManager.parse("polite", 5)).hasMessageContaining("polite");
+    }
+
+    @Test
+    void rejectsInvalidSettings()
+    {
+        assertThatThrownBy(() -> ContentionManager.fixed(-1));
+        assertThatThrownBy(() -> ContentionManager.exponentialBackoff(0, 10, 100));
+        assertThatThrownBy(() -> ContentionManager.exponentialBackoff(5, 100, 10));
+        assertThatThrownBy(() -> ContentionManager.spinThenPark(5, -1, 100));
+        assertThatThrownBy(() -> ContentionManager.adaptive(10, 5, 100));
+    }
+}
@@ -0,0 +1,150 @@
+package com.danapple.experiments.atomic.dedup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TransferIdCacheTest
+{
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void repeatReturnsFirstOutcomeWithoutRunningAgain()
+    {
+        TransferIdCache cache = new TransferIdCache(10, 1_000, clock::get);
+
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(cache.contains("T1")).isTrue();
+    }
+
+    @Test
+    void forgetsTransfersWhichDidNotCommit()
+    {
+        TransferIdCache cache = new TransferIdCache(10, 1_000, clock::get);
+
+        assertThat(cache.execute("T1", () -> false)).isFalse();
+        assertThatThrownBy(() -> cache.execute("T2", () -> {
+            throw new RuntimeException("Rejected");
+        })).hasMessage("Rejected");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+        assertThat(cache.execute("T2", this::transfer)).isTrue();
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    void remembersTransfersWhichFailedAfterCommitting()
+    {
+        TransferIdCache cache = new TransferIdCache(10, 1_000, clock::get);
+
+        assertThatThrownBy(() -> cache.execute("T1", () -> {
+            transfer();
+            cache.markCommitted("T1");
+            throw new RuntimeException("Listener failed");
+        })).hasMessage("Listener failed");
+
+        assertThat(cache.contains("T1")).isTrue();
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void forgetsOldestIdsBeyondMaxEntries()
+    {
+        TransferIdCache cache = new TransferIdCache(3, 1_000, clock::get);
+
+        for (int i = 0; i < 5; i++)
+        {
+            cache.execute("T" + i, this::transfer);
+        }
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.contains("T1")).isFalse();
+        assertThat(cache.contains("T2")).isTrue();
+        assertThat(cache.contains("T4")).isTrue();
+    }
+
+    @Test
+    void forgetsIdsOnceExpired()
+    {
+        TransferIdCache cache = new TransferIdCache(10, 1_000, clock::get);
+        cache.execute("T1", this::transfer);
+
+        clock.addAndGet(1_001);
+
+        assertThat(cache.contains("T1")).isFalse();
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentRepeatsRunOnceAndShareTheOutcome() throws InterruptedException
+    {
+        TransferIdCache cache = new TransferIdCache();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = Thread.ofPlatform().start(() -> cache.execute("T1", () -> {
+            running.countDown();
+            awaitQuietly(release);
+            return transfer();
+        }));
+        running.await();
+
+        boolean[] repeated = new boolean[1];
+        Thread repeat = Thread.ofPlatform().start(() -> repeated[0] = cache.execute("T1", this::transfer));
+        release.countDown();
+        first.join();
+        repeat.join();
+
+        assertThat(repeated[0]).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    void remembersIdsItIsToldAbout()
+    {
+        TransferIdCache cache = new TransferIdCache(10, 1_000, clock::get);
+
+        cache.transferCommitted(1, "Account 1", "Account 2", BigDecimal.ONE, "T1");
+        cache.transferCommitted(2, "Account 1", "Account 2", BigDecimal.ONE);
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.execute("T1", this::transfer)).isTrue();
+        assertThat(runs.get()).isZero();
+    }
+
+    @Test
+    void rejectsNonPositiveLimits()
+    {
+        assertThatThrownBy(() -> new TransferIdCache(0, 1_000));
+        assertThatThrownBy(() -> new TransferIdCache(10, 0));
+    }
+
+    private boolean transfer()
+    {
+        runs.incrementAndGet();
+        return true;
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
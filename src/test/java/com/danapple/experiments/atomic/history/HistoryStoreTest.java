@@ -0,0 +1,161 @@
+package com.danapple.experiments.atomic.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HistoryStoreTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+    private final static String ACCOUNT_NUMBER_3 = "Account 3";
+
+    @TempDir
+    private Path directory;
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    @Test
+    void recordsBothSidesOfATransfer()
+    {
+        try (HistoryStore store = new HistoryStore(directory, 4096, clock::get))
+        {
+            store.transferCommitted(7, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("12.345"));
+
+            assertThat(all(store, ACCOUNT_NUMBER_1))
+                    .containsExactly(new HistoryEntry(1_000, 7, ACCOUNT_NUMBER_2, new BigDecimal("-12.345")));
+            assertThat(all(store, ACCOUNT_NUMBER_2))
+                    .containsExactly(new HistoryEntry(1_000, 7, ACCOUNT_NUMBER_1, new BigDecimal("12.345")));
+            assertThat(all(store, ACCOUNT_NUMBER_3)).isEmpty();
+        }
+    }
+
+    @Test
+    void returnsOnlyTheTimeRangeNewestFirst()
+    {
+        try (HistoryStore store = new HistoryStore(directory, 4096, clock::get))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                clock.set(1_000 + i * 10);
+                store.transferCommitted(i, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+                store.transferCommitted(0, ACCOUNT_NUMBER_3, ACCOUNT_NUMBER_2, BigDecimal.TEN);
+            }
+
+            List<HistoryEntry> entries = new ArrayList<>();
+            store.getHistory(ACCOUNT_NUMBER_1, 1_010, 1_040).forEachRemaining(entries::add);
+
+            assertThat(entries).extracting(HistoryEntry::sequence).containsExactly(3L, 2L, 1L);
+        }
+    }
+
+    @Test
+    void pagesCanBeResumedFromTheirPosition()
+    {
+        try (HistoryStore store = new HistoryStore(directory, 4096, clock::get))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                store.transferCommitted(i, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+            }
+
+            HistoryCursor cursor = store.getHistory(ACCOUNT_NUMBER_1, 0, Long.MAX_VALUE);
+            assertThat(cursor.nextPage(2)).extracting(HistoryEntry::sequence).containsExactly(4L, 3L);
+            HistoryCursor resumed = store.resume(cursor.getPosition(), 0, Long.MAX_VALUE);
+            assertThat(resumed.nextPage(2)).extracting(HistoryEntry::sequence).containsExactly(2L, 1L);
+            assertThat(resumed.nextPage(2)).extracting(HistoryEntry::sequence).containsExactly(0L);
+            assertThat(resumed.getPosition()).isEqualTo(-1);
+            assertThatThrownBy(resumed::next).isInstanceOf(NoSuchElementException.class);
+        }
+    }
+
+    @Test
+    void timestampsNeverGoBackwardsWithinAnAccount()
+    {
+        try (HistoryStore store = new HistoryStore(directory, 4096, clock::get))
+        {
+            store.transferCommitted(1, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+            clock.set(500);
+            store.transferCommitted(2, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+
+            assertThat(all(store, ACCOUNT_NUMBER_1)).extracting(HistoryEntry::timestampMillis)
+                                                    .containsExactly(1_000L, 1_000L);
+        }
+    }
+
+    @Test
+    void movesOnToNewSegmentsWhenFull() throws Exception
+    {
+        try (HistoryStore store = new HistoryStore(directory, 256, clock::get))
+        {
+            for (int i = 0; i < 20; i++)
+            {
+                store.transferCommitted(i, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+            }
+
+            assertThat(all(store, ACCOUNT_NUMBER_2)).hasSize(20);
+            try (var files = Files.list(directory))
+            {
+                assertThat(files.count()).isGreaterThan(1);
+            }
+        }
+    }
+
+    @Test
+    void createsTheNextSegmentBeforeTheCurrentOneIsFull() throws Exception
+    {
+        try (HistoryStore store = new HistoryStore(directory, 256, clock::get))
+        {
+            Path nextSegment = directory.resolve("history-0000000001.bin");
+            for (int i = 0; i < 1_000 && !Files.exists(nextSegment); i++)
+            {
+                Thread.sleep(10);
+            }
+
+            assertThat(nextSegment).exists();
+            assertThat(all(store, ACCOUNT_NUMBER_1)).isEmpty();
+        }
+    }
+
+    @Test
+    void keepsEveryEntryFromConcurrentTransfers() throws InterruptedException
+    {
+        try (HistoryStore store = new HistoryStore(directory, 64 * 1024))
+        {
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++)
+            {
+                int thread = t;
+                threads[t] = Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 1_000; i++)
+                    {
+                        store.transferCommitted(thread * 1_000L + i, "Source " + thread, ACCOUNT_NUMBER_1, BigDecimal.ONE);
+                    }
+                });
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            List<HistoryEntry> entries = all(store, ACCOUNT_NUMBER_1);
+            assertThat(entries).hasSize(8_000);
+            assertThat(entries).extracting(HistoryEntry::sequence).doesNotHaveDuplicates();
+            assertThat(all(store, "Source 3")).hasSize(1_000);
+        }
+    }
+
+    private static List<HistoryEntry> all(final HistoryStore store, final String accountNumber)
+    {
+        return store.getHistory(accountNumber, Long.MIN_VALUE, Long.MAX_VALUE).nextPage(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,286 @@
+package com.danapple.experiments.atomic.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+
+class JournalTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void replaysRecordsInAppendOrder()
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(1, ACCOUNT_NUMBER_1);
+            journal.accountCreated(2, ACCOUNT_NUMBER_2);
+            journal.transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("12.345"));
+        }
+
+        TransferListener listener = mock(TransferListener.class);
+        JournalReader.ReplayResult result = JournalReader.replay(directory, listener);
+
+        assertThat(result).isEqualTo(new JournalReader.ReplayResult(3, 0));
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).accountCreated(1, ACCOUNT_NUMBER_1);
+        inOrder.verify(listener).accountCreated(2, ACCOUNT_NUMBER_2);
+        inOrder.verify(listener).transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("12.345"));
+    }
+
+    @Test
+    void movesToNewSegmentsWhenFull() throws IOException
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(1024, FsyncPolicy.NONE, 0)))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                journal.transferCommitted(i, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.valueOf(i));
+            }
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(JournalReader.segmentPaths(directory)).hasSizeGreaterThan(1);
+        assertThat(sequences).hasSize(100).isSorted();
+    }
+
+    @Test
+    void skipsAndDeletesSegmentsSealedAtOrBelowSequence()
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(1024, FsyncPolicy.NONE, 0)))
+        {
+            for (int i = 1; i <= 100; i++)
+            {
+                journal.transferCommitted(i, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.valueOf(i));
+            }
+        }
+        List<Long> allSequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(allSequences));
+        List<Long> laterSequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(laterSequences), 50);
+
+        assertThat(laterSequences).contains(51L, 100L).doesNotContain(1L).isSubsetOf(allSequences);
+
+        int segmentCount = JournalReader.segmentPaths(directory).size();
+        int deletedCount = JournalReader.deleteSegmentsThrough(directory, 50);
+        List<Long> remainingSequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(remainingSequences));
+
+        assertThat(deletedCount).isPositive();
+        assertThat(JournalReader.segmentPaths(directory)).hasSize(segmentCount - deletedCount);
+        assertThat(remainingSequences).isEqualTo(laterSequences);
+    }
+
+    @Test
+    void keepsSegmentStillBeingWritten()
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(1, ACCOUNT_NUMBER_1);
+
+            assertThat(JournalReader.deleteSegmentsThrough(directory, 1)).isZero();
+        }
+
+        assertThat(JournalReader.deleteSegmentsThrough(directory, 1)).isEqualTo(1);
+    }
+
+    @Test
+    void reopenedJournalAppendsAfterExistingSegments()
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(1, ACCOUNT_NUMBER_1);
+        }
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(2, ACCOUNT_NUMBER_2);
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(sequences).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void skipsRecordWithBadChecksum() throws IOException
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(1, ACCOUNT_NUMBER_1);
+            journal.accountCreated(2, ACCOUNT_NUMBER_2);
+        }
+        try (FileChannel channel = FileChannel.open(JournalReader.segmentPaths(directory).getFirst(),
+                                                    StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(new byte[] { 'x' }),
+                          JournalSegment.HEADER_LENGTH + JournalRecords.HEADER_LENGTH + 12);
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.ReplayResult result = JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(result).isEqualTo(new JournalReader.ReplayResult(1, 1));
+        assertThat(sequences).containsExactly(2L);
+    }
+
+    @Test
+    void replaysRecordsAfterUnfinishedRecord() throws IOException
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.accountCreated(1, ACCOUNT_NUMBER_1);
+            journal.accountCreated(2, ACCOUNT_NUMBER_2);
+        }
+        // As if the first writer had claimed its region but not written it when a later record was forced
+        int firstRecordLength = JournalRecords.recordLength(JournalRecords.accountCreated(1, ACCOUNT_NUMBER_1).length);
+        try (FileChannel channel = FileChannel.open(JournalReader.segmentPaths(directory).getFirst(),
+                                                    StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.allocate(firstRecordLength), JournalSegment.HEADER_LENGTH);
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.ReplayResult result = JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(result).isEqualTo(new JournalReader.ReplayResult(1, 1));
+        assertThat(sequences).containsExactly(2L);
+    }
+
+    @Test
+    void groupCommitKeepsEveryConcurrentAppend() throws InterruptedException
+    {
+        int threadCount = 8;
+        int appendsPerThread = 200;
+        try (Journal journal = new Journal(directory, new JournalOptions(16 * 1024, FsyncPolicy.EVERY_COMMIT, 0)))
+        {
+            AtomicLong sequence = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++)
+            {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for (int j = 0; j < appendsPerThread; j++)
+                    {
+                        journal.transferCommitted(sequence.incrementAndGet(),
+                                                  ACCOUNT_NUMBER_1,
+                                                  ACCOUNT_NUMBER_2,
+                                                  BigDecimal.ONE);
+                    }
+                }));
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(sequences).hasSize(threadCount * appendsPerThread).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void groupCommitFinishesManyVirtualThreadAppends() throws Exception
+    {
+        int appenders = 1_000;
+        try (Journal journal = new Journal(directory, new JournalOptions(64 * 1024, FsyncPolicy.EVERY_COMMIT, 0));
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 1; i <= appenders; i++)
+            {
+                long sequence = i;
+                results.add(executor.submit(() -> journal.transferCommitted(sequence,
+                                                                            ACCOUNT_NUMBER_1,
+                                                                            ACCOUNT_NUMBER_2,
+                                                                            BigDecimal.ONE)));
+            }
+            for (Future<?> result : results)
+            {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        JournalReader.replay(directory, new RecordingListener(sequences));
+
+        assertThat(sequences).hasSize(appenders).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void rejectsTinySegments()
+    {
+        assertThatThrownBy(() -> new JournalOptions(16, FsyncPolicy.NONE, 0));
+    }
+
+    @Test
+    void ignoresOtherFilesInDirectory() throws IOException
+    {
+        Files.writeString(directory.resolve("notes.txt"), "not a segment");
+
+        assertThat(JournalReader.replay(directory, mock(TransferListener.class)))
+                .isEqualTo(new JournalReader.ReplayResult(0, 0));
+    }
+
+    private record RecordingListener(List<Long> sequences) implements TransferListener
+    {
+        @Override
+        public void accountCreated(final long sequence, final String accountNumber)
+        {
+            sequences.add(sequence);
+        }
+
+        @Override
+        public void transferCommitted(final long sequence,
+                                      final String sourceAccountNumber,
+                                      final String destinationAccountNumber,
+                                      final BigDecimal transferAmount)
+        {
+            sequences.add(sequence);
+        }
+    }
+
+    @Test
+    void replaysTransferIds()
+    {
+        try (Journal journal = new Journal(directory, new JournalOptions(4096, FsyncPolicy.NONE, 0)))
+        {
+            journal.transferCommitted(1, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE, "T1");
+            journal.transferCommitted(2, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.TEN);
+        }
+
+        TransferListener listener = mock(TransferListener.class);
+        JournalReader.replay(directory, listener);
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).transferCommitted(1, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE, "T1");
+        inOrder.verify(listener).transferCommitted(2, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.TEN);
+    }
+}
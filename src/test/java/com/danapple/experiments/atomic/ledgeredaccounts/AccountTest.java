@@ -1,7 +1,9 @@
 package com.danapple.experiments.atomic.ledgeredaccounts;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
 import org.junit.jupiter.api.Test;
 
@@ -43,4 +45,104 @@ public class AccountTest
         Account newAccount = account.adjustBalance(BigDecimal.ONE.negate());
         assertThat(newAccount.getBalance()).isEqualTo(BigDecimal.ONE.negate());
     }
+
+    @Test
+    void pendingAdjustmentIsIgnoredUntilComplete()
+    {
+        TransferState state = new TransferState();
+        Account newAccount = account.addPendingAdjustment(pendingAdjustment(BigDecimal.TEN, state));
+        assertThat(newAccount.getBalance()).isEqualTo(BigDecimal.ZERO);
+
+        state.complete();
+        assertThat(newAccount.getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void abortedPendingAdjustmentIsIgnored()
+    {
+        TransferState state = new TransferState();
+        Account newAccount = account.addPendingAdjustment(pendingAdjustment(BigDecimal.TEN, state));
+        state.abort();
+
+        assertThat(newAccount.getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(newAccount.adjustBalance(BigDecimal.ONE).getPendingAdjustmentCount()).isZero();
+    }
+
+    @Test
+    void adjustmentKeepsStillPendingAdjustments()
+    {
+        TransferState state = new TransferState();
+        Account newAccount = account
+                .addPendingAdjustment(pendingAdjustment(BigDecimal.TEN, state))
+                .adjustBalance(BigDecimal.ONE);
+        assertThat(newAccount.getPendingAdjustmentCount()).isEqualTo(1);
+        assertThat(newAccount.getBalance()).isEqualTo(BigDecimal.ONE);
+
+        state.complete();
+        assertThat(newAccount.getBalance()).isEqualTo(new BigDecimal(11));
+    }
+
+    @Test
+    void adjustmentSettlesCompletedAdjustments()
+    {
+        TransferState state = new TransferState();
+        Account pendingAccount = account.addPendingAdjustment(pendingAdjustment(BigDecimal.TEN, state));
+        state.complete();
+
+        Account newAccount = pendingAccount.adjustBalance(BigDecimal.ONE);
+        assertThat(newAccount.getPendingAdjustmentCount()).isZero();
+        assertThat(newAccount.getBalance()).isEqualTo(new BigDecimal(11));
+    }
+
+    private static PendingAdjustment pendingAdjustment(final BigDecimal delta, final TransferState state)
+    {
+        return new PendingAdjustment(delta, state);
+    }
+
+    @Test
+    void fixedPointAccountStartsWithZeroAtScale()
+    {
+        Account fixedPointAccount = new Account("TEST_ACCOUNT", new FixedPointMoney(2));
+        assertThat(fixedPointAccount.getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(fixedPointAccount.getBalanceUnits()).isZero();
+    }
+
+    @Test
+    void fixedPointAccountAdjustsInUnits()
+    {
+        Account fixedPointAccount = new Account("TEST_ACCOUNT", new FixedPointMoney(2))
+                .adjustBalance(new BigDecimal("1.25"))
+                .adjustBalanceUnits(-50);
+        assertThat(fixedPointAccount.getBalanceUnits()).isEqualTo(75);
+        assertThat(fixedPointAccount.getBalance()).isEqualTo(new BigDecimal("0.75"));
+    }
+
+    @Test
+    void fixedPointAccountIncludesCompletedPendingUnits()
+    {
+        TransferState state = new TransferState();
+        Account fixedPointAccount = new Account("TEST_ACCOUNT", new FixedPointMoney(2))
+                .addPendingAdjustment(new PendingAdjustment(300, state));
+        assertThat(fixedPointAccount.getBalanceUnits()).isZero();
+
+        state.complete();
+        assertThat(fixedPointAccount.getBalanceUnits()).isEqualTo(300);
+        assertThat(fixedPointAccount.adjustBalanceUnits(1).getBalanceUnits()).isEqualTo(301);
+    }
+
+    @Test
+    void fixedPointAccountRejectsOverflow()
+    {
+        Account fixedPointAccount = new Account("TEST_ACCOUNT", new FixedPointMoney(0))
+                .adjustBalanceUnits(Long.MAX_VALUE);
+        assertThatThrownBy(() -> fixedPointAccount.adjustBalanceUnits(1)).hasMessageContaining("overflows");
+    }
+
+    @Test
+    void decimalAccountHasNoUnits()
+    {
+        assertThat(account.getMoney()).isNull();
+        assertThatThrownBy(account::getBalanceUnits);
+        assertThatThrownBy(() -> account.adjustBalanceUnits(1));
+    }
 }
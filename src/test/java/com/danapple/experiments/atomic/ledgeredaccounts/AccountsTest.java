@@ -2,6 +2,7 @@ package com.danapple.experiments.atomic.ledgeredaccounts;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import org.junit.jupiter.api.Test;
 
 public class AccountsTest
@@ -28,4 +29,29 @@ public class AccountsTest
         accounts.newVersion(newAccount, newAccount);
         assertThat(accounts.getAccount("new1")).isNull();
     }
+
+    @Test
+    void newVersionKeepsUnchangedAccounts()
+    {
+        Account first = new Account("first");
+        Account second = new Account("second");
+        Accounts firstVersion = accounts.newVersion(first);
+        Accounts secondVersion = firstVersion.newVersion(second);
+
+        assertThat(secondVersion.getAccount("first")).isSameAs(first);
+        assertThat(secondVersion.getAccount("second")).isSameAs(second);
+        assertThat(secondVersion.size()).isEqualTo(2);
+        assertThat(firstVersion.size()).isEqualTo(1);
+    }
+
+    @Test
+    void newAccountsHoldMoneyOfTheirAccounts()
+    {
+        FixedPointMoney cents = new FixedPointMoney(2);
+        Accounts fixedPointAccounts = new Accounts(cents).newVersion(new Account("first", cents));
+
+        assertThat(accounts.newAccount("new1").getMoney()).isNull();
+        assertThat(fixedPointAccounts.getMoney()).isEqualTo(cents);
+        assertThat(fixedPointAccounts.newAccount("new1").getMoney()).isEqualTo(cents);
+    }
 }
@@ -0,0 +1,144 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class BalanceIndexTest
+{
+    private final static FixedPointMoney CENTS = new FixedPointMoney(2);
+
+    @Test
+    void largestReturnsBiggestBalancesFirst()
+    {
+        Accounts accounts = indexedAccounts(null, "1", "5", "3", "4", "2");
+
+        assertThat(accounts.getLargestBalances(3)).extracting(Account::getAccountNumber)
+                                                  .containsExactly("a1", "a3", "a2");
+        assertThat(accounts.getLargestBalances(10)).hasSize(5);
+    }
+
+    @Test
+    void betweenIncludesLowAndExcludesHigh()
+    {
+        Accounts accounts = indexedAccounts(null, "1", "5", "3", "4", "2");
+
+        assertThat(accounts.getBalancesBetween(new BigDecimal("2"), new BigDecimal("4")))
+                .extracting(Account::getAccountNumber)
+                .containsExactly("a4", "a2");
+        assertThat(accounts.getBalancesBetween(null, new BigDecimal("2.5")))
+                .extracting(Account::getAccountNumber)
+                .containsExactly("a0", "a4");
+        assertThat(accounts.getBalancesBetween(new BigDecimal("4.5"), null))
+                .extracting(Account::getAccountNumber)
+                .containsExactly("a1");
+    }
+
+    @Test
+    void fixedPointBalancesCompareWithUnscaledBounds()
+    {
+        Accounts accounts = indexedAccounts(CENTS, "1.00", "1.01", "0.99");
+
+        assertThat(accounts.getBalancesBetween(null, new BigDecimal("1")))
+                .extracting(Account::getAccountNumber)
+                .containsExactly("a2");
+        assertThat(accounts.getLargestBalances(1)).extracting(Account::getAccountNumber).containsExactly("a1");
+    }
+
+    @Test
+    void equalBalancesAreOrderedByAccountNumber()
+    {
+        Accounts accounts = indexedAccounts(null, "7", "7", "7");
+
+        assertThat(accounts.getBalancesBetween(null, null)).extracting(Account::getAccountNumber)
+                                                           .containsExactly("a0", "a1", "a2");
+    }
+
+    @Test
+    void eachSnapshotKeepsItsOwnIndex()
+    {
+        Accounts before = indexedAccounts(null, "1", "2");
+        Accounts after = before.newVersion(before.getAccount("a0").adjustBalance(BigDecimal.TEN));
+
+        assertThat(before.getLargestBalances(1)).extracting(Account::getAccountNumber).containsExactly("a1");
+        assertThat(after.getLargestBalances(1)).extracting(Account::getAccountNumber).containsExactly("a0");
+        assertThat(after.getBalancesBetween(null, null)).hasSize(2);
+    }
+
+    @Test
+    void matchesASortedScanAfterManyReplacements()
+    {
+        Random random = new Random(42);
+        Accounts accounts = new Accounts(CENTS, true);
+        Map<String, Long> expected = new HashMap<>();
+        for (int i = 0; i < 5_000; i++)
+        {
+            String accountNumber = "a" + random.nextInt(200);
+            Account account = accounts.getAccount(accountNumber);
+            if (account == null)
+            {
+                account = accounts.newAccount(accountNumber);
+            }
+            long adjustment = random.nextInt(100);
+            accounts = accounts.newVersion(account.adjustBalanceUnits(adjustment));
+            expected.merge(accountNumber, adjustment, Long::sum);
+        }
+
+        List<String> sorted = new ArrayList<>(expected.keySet());
+        sorted.sort(Comparator.comparing((String accountNumber) -> expected.get(accountNumber))
+                              .thenComparing(Comparator.naturalOrder()));
+        assertThat(accounts.getBalancesBetween(null, null)).extracting(Account::getAccountNumber)
+                                                           .containsExactlyElementsOf(sorted);
+        assertThat(accounts.getLargestBalances(3)).extracting(Account::getAccountNumber)
+                                                  .containsExactlyElementsOf(sorted.reversed().subList(0, 3));
+    }
+
+    @Test
+    void unindexedAccountsRejectBalanceQueries()
+    {
+        assertThatThrownBy(() -> new Accounts().getLargestBalances(1))
+                .hasMessageContaining("not indexed by balance");
+    }
+
+    @Test
+    void accountServiceAnswersFromTheLedgerSnapshot()
+    {
+        Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withBalanceIndexed(true));
+        AccountService accountService = new AccountService(ledger);
+        accountService.createAccount("source");
+        accountService.createAccount("destination");
+        Accounts snapshot = ledger.getSnapshot();
+        ledger.replaceSnapshot(snapshot, snapshot.newVersion(snapshot.getAccount("source").adjustBalance(BigDecimal.TEN)));
+
+        new TransferService(ledger).transferBalance("source", "destination", new BigDecimal("3"));
+
+        assertThat(ledger.isBalanceIndexed()).isTrue();
+        assertThat(accountService.getLargestBalances(1)).extracting(Account::getAccountNumber)
+                                                        .containsExactly("source");
+        assertThat(accountService.getAccountsBelow(new BigDecimal("5"))).extracting(Account::getBalance)
+                                                                       .containsExactly(new BigDecimal("3"));
+        assertThat(accountService.getAccountsBetween(new BigDecimal("3"), new BigDecimal("8")))
+                .extracting(Account::getAccountNumber)
+                .containsExactly("destination", "source");
+    }
+
+    // Account i has balance balances[i], and is named a followed by i
+    private static Accounts indexedAccounts(final FixedPointMoney money, final String... balances)
+    {
+        Accounts accounts = new Accounts(money, true);
+        for (int i = 0; i < balances.length; i++)
+        {
+            accounts = accounts.newVersion(accounts.newAccount("a" + i).adjustBalance(new BigDecimal(balances[i])));
+        }
+        return accounts;
+    }
+}
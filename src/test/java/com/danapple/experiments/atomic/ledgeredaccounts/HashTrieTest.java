@@ -0,0 +1,126 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class HashTrieTest
+{
+    private final HashTrie<String, String> empty = HashTrie.empty();
+
+    @Test
+    void emptyTrieHasNoEntries()
+    {
+        assertThat(empty.size()).isZero();
+        assertThat(empty.get("foo")).isNull();
+    }
+
+    @Test
+    void putAddsEntry()
+    {
+        HashTrie<String, String> trie = empty.put("foo", "bar");
+        assertThat(trie.get("foo")).isEqualTo("bar");
+        assertThat(trie.size()).isEqualTo(1);
+    }
+
+    @Test
+    void putDoesNotChangeOriginalTrie()
+    {
+        HashTrie<String, String> trie = empty.put("foo", "bar");
+        trie.put("foo", "baz");
+        trie.put("other", "value");
+
+        assertThat(trie.get("foo")).isEqualTo("bar");
+        assertThat(trie.get("other")).isNull();
+        assertThat(trie.size()).isEqualTo(1);
+    }
+
+    @Test
+    void putReplacesExistingEntryWithoutChangingSize()
+    {
+        HashTrie<String, String> trie = empty.put("foo", "bar").put("foo", "baz");
+        assertThat(trie.get("foo")).isEqualTo("baz");
+        assertThat(trie.size()).isEqualTo(1);
+    }
+
+    @Test
+    void putOfSameValueReturnsSameTrie()
+    {
+        String value = "bar";
+        HashTrie<String, String> trie = empty.put("foo", value);
+        assertThat(trie.put("foo", value)).isSameAs(trie);
+    }
+
+    @Test
+    void keepsEntriesWithCollidingHashCodes()
+    {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        HashTrie<String, String> trie = empty.put("Aa", "first").put("BB", "second");
+        assertThat(trie.get("Aa")).isEqualTo("first");
+        assertThat(trie.get("BB")).isEqualTo("second");
+        assertThat(trie.size()).isEqualTo(2);
+
+        HashTrie<String, String> replaced = trie.put("BB", "third");
+        assertThat(replaced.get("Aa")).isEqualTo("first");
+        assertThat(replaced.get("BB")).isEqualTo("third");
+        assertThat(replaced.size()).isEqualTo(2);
+        assertThat(trie.get("BB")).isEqualTo("second");
+    }
+
+    @Test
+    void holdsManyEntries()
+    {
+        HashTrie<String, String> trie = empty;
+        for (int i = 0; i < 100_000; i++)
+        {
+            trie = trie.put("Account " + i, "Value " + i);
+        }
+
+        assertThat(trie.size()).isEqualTo(100_000);
+        for (int i = 0; i < 100_000; i++)
+        {
+            assertThat(trie.get("Account " + i)).isEqualTo("Value " + i);
+        }
+        assertThat(trie.get("Account 100000")).isNull();
+    }
+
+    @Test
+    void forEachVisitsEveryEntryOnce()
+    {
+        HashTrie<String, String> trie = empty.put("Aa", "first").put("BB", "second");
+        for (int i = 0; i < 1000; i++)
+        {
+            trie = trie.put("Account " + i, "Value " + i);
+        }
+
+        Map<String, String> visited = new HashMap<>();
+        trie.forEach((key, value) -> assertThat(visited.put(key, value)).isNull());
+
+        assertThat(visited).hasSize(1002).containsEntry("Aa", "first").containsEntry("BB", "second")
+                           .containsEntry("Account 999", "Value 999");
+    }
+
+    @Test
+    void foldVisitsEveryValueOnceInParallel()
+    {
+        HashTrie<String, Integer> trie = HashTrie.empty();
+        for (int i = 0; i < 100_000; i++)
+        {
+            trie = trie.put("key" + i, i);
+        }
+
+        long[] folded = trie.fold(ForkJoinPool.commonPool(),
+                                  () -> new long[2],
+                                  (accumulator, value) -> {
+                                      accumulator[0]++;
+                                      accumulator[1] += value;
+                                  },
+                                  (first, second) -> new long[] { first[0] + second[0], first[1] + second[1] });
+
+        assertThat(folded).containsExactly(100_000, 100_000L * 99_999 / 2);
+    }
+}
@@ -0,0 +1,147 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.danapple.experiments.atomic.journal.FsyncPolicy;
+import com.danapple.experiments.atomic.journal.Journal;
+import com.danapple.experiments.atomic.journal.JournalOptions;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LedgerCheckpointTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+    private final static String ACCOUNT_NUMBER_3 = "Account 3";
+    private final static JournalOptions OPTIONS = new JournalOptions(64 * 1024, FsyncPolicy.NONE, 0);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void recoversCheckpointedDecimalBalances()
+    {
+        Ledger ledger = new Ledger();
+        createAccounts(ledger, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+        new TransferService(ledger).transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("3.75"));
+        LedgerCheckpoint.write(ledger, checkpoints());
+
+        Ledger recoveredLedger = new Ledger();
+        long version = LedgerCheckpoint.recover(recoveredLedger, checkpoints(), journal());
+
+        assertThat(version).isEqualTo(3);
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_1, "-3.75");
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_2, "3.75");
+    }
+
+    @Test
+    void replaysOnlyJournalTailAfterCheckpoint()
+    {
+        FixedPointMoney cents = new FixedPointMoney(2);
+        try (Journal journal = new Journal(journal(), OPTIONS))
+        {
+            Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(cents).withListener(journal));
+            createAccounts(ledger, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+            TransferService transferService = new TransferService(ledger);
+            transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 100);
+            LedgerCheckpoint.write(ledger, checkpoints());
+            createAccounts(ledger, ACCOUNT_NUMBER_3);
+            transferService.transferBalance(ACCOUNT_NUMBER_2, ACCOUNT_NUMBER_3, 25);
+        }
+
+        Ledger recoveredLedger = new Ledger(LedgerOptions.DEFAULT.withMoney(cents));
+        long version = LedgerCheckpoint.recover(recoveredLedger, checkpoints(), journal());
+
+        assertThat(version).isEqualTo(5);
+        assertThat(recoveredLedger.getSnapshot().getVersion()).isEqualTo(5);
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_1, "-1.00");
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_2, "0.75");
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_3, "0.25");
+    }
+
+    @Test
+    void recoversFromJournalAloneWithoutCheckpoint()
+    {
+        try (Journal journal = new Journal(journal(), OPTIONS))
+        {
+            Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withListener(journal));
+            createAccounts(ledger, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2);
+            new TransferService(ledger).transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.TEN);
+        }
+
+        Ledger recoveredLedger = new Ledger();
+        LedgerCheckpoint.recover(recoveredLedger, checkpoints(), journal());
+
+        assertBalance(recoveredLedger, ACCOUNT_NUMBER_2, "10");
+    }
+
+    @Test
+    void fallsBackToOlderCheckpointWhenNewestIsCorrupt() throws IOException
+    {
+        Ledger ledger = new Ledger();
+        createAccounts(ledger, ACCOUNT_NUMBER_1);
+        LedgerCheckpoint.write(ledger, checkpoints());
+        createAccounts(ledger, ACCOUNT_NUMBER_2);
+        Path newest = LedgerCheckpoint.write(ledger, checkpoints());
+        byte[] bytes = Files.readAllBytes(newest);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(newest, bytes);
+
+        Ledger recoveredLedger = new Ledger();
+        long version = LedgerCheckpoint.recover(recoveredLedger, checkpoints(), journal());
+
+        assertThat(version).isEqualTo(1);
+        assertThat(recoveredLedger.getSnapshot().getAccount(ACCOUNT_NUMBER_1)).isNotNull();
+        assertThat(recoveredLedger.getSnapshot().getAccount(ACCOUNT_NUMBER_2)).isNull();
+    }
+
+    @Test
+    void rejectsCheckpointOfDifferentScale()
+    {
+        Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2)));
+        createAccounts(ledger, ACCOUNT_NUMBER_1);
+        Path checkpoint = LedgerCheckpoint.write(ledger, checkpoints());
+
+        assertThatThrownBy(() -> LedgerCheckpoint.read(checkpoint, new Accounts(new FixedPointMoney(3))))
+                .hasMessageContaining("scale");
+    }
+
+    @Test
+    void refusesToRecoverIntoLedgerWithAccounts()
+    {
+        Ledger ledger = new Ledger();
+        createAccounts(ledger, ACCOUNT_NUMBER_1);
+
+        assertThatThrownBy(() -> LedgerCheckpoint.recover(ledger, checkpoints(), journal()));
+    }
+
+    private Path checkpoints()
+    {
+        return directory.resolve("checkpoints");
+    }
+
+    private Path journal()
+    {
+        return directory.resolve("journal");
+    }
+
+    private static void createAccounts(final Ledger ledger, final String... accountNumbers)
+    {
+        AccountService accountService = new AccountService(ledger);
+        for (String accountNumber : accountNumbers)
+        {
+            assertThat(accountService.createAccount(accountNumber)).isTrue();
+        }
+    }
+
+    private static void assertBalance(final Ledger ledger, final String accountNumber, final String balance)
+    {
+        assertThat(ledger.getSnapshot().getAccount(accountNumber).getBalance()).isEqualTo(new BigDecimal(balance));
+    }
+}
@@ -0,0 +1,103 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.danapple.experiments.atomic.journal.FsyncPolicy;
+import com.danapple.experiments.atomic.journal.Journal;
+import com.danapple.experiments.atomic.journal.JournalOptions;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LedgerCheckpointerTest
+{
+    private final static long ONE_HOUR = 3_600_000;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void skipsCheckpointWhenSnapshotUnchanged()
+    {
+        Ledger ledger = new Ledger();
+        new AccountService(ledger).createAccount("Account 1");
+        try (LedgerCheckpointer checkpointer = new LedgerCheckpointer(ledger, directory, ONE_HOUR))
+        {
+            assertThat(checkpointer.checkpoint()).isEqualTo(1);
+            assertThat(checkpointer.checkpoint()).isEqualTo(1);
+        }
+
+        assertThat(LedgerCheckpoint.checkpointPaths(directory)).hasSize(1);
+    }
+
+    @Test
+    void keepsOnlyNewestCheckpoints()
+    {
+        Ledger ledger = new Ledger();
+        AccountService accountService = new AccountService(ledger);
+        try (LedgerCheckpointer checkpointer = new LedgerCheckpointer(ledger, directory, ONE_HOUR, 2))
+        {
+            for (int i = 0; i < 5; i++)
+            {
+                accountService.createAccount("Account " + i);
+                checkpointer.checkpoint();
+            }
+        }
+
+        assertThat(LedgerCheckpoint.checkpointPaths(directory))
+                .containsExactly(LedgerCheckpoint.checkpointPath(directory, 4),
+                                 LedgerCheckpoint.checkpointPath(directory, 5));
+    }
+
+    @Test
+    void deletesJournalSegmentsOlderThanRetainedCheckpoints()
+    {
+        Path checkpointDirectory = directory.resolve("checkpoints");
+        Path journalDirectory = directory.resolve("journal");
+        try (Journal journal = new Journal(journalDirectory, new JournalOptions(1024, FsyncPolicy.NONE, 0)))
+        {
+            Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withListener(journal));
+            AccountService accountService = new AccountService(ledger);
+            accountService.createAccount("Account 1");
+            accountService.createAccount("Account 2");
+            TransferService transferService = new TransferService(ledger);
+            try (LedgerCheckpointer checkpointer = new LedgerCheckpointer(ledger,
+                                                                          checkpointDirectory,
+                                                                          ONE_HOUR,
+                                                                          1,
+                                                                          journalDirectory))
+            {
+                for (int i = 0; i < 100; i++)
+                {
+                    transferService.transferBalance("Account 1", "Account 2", BigDecimal.ONE);
+                }
+                checkpointer.checkpoint();
+                transferService.transferBalance("Account 1", "Account 2", BigDecimal.ONE);
+            }
+        }
+
+        assertThat(journalDirectory.resolve("journal-0000000000.log")).doesNotExist();
+        Ledger recoveredLedger = new Ledger();
+        assertThat(LedgerCheckpoint.recover(recoveredLedger, checkpointDirectory, journalDirectory)).isEqualTo(103);
+        assertThat(recoveredLedger.getSnapshot().getAccount("Account 2").getBalance())
+                .isEqualTo(BigDecimal.valueOf(101));
+    }
+
+    @Test
+    void checkpointsInBackground() throws InterruptedException
+    {
+        Ledger ledger = new Ledger();
+        new AccountService(ledger).createAccount("Account 1");
+        try (LedgerCheckpointer ignored = new LedgerCheckpointer(ledger, directory, 1))
+        {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (LedgerCheckpoint.checkpointPaths(directory).isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(5);
+            }
+        }
+
+        assertThat(LedgerCheckpoint.checkpointPaths(directory)).isNotEmpty();
+    }
+}
@@ -2,6 +2,9 @@ package com.danapple.experiments.atomic.ledgeredaccounts;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -52,4 +55,39 @@ public class LedgerTest
         assertThat(ledger.getRetryCount()).isEqualTo(11);
     }
 
+    @Test
+    void doesNotCombineByDefault()
+    {
+        assertThat(ledger.isCombining()).isFalse();
+        assertThat(ledger.getCombiner()).isNull();
+    }
+
+    @Test
+    void combinesWhenRequested()
+    {
+        ledger = new Ledger(LedgerOptions.DEFAULT.withCombining(true));
+        assertThat(ledger.isCombining()).isTrue();
+        assertThat(ledger.getCombiner()).isNotNull();
+    }
+
+    @Test
+    void usesGivenContentionManager()
+    {
+        ContentionManager contentionManager = ContentionManager.parse("backoff", 7);
+        ledger = new Ledger(LedgerOptions.DEFAULT.withContentionManager(contentionManager));
+        assertThat(ledger.getContentionManager()).isSameAs(contentionManager);
+        assertThat(ledger.getRetryCount()).isEqualTo(7);
+    }
+
+    @Test
+    void optionsKeepWhatIsNotReplaced()
+    {
+        FixedPointMoney cents = new FixedPointMoney(2);
+        ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(cents).withRetryCount(3).withBalanceIndexed(true));
+
+        assertThat(ledger.getMoney()).isSameAs(cents);
+        assertThat(ledger.getRetryCount()).isEqualTo(3);
+        assertThat(ledger.isBalanceIndexed()).isTrue();
+        assertThat(ledger.isCombining()).isFalse();
+    }
 }
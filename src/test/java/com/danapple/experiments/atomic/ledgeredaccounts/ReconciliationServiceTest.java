@@ -0,0 +1,53 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.reconciliation.ReconciliationReport;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+public class ReconciliationServiceTest
+{
+    @Test
+    void sumsEveryBalanceInSnapshot()
+    {
+        Ledger ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2)));
+        LedgeredTransferEngine engine = new LedgeredTransferEngine(ledger, 20_000, BigDecimal.TEN);
+        engine.transfer(0, 1, new BigDecimal("10.01"));
+
+        ReconciliationReport report = new ReconciliationService(ledger).reconcile();
+
+        assertThat(report).isEqualTo(new ReconciliationReport(20_000, new BigDecimal("200000.00"), 1, 0));
+        assertThat(report.balancesTo(BigDecimal.valueOf(200_000))).isTrue();
+    }
+
+    @Test
+    void sumsBigDecimalBalances()
+    {
+        Ledger ledger = new Ledger();
+        new LedgeredTransferEngine(ledger, 100, new BigDecimal("0.5"));
+
+        ReconciliationReport report = new ReconciliationService(ledger).reconcile();
+
+        assertThat(report.accountCount()).isEqualTo(100);
+        assertThat(report.totalBalance()).isEqualByComparingTo("50");
+    }
+
+    @Test
+    void countsAdjustmentsStillPending()
+    {
+        Ledger ledger = new Ledger();
+        Accounts snapshot = ledger.getSnapshot();
+        TransferState pendingState = new TransferState();
+        TransferState completeState = new TransferState();
+        completeState.complete();
+        Account account = snapshot.newAccount("Account 1")
+                                  .addPendingAdjustment(new PendingAdjustment(BigDecimal.ONE, pendingState))
+                                  .addPendingAdjustment(new PendingAdjustment(BigDecimal.TEN, completeState));
+
+        ReconciliationReport report = new ReconciliationService(ledger).reconcile(snapshot.newVersion(account));
+
+        assertThat(report).isEqualTo(new ReconciliationReport(1, BigDecimal.TEN, 0, 1));
+    }
+}
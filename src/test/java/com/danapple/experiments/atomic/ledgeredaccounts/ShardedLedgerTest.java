@@ -0,0 +1,38 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class ShardedLedgerTest
+{
+    private final ShardedLedger shardedLedger = new ShardedLedger(4);
+
+    @Test
+    void createsRequestedShards()
+    {
+        assertThat(shardedLedger.getShardCount()).isEqualTo(4);
+        assertThat(shardedLedger.getShard(0)).isNotSameAs(shardedLedger.getShard(1));
+    }
+
+    @Test
+    void returnsDefaultRetryCount()
+    {
+        assertThat(shardedLedger.getRetryCount()).isEqualTo(10);
+    }
+
+    @Test
+    void placesAccountInConsistentShard()
+    {
+        int shardIndex = shardedLedger.getShardIndex("Account 1");
+        assertThat(shardIndex).isBetween(0, 3);
+        assertThat(shardedLedger.getShard("Account 1")).isSameAs(shardedLedger.getShard(shardIndex));
+    }
+
+    @Test
+    void rejectsZeroShards()
+    {
+        assertThatThrownBy(() -> new ShardedLedger(0));
+    }
+}
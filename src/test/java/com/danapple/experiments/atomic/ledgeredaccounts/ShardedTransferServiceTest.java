@@ -0,0 +1,270 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ShardedTransferServiceTest
+{
+    private ShardedLedger shardedLedger;
+    private ShardedAccountService accountService;
+    private ShardedTransferService transferService;
+
+    private String sourceAccountNumber;
+    private String sameShardAccountNumber;
+    private String otherShardAccountNumber;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        createLedger(10);
+    }
+
+    @Test
+    void transfersWithinShard()
+    {
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   sameShardAccountNumber,
+                                                   BigDecimal.TEN)).isTrue();
+
+        assertThat(accountService.getAccount(sourceAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN.negate());
+        assertThat(accountService.getAccount(sameShardAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void transfersAcrossShards()
+    {
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.TEN)).isTrue();
+
+        assertThat(accountService.getAccount(sourceAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN.negate());
+        assertThat(accountService.getAccount(otherShardAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void repeatedTransferIdTransfersAcrossShardsOnce()
+    {
+        assertThat(transferService.transferBalance("T1",
+                                                   sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.TEN)).isTrue();
+        assertThat(transferService.transferBalance("T1",
+                                                   sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.TEN)).isTrue();
+
+        assertThat(accountService.getAccount(sourceAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN.negate());
+        assertThat(accountService.getAccount(otherShardAccountNumber).getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void rejectsNonPositiveTransferAcrossShards()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance(sourceAccountNumber,
+                                                                 otherShardAccountNumber,
+                                                                 BigDecimal.ZERO));
+    }
+
+    @Test
+    void rejectsNonExistentAccountsAcrossShards()
+    {
+        String missingAccountNumber = accountNumberInOtherShard("Missing");
+
+        assertThatThrownBy(() -> transferService.transferBalance(sourceAccountNumber,
+                                                                 missingAccountNumber,
+                                                                 BigDecimal.ONE))
+                .hasMessageContaining("Destination account");
+        assertThatThrownBy(() -> transferService.transferBalance(missingAccountNumber,
+                                                                 sourceAccountNumber,
+                                                                 BigDecimal.ONE))
+                .hasMessageContaining("Source account");
+    }
+
+    @Test
+    void failedCrossShardTransferLeavesBalancesUnchanged()
+    {
+        createLedger(0);
+
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.ONE)).isFalse();
+
+        assertThat(accountService.getAccount(sourceAccountNumber).getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(accountService.getAccount(otherShardAccountNumber).getBalance()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void transferFailingAfterDebitLeavesNothingPending()
+    {
+        ContentionManager contentionManager = mock(ContentionManager.class, CALLS_REAL_METHODS);
+        // Enough attempts to add the debit, but none for the credit
+        when(contentionManager.getMaxAttempts()).thenReturn(1, 0);
+        createLedger(contentionManager);
+
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.ONE)).isFalse();
+
+        Account sourceAccount = shardedLedger.getShard(sourceAccountNumber)
+                                             .getSnapshot()
+                                             .getAccount(sourceAccountNumber);
+        assertThat(sourceAccount.getPendingAdjustmentCount()).isEqualTo(1);
+        assertThat(sourceAccount.getPendingCount()).isZero();
+        assertThat(sourceAccount.getBalance()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void concurrentTransfersPreserveTotal() throws Exception
+    {
+        shardedLedger = new ShardedLedger(4, 1000);
+        accountService = new ShardedAccountService(shardedLedger);
+        transferService = new ShardedTransferService(shardedLedger);
+        int accountCount = 16;
+        for (int i = 0; i < accountCount; i++)
+        {
+            assertThat(accountService.createAccount("Account " + i)).isTrue();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++)
+            {
+                results.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2_000; i++)
+                    {
+                        int source = random.nextInt(accountCount);
+                        int destination = (source + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                        transferService.transferBalance("Account " + source,
+                                                        "Account " + destination,
+                                                        BigDecimal.ONE);
+                    }
+                }));
+            }
+            for (Future<?> result : results)
+            {
+                result.get();
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accountCount; i++)
+        {
+            total = total.add(accountService.getAccount("Account " + i).getBalance());
+        }
+        assertThat(total).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    // Accounts are placed directly into their shards, because AccountService cannot create them without retries
+    private void createLedger(final int retryCount)
+    {
+        createLedger(ContentionManager.fixed(retryCount));
+    }
+
+    private void createLedger(final ContentionManager contentionManager)
+    {
+        shardedLedger = new ShardedLedger(2, LedgerOptions.DEFAULT.withContentionManager(contentionManager));
+        accountService = new ShardedAccountService(shardedLedger);
+        transferService = new ShardedTransferService(shardedLedger);
+
+        sourceAccountNumber = "Account 0";
+        sameShardAccountNumber = accountNumberInShard(shardedLedger.getShardIndex(sourceAccountNumber), "Same");
+        otherShardAccountNumber = accountNumberInOtherShard("Other");
+
+        for (String accountNumber : List.of(sourceAccountNumber, sameShardAccountNumber, otherShardAccountNumber))
+        {
+            Ledger ledger = shardedLedger.getShard(accountNumber);
+            assertThat(ledger.replaceSnapshot(ledger.getSnapshot(),
+                                              ledger.getSnapshot().newVersion(new Account(accountNumber)))).isTrue();
+        }
+    }
+
+    private String accountNumberInOtherShard(final String prefix)
+    {
+        return accountNumberInShard(1 - shardedLedger.getShardIndex(sourceAccountNumber), prefix);
+    }
+
+    private String accountNumberInShard(final int shardIndex, final String prefix)
+    {
+        for (int i = 1; ; i++)
+        {
+            String accountNumber = prefix + " " + i;
+            if (shardedLedger.getShardIndex(accountNumber) == shardIndex)
+            {
+                return accountNumber;
+            }
+        }
+    }
+
+    @Test
+    void transfersFixedPointMoneyAcrossShards()
+    {
+        shardedLedger = new ShardedLedger(2, LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2)));
+        accountService = new ShardedAccountService(shardedLedger);
+        transferService = new ShardedTransferService(shardedLedger);
+        assertThat(accountService.createAccount(sourceAccountNumber)).isTrue();
+        assertThat(accountService.createAccount(otherShardAccountNumber)).isTrue();
+
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   new BigDecimal("1.25"))).isTrue();
+
+        assertThat(accountService.getAccount(sourceAccountNumber).getBalanceUnits()).isEqualTo(-125);
+        assertThat(accountService.getAccount(otherShardAccountNumber).getBalance()).isEqualTo(new BigDecimal("1.25"));
+    }
+
+    @Test
+    void checksTransferAcrossShardsIsPositiveBeforeConvertingIt()
+    {
+        shardedLedger = new ShardedLedger(2, LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2)));
+        transferService = new ShardedTransferService(shardedLedger);
+
+        assertThatThrownBy(() -> transferService.transferBalance(sourceAccountNumber,
+                                                                 otherShardAccountNumber,
+                                                                 new BigDecimal("-0.001")))
+                .hasMessageContaining("must be positive");
+    }
+
+    @Test
+    void reportsTransferAcrossShardsWithSourceShardVersion()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        shardedLedger = new ShardedLedger(2, LedgerOptions.DEFAULT.withListener(listener));
+        accountService = new ShardedAccountService(shardedLedger);
+        transferService = new ShardedTransferService(shardedLedger);
+        assertThat(accountService.createAccount(sourceAccountNumber)).isTrue();
+        assertThat(accountService.createAccount(otherShardAccountNumber)).isTrue();
+        long versionBefore = shardedLedger.getShard(sourceAccountNumber).getSnapshot().getVersion();
+
+        assertThat(transferService.transferBalance(sourceAccountNumber,
+                                                   otherShardAccountNumber,
+                                                   BigDecimal.TEN)).isTrue();
+
+        long sourceVersion = shardedLedger.getShard(sourceAccountNumber).getSnapshot().getVersion();
+        assertThat(sourceVersion).isGreaterThan(versionBefore);
+        verify(listener).transferCommitted(sourceVersion, sourceAccountNumber, otherShardAccountNumber, BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,201 @@
+package com.danapple.experiments.atomic.ledgeredaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import com.danapple.experiments.atomic.TransferListener;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TransferCombinerTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+
+    private Ledger ledger;
+    private TransferService transferService;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        ledger = new Ledger(LedgerOptions.DEFAULT.withRetryCount(1).withCombining(true));
+        AccountService accountService = new AccountService(ledger);
+        transferService = new TransferService(ledger);
+
+        assertThat(accountService.createAccount(ACCOUNT_NUMBER_1)).isTrue();
+        assertThat(accountService.createAccount(ACCOUNT_NUMBER_2)).isTrue();
+    }
+
+    @Test
+    void combinedTransferAdjustsBothAccounts()
+    {
+        assertThat(transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.TEN)).isTrue();
+
+        Accounts snapshot = ledger.getSnapshot();
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_1).getBalance()).isEqualTo(BigDecimal.TEN.negate());
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void combinedTransferRejectsNonExistentSourceAccount()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance("bad account number",
+                                                                 ACCOUNT_NUMBER_2,
+                                                                 BigDecimal.TEN))
+                .hasMessageContaining("Source account");
+    }
+
+    @Test
+    void combinedTransferRejectsNonExistentDestinationAccount()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance(ACCOUNT_NUMBER_1,
+                                                                 "bad account number",
+                                                                 BigDecimal.TEN))
+                .hasMessageContaining("Destination account");
+    }
+
+    @Test
+    void combinedTransferFailsAfterTooManyRetries()
+    {
+        ledger = new Ledger(LedgerOptions.DEFAULT.withRetryCount(0).withCombining(true));
+        transferService = new TransferService(ledger);
+
+        assertThat(transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)).isFalse();
+    }
+
+    @Test
+    void concurrentTransfersAllSucceedWithSingleRetry() throws Exception
+    {
+        int threads = 8;
+        int transfersPerThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                boolean forward = t % 2 == 0;
+                results.add(executor.submit(() -> {
+                    int succeeded = 0;
+                    for (int i = 0; i < transfersPerThread; i++)
+                    {
+                        boolean transferred = forward
+                                              ? transferService.transferBalance(ACCOUNT_NUMBER_1,
+                                                                                ACCOUNT_NUMBER_2,
+                                                                                BigDecimal.ONE)
+                                              : transferService.transferBalance(ACCOUNT_NUMBER_2,
+                                                                                ACCOUNT_NUMBER_1,
+                                                                                BigDecimal.TEN);
+                        succeeded += transferred ? 1 : 0;
+                    }
+                    return succeeded;
+                }));
+            }
+            for (Future<Integer> result : results)
+            {
+                assertThat(result.get()).isEqualTo(transfersPerThread);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        Accounts snapshot = ledger.getSnapshot();
+        BigDecimal expectedBalance = new BigDecimal((threads / 2) * transfersPerThread * 9);
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_1).getBalance()).isEqualByComparingTo(expectedBalance);
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualByComparingTo(expectedBalance.negate());
+    }
+
+    @Test
+    void manyVirtualThreadCallersAllFinish() throws Exception
+    {
+        int callers = 1_000;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++)
+            {
+                results.add(executor.submit(() -> transferService.transferBalance(ACCOUNT_NUMBER_1,
+                                                                                  ACCOUNT_NUMBER_2,
+                                                                                  BigDecimal.ONE)));
+            }
+            for (Future<Boolean> result : results)
+            {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isTrue();
+            }
+        }
+
+        assertThat(ledger.getSnapshot().getAccount(ACCOUNT_NUMBER_2).getBalance())
+                .isEqualByComparingTo(new BigDecimal(callers));
+    }
+
+    @Test
+    void listenerFailureFinishesEveryCombinedTransfer() throws Exception
+    {
+        TransferListener listener = mock(TransferListener.class);
+        doThrow(new RuntimeException("Listener failed")).when(listener)
+                                                         .transferCommitted(anyLong(), any(), any(), any());
+        ledger = new Ledger(LedgerOptions.DEFAULT.withCombining(true).withListener(listener));
+        AccountService accountService = new AccountService(ledger);
+        transferService = new TransferService(ledger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+
+        int threads = 2;
+        int transfersPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                results.add(executor.submit(() -> {
+                    int failed = 0;
+                    for (int i = 0; i < transfersPerThread; i++)
+                    {
+                        try
+                        {
+                            transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            assertThat(e).hasMessage("Listener failed");
+                            failed++;
+                        }
+                    }
+                    return failed;
+                }));
+            }
+            for (Future<Integer> result : results)
+            {
+                assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo(transfersPerThread);
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new AssertionError(e.getCause());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // The listener failed after every transfer committed
+        BigDecimal expectedBalance = new BigDecimal(threads * transfersPerThread);
+        Accounts snapshot = ledger.getSnapshot();
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualByComparingTo(expectedBalance);
+    }
+}
@@ -2,8 +2,22 @@ package com.danapple.experiments.atomic.ledgeredaccounts;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.metrics.StripedTransferMetrics;
+import com.danapple.experiments.atomic.metrics.TransferMetricsSnapshot;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -118,4 +132,192 @@ public class TransferServiceTest
                                                                  ACCOUNT_NUMBER_1,
                                                                  BigDecimal.ONE));
     }
+
+    @Test
+    void fixedPointLedgerTransfersBalance()
+    {
+        createFixedPointLedger();
+
+        assertThat(transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("3.75"))).isTrue();
+        assertThat(transferService.transferBalance(ACCOUNT_NUMBER_2, ACCOUNT_NUMBER_1, 125L)).isTrue();
+
+        Accounts snapshot = ledger.getSnapshot();
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_1).getBalanceUnits()).isEqualTo(-250);
+        assertThat(snapshot.getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(new BigDecimal("2.50"));
+    }
+
+    @Test
+    void fixedPointLedgerMatchesDecimalLedgerAtScale()
+    {
+        List<String> amounts = List.of("3.75", "0.01", "100.00", "12.30", "7.05");
+        for (int i = 0; i < amounts.size(); i++)
+        {
+            BigDecimal amount = new BigDecimal(amounts.get(i));
+            String source = i % 2 == 0 ? ACCOUNT_NUMBER_1 : ACCOUNT_NUMBER_2;
+            String destination = i % 2 == 0 ? ACCOUNT_NUMBER_2 : ACCOUNT_NUMBER_1;
+            assertThat(transferService.transferBalance(source, destination, amount)).isTrue();
+        }
+        Accounts decimalSnapshot = ledger.getSnapshot();
+
+        createFixedPointLedger();
+        for (int i = 0; i < amounts.size(); i++)
+        {
+            BigDecimal amount = new BigDecimal(amounts.get(i));
+            String source = i % 2 == 0 ? ACCOUNT_NUMBER_1 : ACCOUNT_NUMBER_2;
+            String destination = i % 2 == 0 ? ACCOUNT_NUMBER_2 : ACCOUNT_NUMBER_1;
+            assertThat(transferService.transferBalance(source, destination, amount)).isTrue();
+        }
+        Accounts fixedPointSnapshot = ledger.getSnapshot();
+
+        for (String accountNumber : List.of(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2))
+        {
+            assertThat(fixedPointSnapshot.getAccount(accountNumber).getBalance())
+                    .isEqualTo(decimalSnapshot.getAccount(accountNumber).getBalance().setScale(2));
+        }
+    }
+
+    @Test
+    void fixedPointLedgerRejectsAmountBeyondScale()
+    {
+        createFixedPointLedger();
+
+        assertThatThrownBy(() -> transferService.transferBalance(ACCOUNT_NUMBER_1,
+                                                                 ACCOUNT_NUMBER_2,
+                                                                 new BigDecimal("0.001")));
+    }
+
+    @Test
+    void fixedPointLedgerRejectsNonPositiveUnits()
+    {
+        createFixedPointLedger();
+
+        assertThatThrownBy(() -> transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 0L));
+    }
+
+    @Test
+    void decimalLedgerRejectsUnits()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 1L));
+    }
+
+    private void createFixedPointLedger()
+    {
+        ledger = new Ledger(LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2)));
+        AccountService accountService = new AccountService(ledger);
+        transferService = new TransferService(ledger);
+
+        assertThat(accountService.createAccount(ACCOUNT_NUMBER_1)).isTrue();
+        assertThat(accountService.createAccount(ACCOUNT_NUMBER_2)).isTrue();
+    }
+
+    @Test
+    void tellsListenerAboutCreationsAndTransfersInSnapshotOrder()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        Ledger listenedLedger = new Ledger(LedgerOptions.DEFAULT.withMoney(new FixedPointMoney(2))
+                                                                .withListener(listener));
+        AccountService accountService = new AccountService(listenedLedger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+
+        new TransferService(listenedLedger).transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, 125);
+
+        verify(listener).accountCreated(1, ACCOUNT_NUMBER_1);
+        verify(listener).accountCreated(2, ACCOUNT_NUMBER_2);
+        verify(listener).transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("1.25"));
+    }
+
+    @Test
+    void reportsOutcomeToContentionManager()
+    {
+        ContentionManager contentionManager = mock(ContentionManager.class, CALLS_REAL_METHODS);
+        when(contentionManager.getMaxAttempts()).thenReturn(1);
+        Ledger managedLedger = new Ledger(LedgerOptions.DEFAULT.withContentionManager(contentionManager));
+        AccountService accountService = new AccountService(managedLedger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+
+        new TransferService(managedLedger).transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+
+        verify(contentionManager, times(3)).onSuccess(0);
+    }
+
+    @Test
+    void recordsMetrics()
+    {
+        StripedTransferMetrics metrics = new StripedTransferMetrics();
+        Ledger measuredLedger = new Ledger(LedgerOptions.DEFAULT.withMetrics(metrics));
+        AccountService accountService = new AccountService(measuredLedger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+
+        new TransferService(measuredLedger).transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+
+        TransferMetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.completedTransfers()).isEqualTo(1);
+        assertThat(snapshot.casFailures()).isZero();
+        assertThat(snapshot.attempts().count()).isEqualTo(3);
+        assertThat(snapshot.transferLatencyNanos().count()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedTransferIdTransfersOnce()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        Ledger listenedLedger = new Ledger(LedgerOptions.DEFAULT.withListener(listener));
+        AccountService accountService = new AccountService(listenedLedger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+        TransferService idempotentService = new TransferService(listenedLedger);
+
+        assertThat(idempotentService.transferBalance("T1", ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)).isTrue();
+        assertThat(idempotentService.transferBalance("T1", ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)).isTrue();
+
+        assertThat(listenedLedger.getSnapshot().getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(BigDecimal.ONE);
+        verify(listener).transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE, "T1");
+    }
+
+    @Test
+    void transferIdOfFailedTransferMayBeRetried()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance("T1", ACCOUNT_NUMBER_1, "Account 3", BigDecimal.ONE));
+        assertThat(transferService.getTransferIds().contains("T1")).isFalse();
+
+        assertThat(transferService.transferBalance("T1", ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)).isTrue();
+        assertThat(ledger.getSnapshot().getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    void transferIdIsKeptWhenListenerFails()
+    {
+        transferIdIsKeptWhenListenerFails(false);
+    }
+
+    @Test
+    void transferIdIsKeptWhenListenerFailsWhileCombining()
+    {
+        transferIdIsKeptWhenListenerFails(true);
+    }
+
+    private void transferIdIsKeptWhenListenerFails(final boolean combining)
+    {
+        TransferListener listener = mock(TransferListener.class);
+        doThrow(new RuntimeException("Listener failed"))
+                .when(listener).transferCommitted(anyLong(), any(), any(), any(), any());
+        Ledger listenedLedger = new Ledger(LedgerOptions.DEFAULT.withCombining(combining).withListener(listener));
+        AccountService accountService = new AccountService(listenedLedger);
+        accountService.createAccount(ACCOUNT_NUMBER_1);
+        accountService.createAccount(ACCOUNT_NUMBER_2);
+        TransferService idempotentService = new TransferService(listenedLedger);
+
+        assertThatThrownBy(() -> idempotentService.transferBalance("T1",
+                                                                   ACCOUNT_NUMBER_1,
+                                                                   ACCOUNT_NUMBER_2,
+                                                                   BigDecimal.ONE))
+                .hasMessage("Listener failed");
+        assertThat(idempotentService.transferBalance("T1", ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)).isTrue();
+
+        assertThat(listenedLedger.getSnapshot().getAccount(ACCOUNT_NUMBER_2).getBalance()).isEqualTo(BigDecimal.ONE);
+        verify(listener).transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE, "T1");
+    }
 }
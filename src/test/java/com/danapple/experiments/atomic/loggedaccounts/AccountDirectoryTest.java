@@ -0,0 +1,149 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class AccountDirectoryTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+
+    private final AccountDirectory directory = new AccountDirectory();
+
+    @Test
+    void findsCreatedAccountByNumberAndId()
+    {
+        Account account = directory.createAccount(ACCOUNT_NUMBER_1);
+
+        int id = directory.getId(ACCOUNT_NUMBER_1);
+        assertThat(directory.getAccount(ACCOUNT_NUMBER_1)).isSameAs(account);
+        assertThat(directory.getAccount(id)).isSameAs(account);
+        assertThat(directory.size()).isEqualTo(1);
+    }
+
+    @Test
+    void assignsDenseIdsInCreationOrder()
+    {
+        directory.createAccount(ACCOUNT_NUMBER_1);
+        directory.createAccount(ACCOUNT_NUMBER_2);
+
+        assertThat(directory.getId(ACCOUNT_NUMBER_1)).isZero();
+        assertThat(directory.getId(ACCOUNT_NUMBER_2)).isEqualTo(1);
+    }
+
+    @Test
+    void returnsNothingForUnknownAccounts()
+    {
+        assertThat(directory.getAccount(ACCOUNT_NUMBER_1)).isNull();
+        assertThat(directory.getId(ACCOUNT_NUMBER_1)).isEqualTo(-1);
+        assertThat(directory.getAccount(0)).isNull();
+        assertThat(directory.getAccount(-1)).isNull();
+    }
+
+    @Test
+    void refusesDuplicateAccount()
+    {
+        directory.createAccount(ACCOUNT_NUMBER_1);
+
+        assertThatThrownBy(() -> directory.createAccount(ACCOUNT_NUMBER_1)).hasMessageContaining("already exists");
+    }
+
+    @Test
+    void createsAccountsWithDirectoryMoney()
+    {
+        FixedPointMoney cents = new FixedPointMoney(2);
+        AccountDirectory centsDirectory = new AccountDirectory(cents);
+
+        assertThat(centsDirectory.createAccount(ACCOUNT_NUMBER_1).getMoney()).isEqualTo(cents);
+    }
+
+    @Test
+    void tellsListenerAboutCreations()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        new AccountDirectory(null, null, listener).createAccount(ACCOUNT_NUMBER_1);
+
+        verify(listener).accountCreated(0, ACCOUNT_NUMBER_1);
+    }
+
+    @Test
+    void visitsAccountsAcrossPagesInIdOrder()
+    {
+        int accountCount = 150_000;
+        for (int i = 0; i < accountCount; i++)
+        {
+            directory.createAccount("Account " + i);
+        }
+
+        List<String> visited = new ArrayList<>();
+        directory.forEach(account -> visited.add(account.getAccountNumber()));
+
+        assertThat(visited).hasSize(accountCount);
+        assertThat(visited.getFirst()).isEqualTo("Account 0");
+        assertThat(visited.getLast()).isEqualTo("Account " + (accountCount - 1));
+        assertThat(directory.getAccount(accountCount - 1).getAccountNumber())
+                .isEqualTo("Account " + (accountCount - 1));
+    }
+
+    @Test
+    void concurrentCreationOfSameAccountsHasOneWinnerEach() throws InterruptedException
+    {
+        int accountCount = 2_000;
+        AtomicInteger created = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++)
+        {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < accountCount; i++)
+                {
+                    try
+                    {
+                        directory.createAccount("Account " + i);
+                        created.incrementAndGet();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // Another thread created it first
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        Set<String> visited = new HashSet<>();
+        directory.forEach(account -> assertThat(visited.add(account.getAccountNumber())).isTrue());
+
+        assertThat(created.get()).isEqualTo(accountCount);
+        assertThat(visited).hasSize(accountCount);
+        assertThat(directory.size()).isEqualTo(accountCount);
+    }
+
+    @Test
+    void visitsOnlyTheIdsInRangeAcrossPages()
+    {
+        AccountDirectory directory = new AccountDirectory();
+        for (int i = 0; i < 70_000; i++)
+        {
+            directory.createAccount("Account " + i);
+        }
+
+        List<String> visited = new ArrayList<>();
+        directory.forEach(65_534, 65_538, account -> visited.add(account.getAccountNumber()));
+
+        assertThat(visited).containsExactly("Account 65534", "Account 65535", "Account 65536", "Account 65537");
+    }
+}
@@ -3,13 +3,16 @@ package com.danapple.experiments.atomic.loggedaccounts;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.Test;
 
 class AccountTest
 {
     private final static String ACCOUNT_NUMBER_1 = "Account 1";
     private final static BigDecimal TWO_POINT_THREE = new BigDecimal("2.3");
+    private final static FixedPointMoney CENTS = new FixedPointMoney(2);
 
     @Test
     void accountHoldsAccountNumbers()
@@ -147,4 +150,185 @@ class AccountTest
         Balance rawBalance = account.getRawBalance();
         assertThat(rawBalance.getLogLength()).isZero();
     }
+
+    @Test
+    void fixedPointAccountStartsWithZeroAtScale()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1, CENTS);
+        assertThat(account.getMoney()).isEqualTo(CENTS);
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(account.getBalanceUnits()).isZero();
+    }
+
+    @Test
+    void fixedPointAccountIncludesCompletedAdjustmentInUnits()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1, CENTS);
+        BalanceLogState sharedState = new BalanceLogState();
+
+        account.adjustBalance(TWO_POINT_THREE, sharedState);
+        assertThat(account.getRawBalance().getBalanceUnits()).isZero();
+        sharedState.complete();
+
+        assertThat(account.getBalanceUnits()).isEqualTo(230);
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal("2.30"));
+    }
+
+    @Test
+    void fixedPointAccountRejectsOverWithdrawal()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1, CENTS);
+        BalanceLogState depositLogState = new BalanceLogState();
+        account.adjustBalanceUnits(100, depositLogState);
+        depositLogState.complete();
+
+        assertThatThrownBy(() -> account.adjustBalanceUnits(-101, new BalanceLogState()))
+                .hasMessageContaining("insufficient");
+        assertThat(account.adjustBalanceUnits(-100, new BalanceLogState())).isTrue();
+    }
+
+    @Test
+    void fixedPointAccountRejectsCreditWhichWouldOverflow()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1, CENTS);
+        account.adjustBalanceUnits(Long.MAX_VALUE - 10, new BalanceLogState());
+
+        // The first credit is still pending, but counts as it may yet complete
+        BalanceLogState refusedState = new BalanceLogState();
+        assertThatThrownBy(() -> account.adjustBalanceUnits(11, refusedState))
+                .hasMessageContaining("overflows");
+        assertThat(refusedState.getStatus()).isEqualTo(BalanceLogStatus.ABORTED);
+        assertThat(account.adjustBalanceUnits(10, new BalanceLogState())).isTrue();
+        assertThat(account.getBalanceUnits()).isZero();
+    }
+
+    @Test
+    void decimalAccountHasNoUnits()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1);
+        assertThatThrownBy(account::getBalanceUnits);
+    }
+
+    @Test
+    void promotesToStripedAfterRepeatedCreditFailures()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1);
+        for (int i = 0; i < 15; i++)
+        {
+            account.creditFailed();
+        }
+        assertThat(account.isStriped()).isFalse();
+
+        account.creditFailed();
+
+        assertThat(account.isStriped()).isTrue();
+    }
+
+    @Test
+    void stripedAccountSumsCreditsFromManyThreads() throws InterruptedException
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1, CENTS);
+        account.promoteToStriped();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1_000; i++)
+                {
+                    BalanceLogState state = new BalanceLogState();
+                    while (!account.adjustBalanceUnits(1, state))
+                    {
+                        Thread.onSpinWait();
+                    }
+                    state.complete();
+                }
+            });
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(account.getBalanceUnits()).isEqualTo(8_000);
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal("80.00"));
+        assertThat(account.getRawBalance().getBalanceUnits()).isZero();
+    }
+
+    @Test
+    void stripedAccountChecksWithdrawalsAgainstTotal()
+    {
+        Account account = new Account(ACCOUNT_NUMBER_1);
+        BalanceLogState openingState = new BalanceLogState();
+        account.adjustBalance(BigDecimal.ONE, openingState);
+        openingState.complete();
+        account.promoteToStriped();
+        BalanceLogState creditState = new BalanceLogState();
+        account.adjustBalance(TWO_POINT_THREE, creditState);
+        creditState.complete();
+
+        assertThatThrownBy(() -> account.adjustBalance(new BigDecimal("-3.4"), new BalanceLogState()))
+                .hasMessageContaining("insufficient balance (3.3");
+        BalanceLogState debitState = new BalanceLogState();
+        assertThat(account.adjustBalance(new BigDecimal("-3.3"), debitState)).isTrue();
+        debitState.complete();
+        assertThat(account.getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void readViewAndCompactionCoverStripes()
+    {
+        try (LogCompactor compactor = new LogCompactor(new CompactionPolicy(64, 0, 60_000)))
+        {
+            Account account = new Account(ACCOUNT_NUMBER_1, null, compactor);
+            account.promoteToStriped();
+            BalanceLogState state = new BalanceLogState();
+            account.adjustBalance(TWO_POINT_THREE, state);
+            state.complete();
+
+            try (ReadView view = ReadView.open())
+            {
+                assertThat(view.getBalance(account)).isEqualTo(TWO_POINT_THREE);
+            }
+            assertThat(account.getLogLength()).isEqualTo(1);
+            assertThat(account.compact()).isTrue();
+            assertThat(account.getLogLength()).isZero();
+            assertThat(account.getBalance()).isEqualTo(TWO_POINT_THREE);
+        }
+    }
+
+    @Test
+    void creditsNeverFailUnderContention() throws InterruptedException
+    {
+        try (LogCompactor compactor = new LogCompactor(new CompactionPolicy(1_000_000, 60_000, 60_000)))
+        {
+            Account account = new Account(ACCOUNT_NUMBER_1, CENTS, compactor);
+            AtomicInteger failures = new AtomicInteger();
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++)
+            {
+                threads[t] = Thread.ofPlatform().start(() -> {
+                    for (int i = 0; i < 1_000; i++)
+                    {
+                        BalanceLogState state = new BalanceLogState();
+                        if (!account.adjustBalanceUnits(1, state))
+                        {
+                            failures.incrementAndGet();
+                        }
+                        state.complete();
+                    }
+                });
+            }
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            assertThat(failures).hasValue(0);
+            assertThat(account.getBalanceUnits()).isEqualTo(8_000);
+            assertThat(account.getLogLength()).isEqualTo(8_000);
+            assertThat(account.compact()).isTrue();
+            assertThat(account.getLogLength()).isZero();
+            assertThat(account.getBalanceUnits()).isEqualTo(8_000);
+        }
+    }
 }
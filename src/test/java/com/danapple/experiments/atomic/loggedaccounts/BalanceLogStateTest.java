@@ -50,4 +50,16 @@ class BalanceLogStateTest
         assertThat(state.abort()).isFalse();
         assertThat(state.getStatus()).isEqualTo(COMPLETE);
     }
+
+    @Test
+    void visibleOnlyToViewsAfterCommitEpoch()
+    {
+        BalanceLogState state = new BalanceLogState();
+        assertThat(state.isVisibleAt(Long.MAX_VALUE)).isFalse();
+
+        state.complete();
+
+        assertThat(state.isVisibleAt(state.getCommitEpoch())).isFalse();
+        assertThat(state.isVisibleAt(state.getCommitEpoch() + 1)).isTrue();
+    }
 }
@@ -0,0 +1,69 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BalanceLogTest
+{
+    private final BalanceLogEntry first = entry(BigDecimal.ONE);
+    private final BalanceLogEntry second = entry(BigDecimal.TWO);
+    private final BalanceLogEntry third = entry(BigDecimal.TEN);
+
+    @Test
+    void startsEmpty()
+    {
+        assertThat(BalanceLog.empty().isEmpty()).isTrue();
+        assertThat(BalanceLog.empty().size()).isZero();
+        assertThat(BalanceLog.empty()).isEmpty();
+    }
+
+    @Test
+    void iteratesInAppendOrder()
+    {
+        BalanceLog log = BalanceLog.empty().append(first).append(second).append(third);
+
+        assertThat(log.size()).isEqualTo(3);
+        assertThat(log).containsExactly(first, second, third);
+        assertThat(log.getNewestEntry()).isEqualTo(third);
+        assertThat(log.getPrevious().getNewestEntry()).isEqualTo(second);
+    }
+
+    @Test
+    void appendLeavesEarlierVersionUnchanged()
+    {
+        BalanceLog log = BalanceLog.empty().append(first);
+        BalanceLog longerLog = log.append(second);
+        BalanceLog otherLog = log.append(third);
+
+        assertThat(log).containsExactly(first);
+        assertThat(longerLog).containsExactly(first, second);
+        assertThat(otherLog).containsExactly(first, third);
+        assertThat(longerLog.getPrevious()).isSameAs(log);
+    }
+
+    @Test
+    void buildsFromList()
+    {
+        assertThat(BalanceLog.of(List.of(first, second)).toList()).containsExactly(first, second);
+    }
+
+    @Test
+    void appendsManyEntries()
+    {
+        BalanceLog log = BalanceLog.empty();
+        for (int i = 0; i < 100_000; i++)
+        {
+            log = log.append(first);
+        }
+        assertThat(log.size()).isEqualTo(100_000);
+        assertThat(log.toList()).hasSize(100_000);
+    }
+
+    private static BalanceLogEntry entry(final BigDecimal delta)
+    {
+        return new BalanceLogEntry(delta, new BalanceLogState());
+    }
+}
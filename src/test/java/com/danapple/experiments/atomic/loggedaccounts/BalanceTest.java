@@ -1,8 +1,11 @@
 package com.danapple.experiments.atomic.loggedaccounts;
 
 import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.ABORTED;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
 import java.util.List;
 import org.junit.jupiter.api.Test;
@@ -41,7 +44,7 @@ class BalanceTest
     void startsWithPopulatedLog()
     {
         BalanceLogState state = new BalanceLogState();
-        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis()));
+        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state));
         Balance balance = new Balance(BigDecimal.TEN, log);
 
         assertThat(balance.getLogLength()).isEqualTo(1);
@@ -51,7 +54,7 @@ class BalanceTest
     void ignoresPendingState()
     {
         BalanceLogState state = new BalanceLogState();
-        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis()));
+        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state));
         Balance balance = new Balance(BigDecimal.TEN, log);
 
         assertThat(balance.getLogLength()).isEqualTo(1);
@@ -62,7 +65,7 @@ class BalanceTest
     void includesCompletedLog()
     {
         BalanceLogState state = new BalanceLogState();
-        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis()));
+        List<BalanceLogEntry> log = List.of(new BalanceLogEntry(BigDecimal.ONE, state));
         Balance balance = new Balance(BigDecimal.TEN, log);
         state.complete();
 
@@ -74,7 +77,7 @@ class BalanceTest
     void returnsPendingInitialLog()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         List<BalanceLogEntry> log = List.of(logEntry);
         Balance balance = new Balance(BigDecimal.TEN, log);
 
@@ -85,7 +88,7 @@ class BalanceTest
     void doesNotReturnCompletedInitialLog()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         List<BalanceLogEntry> log = List.of(logEntry);
         Balance balance = new Balance(BigDecimal.TEN, log);
         state.complete();
@@ -97,7 +100,7 @@ class BalanceTest
     void pendingLogEntriesIncludesPendingLog()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
         Balance newBalance = balance.addLogEntry(logEntry);
 
@@ -108,7 +111,7 @@ class BalanceTest
     void pendingLogEntriesDoesNotIncludeCompletedLog()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
 
         Balance newBalance = balance.addLogEntry(logEntry);
@@ -121,7 +124,7 @@ class BalanceTest
     void pendingLogEntriesDoesNotIncludeAbortedLog()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
 
         Balance newBalance = balance.addLogEntry(logEntry);
@@ -134,7 +137,7 @@ class BalanceTest
     void flattenedBalanceHasNewValue()
     {
         BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, System.currentTimeMillis());
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
 
         Balance newBalance = balance.addLogEntry(logEntry);
@@ -146,12 +149,10 @@ class BalanceTest
     }
 
     @Test
-    void doesNotRemoveRecentPendingLogEntry()
+    void doesNotRemovePendingLogEntry()
     {
-        long nowTime = System.currentTimeMillis();
-
-        BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, nowTime);
+        BalanceLogState state = new BalanceLogState(null);
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
         Balance adjustedBalance = balance.addLogEntry(logEntry);
         assertThat(adjustedBalance.getLogLength()).isEqualTo(1);
@@ -159,23 +160,133 @@ class BalanceTest
         Balance flattendBalance = adjustedBalance.flattenLog();
 
         assertThat(flattendBalance.getLogLength()).isEqualTo(1);
+        assertThat(state.getStatus()).isEqualTo(PENDING);
     }
 
     @Test
-    void abortsAndRemovesStalePendingLogEntry()
+    void removesPendingLogEntryOnceReaped()
     {
-        long nowTime = System.currentTimeMillis();
-        long testTime = nowTime - 1000;
-
-        BalanceLogState state = new BalanceLogState();
-        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state, testTime);
+        PendingReaper reaper = new PendingReaper(0, 10, 8, false);
+        BalanceLogState state = new BalanceLogState(reaper);
+        BalanceLogEntry logEntry = new BalanceLogEntry(BigDecimal.ONE, state);
         Balance balance = new Balance(BigDecimal.TEN);
         Balance adjustedBalance = balance.addLogEntry(logEntry);
         assertThat(adjustedBalance.getLogLength()).isEqualTo(1);
 
+        reaper.advance(PendingReaper.nowMillis() + 1_000);
         Balance flattendBalance = adjustedBalance.flattenLog();
 
         assertThat(flattendBalance.getLogLength()).isEqualTo(0);
         assertThat(state.getStatus()).isEqualTo(ABORTED);
     }
+
+    @Test
+    void fixedPointBalanceIncludesCompletedUnits()
+    {
+        BalanceLogState state = new BalanceLogState();
+        Balance balance = new Balance(new FixedPointMoney(2), 1000)
+                .addLogEntry(new BalanceLogEntry(25, state));
+        assertThat(balance.getBalanceUnits()).isEqualTo(1000);
+
+        state.complete();
+        assertThat(balance.getBalanceUnits()).isEqualTo(1025);
+        assertThat(balance.getBalanceValue()).isEqualTo(new BigDecimal("10.25"));
+    }
+
+    @Test
+    void flattenedFixedPointBalanceKeepsUnits()
+    {
+        BalanceLogState state = new BalanceLogState();
+        Balance balance = new Balance(new FixedPointMoney(2), 1000)
+                .addLogEntry(new BalanceLogEntry(-25, state));
+        state.complete();
+
+        Balance flattenedBalance = balance.flattenLog();
+        assertThat(flattenedBalance.getLogLength()).isZero();
+        assertThat(flattenedBalance.getBalanceUnits()).isEqualTo(975);
+    }
+
+    @Test
+    void decimalBalanceHasNoUnits()
+    {
+        assertThatThrownBy(() -> new Balance(BigDecimal.TEN).getBalanceUnits());
+    }
+
+    @Test
+    void completedEntryIsFoldedIntoCommittedTotalOnNextAdd()
+    {
+        BalanceLogState firstState = new BalanceLogState();
+        Balance balance = new Balance(BigDecimal.TEN)
+                .addLogEntry(new BalanceLogEntry(BigDecimal.ONE, firstState));
+        firstState.complete();
+
+        Balance newBalance = balance.addLogEntry(new BalanceLogEntry(BigDecimal.TWO,
+                                                                     new BalanceLogState()));
+
+        assertThat(newBalance.getUnsettledCount()).isEqualTo(1);
+        assertThat(newBalance.getLogLength()).isEqualTo(2);
+        assertThat(newBalance.getBalanceValue()).isEqualTo(new BigDecimal(11));
+    }
+
+    @Test
+    void abortedEntryIsDroppedOnNextAdd()
+    {
+        BalanceLogState firstState = new BalanceLogState();
+        Balance balance = new Balance(BigDecimal.TEN)
+                .addLogEntry(new BalanceLogEntry(BigDecimal.ONE, firstState));
+        firstState.abort();
+
+        BalanceLogState secondState = new BalanceLogState();
+        Balance newBalance = balance.addLogEntry(new BalanceLogEntry(BigDecimal.TWO,
+                                                                     secondState));
+        secondState.complete();
+
+        assertThat(newBalance.getUnsettledCount()).isEqualTo(1);
+        assertThat(newBalance.getBalanceValue()).isEqualTo(new BigDecimal(12));
+    }
+
+    @Test
+    void entryResolvedBeneathPendingEntryWaitsForFlatten()
+    {
+        BalanceLogState firstState = new BalanceLogState();
+        Balance balance = new Balance(BigDecimal.TEN)
+                .addLogEntry(new BalanceLogEntry(BigDecimal.ONE, firstState))
+                .addLogEntry(new BalanceLogEntry(BigDecimal.TWO, new BalanceLogState()));
+        firstState.complete();
+
+        Balance newBalance = balance.addLogEntry(new BalanceLogEntry(BigDecimal.TEN, new BalanceLogState()));
+
+        assertThat(newBalance.getUnsettledCount()).isEqualTo(3);
+        assertThat(newBalance.getBalanceValue()).isEqualTo(new BigDecimal(11));
+        assertThat(newBalance.flattenLog().getUnsettledCount()).isEqualTo(2);
+    }
+
+    @Test
+    void entryCompletingAfterFoldIsCounted()
+    {
+        BalanceLogState firstState = new BalanceLogState();
+        BalanceLogState secondState = new BalanceLogState();
+        Balance balance = new Balance(BigDecimal.TEN)
+                .addLogEntry(new BalanceLogEntry(BigDecimal.ONE, firstState));
+        firstState.complete();
+        Balance newBalance = balance.addLogEntry(new BalanceLogEntry(BigDecimal.TWO,
+                                                                     secondState));
+        assertThat(newBalance.getBalanceValue()).isEqualTo(new BigDecimal(11));
+
+        secondState.complete();
+        assertThat(newBalance.getBalanceValue()).isEqualTo(new BigDecimal(13));
+        assertThat(newBalance.flattenLog().getUnsettledCount()).isZero();
+    }
+
+    @Test
+    void unchangedPendingEntriesAreShared()
+    {
+        Balance balance = new Balance(BigDecimal.TEN)
+                .addLogEntry(new BalanceLogEntry(BigDecimal.ONE, new BalanceLogState()))
+                .addLogEntry(new BalanceLogEntry(BigDecimal.TWO, new BalanceLogState()));
+
+        assertThat(balance.getUnsettledCount()).isEqualTo(2);
+        assertThat(balance.getPendingLogEntries()).extracting(BalanceLogEntry::delta)
+                .containsExactly(BigDecimal.ONE, BigDecimal.TWO);
+    }
 }
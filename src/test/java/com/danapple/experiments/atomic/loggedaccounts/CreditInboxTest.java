@@ -0,0 +1,114 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CreditInboxTest
+{
+    private final CreditInbox inbox = new CreditInbox();
+
+    @Test
+    void emptyInboxSumsToZero()
+    {
+        assertThat(inbox.countAbove(null)).isZero();
+        assertThat(inbox.sumValue(null, CreditInbox.LATEST)).isEqualTo(BigDecimal.ZERO);
+        assertThat(inbox.sumUnits(null, CreditInbox.LATEST)).isZero();
+    }
+
+    @Test
+    void sumsOnlyCompleteCreditsAboveTheFoldedCredit()
+    {
+        pushComplete(1);
+        pushComplete(2);
+        CreditInbox.Node folded = inbox.collect(null, new ArrayList<>());
+        inbox.push(new BalanceLogEntry(4, new BalanceLogState(null)));
+        pushComplete(8);
+
+        assertThat(inbox.countAbove(null)).isEqualTo(4);
+        assertThat(inbox.countAbove(folded)).isEqualTo(2);
+        assertThat(inbox.sumUnits(null, CreditInbox.LATEST)).isEqualTo(11);
+        assertThat(inbox.sumUnits(folded, CreditInbox.LATEST)).isEqualTo(8);
+    }
+
+    @Test
+    void sumsOnlyCreditsVisibleToAView()
+    {
+        BalanceLogState before = new BalanceLogState(null);
+        inbox.push(new BalanceLogEntry(BigDecimal.ONE, before));
+        before.complete();
+        try (ReadView view = ReadView.open())
+        {
+            BalanceLogState after = new BalanceLogState(null);
+            inbox.push(new BalanceLogEntry(BigDecimal.TEN, after));
+            after.complete();
+
+            assertThat(inbox.sumValue(null, view.getEpoch())).isEqualTo(BigDecimal.ONE);
+            assertThat(inbox.sumValue(null, CreditInbox.LATEST)).isEqualTo(new BigDecimal("11"));
+        }
+    }
+
+    @Test
+    void collectsCreditsNewestFirst()
+    {
+        pushComplete(1);
+        CreditInbox.Node folded = inbox.collect(null, new ArrayList<>());
+        pushComplete(2);
+        pushComplete(3);
+        List<BalanceLogEntry> credits = new ArrayList<>();
+
+        CreditInbox.Node newest = inbox.collect(folded, credits);
+
+        assertThat(credits).extracting(BalanceLogEntry::deltaUnits).containsExactly(3L, 2L);
+        assertThat(inbox.collect(newest, new ArrayList<>())).isSameAs(newest);
+    }
+
+    @Test
+    void readersOfAStaleBalanceFindTheChainCut()
+    {
+        pushComplete(1);
+        CreditInbox.Node older = inbox.collect(null, new ArrayList<>());
+        pushComplete(2);
+        CreditInbox.Node folded = inbox.collect(older, new ArrayList<>());
+        pushComplete(3);
+
+        CreditInbox.release(folded);
+
+        assertThat(inbox.sumUnits(folded, CreditInbox.LATEST)).isEqualTo(3);
+        assertThat(inbox.sumUnits(older, CreditInbox.LATEST)).isEqualTo(-1);
+        assertThat(inbox.collect(older, new ArrayList<>())).isNull();
+        assertThat(inbox.countAbove(older)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentPushesAreAllKept() throws InterruptedException
+    {
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1_000; i++)
+                {
+                    pushComplete(1);
+                }
+            });
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(inbox.countAbove(null)).isEqualTo(8_000);
+        assertThat(inbox.sumUnits(null, CreditInbox.LATEST)).isEqualTo(8_000);
+    }
+
+    private void pushComplete(final long units)
+    {
+        BalanceLogState state = new BalanceLogState(null);
+        inbox.push(new BalanceLogEntry(units, state));
+        state.complete();
+    }
+}
@@ -0,0 +1,193 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.danapple.experiments.atomic.metrics.StripedTransferMetrics;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class LogCompactorTest
+{
+    private final static long ONE_HOUR = 3_600_000;
+
+    private LogCompactor compactor;
+
+    @AfterEach
+    void afterEach()
+    {
+        compactor.close();
+    }
+
+    @Test
+    void readingBalanceDoesNotFlattenLog()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, ONE_HOUR, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+
+        assertThat(account.getBalance()).isEqualTo(BigDecimal.TEN);
+        assertThat(account.getRawBalance().getLogLength()).isEqualTo(1);
+        assertThat(compactor.getDirtyCount()).isEqualTo(1);
+    }
+
+    @Test
+    void compactsAccountsDirtyForMaxAge()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, 0, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+
+        compactor.compactDueAccounts();
+
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+        assertThat(account.getBalance()).isEqualTo(BigDecimal.TEN);
+        assertThat(compactor.getDirtyCount()).isZero();
+    }
+
+    @Test
+    void marksCompactedAccountDirtyOnItsNextEntry()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, 0, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+        completedAdjustment(account, BigDecimal.TEN);
+        compactor.compactDueAccounts();
+        assertThat(compactor.getDirtyCount()).isZero();
+
+        completedAdjustment(account, BigDecimal.ONE);
+
+        assertThat(compactor.getDirtyCount()).isEqualTo(1);
+        compactor.compactDueAccounts();
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal(21));
+    }
+
+    @Test
+    void leavesAccountsBelowThresholds()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, ONE_HOUR, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+
+        compactor.compactDueAccounts();
+
+        assertThat(account.getRawBalance().getLogLength()).isEqualTo(1);
+        assertThat(compactor.getDirtyCount()).isEqualTo(1);
+    }
+
+    @Test
+    void compactsAccountsReachingMaxLogLength()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(3, ONE_HOUR, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.ONE);
+        completedAdjustment(account, BigDecimal.ONE);
+        compactor.compactDueAccounts();
+        assertThat(account.getRawBalance().getLogLength()).isEqualTo(2);
+
+        completedAdjustment(account, BigDecimal.ONE);
+        compactor.compactDueAccounts();
+
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+        assertThat(account.getBalance()).isEqualTo(new BigDecimal(3));
+    }
+
+    @Test
+    void keepsAccountWithPendingEntriesDirty()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, 0, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        BalanceLogState state = new BalanceLogState();
+        account.adjustBalance(BigDecimal.TEN, state);
+
+        compactor.compactDueAccounts();
+        assertThat(account.getRawBalance().getLogLength()).isEqualTo(1);
+        assertThat(compactor.getDirtyCount()).isEqualTo(1);
+
+        state.complete();
+        compactor.compactDueAccounts();
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+        assertThat(compactor.getDirtyCount()).isZero();
+    }
+
+    @Test
+    void compactsOnceReaperAbortsPendingEntry()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, 0, ONE_HOUR));
+        Account account = new Account("Account 1", null, compactor);
+        PendingReaper reaper = new PendingReaper(0, 10, 8, false);
+        BalanceLogState state = new BalanceLogState(reaper);
+        account.adjustBalance(BigDecimal.TEN, state);
+
+        compactor.compactDueAccounts();
+        assertThat(account.getRawBalance().getLogLength()).isEqualTo(1);
+
+        reaper.advance(PendingReaper.nowMillis() + 1_000);
+        compactor.compactDueAccounts();
+
+        assertThat(state.getStatus()).isEqualTo(BalanceLogStatus.ABORTED);
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+    }
+
+    @Test
+    void compactsInBackground()
+    {
+        compactor = new LogCompactor(new CompactionPolicy(64, 0, 1));
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (account.getRawBalance().getLogLength() > 0 && System.currentTimeMillis() < deadline)
+        {
+            sleep(1);
+        }
+        assertThat(account.getRawBalance().getLogLength()).isZero();
+        assertThat(account.getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void rejectsInvalidPolicy()
+    {
+        compactor = new LogCompactor();
+        assertThat(compactor.getPolicy()).isEqualTo(CompactionPolicy.DEFAULT);
+        assertThatThrownBy(() -> new CompactionPolicy(0, 1, 1));
+        assertThatThrownBy(() -> new CompactionPolicy(1, 1, 0));
+    }
+
+    @Test
+    void reportsLogLengthAtFlatten()
+    {
+        StripedTransferMetrics metrics = new StripedTransferMetrics();
+        compactor = new LogCompactor(new CompactionPolicy(2, ONE_HOUR, ONE_HOUR), metrics);
+        Account account = new Account("Account 1", null, compactor);
+        completedAdjustment(account, BigDecimal.TEN);
+        completedAdjustment(account, BigDecimal.ONE);
+        completedAdjustment(account, BigDecimal.ONE);
+
+        compactor.compactDueAccounts();
+
+        assertThat(metrics.snapshot().flattenLogLengths().count()).isEqualTo(1);
+        assertThat(metrics.snapshot().flattenLogLengths().sum()).isEqualTo(3);
+    }
+
+    private static void completedAdjustment(final Account account, final BigDecimal adjustment)
+    {
+        BalanceLogState state = new BalanceLogState();
+        assertThat(account.adjustBalance(adjustment, state)).isTrue();
+        state.complete();
+    }
+
+    private static void sleep(final long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
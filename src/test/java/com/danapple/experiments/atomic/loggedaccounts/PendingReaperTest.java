@@ -0,0 +1,99 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.ABORTED;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.COMPLETE;
+import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.PENDING;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class PendingReaperTest
+{
+    @Test
+    void abortsPendingStateAtDeadlineAfterSeveralTurnsOfWheel()
+    {
+        long startMillis = PendingReaper.nowMillis();
+        PendingReaper reaper = new PendingReaper(100, 10, 4, false);
+        BalanceLogState state = new BalanceLogState(reaper);
+
+        reaper.advance(startMillis + 100);
+        assertThat(state.getStatus()).isEqualTo(PENDING);
+
+        reaper.advance(startMillis + 1_000);
+        assertThat(state.getStatus()).isEqualTo(ABORTED);
+    }
+
+    @Test
+    void leavesResolvedStatesAlone()
+    {
+        PendingReaper reaper = new PendingReaper(0, 10, 8, false);
+        BalanceLogState completedState = new BalanceLogState(reaper);
+        completedState.complete();
+
+        reaper.advance(PendingReaper.nowMillis() + 1_000);
+
+        assertThat(completedState.getStatus()).isEqualTo(COMPLETE);
+    }
+
+    @Test
+    void reapsEveryStateRegisteredConcurrently() throws InterruptedException
+    {
+        PendingReaper reaper = new PendingReaper(0, 10, 8, false);
+        BalanceLogState[][] states = new BalanceLogState[8][1_000];
+        Thread[] threads = new Thread[states.length];
+        for (int t = 0; t < threads.length; t++)
+        {
+            BalanceLogState[] threadStates = states[t];
+            threads[t] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < threadStates.length; i++)
+                {
+                    threadStates[i] = new BalanceLogState(reaper);
+                }
+            });
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        reaper.advance(PendingReaper.nowMillis() + 1_000);
+
+        for (BalanceLogState[] threadStates : states)
+        {
+            for (BalanceLogState state : threadStates)
+            {
+                assertThat(state.getStatus()).isEqualTo(ABORTED);
+            }
+        }
+    }
+
+    @Test
+    void reapsAbandonedTransferInBackground()
+    {
+        try (PendingReaper reaper = new PendingReaper(20, 5, 64))
+        {
+            Account account = new Account("Account 1");
+            BalanceLogState state = new BalanceLogState(reaper);
+            account.adjustBalance(BigDecimal.ONE, state);
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (state.getStatus() == PENDING && System.currentTimeMillis() < deadline)
+            {
+                Thread.onSpinWait();
+            }
+
+            assertThat(state.getStatus()).isEqualTo(ABORTED);
+            assertThat(account.getBalance()).isEqualTo(BigDecimal.ZERO);
+            assertThat(account.getRawBalance().getLogLength()).isZero();
+        }
+    }
+
+    @Test
+    void rejectsInvalidReaper()
+    {
+        assertThatThrownBy(() -> new PendingReaper(10, 0, 8)).hasMessageContaining("Invalid reaper");
+        assertThatThrownBy(() -> new PendingReaper(10, 10, 6)).hasMessageContaining("a power of two");
+    }
+}
@@ -0,0 +1,157 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class ReadViewTest
+{
+    private final Account sourceAccount = seededAccount("Source Account", BigDecimal.TEN);
+    private final Account destinationAccount = new Account("Destination Account");
+    private final TransferService transferService = new TransferService();
+
+    @Test
+    void seesTransfersCommittedBeforeOpening()
+    {
+        transferService.transferBalance(sourceAccount, destinationAccount, BigDecimal.ONE);
+
+        try (ReadView view = ReadView.open())
+        {
+            assertThat(view.getBalance(sourceAccount)).isEqualTo(new BigDecimal("9"));
+            assertThat(view.getBalance(destinationAccount)).isEqualTo(BigDecimal.ONE);
+        }
+    }
+
+    @Test
+    void doesNotSeeTransfersCommittedAfterOpening()
+    {
+        try (ReadView view = ReadView.open())
+        {
+            transferService.transferBalance(sourceAccount, destinationAccount, BigDecimal.ONE);
+            sourceAccount.getBalance();
+
+            assertThat(view.getBalance(sourceAccount)).isEqualTo(BigDecimal.TEN);
+            assertThat(view.getBalance(destinationAccount)).isEqualTo(BigDecimal.ZERO);
+            assertThat(sourceAccount.getBalance()).isEqualTo(new BigDecimal("9"));
+        }
+    }
+
+    @Test
+    void doesNotSeePendingTransfers()
+    {
+        BalanceLogState state = new BalanceLogState();
+        destinationAccount.adjustBalance(BigDecimal.ONE, state);
+
+        try (ReadView view = ReadView.open())
+        {
+            assertThat(view.getBalance(destinationAccount)).isEqualTo(BigDecimal.ZERO);
+        }
+    }
+
+    @Test
+    void readsFixedPointUnits()
+    {
+        FixedPointMoney cents = new FixedPointMoney(2);
+        Account fixedSource = new Account("Fixed Source", cents);
+        BalanceLogState depositState = new BalanceLogState();
+        fixedSource.adjustBalanceUnits(500, depositState);
+        depositState.complete();
+        Account fixedDestination = new Account("Fixed Destination", cents);
+
+        try (ReadView view = ReadView.open())
+        {
+            transferService.transferBalance(fixedSource, fixedDestination, 125);
+
+            assertThat(view.getBalanceUnits(fixedSource)).isEqualTo(500);
+            assertThat(view.getBalanceUnits(fixedDestination)).isZero();
+        }
+    }
+
+    @Test
+    void keepsEntriesOpenViewsNeedUntilClosed()
+    {
+        ReadView view = ReadView.open();
+        transferService.transferBalance(sourceAccount, destinationAccount, BigDecimal.ONE);
+
+        assertThat(destinationAccount.getRawBalance().flattenLog().getUnsettledCount()).isEqualTo(1);
+
+        view.close();
+
+        assertThat(destinationAccount.getRawBalance().flattenLog().getUnsettledCount()).isZero();
+        assertThat(CommitClock.getOpenViewCount()).isZero();
+    }
+
+    @Test
+    void viewsAlwaysSeeConstantTotalWhileTransfersRun() throws InterruptedException
+    {
+        int accountCount = 8;
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < accountCount; i++)
+        {
+            accounts.add(seededAccount("Account " + i, new BigDecimal(100)));
+        }
+        BigDecimal expectedTotal = new BigDecimal(100 * accountCount);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> transferThreads = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+        {
+            transferThreads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get())
+                {
+                    int source = random.nextInt(accountCount);
+                    int destination = (source + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                    try
+                    {
+                        transferService.transferBalance(accounts.get(source), accounts.get(destination), BigDecimal.ONE);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // Insufficient balance or retries exhausted; neither changes the total
+                    }
+                    accounts.get(source).getBalance();
+                }
+            }));
+        }
+
+        try
+        {
+            for (int i = 0; i < 2_000; i++)
+            {
+                try (ReadView view = ReadView.open())
+                {
+                    BigDecimal total = BigDecimal.ZERO;
+                    for (Account account : accounts)
+                    {
+                        total = total.add(view.getBalance(account));
+                    }
+                    assertThat(total).isEqualTo(expectedTotal);
+                }
+            }
+        }
+        finally
+        {
+            running.set(false);
+            for (Thread thread : transferThreads)
+            {
+                thread.join();
+            }
+        }
+    }
+
+    private static Account seededAccount(final String accountNumber, final BigDecimal balance)
+    {
+        Account account = new Account(accountNumber);
+        BalanceLogState depositState = new BalanceLogState();
+        account.adjustBalance(balance, depositState);
+        depositState.complete();
+        return account;
+    }
+}
@@ -0,0 +1,59 @@
+package com.danapple.experiments.atomic.loggedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import com.danapple.experiments.atomic.reconciliation.ReconciliationReport;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class ReconciliationServiceTest
+{
+    @Test
+    void sumsEveryAccountInDirectory()
+    {
+        AccountDirectory directory = new AccountDirectory(new FixedPointMoney(2));
+        LoggedTransferEngine engine = new LoggedTransferEngine(new TransferService(), directory, 50_000, BigDecimal.TEN);
+        engine.transfer(0, 49_999, new BigDecimal("2.50"));
+
+        ReconciliationReport report = new ReconciliationService(directory).reconcile();
+
+        assertThat(report).isEqualTo(new ReconciliationReport(50_000, new BigDecimal("500000.00"), 0, 0));
+        assertThat(report.balancesTo(BigDecimal.valueOf(500_000))).isTrue();
+    }
+
+    @Test
+    void leavesOutTransfersStillPending()
+    {
+        AccountDirectory directory = new AccountDirectory();
+        Account sourceAccount = directory.createAccount("Source Account");
+        Account destinationAccount = directory.createAccount("Destination Account");
+        BalanceLogState depositState = new BalanceLogState();
+        sourceAccount.adjustBalance(BigDecimal.TEN, depositState);
+        depositState.complete();
+        BalanceLogState transferState = new BalanceLogState();
+        sourceAccount.adjustBalance(BigDecimal.ONE.negate(), transferState);
+        destinationAccount.adjustBalance(BigDecimal.ONE, transferState);
+
+        ReconciliationReport report = new ReconciliationService(directory).reconcile();
+
+        assertThat(report.totalBalance()).isEqualByComparingTo("10");
+        assertThat(report.pendingEntries()).isEqualTo(2);
+        transferState.complete();
+        assertThat(new ReconciliationService(directory).reconcile().pendingEntries()).isZero();
+    }
+
+    @Test
+    void countsAccountsWithoutBalance()
+    {
+        AccountDirectory directory = new AccountDirectory();
+        Account account = directory.createAccount("Account 1");
+        directory.createAccount("Account 2");
+        BalanceLogState state = new BalanceLogState();
+        account.adjustBalance(BigDecimal.ONE, state);
+        state.complete();
+
+        assertThat(new ReconciliationService(directory).reconcile())
+                .isEqualTo(new ReconciliationReport(2, BigDecimal.ONE, 0, 0));
+    }
+}
@@ -4,12 +4,20 @@ import static com.danapple.experiments.atomic.loggedaccounts.BalanceLogStatus.AB
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import com.danapple.experiments.atomic.metrics.StripedTransferMetrics;
+import com.danapple.experiments.atomic.metrics.TransferMetricsSnapshot;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
 import java.math.BigDecimal;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
@@ -18,6 +26,7 @@ class TransferServiceTest
     private final static String ACCOUNT_NUMBER_SOURCE = "Source Account";
     private final static String ACCOUNT_NUMBER_DESTINATION = "Destination Account";
     private final static BigDecimal THREE_POINT_SEVEN = new BigDecimal("3.7");
+    private final static FixedPointMoney CENTS = new FixedPointMoney(2);
 
     private final TransferService transferService = new TransferService();
     private final Account sourceAccount = new Account(ACCOUNT_NUMBER_SOURCE);
@@ -191,4 +200,308 @@ class TransferServiceTest
         sourceAccount.adjustBalance(BigDecimal.TEN, depositLogState);
         depositLogState.complete();
     }
+
+    @Test
+    void transfersFixedPointMoney()
+    {
+        Account fixedSourceAccount = seededFixedPointAccount(ACCOUNT_NUMBER_SOURCE);
+        Account fixedDestinationAccount = new Account(ACCOUNT_NUMBER_DESTINATION, CENTS);
+
+        transferService.transferBalance(fixedSourceAccount, fixedDestinationAccount, THREE_POINT_SEVEN);
+        transferService.transferBalance(fixedSourceAccount, fixedDestinationAccount, 5L);
+
+        assertThat(fixedSourceAccount.getBalanceUnits()).isEqualTo(625);
+        assertThat(fixedDestinationAccount.getBalance()).isEqualTo(new BigDecimal("3.75"));
+    }
+
+    @Test
+    void fixedPointTransferMatchesDecimalTransferAtScale()
+    {
+        Account fixedSourceAccount = seededFixedPointAccount(ACCOUNT_NUMBER_SOURCE);
+        Account fixedDestinationAccount = new Account(ACCOUNT_NUMBER_DESTINATION, CENTS);
+        seedSourceAccount();
+
+        for (String amount : List.of("3.75", "0.01", "1.10", "2.00"))
+        {
+            transferService.transferBalance(fixedSourceAccount, fixedDestinationAccount, new BigDecimal(amount));
+            transferService.transferBalance(sourceAccount, destinationAccount, new BigDecimal(amount));
+        }
+
+        assertThat(fixedSourceAccount.getBalance()).isEqualTo(sourceAccount.getBalance().setScale(2));
+        assertThat(fixedDestinationAccount.getBalance()).isEqualTo(destinationAccount.getBalance().setScale(2));
+    }
+
+    @Test
+    void rejectsFixedPointTransferBetweenDifferentScales()
+    {
+        Account fixedSourceAccount = seededFixedPointAccount(ACCOUNT_NUMBER_SOURCE);
+        Account otherScaleAccount = new Account(ACCOUNT_NUMBER_DESTINATION, new FixedPointMoney(3));
+
+        assertThatThrownBy(() -> transferService.transferBalance(fixedSourceAccount, otherScaleAccount, 1L))
+                .hasMessageContaining("same scale");
+        assertThatThrownBy(() -> transferService.transferBalance(fixedSourceAccount, destinationAccount, 1L))
+                .hasMessageContaining("same scale");
+    }
+
+    @Test
+    void rejectsNonPositiveUnitTransfer()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance(sourceAccount, destinationAccount, 0L));
+    }
+
+    @Test
+    void refusesFixedPointTransferWithInsufficientSourceAccount()
+    {
+        Account fixedSourceAccount = new Account(ACCOUNT_NUMBER_SOURCE, CENTS);
+        Account fixedDestinationAccount = new Account(ACCOUNT_NUMBER_DESTINATION, CENTS);
+
+        assertThatThrownBy(() -> transferService.transferBalance(fixedSourceAccount, fixedDestinationAccount, 1L))
+                .hasMessageContaining("insufficient");
+        assertThat(fixedDestinationAccount.getBalanceUnits()).isZero();
+    }
+
+    @Test
+    void refusedCreditAbortsTheDebit()
+    {
+        Account fixedSourceAccount = seededFixedPointAccount(ACCOUNT_NUMBER_SOURCE);
+        Account fixedDestinationAccount = new Account(ACCOUNT_NUMBER_DESTINATION, CENTS);
+        BalanceLogState fullState = new BalanceLogState();
+        fixedDestinationAccount.adjustBalanceUnits(Long.MAX_VALUE, fullState);
+        fullState.complete();
+
+        assertThatThrownBy(() -> transferService.transferBalance(fixedSourceAccount, fixedDestinationAccount, 1L))
+                .hasMessageContaining("overflows");
+
+        assertThat(fixedSourceAccount.getPendingCount()).isZero();
+        assertThat(fixedSourceAccount.getBalanceUnits()).isEqualTo(1000);
+        assertThat(fixedDestinationAccount.getBalanceUnits()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    private Account seededFixedPointAccount(final String accountNumber)
+    {
+        Account account = new Account(accountNumber, CENTS);
+        BalanceLogState depositLogState = new BalanceLogState();
+        account.adjustBalance(BigDecimal.TEN, depositLogState);
+        depositLogState.complete();
+        return account;
+    }
+
+    @Test
+    void tellsListenerAboutCompletedTransfers()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        seedSourceAccount();
+
+        new TransferService(TransferOptions.defaults().withListener(listener)).transferBalance(sourceAccount,
+                                                                                                destinationAccount,
+                                                                                                THREE_POINT_SEVEN);
+
+        verify(listener).transferCommitted(0, ACCOUNT_NUMBER_SOURCE, ACCOUNT_NUMBER_DESTINATION, THREE_POINT_SEVEN);
+    }
+
+    @Test
+    void transfersAllLegsOfPosting()
+    {
+        seedSourceAccount();
+        Account feeAccount = new Account("Fee Account");
+        Account taxAccount = new Account("Tax Account");
+
+        transferService.transferBalances(List.of(new TransferLeg(sourceAccount, destinationAccount, new BigDecimal("5")),
+                                                 new TransferLeg(sourceAccount, feeAccount, new BigDecimal("0.50")),
+                                                 new TransferLeg(feeAccount, taxAccount, new BigDecimal("0.10"))));
+
+        assertThat(sourceAccount.getBalance()).isEqualTo(new BigDecimal("4.50"));
+        assertThat(destinationAccount.getBalance()).isEqualTo(new BigDecimal("5"));
+        assertThat(feeAccount.getBalance()).isEqualTo(new BigDecimal("0.40"));
+        assertThat(taxAccount.getBalance()).isEqualTo(new BigDecimal("0.10"));
+    }
+
+    @Test
+    void postingEntersOneNetEntryPerAccountUnderOneState()
+    {
+        seedSourceAccount();
+        sourceAccount.getBalance();
+
+        transferService.transferBalances(List.of(new TransferLeg(sourceAccount, destinationAccount, BigDecimal.ONE),
+                                                 new TransferLeg(sourceAccount, destinationAccount, BigDecimal.TWO)));
+
+        assertThat(sourceAccount.getRawBalance().getLogLength()).isEqualTo(1);
+        assertThat(destinationAccount.getRawBalance().getLogLength()).isEqualTo(1);
+        assertThat(destinationAccount.getBalance()).isEqualTo(new BigDecimal("3"));
+    }
+
+    @Test
+    void postingWithInsufficientBalanceLeavesEveryAccountUnchanged()
+    {
+        seedSourceAccount();
+        Account feeAccount = new Account("Fee Account");
+        Account taxAccount = new Account("Tax Account");
+
+        assertThatThrownBy(() -> transferService.transferBalances(
+                List.of(new TransferLeg(sourceAccount, destinationAccount, BigDecimal.TEN),
+                        new TransferLeg(feeAccount, taxAccount, BigDecimal.ONE))))
+                .hasMessageContaining("insufficient balance");
+
+        assertThat(sourceAccount.getRawBalance().getPendingLogEntries()).isEmpty();
+        assertThat(sourceAccount.getBalance()).isEqualTo(BigDecimal.TEN);
+        assertThat(destinationAccount.getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(taxAccount.getBalance()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void postingAbortsEnteredLegsWhenLaterLegRefused()
+    {
+        seedSourceAccount();
+        Account badDestinationAccount = mock(Account.class);
+        when(badDestinationAccount.getAccountNumber()).thenReturn("bad destination account");
+        when(badDestinationAccount.adjustBalance(any(), any())).thenReturn(false);
+
+        assertThatThrownBy(() -> transferService.transferBalances(
+                List.of(new TransferLeg(sourceAccount, badDestinationAccount, BigDecimal.ONE))))
+                .hasMessageContaining("Could not transfer balance with");
+
+        assertThat(sourceAccount.getRawBalance().getPendingLogEntries()).isEmpty();
+        assertThat(sourceAccount.getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    void transfersFixedPointLegs()
+    {
+        Account fixedSourceAccount = seededFixedPointAccount(ACCOUNT_NUMBER_SOURCE);
+        Account fixedDestinationAccount = new Account(ACCOUNT_NUMBER_DESTINATION, CENTS);
+        Account fixedFeeAccount = new Account("Fee Account", CENTS);
+
+        transferService.transferBalances(List.of(new TransferLeg(fixedSourceAccount, fixedDestinationAccount, THREE_POINT_SEVEN),
+                                                 new TransferLeg(fixedSourceAccount, fixedFeeAccount, new BigDecimal("0.05"))));
+
+        assertThat(fixedSourceAccount.getBalanceUnits()).isEqualTo(625);
+        assertThat(fixedDestinationAccount.getBalanceUnits()).isEqualTo(370);
+        assertThat(fixedFeeAccount.getBalanceUnits()).isEqualTo(5);
+    }
+
+    @Test
+    void rejectsPostingMixingMoney()
+    {
+        seedSourceAccount();
+        Account fixedFeeAccount = new Account("Fee Account", CENTS);
+
+        assertThatThrownBy(() -> transferService.transferBalances(
+                List.of(new TransferLeg(sourceAccount, destinationAccount, BigDecimal.ONE),
+                        new TransferLeg(sourceAccount, fixedFeeAccount, BigDecimal.ONE))))
+                .hasMessageContaining("same money");
+    }
+
+    @Test
+    void rejectsEmptyPosting()
+    {
+        assertThatThrownBy(() -> transferService.transferBalances(List.of()));
+    }
+
+    @Test
+    void tellsListenerAboutEachLegOfPosting()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        seedSourceAccount();
+        Account feeAccount = new Account("Fee Account");
+
+        new TransferService(TransferOptions.defaults().withListener(listener)).transferBalances(
+                List.of(new TransferLeg(sourceAccount, destinationAccount, BigDecimal.TWO),
+                        new TransferLeg(sourceAccount, feeAccount, BigDecimal.ONE)));
+
+        verify(listener).transferCommitted(0, ACCOUNT_NUMBER_SOURCE, ACCOUNT_NUMBER_DESTINATION, BigDecimal.TWO);
+        verify(listener).transferCommitted(0, ACCOUNT_NUMBER_SOURCE, "Fee Account", BigDecimal.ONE);
+    }
+
+    @Test
+    void givesUpWhenContentionManagerSaysSo()
+    {
+        seedSourceAccount();
+        Account badDestinationAccount = mock(Account.class);
+        when(badDestinationAccount.getAccountNumber()).thenReturn("bad destination account");
+        when(badDestinationAccount.adjustBalance(any(), any())).thenReturn(false);
+        ContentionManager contentionManager = mock(ContentionManager.class);
+        when(contentionManager.getMaxAttempts()).thenReturn(10);
+        when(contentionManager.onFailure(1)).thenReturn(true);
+
+        TransferService managedService =
+                new TransferService(TransferOptions.defaults().withContentionManager(contentionManager));
+        assertThatThrownBy(() -> managedService.transferBalance(sourceAccount, badDestinationAccount, BigDecimal.ONE))
+                .hasMessageContaining("with 2 tries");
+
+        verify(contentionManager).onFailure(2);
+    }
+
+    @Test
+    void recordsMetricsForFailedAndCompletedAttempts()
+    {
+        seedSourceAccount();
+        StripedTransferMetrics metrics = new StripedTransferMetrics();
+        Account racingDestinationAccount = mock(Account.class);
+        when(racingDestinationAccount.getAccountNumber()).thenReturn("racing destination account");
+        when(racingDestinationAccount.adjustBalance(any(), any())).thenReturn(false).thenReturn(true);
+
+        new TransferService(TransferOptions.defaults().withRetryCount(3).withMetrics(metrics))
+                .transferBalance(sourceAccount, racingDestinationAccount, BigDecimal.ONE);
+
+        TransferMetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.casFailures()).isEqualTo(1);
+        assertThat(snapshot.abortedTransfers()).isEqualTo(1);
+        assertThat(snapshot.completedTransfers()).isEqualTo(1);
+        assertThat(snapshot.attempts().sum()).isEqualTo(2);
+        assertThat(snapshot.transferLatencyNanos().count()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedTransferIdTransfersOnce()
+    {
+        seedSourceAccount();
+        TransferListener listener = mock(TransferListener.class);
+        TransferService idempotentService = new TransferService(TransferOptions.defaults().withListener(listener));
+
+        idempotentService.transferBalance("T1", sourceAccount, destinationAccount, THREE_POINT_SEVEN);
+        idempotentService.transferBalance("T1", sourceAccount, destinationAccount, THREE_POINT_SEVEN);
+
+        assertThat(destinationAccount.getBalance()).isEqualTo(THREE_POINT_SEVEN);
+        verify(listener).transferCommitted(0,
+                                           ACCOUNT_NUMBER_SOURCE,
+                                           ACCOUNT_NUMBER_DESTINATION,
+                                           THREE_POINT_SEVEN,
+                                           "T1");
+    }
+
+    @Test
+    void transferIdOfFailedTransferMayBeRetried()
+    {
+        assertThatThrownBy(() -> transferService.transferBalance("T1", sourceAccount, destinationAccount, BigDecimal.ONE));
+        assertThat(transferService.getTransferIds().contains("T1")).isFalse();
+
+        seedSourceAccount();
+        transferService.transferBalance("T1", sourceAccount, destinationAccount, BigDecimal.ONE);
+
+        assertThat(destinationAccount.getBalance()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    void transferIdIsKeptWhenListenerFails()
+    {
+        seedSourceAccount();
+        TransferListener listener = mock(TransferListener.class);
+        doThrow(new RuntimeException("Listener failed"))
+                .when(listener).transferCommitted(anyLong(), any(), any(), any(), any());
+        TransferService idempotentService = new TransferService(TransferOptions.defaults().withListener(listener));
+
+        assertThatThrownBy(() -> idempotentService.transferBalance("T1",
+                                                                   sourceAccount,
+                                                                   destinationAccount,
+                                                                   THREE_POINT_SEVEN))
+                .hasMessage("Listener failed");
+        idempotentService.transferBalance("T1", sourceAccount, destinationAccount, THREE_POINT_SEVEN);
+
+        assertThat(destinationAccount.getBalance()).isEqualTo(THREE_POINT_SEVEN);
+        verify(listener).transferCommitted(0,
+                                           ACCOUNT_NUMBER_SOURCE,
+                                           ACCOUNT_NUMBER_DESTINATION,
+                                           THREE_POINT_SEVEN,
+                                           "T1");
+    }
 }
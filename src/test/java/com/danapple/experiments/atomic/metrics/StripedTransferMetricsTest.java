@@ -0,0 +1,129 @@
+package com.danapple.experiments.atomic.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.danapple.experiments.atomic.contention.ContentionManager;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+class StripedTransferMetricsTest
+{
+    private final StripedTransferMetrics metrics = new StripedTransferMetrics();
+
+    @Test
+    void countsEvents()
+    {
+        metrics.casFailed();
+        metrics.casFailed();
+        metrics.transferCompleted();
+        metrics.transferAborted();
+        metrics.retriesExhausted();
+
+        TransferMetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.casFailures()).isEqualTo(2);
+        assertThat(snapshot.completedTransfers()).isEqualTo(1);
+        assertThat(snapshot.abortedTransfers()).isEqualTo(1);
+        assertThat(snapshot.retriesExhausted()).isEqualTo(1);
+    }
+
+    @Test
+    void countsEventsFromManyThreads() throws InterruptedException
+    {
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = Thread.ofPlatform().start(() -> {
+                for (int j = 0; j < 10_000; j++)
+                {
+                    metrics.transferCompleted();
+                    metrics.recordTransferLatency(j);
+                }
+            });
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        TransferMetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.completedTransfers()).isEqualTo(80_000);
+        assertThat(snapshot.transferLatencyNanos().count()).isEqualTo(80_000);
+        assertThat(snapshot.transferLatencyNanos().sum()).isEqualTo(8L * 9_999 * 10_000 / 2);
+    }
+
+    @Test
+    void percentilesAreUpperBoundsOfPowerOfTwoBuckets()
+    {
+        for (int i = 0; i < 99; i++)
+        {
+            metrics.recordTransferLatency(100);
+        }
+        metrics.recordTransferLatency(5_000);
+
+        HistogramSnapshot latency = metrics.snapshot().transferLatencyNanos();
+        assertThat(latency.percentile(0.5)).isEqualTo(127);
+        assertThat(latency.percentile(0.99)).isEqualTo(127);
+        assertThat(latency.percentile(1)).isEqualTo(8_191);
+        assertThat(latency.mean()).isEqualTo(149.0);
+    }
+
+    @Test
+    void emptyHistogramReportsZero()
+    {
+        HistogramSnapshot attempts = metrics.snapshot().attempts();
+
+        assertThat(attempts.count()).isZero();
+        assertThat(attempts.mean()).isZero();
+        assertThat(attempts.percentile(0.99)).isZero();
+    }
+
+    @Test
+    void measuredContentionManagerRecordsAttempts()
+    {
+        ContentionManager contentionManager = metrics.measure(ContentionManager.fixed(3));
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThat(contentionManager.retry(() -> attempts.incrementAndGet() == 2)).isTrue();
+        assertThat(contentionManager.retry(() -> false)).isFalse();
+        assertThat(contentionManager.getMaxAttempts()).isEqualTo(3);
+
+        TransferMetricsSnapshot snapshot = metrics.snapshot();
+        assertThat(snapshot.attempts().count()).isEqualTo(1);
+        assertThat(snapshot.attempts().sum()).isEqualTo(2);
+        assertThat(snapshot.retriesExhausted()).isEqualTo(1);
+    }
+
+    @Test
+    void noopMetricsLeaveContentionManagerAlone()
+    {
+        ContentionManager contentionManager = ContentionManager.fixed(3);
+
+        assertThat(TransferMetrics.NOOP.measure(contentionManager)).isSameAs(contentionManager);
+        assertThat(TransferMetrics.NOOP.isEnabled()).isFalse();
+        assertThat(TransferMetrics.NOOP.startTime()).isZero();
+    }
+
+    @Test
+    void exposesTotalsOverJmx() throws Exception
+    {
+        metrics.casFailed();
+        metrics.recordTransferLatency(1_000);
+
+        ObjectName objectName = metrics.register("test");
+        try
+        {
+            assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "CasFailures"))
+                    .isEqualTo(1L);
+            assertThat(ManagementFactory.getPlatformMBeanServer()
+                                        .getAttribute(objectName, "TransferLatencyP99Nanos"))
+                    .isEqualTo(1_023L);
+        }
+        finally
+        {
+            StripedTransferMetrics.unregister(objectName);
+        }
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)).isFalse();
+    }
+}
@@ -0,0 +1,75 @@
+package com.danapple.experiments.atomic.money;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class FixedPointMoneyTest
+{
+    private final FixedPointMoney cents = new FixedPointMoney(2);
+
+    @Test
+    void convertsAmountToUnits()
+    {
+        assertThat(cents.toUnits(new BigDecimal("3.75"))).isEqualTo(375);
+        assertThat(cents.toUnits(new BigDecimal("3.7"))).isEqualTo(370);
+        assertThat(cents.toUnits(BigDecimal.TEN.negate())).isEqualTo(-1000);
+    }
+
+    @Test
+    void convertsUnitsToAmountAtScale()
+    {
+        assertThat(cents.toBigDecimal(375)).isEqualTo(new BigDecimal("3.75"));
+        assertThat(cents.toBigDecimal(0)).isEqualTo(new BigDecimal("0.00"));
+    }
+
+    @Test
+    void rejectsAmountNeedingRounding()
+    {
+        assertThatThrownBy(() -> cents.toUnits(new BigDecimal("3.755")))
+                .hasMessageContaining("cannot be held exactly");
+    }
+
+    @Test
+    void rejectsAmountTooLargeForLong()
+    {
+        assertThatThrownBy(() -> cents.toUnits(new BigDecimal(Long.MAX_VALUE)))
+                .hasMessageContaining("cannot be held exactly");
+    }
+
+    @Test
+    void rejectsInvalidScale()
+    {
+        assertThatThrownBy(() -> new FixedPointMoney(-1));
+        assertThatThrownBy(() -> new FixedPointMoney(19));
+    }
+
+    @Test
+    void addsUnits()
+    {
+        assertThat(FixedPointMoney.add(375, -1000)).isEqualTo(-625);
+    }
+
+    @Test
+    void rejectsOverflowingAddition()
+    {
+        assertThatThrownBy(() -> FixedPointMoney.add(Long.MAX_VALUE, 1)).hasMessageContaining("overflows");
+        assertThatThrownBy(() -> FixedPointMoney.add(Long.MIN_VALUE, -1)).hasMessageContaining("overflows");
+    }
+
+    @Test
+    void rejectsOverflowingNegation()
+    {
+        assertThat(FixedPointMoney.negate(5)).isEqualTo(-5);
+        assertThatThrownBy(() -> FixedPointMoney.negate(Long.MIN_VALUE)).hasMessageContaining("overflows");
+    }
+
+    @Test
+    void scalesAreEqualWhenScalesMatch()
+    {
+        assertThat(new FixedPointMoney(2)).isEqualTo(cents);
+        assertThat(new FixedPointMoney(3)).isNotEqualTo(cents);
+    }
+}
@@ -0,0 +1,88 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class RequestRingTest
+{
+    @Test
+    void rejectsCapacityWhichIsNotPowerOfTwo()
+    {
+        assertThatThrownBy(() -> new RequestRing(100)).hasMessageContaining("must be a power of two");
+    }
+
+    @Test
+    void drainsOnlyConsecutivePublishedRequests()
+    {
+        RequestRing ring = new RequestRing(8);
+        long first = ring.claim();
+        long second = ring.claim();
+        ring.get(second).set(Request.GET_BALANCE, "second", null, null, 0, null);
+        ring.publish(second);
+        List<String> drained = new ArrayList<>();
+
+        assertThat(ring.drain(request -> drained.add(request.accountNumber))).isZero();
+
+        ring.get(first).set(Request.GET_BALANCE, "first", null, null, 0, null);
+        ring.publish(first);
+
+        assertThat(ring.drain(request -> drained.add(request.accountNumber))).isEqualTo(2);
+        assertThat(drained).containsExactly("first", "second");
+        assertThat(ring.get(first).accountNumber).isNull();
+    }
+
+    @Test
+    void producersWaitForFreeSlotsAndEveryRequestArrivesOnce() throws InterruptedException
+    {
+        RequestRing ring = new RequestRing(16);
+        int producerCount = 4;
+        int perProducer = 10_000;
+        Thread[] producers = new Thread[producerCount];
+        for (int p = 0; p < producerCount; p++)
+        {
+            long producer = p;
+            producers[p] = Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < perProducer; i++)
+                {
+                    long sequence = ring.claim();
+                    ring.get(sequence).set(Request.DEPOSIT, null, null, null, producer * perProducer + i, null);
+                    ring.publish(sequence);
+                }
+            });
+        }
+        boolean[] seen = new boolean[producerCount * perProducer];
+        int received = 0;
+        while (received < seen.length)
+        {
+            received += ring.drain(request -> {
+                assertThat(seen[(int) request.units]).isFalse();
+                seen[(int) request.units] = true;
+            });
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+        assertThat(seen).doesNotContain(false);
+    }
+
+    @Test
+    void closeRefusesLaterClaimsAndDrainsEarlierOnes()
+    {
+        RequestRing ring = new RequestRing(8);
+        long sequence = ring.claim();
+
+        ring.close();
+        ring.close();
+
+        assertThat(ring.claim()).isEqualTo(-1);
+        assertThat(ring.isDrained()).isFalse();
+        ring.publish(sequence);
+        assertThat(ring.drain(request -> {})).isEqualTo(1);
+        assertThat(ring.isDrained()).isTrue();
+    }
+}
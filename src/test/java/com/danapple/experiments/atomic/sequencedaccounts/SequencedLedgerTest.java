@@ -0,0 +1,203 @@
+package com.danapple.experiments.atomic.sequencedaccounts;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import com.danapple.experiments.atomic.TransferListener;
+import com.danapple.experiments.atomic.money.FixedPointMoney;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+class SequencedLedgerTest
+{
+    private final static String ACCOUNT_NUMBER_1 = "Account 1";
+    private final static String ACCOUNT_NUMBER_2 = "Account 2";
+
+    private SequencedLedger ledger;
+
+    @AfterEach
+    void afterEach()
+    {
+        ledger.close();
+    }
+
+    @Test
+    void transfersBetweenAccounts()
+    {
+        ledger = new SequencedLedger();
+        seedAccounts(BigDecimal.TEN);
+
+        ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("3.7")).join();
+
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_1).join()).isEqualTo(new BigDecimal("6.3"));
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_2).join()).isEqualTo(new BigDecimal("3.7"));
+    }
+
+    @Test
+    void transfersFixedPointMoney()
+    {
+        ledger = new SequencedLedger(1024, new FixedPointMoney(2));
+        seedAccounts(BigDecimal.TEN);
+
+        ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, new BigDecimal("3.75")).join();
+
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_1).join()).isEqualTo(new BigDecimal("6.25"));
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_2).join()).isEqualTo(new BigDecimal("3.75"));
+    }
+
+    @Test
+    void refusesTransferWithInsufficientBalance()
+    {
+        ledger = new SequencedLedger();
+        seedAccounts(BigDecimal.ONE);
+
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.TEN).join())
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("insufficient balance");
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_1).join()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    void refusesTransferWhichWouldOverflowWithoutDebiting()
+    {
+        ledger = new SequencedLedger(1024, new FixedPointMoney(0));
+        seedAccounts(BigDecimal.TEN);
+        ledger.deposit(ACCOUNT_NUMBER_2, BigDecimal.valueOf(Long.MAX_VALUE)).join();
+
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE).join())
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining("overflows");
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_1).join()).isEqualTo(BigDecimal.TEN);
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_2).join()).isEqualTo(BigDecimal.valueOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void refusesUnknownAndDuplicateAccounts()
+    {
+        ledger = new SequencedLedger();
+        ledger.createAccount(ACCOUNT_NUMBER_1).join();
+
+        assertThatThrownBy(() -> ledger.createAccount(ACCOUNT_NUMBER_1).join())
+                .hasMessageContaining("already exists");
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE).join())
+                .hasMessageContaining("Destination account " + ACCOUNT_NUMBER_2 + " does not exist");
+    }
+
+    @Test
+    void rejectsInvalidTransfersBeforePublishing()
+    {
+        ledger = new SequencedLedger();
+
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ZERO))
+                .hasMessageContaining("must be positive");
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_1, BigDecimal.ONE))
+                .hasMessageContaining("May not transfer back to the same account");
+    }
+
+    @Test
+    void tellsListenerInSequencerOrder()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        ledger = new SequencedLedger(1024, null, listener);
+        seedAccounts(BigDecimal.TEN);
+
+        ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE).join();
+
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).accountCreated(1, ACCOUNT_NUMBER_1);
+        inOrder.verify(listener).accountCreated(2, ACCOUNT_NUMBER_2);
+        inOrder.verify(listener).transferCommitted(3, ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+    }
+
+    @Test
+    void tellsListenerOffTheSequencerThread()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        AtomicReference<String> listenerThread = new AtomicReference<>();
+        doAnswer(invocation -> {
+            listenerThread.set(Thread.currentThread().getName());
+            return null;
+        }).when(listener).transferCommitted(anyLong(), any(), any(), any());
+        ledger = new SequencedLedger(1024, null, listener);
+        seedAccounts(BigDecimal.TEN);
+
+        ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE).join();
+
+        assertThat(listenerThread.get()).isEqualTo("sequencer-completer");
+    }
+
+    @Test
+    void listenerFailureFailsTheFutureAfterTheTransfer()
+    {
+        TransferListener listener = mock(TransferListener.class);
+        doAnswer(invocation -> {
+            throw new RuntimeException("Listener failed");
+        }).when(listener).transferCommitted(anyLong(), any(), any(), any());
+        ledger = new SequencedLedger(1024, null, listener);
+        seedAccounts(BigDecimal.TEN);
+
+        assertThatThrownBy(() -> ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE).join())
+                .hasMessageContaining("Listener failed");
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_2).join()).isEqualTo(BigDecimal.ONE);
+    }
+
+    @Test
+    void concurrentTransfersKeepTotalBalance() throws InterruptedException
+    {
+        ledger = new SequencedLedger(64, new FixedPointMoney(2));
+        seedAccounts(new BigDecimal(1_000));
+        Thread[] clients = new Thread[16];
+        for (int c = 0; c < clients.length; c++)
+        {
+            boolean forwards = c % 2 == 0;
+            clients[c] = Thread.ofVirtual().start(() -> {
+                CompletableFuture<?>[] transfers = new CompletableFuture<?>[500];
+                for (int i = 0; i < transfers.length; i++)
+                {
+                    transfers[i] = forwards
+                                   ? ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE)
+                                   : ledger.transferBalance(ACCOUNT_NUMBER_2, ACCOUNT_NUMBER_1, BigDecimal.ONE);
+                }
+                CompletableFuture.allOf(transfers).exceptionally(e -> null).join();
+            });
+        }
+        for (Thread client : clients)
+        {
+            client.join();
+        }
+
+        assertThat(ledger.getBalance(ACCOUNT_NUMBER_1).join().add(ledger.getBalance(ACCOUNT_NUMBER_2).join()))
+                .isEqualByComparingTo(new BigDecimal(1_000));
+    }
+
+    @Test
+    void appliesRequestsPublishedBeforeCloseAndRefusesLaterOnes()
+    {
+        ledger = new SequencedLedger();
+        seedAccounts(BigDecimal.TEN);
+        CompletableFuture<Void> transfer = ledger.transferBalance(ACCOUNT_NUMBER_1, ACCOUNT_NUMBER_2, BigDecimal.ONE);
+
+        ledger.close();
+
+        assertThat(transfer).isCompleted();
+        assertThatThrownBy(() -> ledger.getBalance(ACCOUNT_NUMBER_1)).hasMessageContaining("is closed");
+    }
+
+    private void seedAccounts(final BigDecimal openingBalance)
+    {
+        ledger.createAccount(ACCOUNT_NUMBER_1);
+        ledger.createAccount(ACCOUNT_NUMBER_2);
+        ledger.deposit(ACCOUNT_NUMBER_1, openingBalance);
+        ledger.deposit(ACCOUNT_NUMBER_2, BigDecimal.ZERO).join();
+    }
+}
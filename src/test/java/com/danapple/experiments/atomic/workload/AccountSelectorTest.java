@@ -0,0 +1,78 @@
+package com.danapple.experiments.atomic.workload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AccountSelectorTest
+{
+    private final Random random = new Random(42);
+
+    @Test
+    void uniformSelectsEveryAccount()
+    {
+        AccountSelector selector = AccountSelector.uniform(10);
+        int[] counts = new int[10];
+        for (int i = 0; i < 10_000; i++)
+        {
+            counts[selector.select(random)]++;
+        }
+        for (int count : counts)
+        {
+            assertThat(count).isBetween(800, 1200);
+        }
+    }
+
+    @Test
+    void zipfFavoursFirstAccount()
+    {
+        AccountSelector selector = AccountSelector.zipf(100, 1.0);
+        int[] counts = new int[100];
+        for (int i = 0; i < 100_000; i++)
+        {
+            counts[selector.select(random)]++;
+        }
+        assertThat(counts[0]).isGreaterThan(counts[1]);
+        assertThat(counts[1]).isGreaterThan(counts[10]);
+        assertThat(counts[0]).isGreaterThan(15_000);
+    }
+
+    @Test
+    void zipfStaysInRange()
+    {
+        AccountSelector selector = AccountSelector.zipf(3, 2.0);
+        for (int i = 0; i < 10_000; i++)
+        {
+            assertThat(selector.select(random)).isBetween(0, 2);
+        }
+    }
+
+    @Test
+    void parsesSkews()
+    {
+        assertThat(AccountSelector.parse("uniform", 5)).isInstanceOf(UniformSelector.class);
+        assertThat(AccountSelector.parse("zipf", 5)).isInstanceOf(ZipfSelector.class);
+        assertThat(AccountSelector.parse("zipf:1.2", 5).getAccountCount()).isEqualTo(5);
+        assertThatThrownBy(() -> AccountSelector.parse("gaussian", 5));
+    }
+
+    @Test
+    void selectOtherNeverReturnsExcludedAccount()
+    {
+        AccountSelector selector = AccountSelector.zipf(2, 3.0);
+        for (int i = 0; i < 1_000; i++)
+        {
+            assertThat(selector.selectOther(random, 0)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void rejectsBadArguments()
+    {
+        assertThatThrownBy(() -> AccountSelector.uniform(0));
+        assertThatThrownBy(() -> AccountSelector.zipf(10, 0));
+        assertThatThrownBy(() -> AccountSelector.uniform(1).selectOther(random, 0));
+    }
+}
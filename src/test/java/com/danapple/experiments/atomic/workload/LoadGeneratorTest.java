@@ -0,0 +1,62 @@
+package com.danapple.experiments.atomic.workload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.jupiter.api.Test;
+
+class LoadGeneratorTest
+{
+    @Test
+    void loggedEngineKeepsTotalBalance() throws InterruptedException
+    {
+        WorkloadReport report = new LoadGenerator(WorkloadOptions.parse(new String[] {
+                "engine=logged", "accounts=20", "skew=zipf", "clients=200", "warmup=0", "duration=1",
+                "reads=10", "postings=20", "openingBalance=5"
+        })).run();
+
+        assertThat(report.completedOperations()).isPositive();
+        assertThat(report.latencyNanos().count())
+                .isEqualTo(report.completedOperations() + report.failedOperations());
+        assertThat(report.isBalanced()).isTrue();
+    }
+
+    @Test
+    void ledgeredEngineKeepsTotalBalance() throws InterruptedException
+    {
+        WorkloadReport report = new LoadGenerator(WorkloadOptions.parse(new String[] {
+                "engine=ledgered", "accounts=20", "clients=200", "warmup=0", "duration=1", "money=decimal",
+                "combining=true"
+        })).run();
+
+        assertThat(report.completedOperations()).isPositive();
+        assertThat(report.isBalanced()).isTrue();
+    }
+
+    @Test
+    void sequencedEngineKeepsTotalBalance() throws InterruptedException
+    {
+        WorkloadReport report = new LoadGenerator(WorkloadOptions.parse(new String[] {
+                "engine=sequenced", "accounts=20", "skew=zipf", "clients=200", "warmup=0", "duration=1"
+        })).run();
+
+        assertThat(report.completedOperations()).isPositive();
+        assertThat(report.isBalanced()).isTrue();
+    }
+
+    @Test
+    void printsReport() throws InterruptedException
+    {
+        WorkloadReport report = new LoadGenerator(WorkloadOptions.parse(new String[] {
+                "accounts=10", "clients=10", "warmup=0", "duration=1"
+        })).run();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        report.print(new PrintStream(output, true));
+
+        assertThat(output.toString()).contains("logged engine, 10 accounts (uniform), 10 clients")
+                                     .contains("p99")
+                                     .contains(": OK");
+    }
+}
@@ -0,0 +1,52 @@
+package com.danapple.experiments.atomic.workload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+class WorkloadOptionsTest
+{
+    @Test
+    void noArgumentsGiveDefaults()
+    {
+        assertThat(WorkloadOptions.parse(new String[0])).isEqualTo(WorkloadOptions.DEFAULT);
+    }
+
+    @Test
+    void argumentsOverrideDefaults()
+    {
+        WorkloadOptions options = WorkloadOptions.parse(new String[] {
+                "engine=ledgered", "accounts=100", "skew=zipf:1.2", "clients=1000000", "duration=60",
+                "openingBalance=500.25", "combining=true"
+        });
+
+        assertThat(options.engine()).isEqualTo("ledgered");
+        assertThat(options.accountCount()).isEqualTo(100);
+        assertThat(options.skew()).isEqualTo("zipf:1.2");
+        assertThat(options.clients()).isEqualTo(1_000_000);
+        assertThat(options.durationSeconds()).isEqualTo(60);
+        assertThat(options.openingBalance()).isEqualTo(new BigDecimal("500.25"));
+        assertThat(options.combining()).isTrue();
+        assertThat(options.warmupSeconds()).isEqualTo(WorkloadOptions.DEFAULT.warmupSeconds());
+    }
+
+    @Test
+    void rejectsUnknownOptions()
+    {
+        assertThatThrownBy(() -> WorkloadOptions.parse(new String[] { "acounts=100" }))
+                .hasMessageContaining("Unknown options [acounts]");
+        assertThatThrownBy(() -> WorkloadOptions.parse(new String[] { "accounts" }))
+                .hasMessageContaining("is not name=value");
+    }
+
+    @Test
+    void rejectsInvalidMix()
+    {
+        assertThatThrownBy(() -> WorkloadOptions.parse(new String[] { "reads=60", "postings=50" }))
+                .hasMessageContaining("must be a valid mix");
+        assertThatThrownBy(() -> WorkloadOptions.parse(new String[] { "engine=ledgered", "postings=5" }))
+                .hasMessageContaining("no multi-leg postings");
+    }
+}